@@ -3,8 +3,6 @@
  */
 package com.hypefoundry.engine.controllers;
 
-import java.util.*;
-
 import android.util.Log;
 
 import com.hypefoundry.engine.world.Entity;
@@ -12,6 +10,7 @@ import com.hypefoundry.engine.game.UpdatesManager;
 import com.hypefoundry.engine.world.World;
 import com.hypefoundry.engine.world.WorldView;
 import com.hypefoundry.engine.util.GenericFactory;
+import com.hypefoundry.engine.util.IdIndexedArray;
 
 /**
  * This view will automatically instantiate controllers
@@ -22,8 +21,9 @@ import com.hypefoundry.engine.util.GenericFactory;
  */
 public class ControllersView extends GenericFactory< Entity, EntityController > implements WorldView 
 {
-	private UpdatesManager 		m_updatesMgr;
-	List< EntityController >	m_controllers;
+	private final int							INITIAL_ENTITIES_CAPACITY = 512;		// TODO: config
+	private UpdatesManager 						m_updatesMgr;
+	IdIndexedArray< EntityController >			m_controllers;				// indexed with the entity ids
 	
 	/**
 	 * Constructor.
@@ -32,7 +32,7 @@ public class ControllersView extends GenericFactory< Entity, EntityController >
 	{
 		m_updatesMgr = updatesMgr;
 		
-		m_controllers = new ArrayList< EntityController >();
+		m_controllers = new IdIndexedArray< EntityController >( INITIAL_ENTITIES_CAPACITY );
 	}
 
 	@Override
@@ -50,7 +50,7 @@ public class ControllersView extends GenericFactory< Entity, EntityController >
 			controller = create( entity );
 			
 			// memorize the new controller
-			m_controllers.add( controller );
+			m_controllers.put( entity.getWorldId(), controller );
 			
 			// add it to the update manager
 			m_updatesMgr.addUpdatable( controller );
@@ -74,7 +74,7 @@ public class ControllersView extends GenericFactory< Entity, EntityController >
 			m_updatesMgr.removeUpdatable( controller );
 			
 			// remove it from the collection
-			m_controllers.remove( controller );
+			m_controllers.remove( entity.getWorldId() );
 		}
 	}
 	
@@ -86,14 +86,10 @@ public class ControllersView extends GenericFactory< Entity, EntityController >
 	 */
 	private EntityController findControllerFor( Entity entity )
 	{
-		int count = m_controllers.size();
-		for ( int i = 0; i < count; ++i )
+		EntityController controller = m_controllers.get( entity.getWorldId() );
+		if ( controller != null && controller.isControllerOf( entity ) )
 		{
-			EntityController controller = m_controllers.get(i);
-			if ( controller.isControllerOf( entity ) )
-			{
-				return controller;
-			}
+			return controller;
 		}
 		
 		return null;
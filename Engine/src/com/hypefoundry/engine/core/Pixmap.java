@@ -0,0 +1,538 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * An image stored in the memory as an array of ARGB pixels.
+ * 
+ * Unlike a Bitmap, it doesn't depend on the platform, so the images can be processed
+ * both on the device and by the tools that run on a desktop JVM.
+ * 
+ * Only the non-interlaced PNG images can be decoded.
+ * 
+ * @author Paksas
+ *
+ */
+public final class Pixmap
+{
+	private static final byte[]		PNG_SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+	private static final int		CHUNK_IHDR = 0x49484452;
+	private static final int		CHUNK_PLTE = 0x504C5445;
+	private static final int		CHUNK_TRNS = 0x74524E53;
+	private static final int		CHUNK_IDAT = 0x49444154;
+	private static final int		CHUNK_IEND = 0x49454E44;
+
+	private static final int		COLOR_GRAY = 0;
+	private static final int		COLOR_RGB = 2;
+	private static final int		COLOR_PALETTE = 3;
+	private static final int		COLOR_GRAY_ALPHA = 4;
+	private static final int		COLOR_RGBA = 6;
+
+	public final int				m_width;
+	public final int				m_height;
+	public final int[]				m_pixels;		// ARGB pixels, stored row by row starting from the top one
+
+	/**
+	 * Constructor of a transparent image.
+	 * 
+	 * @param width
+	 * @param height
+	 */
+	public Pixmap( int width, int height )
+	{
+		this( width, height, new int[ width * height ] );
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param pixels		ARGB pixels
+	 */
+	public Pixmap( int width, int height, int[] pixels )
+	{
+		if ( pixels.length < width * height )
+		{
+			throw new IllegalArgumentException( "Too few pixels for a " + width + "x" + height + " image" );
+		}
+
+		m_width = width;
+		m_height = height;
+		m_pixels = pixels;
+	}
+
+	/**
+	 * Copies an image into this one.
+	 * 
+	 * The edges of the copied image can be extruded - so that the texture filtering doesn't
+	 * blend them with the neighbouring images when the image is a part of an atlas.
+	 * 
+	 * @param src
+	 * @param x				where the image should be copied to
+	 * @param y
+	 * @param border		how many times the edge pixels should be repeated around the image
+	 */
+	public void draw( Pixmap src, int x, int y, int border )
+	{
+		for ( int row = -border; row < src.m_height + border; ++row )
+		{
+			int destY = y + row;
+			if ( destY < 0 || destY >= m_height )
+			{
+				continue;
+			}
+
+			int srcY = row < 0 ? 0 : ( row >= src.m_height ? src.m_height - 1 : row );
+			int srcOffset = srcY * src.m_width;
+			int destOffset = destY * m_width;
+			for ( int col = -border; col < src.m_width + border; ++col )
+			{
+				int destX = x + col;
+				if ( destX < 0 || destX >= m_width )
+				{
+					continue;
+				}
+
+				int srcX = col < 0 ? 0 : ( col >= src.m_width ? src.m_width - 1 : col );
+				m_pixels[ destOffset + destX ] = src.m_pixels[ srcOffset + srcX ];
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// PNG serialization
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Decodes a PNG image.
+	 * 
+	 * @param stream
+	 * @return
+	 * @throws IOException		if the stream doesn't contain a PNG image that can be decoded
+	 */
+	public static Pixmap decodePng( InputStream stream ) throws IOException
+	{
+		DataInputStream in = new DataInputStream( stream );
+
+		byte[] signature = new byte[ PNG_SIGNATURE.length ];
+		in.readFully( signature );
+		for ( int i = 0; i < signature.length; ++i )
+		{
+			if ( signature[i] != PNG_SIGNATURE[i] )
+			{
+				throw new IOException( "Not a PNG image" );
+			}
+		}
+
+		int width = 0;
+		int height = 0;
+		int bitDepth = 0;
+		int colorType = 0;
+		int[] palette = null;
+		byte[] transparency = null;
+		ByteArrayOutputStream compressedData = new ByteArrayOutputStream();
+		while ( true )
+		{
+			int length = in.readInt();
+			int type = in.readInt();
+			byte[] data = new byte[length];
+			in.readFully( data );
+			in.readInt(); // crc
+
+			if ( type == CHUNK_IHDR )
+			{
+				width = readInt( data, 0 );
+				height = readInt( data, 4 );
+				bitDepth = data[8];
+				colorType = data[9];
+				if ( data[12] != 0 )
+				{
+					throw new IOException( "Interlaced PNG images aren't supported" );
+				}
+			}
+			else if ( type == CHUNK_PLTE )
+			{
+				palette = new int[ length / 3 ];
+				for ( int i = 0; i < palette.length; ++i )
+				{
+					palette[i] = 0xFF000000 | ( ( data[i * 3] & 0xFF ) << 16 ) | ( ( data[i * 3 + 1] & 0xFF ) << 8 ) | ( data[i * 3 + 2] & 0xFF );
+				}
+			}
+			else if ( type == CHUNK_TRNS )
+			{
+				transparency = data;
+			}
+			else if ( type == CHUNK_IDAT )
+			{
+				compressedData.write( data );
+			}
+			else if ( type == CHUNK_IEND )
+			{
+				break;
+			}
+		}
+
+		if ( colorType == COLOR_PALETTE )
+		{
+			if ( palette == null )
+			{
+				throw new IOException( "The palette is missing" );
+			}
+			for ( int i = 0; transparency != null && i < transparency.length && i < palette.length; ++i )
+			{
+				palette[i] = ( palette[i] & 0x00FFFFFF ) | ( ( transparency[i] & 0xFF ) << 24 );
+			}
+		}
+
+		int channelsCount = getChannelsCount( colorType );
+		int bitsPerPixel = channelsCount * bitDepth;
+		int bytesPerPixel = Math.max( 1, bitsPerPixel / 8 );
+		int rowLength = ( width * bitsPerPixel + 7 ) / 8;
+
+		byte[] data = inflate( compressedData.toByteArray(), ( rowLength + 1 ) * height );
+
+		Pixmap pixmap = new Pixmap( width, height );
+		byte[] prevRow = new byte[rowLength];
+		byte[] row = new byte[rowLength];
+		int[] samples = new int[4];
+		for ( int y = 0; y < height; ++y )
+		{
+			int rowOffset = y * ( rowLength + 1 );
+			System.arraycopy( data, rowOffset + 1, row, 0, rowLength );
+			unfilter( data[rowOffset], row, prevRow, bytesPerPixel );
+
+			for ( int x = 0; x < width; ++x )
+			{
+				for ( int c = 0; c < channelsCount; ++c )
+				{
+					samples[c] = readSample( row, x * channelsCount + c, bitDepth );
+				}
+				pixmap.m_pixels[ y * width + x ] = toARGB( samples, colorType, bitDepth, palette, transparency );
+			}
+
+			byte[] tmp = prevRow;
+			prevRow = row;
+			row = tmp;
+		}
+
+		return pixmap;
+	}
+
+	/**
+	 * Encodes the image as a 32 bit RGBA PNG image.
+	 * 
+	 * @param stream
+	 * @throws IOException
+	 */
+	public void encodePng( OutputStream stream ) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream( stream );
+		out.write( PNG_SIGNATURE );
+
+		byte[] header = new byte[13];
+		writeInt( header, 0, m_width );
+		writeInt( header, 4, m_height );
+		header[8] = 8;
+		header[9] = COLOR_RGBA;
+		writeChunk( out, CHUNK_IHDR, header, header.length );
+
+		// every row is stored unfiltered
+		int rowLength = m_width * 4 + 1;
+		byte[] data = new byte[ rowLength * m_height ];
+		for ( int y = 0; y < m_height; ++y )
+		{
+			int offset = y * rowLength + 1;
+			for ( int x = 0; x < m_width; ++x )
+			{
+				int argb = m_pixels[ y * m_width + x ];
+				data[offset++] = (byte)( argb >> 16 );
+				data[offset++] = (byte)( argb >> 8 );
+				data[offset++] = (byte)argb;
+				data[offset++] = (byte)( argb >> 24 );
+			}
+		}
+
+		Deflater deflater = new Deflater();
+		deflater.setInput( data );
+		deflater.finish();
+		ByteArrayOutputStream compressedData = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		while ( !deflater.finished() )
+		{
+			int count = deflater.deflate( buffer );
+			compressedData.write( buffer, 0, count );
+		}
+		deflater.end();
+
+		byte[] compressed = compressedData.toByteArray();
+		writeChunk( out, CHUNK_IDAT, compressed, compressed.length );
+		writeChunk( out, CHUNK_IEND, new byte[0], 0 );
+		out.flush();
+	}
+
+	/**
+	 * Decompresses the image data.
+	 * 
+	 * @param compressed
+	 * @param length		expected length of the decompressed data
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] inflate( byte[] compressed, int length ) throws IOException
+	{
+		Inflater inflater = new Inflater();
+		inflater.setInput( compressed );
+		byte[] data = new byte[length];
+		try
+		{
+			int offset = 0;
+			while ( offset < length && !inflater.finished() )
+			{
+				int count = inflater.inflate( data, offset, length - offset );
+				if ( count == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+				{
+					break;
+				}
+				offset += count;
+			}
+			if ( offset < length )
+			{
+				throw new IOException( "The image data is truncated" );
+			}
+		}
+		catch ( DataFormatException e )
+		{
+			throw new IOException( "The image data is corrupted: " + e.getMessage() );
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return data;
+	}
+
+	/**
+	 * Reverses the filter applied to a row of the image.
+	 * 
+	 * @param filterType
+	 * @param row
+	 * @param prevRow
+	 * @param bytesPerPixel
+	 * @throws IOException
+	 */
+	private static void unfilter( int filterType, byte[] row, byte[] prevRow, int bytesPerPixel ) throws IOException
+	{
+		int length = row.length;
+		switch( filterType )
+		{
+			case 0:
+			{
+				break;
+			}
+
+			case 1:		// sub
+			{
+				for ( int i = bytesPerPixel; i < length; ++i )
+				{
+					row[i] += row[i - bytesPerPixel];
+				}
+				break;
+			}
+
+			case 2:		// up
+			{
+				for ( int i = 0; i < length; ++i )
+				{
+					row[i] += prevRow[i];
+				}
+				break;
+			}
+
+			case 3:		// average
+			{
+				for ( int i = 0; i < length; ++i )
+				{
+					int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+					row[i] += ( left + ( prevRow[i] & 0xFF ) ) >> 1;
+				}
+				break;
+			}
+
+			case 4:		// Paeth
+			{
+				for ( int i = 0; i < length; ++i )
+				{
+					int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+					int up = prevRow[i] & 0xFF;
+					int upLeft = i >= bytesPerPixel ? prevRow[i - bytesPerPixel] & 0xFF : 0;
+
+					int p = left + up - upLeft;
+					int pLeft = Math.abs( p - left );
+					int pUp = Math.abs( p - up );
+					int pUpLeft = Math.abs( p - upLeft );
+					int predictor = ( pLeft <= pUp && pLeft <= pUpLeft ) ? left : ( pUp <= pUpLeft ? up : upLeft );
+					row[i] += predictor;
+				}
+				break;
+			}
+
+			default:
+			{
+				throw new IOException( "Unknown PNG filter type " + filterType );
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of channels the pixels of the specified color type have.
+	 * 
+	 * @param colorType
+	 * @return
+	 * @throws IOException
+	 */
+	private static int getChannelsCount( int colorType ) throws IOException
+	{
+		switch( colorType )
+		{
+			case COLOR_GRAY:		return 1;
+			case COLOR_RGB:			return 3;
+			case COLOR_PALETTE:		return 1;
+			case COLOR_GRAY_ALPHA:	return 2;
+			case COLOR_RGBA:		return 4;
+			default:				throw new IOException( "Unknown PNG color type " + colorType );
+		}
+	}
+
+	/**
+	 * Reads a sample from an unfiltered row.
+	 * 
+	 * @param row
+	 * @param sampleIdx
+	 * @param bitDepth
+	 * @return				the sample, reduced to 8 bits if it's wider
+	 */
+	private static int readSample( byte[] row, int sampleIdx, int bitDepth )
+	{
+		switch( bitDepth )
+		{
+			case 8:		return row[sampleIdx] & 0xFF;
+			case 16:	return row[sampleIdx * 2] & 0xFF;
+			default:
+			{
+				int bitOffset = sampleIdx * bitDepth;
+				int shift = 8 - bitDepth - ( bitOffset & 7 );
+				return ( ( row[ bitOffset >> 3 ] & 0xFF ) >> shift ) & ( ( 1 << bitDepth ) - 1 );
+			}
+		}
+	}
+
+	/**
+	 * Converts the samples of a pixel to an ARGB color.
+	 * 
+	 * @param samples
+	 * @param colorType
+	 * @param bitDepth
+	 * @param palette
+	 * @param transparency
+	 * @return
+	 */
+	private static int toARGB( int[] samples, int colorType, int bitDepth, int[] palette, byte[] transparency )
+	{
+		switch( colorType )
+		{
+			case COLOR_PALETTE:
+			{
+				return samples[0] < palette.length ? palette[ samples[0] ] : 0;
+			}
+
+			case COLOR_GRAY:
+			{
+				int gray = bitDepth < 8 ? samples[0] * 255 / ( ( 1 << bitDepth ) - 1 ) : samples[0];
+				int alpha = 0xFF;
+				if ( transparency != null && transparency.length >= 2 && bitDepth <= 8 && samples[0] == readInt16( transparency, 0 ) )
+				{
+					alpha = 0;
+				}
+				return ( alpha << 24 ) | ( gray << 16 ) | ( gray << 8 ) | gray;
+			}
+
+			case COLOR_GRAY_ALPHA:
+			{
+				return ( samples[1] << 24 ) | ( samples[0] << 16 ) | ( samples[0] << 8 ) | samples[0];
+			}
+
+			case COLOR_RGB:
+			{
+				int alpha = 0xFF;
+				if ( transparency != null && transparency.length >= 6 && bitDepth == 8
+						&& samples[0] == readInt16( transparency, 0 ) && samples[1] == readInt16( transparency, 2 ) && samples[2] == readInt16( transparency, 4 ) )
+				{
+					alpha = 0;
+				}
+				return ( alpha << 24 ) | ( samples[0] << 16 ) | ( samples[1] << 8 ) | samples[2];
+			}
+
+			default:
+			{
+				return ( samples[3] << 24 ) | ( samples[0] << 16 ) | ( samples[1] << 8 ) | samples[2];
+			}
+		}
+	}
+
+	/**
+	 * Writes a PNG chunk.
+	 * 
+	 * @param out
+	 * @param type
+	 * @param data
+	 * @param length
+	 * @throws IOException
+	 */
+	private static void writeChunk( DataOutputStream out, int type, byte[] data, int length ) throws IOException
+	{
+		byte[] typeBytes = new byte[4];
+		writeInt( typeBytes, 0, type );
+
+		CRC32 crc = new CRC32();
+		crc.update( typeBytes );
+		crc.update( data, 0, length );
+
+		out.writeInt( length );
+		out.write( typeBytes );
+		out.write( data, 0, length );
+		out.writeInt( (int)crc.getValue() );
+	}
+
+	private static int readInt( byte[] data, int offset )
+	{
+		return ( ( data[offset] & 0xFF ) << 24 ) | ( ( data[offset + 1] & 0xFF ) << 16 ) | ( ( data[offset + 2] & 0xFF ) << 8 ) | ( data[offset + 3] & 0xFF );
+	}
+
+	private static int readInt16( byte[] data, int offset )
+	{
+		return ( ( data[offset] & 0xFF ) << 8 ) | ( data[offset + 1] & 0xFF );
+	}
+
+	private static void writeInt( byte[] data, int offset, int value )
+	{
+		data[offset] = (byte)( value >> 24 );
+		data[offset + 1] = (byte)( value >> 16 );
+		data[offset + 2] = (byte)( value >> 8 );
+		data[offset + 3] = (byte)value;
+	}
+}
@@ -3,6 +3,9 @@
  */
 package com.hypefoundry.engine.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.hypefoundry.engine.game.Game;
 
 /**
@@ -17,6 +20,16 @@ public abstract class Resource
 	protected	ResourceManager	m_resMgr;
 	protected 	String			m_assetPath;
 	
+	// loading state, managed by the ResourceManager
+	volatile boolean			m_loaded = false;
+	Thread						m_loadingThread = null;		// thread that's loading the resource at the moment
+	private List< Resource >	m_dependencies = null;		// resources this one uses
+	
+	// caching state, managed by the ResourceCache
+	boolean						m_cached = false;
+	int							m_referencesCount = 0;		// number of the active managers that use the resource
+	int							m_cachedMemorySize = 0;		// memory size the resource had when it stopped being referenced
+	
 	/**
 	 * Default constructor required by the ResourceManager
 	 */
@@ -53,10 +66,73 @@ public abstract class Resource
 	/**
 	 * Loads the resource.
 	 * 
+	 * The resources are loaded concurrently, so it shouldn't access any GL context - leave
+	 * that to 'finalizeLoading'.
+	 * 
 	 * @param resMgr		host resource manager
 	 */
 	public abstract void load();
 	
+	/**
+	 * Finishes loading the resource on the GL thread. The ResourceManager calls it
+	 * in small portions between the frames, once all resources are loaded.
+	 */
+	protected void finalizeLoading()
+	{
+	}
+	
+	/**
+	 * Returns the estimated amount of memory the loaded resource occupies, in bytes. 
+	 * 
+	 * The ResourceCache evicts the resources no manager uses once their memory exceeds its budget.
+	 * 
+	 * @return
+	 */
+	public int getMemorySize()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Informs that the resource uses another one, so that the other one's kept alive as 
+	 * long as this one is. 
+	 * 
+	 * The resources requested from the resource manager while a resource is being loaded 
+	 * are registered automatically.
+	 * 
+	 * @param dependency
+	 */
+	public final synchronized void addDependency( Resource dependency )
+	{
+		if ( dependency == null || dependency == this )
+		{
+			return;
+		}
+		
+		if ( m_dependencies == null )
+		{
+			m_dependencies = new ArrayList< Resource >( 1 );
+		}
+		else if ( m_dependencies.contains( dependency ) )
+		{
+			return;
+		}
+		m_dependencies.add( dependency );
+	}
+	
+	/**
+	 * Collects the resources this one uses.
+	 * 
+	 * @param outDependencies
+	 */
+	final synchronized void getDependencies( List< Resource > outDependencies )
+	{
+		if ( m_dependencies != null )
+		{
+			outDependencies.addAll( m_dependencies );
+		}
+	}
+	
 	/**
 	 * Releases the memory used by the resource.
 	 */
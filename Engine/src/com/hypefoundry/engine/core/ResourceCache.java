@@ -0,0 +1,313 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.core;
+
+import java.util.*;
+
+
+/**
+ * A process-wide cache of the resources, shared by all resource managers.
+ * 
+ * A resource is referenced by every active manager that uses it. Once no manager references it,
+ * it stays loaded and goes onto the list of the least recently used resources - so that a screen
+ * that needs it again doesn't have to reload it. The unreferenced resources are released,
+ * the least recently used ones first, only when the memory they occupy exceeds the budget.
+ * 
+ * @author Paksas
+ *
+ */
+public final class ResourceCache
+{
+	public static final int								DEFAULT_MEMORY_BUDGET = 16 * 1024 * 1024;
+	
+	// cached resources indexed with their asset paths
+	private static final Map< String, List< Resource > >	s_resourcesIndex = new HashMap< String, List< Resource > >();
+	
+	// unreferenced resources, starting with the least recently used one
+	private static final LinkedHashSet< Resource >		s_unreferencedResources = new LinkedHashSet< Resource >();
+	private static int									s_unreferencedMemory = 0;
+	private static int									s_memoryBudget = DEFAULT_MEMORY_BUDGET;
+	
+	// statistics
+	private static int									s_hitsCount = 0;
+	private static int									s_missesCount = 0;
+	private static int									s_evictionsCount = 0;
+	
+	/**
+	 * Sets the amount of memory the unreferenced resources can occupy, and evicts
+	 * the ones that don't fit in it any more.
+	 * 
+	 * @param budget		budget in bytes
+	 */
+	public static synchronized void setMemoryBudget( int budget )
+	{
+		s_memoryBudget = budget;
+		trim();
+	}
+	
+	/**
+	 * Returns the amount of memory the unreferenced resources can occupy, in bytes.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getMemoryBudget()
+	{
+		return s_memoryBudget;
+	}
+	
+	/**
+	 * Returns the amount of memory the unreferenced resources occupy, in bytes.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getUnreferencedMemory()
+	{
+		return s_unreferencedMemory;
+	}
+	
+	/**
+	 * Returns the number of the loaded resources no manager references.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getUnreferencedResourcesCount()
+	{
+		return s_unreferencedResources.size();
+	}
+	
+	/**
+	 * Returns the number of times a manager found a resource in the cache.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getHitsCount()
+	{
+		return s_hitsCount;
+	}
+	
+	/**
+	 * Returns the number of times a manager had to create a resource.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getMissesCount()
+	{
+		return s_missesCount;
+	}
+	
+	/**
+	 * Returns the number of resources released to stay within the memory budget.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getEvictionsCount()
+	{
+		return s_evictionsCount;
+	}
+	
+	/**
+	 * Resets the hit, miss and eviction statistics.
+	 */
+	public static synchronized void resetStatistics()
+	{
+		s_hitsCount = 0;
+		s_missesCount = 0;
+		s_evictionsCount = 0;
+	}
+	
+	/**
+	 * Releases all cached resources and forgets about them. Call it when the resources
+	 * become invalid - i.e. when the GL context is lost.
+	 * 
+	 * The managers that keep track of the resources will reload them the next time they're activated.
+	 */
+	public static synchronized void releaseResources()
+	{
+		for ( List< Resource > resourcesWithPath : s_resourcesIndex.values() )
+		{
+			int count = resourcesWithPath.size();
+			for ( int i = 0; i < count; ++i )
+			{
+				Resource res = resourcesWithPath.get( i );
+				if ( res.m_loaded )
+				{
+					res.release();
+				}
+				
+				synchronized( res )
+				{
+					res.m_loaded = false;
+				}
+				res.m_cached = false;
+				res.m_referencesCount = 0;
+				res.m_cachedMemorySize = 0;
+			}
+		}
+		s_resourcesIndex.clear();
+		s_unreferencedResources.clear();
+		s_unreferencedMemory = 0;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Resource managers API
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Looks for a cached resource of the specified type.
+	 * 
+	 * @param type
+	 * @param assetPath
+	 * @return				the resource, or null if there's no such resource in the cache
+	 */
+	@SuppressWarnings("unchecked")
+	static synchronized < T extends Resource > T find( Class< T > type, String assetPath )
+	{
+		List< Resource > resourcesWithPath = s_resourcesIndex.get( assetPath );
+		if ( resourcesWithPath != null )
+		{
+			int count = resourcesWithPath.size();
+			for ( int i = 0; i < count; ++i )
+			{
+				Resource res = resourcesWithPath.get( i );
+				if ( type.isInstance( res ) )
+				{
+					++s_hitsCount;
+					return (T)res;
+				}
+			}
+		}
+		
+		++s_missesCount;
+		return null;
+	}
+	
+	/**
+	 * Adds a resource to the cache without referencing it.
+	 * 
+	 * @param res
+	 */
+	static synchronized void add( Resource res )
+	{
+		if ( res.m_cached )
+		{
+			return;
+		}
+		
+		List< Resource > resourcesWithPath = s_resourcesIndex.get( res.m_assetPath );
+		if ( resourcesWithPath == null )
+		{
+			// usually there's only a single resource per path
+			resourcesWithPath = new ArrayList< Resource >( 1 );
+			s_resourcesIndex.put( res.m_assetPath, resourcesWithPath );
+		}
+		resourcesWithPath.add( res );
+		res.m_cached = true;
+	}
+	
+	/**
+	 * References a resource, adding it to the cache if it's not there.
+	 * 
+	 * @param res
+	 */
+	static synchronized void addReference( Resource res )
+	{
+		add( res );
+		
+		++res.m_referencesCount;
+		if ( s_unreferencedResources.remove( res ) )
+		{
+			s_unreferencedMemory -= res.m_cachedMemorySize;
+			res.m_cachedMemorySize = 0;
+		}
+	}
+	
+	/**
+	 * Removes a reference to the resource. A loaded resource no one references any more
+	 * becomes the most recently used one among the unreferenced resources.
+	 * 
+	 * @param res
+	 */
+	static synchronized void removeReference( Resource res )
+	{
+		if ( !res.m_cached || res.m_referencesCount <= 0 )
+		{
+			// the cache was released in the meantime
+			return;
+		}
+		
+		--res.m_referencesCount;
+		if ( res.m_referencesCount > 0 )
+		{
+			return;
+		}
+		
+		if ( res.m_loaded )
+		{
+			res.m_cachedMemorySize = res.getMemorySize();
+			s_unreferencedResources.add( res );
+			s_unreferencedMemory += res.m_cachedMemorySize;
+			trim();
+		}
+		else
+		{
+			// there's nothing worth keeping
+			remove( res );
+		}
+	}
+	
+	/**
+	 * Removes a resource no one references from the cache, unless it's loaded.
+	 * 
+	 * @param res
+	 */
+	static synchronized void removeUnused( Resource res )
+	{
+		if ( res.m_cached && res.m_referencesCount <= 0 && !res.m_loaded && !s_unreferencedResources.contains( res ) )
+		{
+			remove( res );
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used resources until the unreferenced ones fit in the budget.
+	 */
+	private static void trim()
+	{
+		Iterator< Resource > it = s_unreferencedResources.iterator();
+		while ( s_unreferencedMemory > s_memoryBudget && it.hasNext() )
+		{
+			Resource res = it.next();
+			it.remove();
+			s_unreferencedMemory -= res.m_cachedMemorySize;
+			res.m_cachedMemorySize = 0;
+			
+			remove( res );
+			res.release();
+			synchronized( res )
+			{
+				res.m_loaded = false;
+			}
+			++s_evictionsCount;
+		}
+	}
+	
+	/**
+	 * Removes the resource from the index.
+	 * 
+	 * @param res
+	 */
+	private static void remove( Resource res )
+	{
+		List< Resource > resourcesWithPath = s_resourcesIndex.get( res.m_assetPath );
+		if ( resourcesWithPath != null )
+		{
+			resourcesWithPath.remove( res );
+			if ( resourcesWithPath.isEmpty() )
+			{
+				s_resourcesIndex.remove( res.m_assetPath );
+			}
+		}
+		res.m_cached = false;
+	}
+}
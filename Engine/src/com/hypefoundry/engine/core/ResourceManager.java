@@ -4,13 +4,28 @@
 package com.hypefoundry.engine.core;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.hypefoundry.engine.game.Game;
+import com.hypefoundry.engine.util.WorkerPool;
 
 
 /**
  * Resources manager interface.
  * 
+ * The resources are indexed with their asset paths, so looking one up doesn't 
+ * depend on the number of the resources the manager keeps track of.
+ * 
+ * The resources are loaded in two steps. First, 'loadResources' loads them concurrently
+ * on several threads - a resource that needs another one while it's being loaded waits until
+ * the other one is loaded. Then, 'finalizeResources' finishes them off on the GL thread,
+ * a bit every frame.
+ * 
+ * The resources are shared with the other managers through the ResourceCache. An active manager
+ * references the resources it uses - and once it's released, the cache keeps them loaded for as long
+ * as they fit in its memory budget, so that the next screen that needs them doesn't have to reload them.
+ * 
  * @author Paksas
  *
  */
@@ -19,7 +34,21 @@ public class ResourceManager
 	private Game 			m_game;
 	
 	List< Resource >		m_resources;
-	boolean					m_isActive;				
+	volatile boolean		m_isActive;
+	
+	// resources indexed with their asset paths - a path can be shared by the resources of different types
+	private Map< String, List< Resource > >		m_resourcesIndex;
+	
+	// loading progress
+	private int									m_finalizedResourcesCount = 0;
+	
+	// the threads all the managers load their resources with
+	private static int							s_loadingThreadsCount = Runtime.getRuntime().availableProcessors();
+	private static WorkerPool					s_loadingPool = null;
+	private static final AtomicBoolean			s_loadingPoolBusy = new AtomicBoolean( false );
+	
+	// resource the current thread is loading - the resources it requests become its dependencies
+	private static final ThreadLocal< Resource >	s_loadedResource = new ThreadLocal< Resource >();
 	
 	/**
 	 * Constructor.
@@ -31,9 +60,23 @@ public class ResourceManager
 		m_game = game;
 		
 		m_resources = new ArrayList< Resource >();
+		m_resourcesIndex = new HashMap< String, List< Resource > >();
 		m_isActive = false;
 	}
 	
+	/**
+	 * Sets the number of threads the resources are loaded with.
+	 * 
+	 * By default, there's a thread per processor core.
+	 * 
+	 * @param threadsCount		number of threads, including the loading one. 1 or less loads the resources on the loading thread only
+	 */
+	public static synchronized void setLoadingThreadsCount( int threadsCount )
+	{
+		// the pool will be recreated the next time it's needed
+		s_loadingThreadsCount = threadsCount;
+	}
+	
 	/**
 	 * Returns a resource of the specified type.
 	 * 
@@ -60,6 +103,64 @@ public class ResourceManager
 		return getResource( type, assetPath, false );
 	}
 	
+	/**
+	 * Starts managing a resource that was created in the memory rather than requested from the manager.
+	 * 
+	 * The resource is loaded just like the other managed resources are - so it shouldn't read
+	 * the asset it's registered under, but prepare itself from the data it was created with.
+	 * 
+	 * @param resource
+	 * @param assetPath		path to register the resource under
+	 * @return				the resource, or the resource of the same type the manager already holds under the path
+	 */
+	@SuppressWarnings("unchecked")
+	public < T extends Resource > T addResource( T resource, String assetPath )
+	{
+		synchronized( this )
+		{
+			T managedResource = (T)findManagedResource( resource.getClass(), assetPath );
+			if ( managedResource != null )
+			{
+				return managedResource;
+			}
+			
+			resource.initialize( m_game, this, assetPath );
+			registerResource( resource );
+		}
+		
+		Resource dependentResource = s_loadedResource.get();
+		if ( dependentResource != null )
+		{
+			dependentResource.addDependency( resource );
+		}
+		
+		if ( m_isActive )
+		{
+			loadResource( resource );
+		}
+		return resource;
+	}
+	
+	/**
+	 * Collects the managed resources of the specified type.
+	 * 
+	 * @param type
+	 * @param outResources
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized < T extends Resource > void getResources( Class< T > type, List< T > outResources )
+	{
+		int count = m_resources.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			Resource res = m_resources.get( i );
+			if ( type.isInstance( res ) )
+			{
+				outResources.add( (T)res );
+			}
+		}
+	}
+	
 	/**
 	 * Returns a resource of the specified type.
 	 * 
@@ -68,21 +169,62 @@ public class ResourceManager
 	 * @param manageNewResource		should the manage keep track of the resource?
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	private < T extends Resource > T getResource( Class< T > type, String assetPath, boolean manageNewResource )
 	{
-		// try finding an existing resource that matches the name and the type
-		int count = m_resources.size();
-		for ( int i = 0; i < count; ++i )
+		List< Resource > adoptedResources = new ArrayList< Resource >( 1 );
+		T resource = findOrCreateResource( type, assetPath, adoptedResources );
+		if ( resource == null )
 		{
-			Resource res = m_resources.get( i );
-			String resAssetPath = res.getAssetPath();
-			if ( type.isInstance( res ) && resAssetPath.equals( assetPath ) )
+			return null;
+		}
+		
+		Resource dependentResource = s_loadedResource.get();
+		if ( dependentResource != null )
+		{
+			dependentResource.addDependency( resource );
+		}
+		
+		if ( m_isActive )
+		{
+			// load the resource, if the resources manager is active - or wait until
+			// the thread that's already loading it is done. The same goes for the cached 
+			// resources it depends on
+			loadResource( resource );
+			
+			int count = adoptedResources.size();
+			for ( int i = 0; i < count; ++i )
 			{
-				// we found it
-				return (T)res;
+				loadResource( adoptedResources.get( i ) );
 			}
 		}
+		return resource;
+	}
+	
+	/**
+	 * Looks for a resource of the specified type - first among the managed ones, then
+	 * in the cache - and creates it if it doesn't exist.
+	 * 
+	 * @param type
+	 * @param assetPath
+	 * @param outAdoptedResources		the cached resources the found resource depends on, which the manager started tracking
+	 * @return
+	 */
+	private synchronized < T extends Resource > T findOrCreateResource( Class< T > type, String assetPath, List< Resource > outAdoptedResources )
+	{
+		T managedResource = findManagedResource( type, assetPath );
+		if ( managedResource != null )
+		{
+			return managedResource;
+		}
+		
+		// maybe another manager uses it, or used it recently
+		T cachedResource = ResourceCache.find( type, assetPath );
+		if ( cachedResource != null )
+		{
+			adoptResource( cachedResource, outAdoptedResources );
+			outAdoptedResources.remove( cachedResource );
+			return cachedResource;
+		}
 		
 		// the resource wasn't found - instantiate it
 		T newResource = null;
@@ -102,73 +244,358 @@ public class ResourceManager
 		if ( newResource != null )
 		{
 			newResource.initialize( m_game, this, assetPath );
-			if ( m_isActive )
+			registerResource( newResource );
+		}
+		return newResource;
+	}
+	
+	/**
+	 * Looks for a managed resource of the specified type.
+	 * 
+	 * @param type
+	 * @param assetPath
+	 * @return				the resource, or null if the manager doesn't hold such a resource
+	 */
+	@SuppressWarnings("unchecked")
+	private < T extends Resource > T findManagedResource( Class< T > type, String assetPath )
+	{
+		// try finding an existing resource that matches the name and the type - it
+		// may also be an instance of a class derived from the requested one
+		List< Resource > resourcesWithPath = m_resourcesIndex.get( assetPath );
+		if ( resourcesWithPath != null )
+		{
+			int count = resourcesWithPath.size();
+			for ( int i = 0; i < count; ++i )
+			{
+				Resource res = resourcesWithPath.get( i );
+				if ( type.isInstance( res ) )
+				{
+					// we found it
+					return (T)res;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Starts keeping track of a cached resource, and of the resources it depends on.
+	 * 
+	 * @param res
+	 * @param outAdoptedResources		resources the manager started tracking
+	 */
+	private void adoptResource( Resource res, List< Resource > outAdoptedResources )
+	{
+		List< Resource > resourcesWithPath = m_resourcesIndex.get( res.m_assetPath );
+		if ( resourcesWithPath != null && resourcesWithPath.contains( res ) )
+		{
+			// we already keep track of it
+			return;
+		}
+		
+		res.m_resMgr = this;
+		registerResource( res );
+		outAdoptedResources.add( res );
+		
+		List< Resource > dependencies = new ArrayList< Resource >();
+		res.getDependencies( dependencies );
+		int count = dependencies.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			adoptResource( dependencies.get( i ), outAdoptedResources );
+		}
+	}
+	
+	/**
+	 * Adds a resource to the managed ones, and to the cache.
+	 * 
+	 * @param res
+	 */
+	private void registerResource( Resource res )
+	{
+		m_resources.add( res );
+		
+		List< Resource > resourcesWithPath = m_resourcesIndex.get( res.m_assetPath );
+		if ( resourcesWithPath == null )
+		{
+			// usually there's only a single resource per path
+			resourcesWithPath = new ArrayList< Resource >( 1 );
+			m_resourcesIndex.put( res.m_assetPath, resourcesWithPath );
+		}
+		resourcesWithPath.add( res );
+		
+		if ( m_isActive )
+		{
+			ResourceCache.addReference( res );
+		}
+		else
+		{
+			ResourceCache.add( res );
+		}
+	}
+	
+	/**
+	 * Loads the resource, unless it's already loaded. If another thread is loading it
+	 * at the moment, waits until it's done.
+	 * 
+	 * @param res
+	 */
+	private void loadResource( Resource res )
+	{
+		Thread currentThread = Thread.currentThread();
+		synchronized( res )
+		{
+			boolean interrupted = false;
+			while ( res.m_loadingThread != null && res.m_loadingThread != currentThread )
 			{
-				// load the resource, if the resources manager is active
 				try
 				{
-					newResource.load();
+					res.wait();
 				}
-				catch( Exception ex )
+				catch( InterruptedException e )
 				{
-					// invalid data for the resource 
+					interrupted = true;
 				}
 			}
+			if ( interrupted )
+			{
+				currentThread.interrupt();
+			}
+			
+			if ( res.m_loaded || res.m_loadingThread == currentThread )
+			{
+				// the resource is either loaded, or it's a dependency of itself
+				return;
+			}
+			res.m_loadingThread = currentThread;
 			
-			m_resources.add( newResource );
+			// the resource requests the resources it needs from the manager that loads it
+			res.m_resMgr = this;
+		}
+		
+		Resource dependentResource = s_loadedResource.get();
+		s_loadedResource.set( res );
+		try
+		{
+			res.load();
+		}
+		catch( Exception ex )
+		{
+			// invalid data for the resource
+		}
+		finally
+		{
+			s_loadedResource.set( dependentResource );
+			synchronized( res )
+			{
+				res.m_loadingThread = null;
+				res.m_loaded = true;
+				res.notifyAll();
+			}
 		}
-		return newResource;
 	}
-
+	
 	/**
 	 * Loads all registered resources after they have been unloaded.
+	 * 
+	 * The resources are loaded concurrently - see 'setLoadingThreadsCount'. Once they're
+	 * loaded, they should be finalized on the GL thread with 'finalizeResources'.
 	 */
 	public void loadResources() 
 	{		
-		m_isActive = true;
-		int count = m_resources.size();
-		for ( int i = 0; i < count; ++i )
+		final Resource[] resources;
+		synchronized( this )
 		{
-			Resource res = m_resources.get( i );
+			if ( !m_isActive )
+			{
+				// keep the resources from being evicted from the cache
+				int count = m_resources.size();
+				for ( int i = 0; i < count; ++i )
+				{
+					ResourceCache.addReference( m_resources.get( i ) );
+				}
+				m_isActive = true;
+			}
 			
+			resources = m_resources.toArray( new Resource[ m_resources.size() ] );
+			m_finalizedResourcesCount = 0;
+		}
+		
+		// the threads take the resources one by one, so that a thread that loads
+		// a large texture doesn't hold up the rest of them
+		final AtomicInteger nextResourceIdx = new AtomicInteger( 0 );
+		WorkerPool.Task loadTask = new WorkerPool.Task()
+		{
+			@Override
+			public void execute( int startIdx, int endIdx )
+			{
+				for ( int i = nextResourceIdx.getAndIncrement(); i < resources.length; i = nextResourceIdx.getAndIncrement() )
+				{
+					loadResource( resources[i] );
+				}
+			}
+		};
+		
+		// the pool can be used by one manager at a time - the others load their resources on the calling thread
+		WorkerPool pool = acquireLoadingPool();
+		if ( pool != null )
+		{
 			try
 			{
-				res.load();
+				pool.execute( loadTask, pool.getThreadsCount(), 1 );
 			}
-			catch( Exception ex )
+			finally
 			{
-				// the resource references invalid data
+				s_loadingPoolBusy.set( false );
 			}
 		}
+		else
+		{
+			loadTask.execute( 0, resources.length );
+		}
+	}
+	
+	/**
+	 * Grabs the pool of the loading threads.
+	 * 
+	 * @return		the pool, or null if it's being used or the resources should be loaded on a single thread
+	 */
+	private static synchronized WorkerPool acquireLoadingPool()
+	{
+		if ( s_loadingThreadsCount <= 1 || !s_loadingPoolBusy.compareAndSet( false, true ) )
+		{
+			return null;
+		}
 		
+		if ( s_loadingPool != null && s_loadingPool.getThreadsCount() != s_loadingThreadsCount )
+		{
+			s_loadingPool.shutdown();
+			s_loadingPool = null;
+		}
+		if ( s_loadingPool == null )
+		{
+			s_loadingPool = new WorkerPool( s_loadingThreadsCount );
+		}
+		return s_loadingPool;
 	}
-
+	
 	/**
-	 * Releases all registered resources, keeping track of them however
-	 * for future reloads.
+	 * Finalizes the loaded resources. Call it on the GL thread once per frame, until it
+	 * reports that all resources were finalized - the resources that aren't finalized
+	 * by the time they're used will be finalized then.
+	 * 
+	 * @param timeBudget		time the call should take, in seconds. At least one resource is finalized regardless of it
+	 * @return					'true' if all resources are finalized
 	 */
-	public void releaseResources() 
+	public boolean finalizeResources( float timeBudget )
+	{
+		long endTime = System.nanoTime() + (long)( timeBudget * 1000000000.0f );
+		while ( true )
+		{
+			Resource res;
+			synchronized( this )
+			{
+				if ( m_finalizedResourcesCount >= m_resources.size() )
+				{
+					return true;
+				}
+				res = m_resources.get( m_finalizedResourcesCount );
+			}
+			
+			res.finalizeLoading();
+			
+			synchronized( this )
+			{
+				++m_finalizedResourcesCount;
+			}
+			
+			if ( System.nanoTime() >= endTime )
+			{
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the progress of loading the resources - from 0, when nothing's been loaded yet,
+	 * to 1, when all of them are loaded and finalized.
+	 * 
+	 * As the resources that are being loaded may register other ones, the progress can go back a little.
+	 * 
+	 * @return
+	 */
+	public synchronized float getLoadingProgress()
 	{
 		int count = m_resources.size();
+		if ( count == 0 )
+		{
+			return 1.0f;
+		}
+		
+		// the resources found in the cache may already be loaded
+		int loadedResourcesCount = 0;
 		for ( int i = 0; i < count; ++i )
 		{
-			Resource res = m_resources.get( i );
-			res.release();
+			if ( m_resources.get( i ).m_loaded )
+			{
+				++loadedResourcesCount;
+			}
+		}
+		
+		// each resource counts twice - once it's loaded, and once it's finalized
+		float progress = ( loadedResourcesCount + m_finalizedResourcesCount ) / ( 2.0f * count );
+		return progress < 1.0f ? progress : 1.0f;
+	}
+	
+	/**
+	 * Stops using all registered resources, keeping track of them however
+	 * for future reloads.
+	 * 
+	 * The resources no other manager uses are handed over to the ResourceCache, which
+	 * releases them once they don't fit in its memory budget.
+	 */
+	public synchronized void releaseResources()
+	{
+		if ( m_isActive )
+		{
+			dereferenceResources();
 		}
+		m_finalizedResourcesCount = 0;
 		m_isActive = false;
 	}
 	
 	/**
 	 * Purges the resources storage without deactivating the manager.
 	 */
-	public void clearResources()
+	public synchronized void clearResources()
+	{
+		if ( m_isActive )
+		{
+			dereferenceResources();
+		}
+		else
+		{
+			// the resources that were never loaded don't need to be cached
+			int count = m_resources.size();
+			for ( int i = 0; i < count; ++i )
+			{
+				ResourceCache.removeUnused( m_resources.get( i ) );
+			}
+		}
+		m_resources.clear();
+		m_resourcesIndex.clear();
+		m_finalizedResourcesCount = 0;
+	}
+	
+	/**
+	 * Informs the cache that an active manager doesn't use its resources any more.
+	 */
+	private void dereferenceResources()
 	{
 		int count = m_resources.size();
 		for ( int i = 0; i < count; ++i )
 		{
-			Resource res = m_resources.get( i );
-			res.release();
+			ResourceCache.removeReference( m_resources.get( i ) );
 		}
-		m_resources.clear();
 	}
 }
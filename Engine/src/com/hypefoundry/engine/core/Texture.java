@@ -29,6 +29,7 @@ public class Texture extends Resource
 	private int 			m_magFilter;
 
 	private Bitmap			m_bitmapToInitialize	= null;
+	private Pixmap			m_pixmap				= null;		// pixels of a texture created in the memory rather than loaded from an asset
 	
 		
 	/**
@@ -49,12 +50,66 @@ public class Texture extends Resource
 		return m_height;
 	}
 	
+	/**
+	 * Creates the texture from the specified pixels rather than from an asset. 
+	 * 
+	 * The texture keeps the pixels, so that it can be recreated when the resources are reloaded.
+	 * 
+	 * @param pixmap
+	 */
+	public void create( Pixmap pixmap )
+	{
+		m_pixmap = pixmap;
+		m_width = pixmap.m_width;
+		m_height = pixmap.m_height;
+		
+		if ( m_game != null )
+		{
+			m_graphics = m_game.getGraphics();
+			m_bitmapToInitialize = createBitmap( pixmap );
+		}
+	}
+	
+	/**
+	 * Returns the pixels of the texture. 
+	 * 
+	 * The pixels of the textures loaded from the assets are available only until
+	 * the texture is finalized or used for the first time.
+	 * 
+	 * @return			pixels, or null if they're no longer available
+	 */
+	public Pixmap getPixmap()
+	{
+		if ( m_pixmap != null )
+		{
+			return m_pixmap;
+		}
+		
+		if ( m_bitmapToInitialize == null )
+		{
+			return null;
+		}
+		
+		int width = m_bitmapToInitialize.getWidth();
+		int height = m_bitmapToInitialize.getHeight();
+		int[] pixels = new int[ width * height ];
+		m_bitmapToInitialize.getPixels( pixels, 0, width, 0, 0, width, height );
+		return new Pixmap( width, height, pixels );
+	}
+	
 	@Override
 	public void load() 
 	{
 		m_fileIO = m_game.getFileIO();
 		m_graphics = m_game.getGraphics();
 		
+		if ( m_pixmap != null )
+		{
+			// the texture was created in the memory
+			m_bitmapToInitialize = createBitmap( m_pixmap );
+			return;
+		}
+		
 		InputStream in = null;
 		try 
 		{
@@ -126,21 +181,46 @@ public class Texture extends Resource
 	{
 		if ( m_graphics != null )
 		{
-			GL10 gl = m_graphics.getGL();
-			
-			if ( m_bitmapToInitialize != null )
-			{
-				// initialize the texture, if it hasn't been initialized before
-				initializeGL( gl );
-				m_bitmapToInitialize = null;
-			}
+			// initialize the texture, if it hasn't been finalized before
+			finalizeLoading();
 			
+			GL10 gl = m_graphics.getGL();
 			gl.glBindTexture( GL10.GL_TEXTURE_2D, m_textureId );
 			gl.glTexParameterf( GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, m_minFilter );
 			gl.glTexParameterf( GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, m_magFilter );
 		}
 	}
 	
+	@Override
+	public int getMemorySize()
+	{
+		// 32 bits per pixel
+		return (int)m_width * (int)m_height * 4;
+	}
+	
+	@Override
+	protected void finalizeLoading()
+	{
+		if ( m_graphics != null && m_bitmapToInitialize != null )
+		{
+			initializeGL( m_graphics.getGL() );
+			m_bitmapToInitialize = null;
+		}
+	}
+	
+	/**
+	 * Creates a bitmap with the specified pixels.
+	 * 
+	 * @param pixmap
+	 * @return
+	 */
+	private static Bitmap createBitmap( Pixmap pixmap )
+	{
+		Bitmap bitmap = Bitmap.createBitmap( pixmap.m_width, pixmap.m_height, Bitmap.Config.ARGB_8888 );
+		bitmap.setPixels( pixmap.m_pixels, 0, pixmap.m_width, 0, 0, pixmap.m_width, pixmap.m_height );
+		return bitmap;
+	}
+	
 	/**
 	 * Initializes the openGL aspect of the texture.
 	 * 
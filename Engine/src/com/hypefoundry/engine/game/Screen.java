@@ -4,6 +4,7 @@ import java.util.*;
 
 import com.hypefoundry.engine.core.Input;
 import com.hypefoundry.engine.core.ResourceManager;
+import com.hypefoundry.engine.util.FrameProfiler;
 
 /**
  * This abstract class represents a single screen of the running game.
@@ -80,6 +81,7 @@ public abstract class Screen implements UpdatesManager
 		m_updatablesToAdd.clear();
 		
 		// handle input
+		FrameProfiler.begin( FrameProfiler.SECTION_INPUT );
 		count = m_inputHandlers.size();
 		Input input = m_game.getInput();
 		for ( int i = 0; i < count; ++i )
@@ -89,15 +91,18 @@ public abstract class Screen implements UpdatesManager
 				break;
 			}
 		}
+		FrameProfiler.end( FrameProfiler.SECTION_INPUT );
 		
 		// update updatables
 		if ( m_running )
 		{
+			FrameProfiler.begin( FrameProfiler.SECTION_UPDATABLES );
 			count = m_updatables.size();
 			for ( int i = 0; i < count; ++i )
 			{
 				m_updatables.get(i).update( deltaTime );
 			}
+			FrameProfiler.end( FrameProfiler.SECTION_UPDATABLES );
 		}
 	}
 	
@@ -125,6 +130,16 @@ public abstract class Screen implements UpdatesManager
 	 */
 	public abstract void dispose();
 	
+	/**
+	 * Returns the manager of the resources the screen uses.
+	 * 
+	 * @return
+	 */
+	public final ResourceManager getResourceManager()
+	{
+		return m_resourceManager;
+	}
+	
 	// ------------------------------------------------------------------------
 	// InputHandlers management
 	// ------------------------------------------------------------------------
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.hud;
+
+import com.hypefoundry.engine.renderer2D.Color;
+import com.hypefoundry.engine.renderer2D.RenderState;
+import com.hypefoundry.engine.renderer2D.SpriteBatcher;
+import com.hypefoundry.engine.renderer2D.TextureRegion;
+import com.hypefoundry.engine.util.FrameProfiler;
+
+/**
+ * Shows the samples collected by the FrameProfiler on top of the HUD.
+ * 
+ * Every profiled section gets a bar showing its average time relative to the frame budget,
+ * and the bottom of the screen shows a graph of the recent frame times - the frames that didn't
+ * fit the budget are marked red.
+ * 
+ * Attach it to a HudRenderer with 'setProfilerOverlay'.
+ * 
+ * @author Paksas
+ *
+ */
+public class FrameProfilerOverlay
+{
+	private static final float		BAR_HEIGHT = 0.015f;
+	private static final float		BAR_SPACING = 0.005f;
+	private static final float		BUDGET_WIDTH = 0.5f;				// width of a bar that takes up the entire frame budget
+	private static final float		GRAPH_HEIGHT = 0.15f;				// height of the graph bar of a frame that takes up the entire budget
+
+	private static final Color[]	SECTION_COLORS = {
+										new Color( 1.0f, 1.0f, 1.0f, 1 ),
+										new Color( 0.2f, 0.6f, 1.0f, 1 ),
+										new Color( 1.0f, 0.6f, 0.2f, 1 ),
+										new Color( 0.6f, 1.0f, 0.2f, 1 ),
+										new Color( 1.0f, 1.0f, 0.2f, 1 ),
+										new Color( 0.8f, 0.2f, 1.0f, 1 ),
+										new Color( 0.2f, 1.0f, 1.0f, 1 ),
+										new Color( 1.0f, 0.2f, 0.6f, 1 ) };
+
+	private final TextureRegion		m_region = new TextureRegion( new RenderState() );
+	private float					m_frameBudget = 1000.0f / 60.0f;
+
+	/**
+	 * Sets the time a frame should take.
+	 * 
+	 * @param frameBudget		time in milliseconds
+	 */
+	public void setFrameBudget( float frameBudget )
+	{
+		m_frameBudget = frameBudget;
+	}
+
+	/**
+	 * Draws the overlay. The HUD viewport spans the ( 0, 0 ) - ( 1, 1 ) range.
+	 * 
+	 * @param batcher
+	 */
+	public void draw( SpriteBatcher batcher )
+	{
+		if ( !FrameProfiler.isEnabled() || FrameProfiler.getSampledFramesCount() == 0 )
+		{
+			return;
+		}
+
+		// a bar per section
+		float y = BAR_SPACING;
+		int sectionsCount = FrameProfiler.getSectionsCount();
+		for ( int i = 0; i < sectionsCount; ++i )
+		{
+			float width = FrameProfiler.getAverageSectionTime( i ) / m_frameBudget * BUDGET_WIDTH;
+			drawRect( batcher, BAR_SPACING, y, width, BAR_HEIGHT, SECTION_COLORS[i % SECTION_COLORS.length] );
+			y += BAR_HEIGHT + BAR_SPACING;
+		}
+
+		// the frame times graph
+		int framesCount = FrameProfiler.getSampledFramesCount();
+		float barWidth = BUDGET_WIDTH / FrameProfiler.HISTORY_LENGTH;
+		for ( int i = 0; i < framesCount; ++i )
+		{
+			float frameTime = FrameProfiler.getSectionTime( FrameProfiler.SECTION_FRAME, i );
+			float height = frameTime / m_frameBudget * GRAPH_HEIGHT;
+			float x = BAR_SPACING + ( FrameProfiler.HISTORY_LENGTH - 1 - i ) * barWidth;
+			drawRect( batcher, x, 1.0f - height, barWidth, height, frameTime > m_frameBudget ? Color.RED : Color.GREEN );
+		}
+	}
+
+	/**
+	 * Draws a rectangle.
+	 * 
+	 * @param batcher
+	 * @param x				left edge
+	 * @param y				top edge
+	 * @param width
+	 * @param height
+	 * @param color
+	 */
+	private void drawRect( SpriteBatcher batcher, float x, float y, float width, float height, Color color )
+	{
+		if ( width > 0 && height > 0 )
+		{
+			batcher.drawSprite( x + width * 0.5f, y + height * 0.5f, width, height, 0, m_region, color );
+		}
+	}
+}
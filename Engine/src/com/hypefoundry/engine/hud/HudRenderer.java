@@ -14,6 +14,7 @@ import com.hypefoundry.engine.game.InputHandler;
 import com.hypefoundry.engine.math.MathLib;
 import com.hypefoundry.engine.math.Vector3;
 import com.hypefoundry.engine.renderer2D.SpriteBatcher;
+import com.hypefoundry.engine.util.FrameProfiler;
 
 /**
  * Renders a HUD layout.
@@ -22,7 +23,7 @@ import com.hypefoundry.engine.renderer2D.SpriteBatcher;
  */
 public class HudRenderer implements InputHandler
 {
-	private final int					MAX_SPRITES = 512;			// TODO: config
+	public static final int				DEFAULT_MAX_SPRITES = 512;
 	
 	// viewport parameters 
 	private int 						m_viewportWidth;
@@ -37,6 +38,7 @@ public class HudRenderer implements InputHandler
 	
 	private List< HudWidgetVisual >		m_visuals = new ArrayList< HudWidgetVisual >();
 	private boolean						m_contentsInvalidated = false;
+	private FrameProfilerOverlay		m_profilerOverlay = null;
 	
 	/**
 	 * Constructor.
@@ -47,11 +49,25 @@ public class HudRenderer implements InputHandler
 	 * @param desiredViewportHeight
 	 */
 	public HudRenderer( Game game, Hud hud, int desiredViewportWidth, int desiredViewportHeight )
+	{
+		this( game, hud, desiredViewportWidth, desiredViewportHeight, DEFAULT_MAX_SPRITES );
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param game
+	 * @param hud
+	 * @param desiredViewportWidth
+	 * @param desiredViewportHeight
+	 * @param maxSprites				number of sprites the renderer can draw in a single batch
+	 */
+	public HudRenderer( Game game, Hud hud, int desiredViewportWidth, int desiredViewportHeight, int maxSprites )
 	{
 		m_graphics = game.getGraphics();
 		m_input = game.getInput();
 		m_hud = hud;
-		m_batcher = new SpriteBatcher( m_graphics, MAX_SPRITES );
+		m_batcher = new SpriteBatcher( m_graphics, maxSprites );
 		
 		// calculate viewport dimensions
 		Vector3 viewportDimensions = m_graphics.getViewportDimensions();
@@ -133,11 +149,14 @@ public class HudRenderer implements InputHandler
 	public void draw( float deltaTime )
 	{
 		int count = m_visuals.size();
-		if ( count <= 0 )
+		boolean showProfiler = m_profilerOverlay != null && FrameProfiler.isEnabled();
+		if ( count <= 0 && !showProfiler )
 		{
 			return;
 		}
 		
+		FrameProfiler.begin( FrameProfiler.SECTION_HUD );
+		
 		// clear temp render buffers and set the camera matrices
 		GL10 gl = m_graphics.getGL();
 		gl.glClear( GL10.GL_STENCIL_BUFFER_BIT );
@@ -153,7 +172,25 @@ public class HudRenderer implements InputHandler
 				visual.draw( m_batcher, deltaTime );
 			}
 		}
+		
+		// the overlay goes on top of everything
+		if ( showProfiler )
+		{
+			m_profilerOverlay.draw( m_batcher );
+		}
 		m_batcher.flush();
+		
+		FrameProfiler.end( FrameProfiler.SECTION_HUD );
+	}
+	
+	/**
+	 * Sets an overlay that shows the frame profiler samples on top of the layout.
+	 * 
+	 * @param overlay			overlay, or null to hide it
+	 */
+	public void setProfilerOverlay( FrameProfilerOverlay overlay )
+	{
+		m_profilerOverlay = overlay;
 	}
 	
 	/**
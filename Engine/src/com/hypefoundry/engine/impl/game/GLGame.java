@@ -20,6 +20,7 @@ import com.hypefoundry.engine.core.Audio;
 import com.hypefoundry.engine.core.FileIO;
 import com.hypefoundry.engine.core.GLGraphics;
 import com.hypefoundry.engine.core.Input;
+import com.hypefoundry.engine.core.ResourceCache;
 import com.hypefoundry.engine.game.Game;
 import com.hypefoundry.engine.game.Screen;
 import com.hypefoundry.engine.impl.core.AndroidAudio;
@@ -60,7 +61,8 @@ public abstract class GLGame extends Activity implements Game, Renderer
 	// operations
 	GameLoopOperation					m_gameLoopOperation;
 	private ScreenChangeTransaction		m_screenChangeTransaction;
-	private GameOperation				m_operation;
+	private volatile GameOperation		m_operation;				// the screens can be changed from the simulation thread
+	private boolean						m_simulationThreadEnabled = false;
 	
 	
 	/**
@@ -173,6 +175,12 @@ public abstract class GLGame extends Activity implements Game, Renderer
 				float deltaTime = ( System.nanoTime() - m_startTime ) / 1000000000.0f;
 				m_startTime = System.nanoTime();
 				
+				if ( m_operation != m_gameLoopOperation )
+				{
+					// the other operations run the screen on this thread
+					m_gameLoopOperation.stopSimulation();
+				}
+				
 				if ( m_operation != null )
 				{
 					m_operation.update( deltaTime, this );
@@ -187,11 +195,15 @@ public abstract class GLGame extends Activity implements Game, Renderer
 				// it's finished before we can move on and then notify
 				// other locked threads that (i.e. the one that's running
 				// the onPause method ), that it's safe to proceed
+				m_gameLoopOperation.stopSimulation();
 				if ( m_screen != null )
 				{
 					m_screen.pause();
 				}
 				
+				// the GL context will be lost, and the resources along with it
+				ResourceCache.releaseResources();
+				
 				synchronized( m_stateChanged ) 
 				{
 					m_state = GLGameState.Idle;
@@ -206,11 +218,13 @@ public abstract class GLGame extends Activity implements Game, Renderer
 				// to end before moving on and then notify
 				// other locked threads that (i.e. the one that's running
 				// the onPause method ), that it's safe to proceed
+				m_gameLoopOperation.stopSimulation();
 				if ( m_screen != null )
 				{
 					m_screen.pause();
 					m_screen.dispose();
 				}
+				ResourceCache.releaseResources();
 					
 				synchronized( m_stateChanged ) 
 				{
@@ -293,8 +307,9 @@ public abstract class GLGame extends Activity implements Game, Renderer
 			throw new IllegalArgumentException( "Screen must not be null" );
 		}
 		
-		m_operation = m_screenChangeTransaction;
+		// the GL thread runs the transaction as soon as it sees it, so prepare it first
 		m_screenChangeTransaction.initialize( this, screen );
+		m_operation = m_screenChangeTransaction;
 	}
 
 	@Override
@@ -347,6 +362,30 @@ public abstract class GLGame extends Activity implements Game, Renderer
 		m_screenChangeTransaction.setLoadingScreen( loadingScreenFactory );
 	}
 	
+	/**
+	 * Enables/disables running the simulation on its own thread. The screens are then updated on 
+	 * the simulation thread, while the GL thread only presents them.
+	 * 
+	 * The screens need to draw their worlds from the render snapshots ( see Renderer2D.setSnapshotsEnabled ),
+	 * so that the GL thread doesn't access the entities the simulation thread updates.
+	 * 
+	 * @param enable
+	 */
+	public void setSimulationThreadEnabled( boolean enable )
+	{
+		m_simulationThreadEnabled = enable;
+	}
+	
+	/**
+	 * Checks if the simulation runs on its own thread.
+	 * 
+	 * @return
+	 */
+	boolean isSimulationThreadEnabled()
+	{
+		return m_simulationThreadEnabled;
+	}
+	
 	/**
 	 * Switches to the main game loop operation
 	 */
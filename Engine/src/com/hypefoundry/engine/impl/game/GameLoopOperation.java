@@ -5,6 +5,7 @@ package com.hypefoundry.engine.impl.game;
 
 import com.hypefoundry.engine.impl.game.GLGame;
 import com.hypefoundry.engine.impl.game.GameOperation;
+import com.hypefoundry.engine.util.FrameProfiler;
 
 /**
  * @author Paksas
@@ -12,20 +13,52 @@ import com.hypefoundry.engine.impl.game.GameOperation;
  */
 class GameLoopOperation implements GameOperation
 {		
+	private SimulationThread		m_simulationThread = null;
+	
 	@Override
 	public void update( float deltaTime, GLGame game )
 	{
 		// update and draw the screen, if the game's running, providing it with a proper time delta
+		FrameProfiler.begin( FrameProfiler.SECTION_FRAME );
 		try
 		{
-			game.m_input.update( deltaTime );
+			if ( game.isSimulationThreadEnabled() )
+			{
+				if ( m_simulationThread == null )
+				{
+					m_simulationThread = new SimulationThread( game );
+					m_simulationThread.start();
+				}
+				
+				// the next frame is simulated while this one is drawn
+				m_simulationThread.requestStep();
+			}
+			else
+			{
+				game.m_input.update( deltaTime );
+				game.m_screen.update( deltaTime );
+			}
 			
-			game.m_screen.update( deltaTime );
 			game.m_screen.present( deltaTime );
 		}
 		catch( Exception ex )
 		{
 			ex.printStackTrace();
 		}
+		FrameProfiler.end( FrameProfiler.SECTION_FRAME );
+		FrameProfiler.endFrame();
+	}
+	
+	/**
+	 * Stops the simulation thread, if one's running. Returns once the simulation step 
+	 * it was running is finished.
+	 */
+	void stopSimulation()
+	{
+		if ( m_simulationThread != null )
+		{
+			m_simulationThread.shutdown();
+			m_simulationThread = null;
+		}
 	}
 }
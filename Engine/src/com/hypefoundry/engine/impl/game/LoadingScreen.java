@@ -13,6 +13,7 @@ import com.hypefoundry.engine.world.Entity;
 public class LoadingScreen extends Entity 
 {
 	LoadingScreenVisual		m_visual;
+	private float			m_progress = 0.0f;
 	
 	/**
 	 * Default constructor.
@@ -65,5 +66,37 @@ public class LoadingScreen extends Entity
 			return false;
 		}
 	}
+	
+	/**
+	 * Returns the progress of loading the new screen's resources - from 0 to 1.
+	 * 
+	 * @return
+	 */
+	public float getProgress()
+	{
+		return m_progress;
+	}
+	
+	/**
+	 * Updates the loading progress. The progress never goes back, even though the 
+	 * progress reported by the resource manager might.
+	 * 
+	 * @param progress
+	 */
+	void setProgress( float progress )
+	{
+		if ( progress > m_progress )
+		{
+			m_progress = progress;
+		}
+	}
+	
+	/**
+	 * Resets the loading progress.
+	 */
+	void resetProgress()
+	{
+		m_progress = 0.0f;
+	}
 
 }
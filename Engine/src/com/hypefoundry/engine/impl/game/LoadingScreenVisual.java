@@ -46,5 +46,15 @@ public abstract class LoadingScreenVisual extends EntityVisual
 	 * Tells if the background image is now fully visible.
 	 */
 	public abstract boolean hasFadedIn();
+	
+	/**
+	 * Returns the progress of loading the new screen's resources - from 0 to 1.
+	 * 
+	 * @return
+	 */
+	protected final float getProgress()
+	{
+		return m_screen.getProgress();
+	}
 }
 
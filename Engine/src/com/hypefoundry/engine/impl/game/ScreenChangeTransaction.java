@@ -26,7 +26,11 @@ class ScreenChangeTransaction implements GameOperation
 		FadeIn,
 	}
 	
+	// time of a frame spent on finalizing the new screen's resources, in seconds
+	private static final float	FINALIZATION_TIME_BUDGET = 0.004f;
+	
 	Screen					m_newScreen				= null;
+	ResourceManager			m_newScreenResMgr		= null;
 	State					m_state					= State.FadeOut;
 	Object					m_stateChanged			= new Object();
 	
@@ -124,7 +128,9 @@ class ScreenChangeTransaction implements GameOperation
 	public void initialize( GLGame game, Screen newScreen )
 	{
 		m_newScreen = newScreen;
-
+		m_newScreenResMgr = newScreen != null ? newScreen.getResourceManager() : null;
+		m_loadingScreen.resetProgress();
+		
 		// clear the input
 		game.m_input.clear();
 		
@@ -175,6 +181,9 @@ class ScreenChangeTransaction implements GameOperation
 				{
 					oldScreen.pause();
 					oldScreen.dispose();
+					
+					// hand the resources over to the cache - the new screen will pick up the ones it needs
+					oldScreen.getResourceManager().clearResources();
 				}
 				
 				synchronized( m_stateChanged )
@@ -189,9 +198,25 @@ class ScreenChangeTransaction implements GameOperation
 				break;
 			}
 			
+			case WaitUntilScreenLoaded:
+			{
+				// the resources are loaded on the loader thread
+				updateProgress();
+				break;
+			}
+			
 			case ScreenLoaded:
-			{				
+			{
+				// finalize the loaded resources a bit at a time, so that the loading screen keeps on animating
+				boolean resourcesFinalized = m_newScreenResMgr == null || m_newScreenResMgr.finalizeResources( FINALIZATION_TIME_BUDGET );
+				updateProgress();
+				if ( !resourcesFinalized )
+				{
+					break;
+				}
+				
 				// go to the next stage
+				m_newScreenResMgr = null;
 				m_loadingScreen.startFadeIn();
 				
 				synchronized( m_stateChanged )
@@ -225,6 +250,14 @@ class ScreenChangeTransaction implements GameOperation
 		m_worldRenderer.draw( deltaTime );
 	}
 	
+	/**
+	 * Passes the progress of loading the new screen's resources on to the loading screen.
+	 */
+	private void updateProgress()
+	{
+		m_loadingScreen.setProgress( m_newScreenResMgr != null ? m_newScreenResMgr.getLoadingProgress() : 1.0f );
+	}
+	
 	/**
 	 * Simulates the game loop operation, without certain features - i.e. input is not updated. 
 	 * 
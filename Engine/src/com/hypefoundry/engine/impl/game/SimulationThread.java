@@ -0,0 +1,106 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.impl.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.hypefoundry.engine.util.FrameProfiler;
+
+
+/**
+ * Runs the simulation of the current screen on its own thread.
+ * 
+ * The GL thread requests a simulation step every frame, right before it draws it - so the next frame
+ * is simulated while the previous one is being drawn. The requests the thread didn't keep up with
+ * are merged into a single step, and each step advances the simulation by the time that elapsed
+ * since the previous one.
+ * 
+ * The threads hand the requests over without locking - the simulation thread parks itself
+ * until the GL thread requests the next step.
+ * 
+ * The samples the FrameProfiler collects during a step are handed over to the GL thread once the step's finished.
+ * 
+ * @author Paksas
+ *
+ */
+class SimulationThread extends Thread
+{
+	private final GLGame			m_game;
+	private final AtomicInteger		m_requestedStepsCount = new AtomicInteger( 0 );
+	private volatile boolean		m_running = true;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param game
+	 */
+	SimulationThread( GLGame game )
+	{
+		super( "Simulation" );
+		m_game = game;
+	}
+
+	/**
+	 * Requests another simulation step.
+	 */
+	void requestStep()
+	{
+		m_requestedStepsCount.incrementAndGet();
+		LockSupport.unpark( this );
+	}
+
+	/**
+	 * Stops the thread, and waits until the step it's running is finished.
+	 */
+	void shutdown()
+	{
+		m_running = false;
+		LockSupport.unpark( this );
+
+		try
+		{
+			join();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		int stepsCount = 0;
+		long lastStepTime = System.nanoTime();
+		FrameProfiler.setSimulationThread( this );
+		while ( m_running )
+		{
+			int requestedStepsCount = m_requestedStepsCount.get();
+			if ( requestedStepsCount == stepsCount )
+			{
+				// wait for the next request - the loop guards against the spurious wake ups
+				LockSupport.park( this );
+				continue;
+			}
+			stepsCount = requestedStepsCount;
+
+			long currentTime = System.nanoTime();
+			float deltaTime = ( currentTime - lastStepTime ) / 1000000000.0f;
+			lastStepTime = currentTime;
+
+			try
+			{
+				m_game.m_input.update( deltaTime );
+				m_game.m_screen.update( deltaTime );
+			}
+			catch( Exception ex )
+			{
+				ex.printStackTrace();
+			}
+			FrameProfiler.endStep();
+		}
+		FrameProfiler.setSimulationThread( null );
+	}
+}
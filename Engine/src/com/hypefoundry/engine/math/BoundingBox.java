@@ -109,6 +109,35 @@ final public class BoundingBox implements BoundingShape
 		m_maxY = rhs.m_maxY;
 	}
 	
+	/**
+	 * Compares two bounding boxes.
+	 * 
+	 * @param obj
+	 * @return
+	 */
+	@Override
+	public boolean equals( Object obj )
+	{
+		if ( !( obj instanceof BoundingBox ) )
+		{
+			return false;
+		}
+		
+		BoundingBox rhs = (BoundingBox)obj;
+		return m_minX == rhs.m_minX && m_minY == rhs.m_minY && m_maxX == rhs.m_maxX && m_maxY == rhs.m_maxY;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		// adding 0 turns -0 into 0, which equals() treats as the same coordinate
+		int hash = Float.floatToIntBits( m_minX + 0.0f );
+		hash = 31 * hash + Float.floatToIntBits( m_minY + 0.0f );
+		hash = 31 * hash + Float.floatToIntBits( m_maxX + 0.0f );
+		hash = 31 * hash + Float.floatToIntBits( m_maxY + 0.0f );
+		return hash;
+	}
+	
 	/**
 	 * Creates a bounding box based on the specified coordinates that come in an unsorted order.
 	 * 
@@ -349,6 +378,63 @@ final public class BoundingBox implements BoundingShape
 		nearestPos.m_z = 0.0f;
 	}
 	
+	// ------------------------------------------------------------------------
+	// Time of impact tests
+	// ------------------------------------------------------------------------
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingShape shape, Vector3 outContactPos )
+	{
+		// let the other shape move against this one, and move the contact point to where it'd be in our frame
+		float t = shape.getTimeOfImpact( -dx, -dy, this, outContactPos );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.add( dx * t, dy * t, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingSphere sphere, Vector3 outContactPos )
+	{
+		// the code's implemented in the BoundingSphere class
+		float t = sphere.getTimeOfImpact( -dx, -dy, this, outContactPos );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.add( dx * t, dy * t, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingBox box, Vector3 outContactPos )
+	{
+		// sweep the center of this box against the other box grown by our half extents
+		float hsX = ( m_maxX - m_minX ) * 0.5f;
+		float hsY = ( m_maxY - m_minY ) * 0.5f;
+		float cx = m_minX + hsX;
+		float cy = m_minY + hsY;
+		
+		float t = MathLib.sweepPointBox( cx, cy, dx, dy, box.m_minX - hsX, box.m_minY - hsY, box.m_maxX + hsX, box.m_maxY + hsY );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.set( MathLib.clamp( cx + dx * t, box.m_minX, box.m_maxX ), MathLib.clamp( cy + dy * t, box.m_minY, box.m_maxY ), 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, Ray ray, Vector3 outContactPos )
+	{
+		// the code's implemented in the Ray class
+		float t = ray.getTimeOfImpact( -dx, -dy, this, outContactPos );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.add( dx * t, dy * t, 0.0f );
+		}
+		return t;
+	}
+	
 	// ------------------------------------------------------------------------
 	// Serialization support
 	// ------------------------------------------------------------------------
@@ -83,6 +83,58 @@ public interface BoundingShape
 	 */
 	boolean doesOverlap( Ray ray, Vector3 outIntersectPos );
 	
+	// ------------------------------------------------------------------------
+	// Time of impact tests
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Calculates when the shape, moving by the specified offset, touches another,
+	 * stationary shape for the first time. To test two moving shapes, pass the offset
+	 * of this shape relative to the other one.
+	 * 
+	 * A ray takes part in these tests as a point at its origin. 
+	 * 
+	 * @param dx
+	 * @param dy
+	 * @param shape
+	 * @param outContactPos			pass a vector here if you want to find out where the shapes touch
+	 * @return fraction of the offset <0, 1> at which the shapes touch, or -1 if they don't
+	 */
+	float getTimeOfImpact( float dx, float dy, BoundingShape shape, Vector3 outContactPos );
+	
+	/**
+	 * Calculates when the shape, moving by the specified offset, touches a stationary sphere for the first time.
+	 * 
+	 * @param dx
+	 * @param dy
+	 * @param sphere
+	 * @param outContactPos			pass a vector here if you want to find out where the shapes touch
+	 * @return fraction of the offset <0, 1> at which the shapes touch, or -1 if they don't
+	 */
+	float getTimeOfImpact( float dx, float dy, BoundingSphere sphere, Vector3 outContactPos );
+	
+	/**
+	 * Calculates when the shape, moving by the specified offset, touches a stationary box for the first time.
+	 * 
+	 * @param dx
+	 * @param dy
+	 * @param box
+	 * @param outContactPos			pass a vector here if you want to find out where the shapes touch
+	 * @return fraction of the offset <0, 1> at which the shapes touch, or -1 if they don't
+	 */
+	float getTimeOfImpact( float dx, float dy, BoundingBox box, Vector3 outContactPos );
+	
+	/**
+	 * Calculates when the shape, moving by the specified offset, touches a stationary ray's origin for the first time.
+	 * 
+	 * @param dx
+	 * @param dy
+	 * @param ray
+	 * @param outContactPos			pass a vector here if you want to find out where the shapes touch
+	 * @return fraction of the offset <0, 1> at which the shapes touch, or -1 if they don't
+	 */
+	float getTimeOfImpact( float dx, float dy, Ray ray, Vector3 outContactPos );
+	
 	
 	// ------------------------------------------------------------------------
 	// Serialization support
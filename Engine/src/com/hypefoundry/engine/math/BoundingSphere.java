@@ -150,8 +150,8 @@ final public class BoundingSphere implements BoundingShape
 	@Override 
 	public boolean doesOverlap( final Ray ray, Vector3 outIntersectPos )
 	{
-		m_tmpVec.set( m_center ).sub( ray.m_origin );
-		float t = ray.getDirection().dot( m_tmpVec );
+		Vector3 rayDir = ray.getDirection();
+		float t = rayDir.m_x * ( m_center.m_x - ray.m_origin.m_x ) + rayDir.m_y * ( m_center.m_y - ray.m_origin.m_y ) + rayDir.m_z * ( m_center.m_z - ray.m_origin.m_z );
 		if ( t < 0 )
 		{
 			return false;
@@ -181,6 +181,64 @@ final public class BoundingSphere implements BoundingShape
 		return true;
 	}
 	
+	// ------------------------------------------------------------------------
+	// Time of impact tests
+	// ------------------------------------------------------------------------
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingShape shape, Vector3 outContactPos )
+	{
+		// let the other shape move against this one, and move the contact point to where it'd be in our frame
+		float t = shape.getTimeOfImpact( -dx, -dy, this, outContactPos );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.add( dx * t, dy * t, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingSphere sphere, Vector3 outContactPos )
+	{
+		// sweep our center against a sphere grown by our radius
+		float radiusSum = m_radius + sphere.m_radius;
+		float t = MathLib.sweepPointCircle( m_center.m_x, m_center.m_y, dx, dy, sphere.m_center.m_x, sphere.m_center.m_y, radiusSum );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			// the contact lies on the line connecting the centers
+			float s = radiusSum > 0.0f ? sphere.m_radius / radiusSum : 0.0f;
+			float cx = m_center.m_x + dx * t;
+			float cy = m_center.m_y + dy * t;
+			outContactPos.set( sphere.m_center.m_x + ( cx - sphere.m_center.m_x ) * s, sphere.m_center.m_y + ( cy - sphere.m_center.m_y ) * s, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingBox box, Vector3 outContactPos )
+	{
+		// sweep our center against the box grown by our radius - the rounded corners 
+		// of such a shape are approximated with the square ones
+		float t = MathLib.sweepPointBox( m_center.m_x, m_center.m_y, dx, dy, box.m_minX - m_radius, box.m_minY - m_radius, box.m_maxX + m_radius, box.m_maxY + m_radius );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.set( MathLib.clamp( m_center.m_x + dx * t, box.m_minX, box.m_maxX ), MathLib.clamp( m_center.m_y + dy * t, box.m_minY, box.m_maxY ), 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, Ray ray, Vector3 outContactPos )
+	{
+		// the code's implemented in the Ray class
+		float t = ray.getTimeOfImpact( -dx, -dy, this, outContactPos );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.add( dx * t, dy * t, 0.0f );
+		}
+		return t;
+	}
+	
 	// ------------------------------------------------------------------------
 	// Serialization support
 	// ------------------------------------------------------------------------
@@ -96,6 +96,120 @@ public final class MathLib
 		}
 	}
 	
+	/**
+	 * Calculates when a point moving by the specified offset enters a box for the first time.
+	 * 
+	 * @param px			point's starting position
+	 * @param py
+	 * @param dx			offset the point moves by
+	 * @param dy
+	 * @param minX			box bounds
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 * @return fraction of the offset <0, 1> at which the point enters the box, or -1 if it doesn't
+	 */
+	public static float sweepPointBox( float px, float py, float dx, float dy, float minX, float minY, float maxX, float maxY )
+	{
+		float tEnter = 0.0f;
+		float tExit = 1.0f;
+		
+		// clip the movement against the X slab
+		if ( dx == 0.0f )
+		{
+			if ( px < minX || px > maxX )
+			{
+				return -1.0f;
+			}
+		}
+		else
+		{
+			float t1 = ( minX - px ) / dx;
+			float t2 = ( maxX - px ) / dx;
+			if ( t1 > t2 )
+			{
+				float tmp = t1;
+				t1 = t2;
+				t2 = tmp;
+			}
+			tEnter = t1 > tEnter ? t1 : tEnter;
+			tExit = t2 < tExit ? t2 : tExit;
+			if ( tEnter > tExit )
+			{
+				return -1.0f;
+			}
+		}
+		
+		// ... and against the Y slab
+		if ( dy == 0.0f )
+		{
+			if ( py < minY || py > maxY )
+			{
+				return -1.0f;
+			}
+		}
+		else
+		{
+			float t1 = ( minY - py ) / dy;
+			float t2 = ( maxY - py ) / dy;
+			if ( t1 > t2 )
+			{
+				float tmp = t1;
+				t1 = t2;
+				t2 = tmp;
+			}
+			tEnter = t1 > tEnter ? t1 : tEnter;
+			tExit = t2 < tExit ? t2 : tExit;
+			if ( tEnter > tExit )
+			{
+				return -1.0f;
+			}
+		}
+		
+		return tEnter;
+	}
+	
+	/**
+	 * Calculates when a point moving by the specified offset enters a circle for the first time.
+	 * 
+	 * @param px			point's starting position
+	 * @param py
+	 * @param dx			offset the point moves by
+	 * @param dy
+	 * @param cx			circle's center
+	 * @param cy
+	 * @param radius		circle's radius
+	 * @return fraction of the offset <0, 1> at which the point enters the circle, or -1 if it doesn't
+	 */
+	public static float sweepPointCircle( float px, float py, float dx, float dy, float cx, float cy, float radius )
+	{
+		float mx = px - cx;
+		float my = py - cy;
+		float c = mx*mx + my*my - radius*radius;
+		if ( c <= 0.0f )
+		{
+			// the point starts inside the circle
+			return 0.0f;
+		}
+		
+		float b = mx*dx + my*dy;
+		if ( b >= 0.0f )
+		{
+			// the point's moving away from the circle
+			return -1.0f;
+		}
+		
+		float a = dx*dx + dy*dy;
+		float discriminant = b*b - a*c;
+		if ( discriminant < 0.0f )
+		{
+			return -1.0f;
+		}
+		
+		float t = ( -b - (float)Math.sqrt( discriminant ) ) / a;
+		return t <= 1.0f ? t : -1.0f;
+	}
+	
 	/**
 	 * Processes the dimensions with respect to the specified viewport size
 	 * to fill it to the maximum possible extents while preserving the aspect ratio.
@@ -20,13 +20,6 @@ public final class Ray implements BoundingShape
 	private float 		m_length;
 	
 	
-	// ------------------------------------------------------------------------
-	// runtime data
-	// ------------------------------------------------------------------------
-	private Vector3 m_tmpDirCross 				= new Vector3();
-	private Vector3 m_tmpOriginsDir 			= new Vector3();
-	private Vector3 m_tmpOriginsDirToDirCross 	= new Vector3();
-	
 	/**
 	 * Default constructor.
 	 */
@@ -180,7 +173,10 @@ public final class Ray implements BoundingShape
 	@Override
 	public boolean doesOverlap( BoundingBox box, Vector3 outIntersectPos ) 
 	{
-m_tmpOriginsDir.set( m_direction ).scale( m_length );
+		// the overlap tests don't use any scratch members, so that they can be run
+		// from several threads at once
+		float fullDirX = m_direction.m_x * m_length;
+		float fullDirY = m_direction.m_y * m_length;
 		
 		// Check for point inside box, trivial reject, and determine parametric
 		// distance to each front face
@@ -190,23 +186,23 @@ m_tmpOriginsDir.set( m_direction ).scale( m_length );
 		if ( m_origin.m_x < box.m_minX ) 
 		{
 			xt = box.m_minX - m_origin.m_x;
-			if ( xt > m_tmpOriginsDir.m_x ) 
+			if ( xt > fullDirX ) 
 			{
 				return false;
 			}
 			
-			xt /= m_tmpOriginsDir.m_x;
+			xt /= fullDirX;
 			inside = false;
 		} 
 		else if ( m_origin.m_x > box.m_maxX ) 
 		{
 			xt = box.m_maxX - m_origin.m_x;
-			if ( xt < m_tmpOriginsDir.m_x ) 
+			if ( xt < fullDirX ) 
 			{
 				return false;
 			}
 			
-			xt /= m_tmpOriginsDir.m_x;
+			xt /= fullDirX;
 			inside = false;
 		} 
 		else 
@@ -219,23 +215,23 @@ m_tmpOriginsDir.set( m_direction ).scale( m_length );
 		if ( m_origin.m_y < box.m_minY ) 
 		{
 			yt = box.m_minY - m_origin.m_y;
-			if ( yt > m_tmpOriginsDir.m_y )
+			if ( yt > fullDirY )
 			{
 				return false;
 			}
 			
-			yt /= m_tmpOriginsDir.m_y;
+			yt /= fullDirY;
 			inside = false;
 		} 
 		else if ( m_origin.m_y > box.m_maxY ) 
 		{
 			yt = box.m_maxY - m_origin.m_y;
-			if ( yt < m_tmpOriginsDir.m_y )
+			if ( yt < fullDirY )
 			{ 
 				return false;
 			}
 			
-			yt /= m_tmpOriginsDir.m_y;
+			yt /= fullDirY;
 			inside = false;
 		} 
 		else 
@@ -263,13 +259,13 @@ m_tmpOriginsDir.set( m_direction ).scale( m_length );
 		}
 		
 
-		float x = m_origin.m_x + m_tmpOriginsDir.m_x * t;
+		float x = m_origin.m_x + fullDirX * t;
 		if ( x < box.m_minX || x > box.m_maxX )
 		{
 			return false;
 		}
 		
-		float y = m_origin.m_y + m_tmpOriginsDir.m_y * t;
+		float y = m_origin.m_y + fullDirY * t;
 		if ( y < box.m_minY || y > box.m_maxY ) 
 		{ 
 			return false;
@@ -287,11 +283,11 @@ m_tmpOriginsDir.set( m_direction ).scale( m_length );
 	@Override
 	public boolean doesOverlap( Vector3 point, Vector3 outIntersectPos ) 
 	{
-		m_tmpOriginsDir.set( point ).sub( m_origin );
-		m_tmpOriginsDir.m_z = 0;
+		float toPtX = point.m_x - m_origin.m_x;
+		float toPtY = point.m_y - m_origin.m_y;
 		
-		float distToPtSq = m_tmpOriginsDir.magSq2D();
-		float d = m_direction.dot2D( m_tmpOriginsDir );
+		float distToPtSq = toPtX*toPtX + toPtY*toPtY;
+		float d = m_direction.m_x*toPtX + m_direction.m_y*toPtY;
 		if ( d < 0 || distToPtSq > m_length*m_length )
 		{
 			return false;
@@ -304,22 +300,32 @@ m_tmpOriginsDir.set( m_direction ).scale( m_length );
 	@Override
 	public boolean doesOverlap( Ray ray, Vector3 outIntersectPos )
 	{		
-		m_tmpOriginsDir.set( ray.m_origin ).sub( m_origin );
+		Vector3 a = m_fullDirection;
+		Vector3 b = ray.m_fullDirection;
+		float originsDirX = ray.m_origin.m_x - m_origin.m_x;
+		float originsDirY = ray.m_origin.m_y - m_origin.m_y;
+		float originsDirZ = ray.m_origin.m_z - m_origin.m_z;
 		
-		m_fullDirection.cross( ray.m_fullDirection, m_tmpDirCross );
-		float dirCrossLenSq = m_tmpDirCross.magSq();
+		float dirCrossX = a.m_y * b.m_z - a.m_z * b.m_y;
+		float dirCrossY = a.m_z * b.m_x - a.m_x * b.m_z;
+		float dirCrossZ = a.m_x * b.m_y - a.m_y * b.m_x;
+		float dirCrossLenSq = dirCrossX*dirCrossX + dirCrossY*dirCrossY + dirCrossZ*dirCrossZ;
 		if ( dirCrossLenSq == 0 )
 		{
 			return false;
 		}
 		
 		// calculate t1
-		m_tmpOriginsDir.cross( ray.m_fullDirection, m_tmpOriginsDirToDirCross );
-		float t1 = m_tmpOriginsDirToDirCross.dot( m_tmpDirCross ) / dirCrossLenSq;
+		float crossX = originsDirY * b.m_z - originsDirZ * b.m_y;
+		float crossY = originsDirZ * b.m_x - originsDirX * b.m_z;
+		float crossZ = originsDirX * b.m_y - originsDirY * b.m_x;
+		float t1 = ( crossX*dirCrossX + crossY*dirCrossY + crossZ*dirCrossZ ) / dirCrossLenSq;
 		
 		// calculate t2
-		m_tmpOriginsDir.cross( m_fullDirection, m_tmpOriginsDirToDirCross );
-		float t2 = m_tmpOriginsDirToDirCross.dot( m_tmpDirCross ) / dirCrossLenSq;
+		crossX = originsDirY * a.m_z - originsDirZ * a.m_y;
+		crossY = originsDirZ * a.m_x - originsDirX * a.m_z;
+		crossZ = originsDirX * a.m_y - originsDirY * a.m_x;
+		float t2 = ( crossX*dirCrossX + crossY*dirCrossY + crossZ*dirCrossZ ) / dirCrossLenSq;
 		
 		if ( t1 < 0 || t1 > m_length || t2 < 0 || t2 > ray.m_length )
 		{
@@ -329,11 +335,55 @@ m_tmpOriginsDir.set( m_direction ).scale( m_length );
 		
 		// calculate the intersection points along the two rays and see if they are close
 		outIntersectPos.set( m_direction ).scale( t1 ).add( m_origin );
-		m_tmpOriginsDir.set( ray.m_direction ).scale( t2 ).add( ray.m_origin );
-		float dist = outIntersectPos.distSq( m_tmpOriginsDir );
+		float dist = outIntersectPos.distSq( ray.m_direction.m_x * t2 + ray.m_origin.m_x, ray.m_direction.m_y * t2 + ray.m_origin.m_y, ray.m_direction.m_z * t2 + ray.m_origin.m_z );
 		return ( dist < 1e-3 );
 	}
 
+	// ------------------------------------------------------------------------
+	// Time of impact tests
+	// ------------------------------------------------------------------------
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingShape shape, Vector3 outContactPos )
+	{
+		// let the other shape move against this one, and move the contact point to where it'd be in our frame
+		float t = shape.getTimeOfImpact( -dx, -dy, this, outContactPos );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.add( dx * t, dy * t, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingSphere sphere, Vector3 outContactPos )
+	{
+		float t = MathLib.sweepPointCircle( m_origin.m_x, m_origin.m_y, dx, dy, sphere.m_center.m_x, sphere.m_center.m_y, sphere.m_radius );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.set( m_origin.m_x + dx * t, m_origin.m_y + dy * t, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, BoundingBox box, Vector3 outContactPos )
+	{
+		float t = MathLib.sweepPointBox( m_origin.m_x, m_origin.m_y, dx, dy, box.m_minX, box.m_minY, box.m_maxX, box.m_maxY );
+		if ( t >= 0.0f && outContactPos != null )
+		{
+			outContactPos.set( m_origin.m_x + dx * t, m_origin.m_y + dy * t, 0.0f );
+		}
+		return t;
+	}
+	
+	@Override
+	public float getTimeOfImpact( float dx, float dy, Ray ray, Vector3 outContactPos )
+	{
+		// two points practically never meet
+		return -1.0f;
+	}
+	
 	// ------------------------------------------------------------------------
 	// Serialization support
 	// ------------------------------------------------------------------------
@@ -52,7 +52,7 @@ public class MovieEntityVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_entity.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_entity.getBoundingShape();
 
 		TextureRegion region = m_player.getTextureRegion( deltaTime );
@@ -84,6 +84,18 @@ public final class DynamicObject implements Aspect
 	 * @param entity
 	 */
 	public void simulate( float deltaTime, Entity entity ) 
+	{
+		integrate( deltaTime, entity );
+		resetForces();
+	}
+	
+	/**
+	 * Moves the entity in accordance with the current velocities, leaving the velocities intact.
+	 * 
+	 * @param deltaTime
+	 * @param entity
+	 */
+	void integrate( float deltaTime, Entity entity )
 	{
 		// first make sure the velocities stay in the desired limits
 		constrain();
@@ -95,8 +107,13 @@ public final class DynamicObject implements Aspect
 		
 		// copy the velocity
 		m_currentVelocity.set( m_velocity );
-		
-		// slow down
+	}
+	
+	/**
+	 * Slows the object down - the velocities need to be applied anew before the next simulation.
+	 */
+	void resetForces()
+	{
 		m_velocity.set( 0, 0, 0 );
 		m_rotation = 0;
 	}
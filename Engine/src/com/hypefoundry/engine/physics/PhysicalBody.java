@@ -10,6 +10,7 @@ import com.hypefoundry.engine.math.BoundingBox;
 import com.hypefoundry.engine.math.BoundingShape;
 import com.hypefoundry.engine.math.Vector3;
 import com.hypefoundry.engine.physics.events.CollisionEvent;
+import com.hypefoundry.engine.util.FrameProfiler;
 import com.hypefoundry.engine.util.SpatialGridObject;
 
 
@@ -20,6 +21,10 @@ import com.hypefoundry.engine.util.SpatialGridObject;
  * CAUTION: without a representation, an entity WON'T receive onCollision
  * notifications.
  * 
+ * Fast moving bodies, such as bullets, can enable the continuous collisions detection.
+ * Instead of testing where it ends up after a simulation step, such a body is swept along
+ * its path, and its collisions are reported in the order it runs into the other bodies.
+ * 
  * @author Paksas
  *
  */
@@ -28,13 +33,22 @@ public abstract class PhysicalBody implements SpatialGridObject
 	protected Entity 						m_entity;
 	protected DynamicObject					m_dynamicObjectAspect;
 	final boolean							m_checkCollisions;
+	int										m_viewIdx					= -1;		// position in the view's bodies array during a simulation step
+	final Vector3							m_prevPosition				= new Vector3();	// entity position before the last simulation step
+	boolean									m_continuousCollisions		= false;
 	
 	protected BoundingShape					m_collisionShape			= null;
 	private BoundingShape					m_extrudedCollisionShape 	= null;
 	private BoundingBox						m_runtimeWorldBounds		= new BoundingBox();
-	private Vector3							m_tmpVelocity				= new Vector3();
+	private BoundingBox						m_prevWorldBounds			= new BoundingBox();
+	private boolean							m_shapeChanged				= false;
+	private BoundingShape					m_startShape				= null;		// the body's shape at the beginning of a simulation step
+	private final Vector3					m_stepOffset				= new Vector3();	// distance the body covers during a simulation step
+	private BoundingBox						m_tmpBounds					= new BoundingBox();
 	private Vector3							m_tmpCollisionPoint 		= new Vector3();
 	
+	private static final Vector3			NO_OFFSET					= new Vector3();
+	
 	
 	/**
 	 * Constructor.
@@ -81,8 +95,21 @@ public abstract class PhysicalBody implements SpatialGridObject
 		// initialize the extruded collision shape - if this is a static body, this will never get updated
 		m_extrudedCollisionShape = m_collisionShape;
 		m_extrudedCollisionShape.getBoundingBox( m_runtimeWorldBounds );
+		m_shapeChanged = true;
 	}
 
+	/**
+	 * Enables the continuous collisions detection for this body. It's more expensive
+	 * than the regular one, so use it only for the bodies that move by more than their
+	 * own size during a single simulation step.
+	 * 
+	 * @param enable
+	 */
+	protected final void enableContinuousCollisions( boolean enable )
+	{
+		m_continuousCollisions = enable;
+	}
+	
 	@Override
 	public final BoundingBox getBounds()
 	{
@@ -92,32 +119,134 @@ public abstract class PhysicalBody implements SpatialGridObject
 	/**
 	 * Checks if two bodies collide ( narrow phase collision detection ).
 	 * 
+	 * The overlap is tested only once, and both bodies that check collisions are informed about it,
+	 * so the method needs to be called only once per pair of bodies.
+	 * 
 	 * @param collider
 	 */
 	void checkCollision( PhysicalBody collider ) 
+	{
+		if ( testCollision( collider, m_tmpCollisionPoint ) )
+		{
+			notifyCollision( collider, m_tmpCollisionPoint );
+		}
+	}
+	
+	/**
+	 * Tests if the extruded shapes of two bodies overlap, without informing the bodies about it.
+	 * 
+	 * The test doesn't modify any of the bodies, so several pairs can be tested concurrently.
+	 * 
+	 * @param collider
+	 * @param outCollisionPoint
+	 * @return
+	 */
+	final boolean testCollision( PhysicalBody collider, Vector3 outCollisionPoint )
 	{
 		if ( m_extrudedCollisionShape == null || collider.m_extrudedCollisionShape == null )
 		{
-			return;
+			return false;
+		}
+		
+		return m_extrudedCollisionShape.doesOverlap( collider.m_extrudedCollisionShape, outCollisionPoint );
+	}
+	
+	/**
+	 * Checks when, during the simulation step, the bodies run into each other.
+	 * 
+	 * The test doesn't modify any of the bodies, so several pairs can be tested concurrently.
+	 * 
+	 * @param collider
+	 * @param outCollisionPoint		where the bodies touch
+	 * @return fraction of the simulation step <0, 1> after which the bodies touch, or -1 if they don't collide
+	 */
+	final float testTimeOfImpact( PhysicalBody collider, Vector3 outCollisionPoint )
+	{
+		BoundingShape startShape = getStartShape();
+		BoundingShape colliderStartShape = collider.getStartShape();
+		if ( startShape == null || colliderStartShape == null )
+		{
+			return -1.0f;
 		}
 		
-		boolean doOverlap = m_extrudedCollisionShape.doesOverlap( collider.m_extrudedCollisionShape, m_tmpCollisionPoint );
-		if ( doOverlap )
+		// sweep this body relative to the collider
+		Vector3 colliderOffset = collider.m_stepOffset;
+		float t = startShape.getTimeOfImpact( m_stepOffset.m_x - colliderOffset.m_x, m_stepOffset.m_y - colliderOffset.m_y, colliderStartShape, outCollisionPoint );
+		if ( t >= 0.0f && outCollisionPoint != null )
 		{
-			try
-			{
-				CollisionEvent event = m_entity.sendEvent( CollisionEvent.class );
-				if ( event != null )
-				{
-					event.m_collider = collider.m_entity;
-				}
-			}
-			catch ( EntityEventException ex )
+			// the collision point was found in the collider's frame
+			outCollisionPoint.add( colliderOffset.m_x * t, colliderOffset.m_y * t, 0.0f );
+		}
+		
+		return t;
+	}
+	
+	/**
+	 * Checks if the collisions between the two bodies should be detected using their time of impact.
+	 * 
+	 * @param collider
+	 * @return
+	 */
+	final boolean usesTimeOfImpact( PhysicalBody collider )
+	{
+		return m_continuousCollisions || collider.m_continuousCollisions;
+	}
+	
+	/**
+	 * Returns the shape the body had at the beginning of the simulation step.
+	 * 
+	 * @return
+	 */
+	private BoundingShape getStartShape()
+	{
+		return m_dynamicObjectAspect != null ? m_startShape : m_extrudedCollisionShape;
+	}
+	
+	/**
+	 * Informs both bodies that they collide.
+	 * 
+	 * @param collider
+	 * @param collisionPoint
+	 */
+	final void notifyCollision( PhysicalBody collider, Vector3 collisionPoint )
+	{
+		FrameProfiler.count( FrameProfiler.COUNTER_COLLISIONS, 1 );
+		
+		// each body gets its own copy of the collision point, in case the other one's response changes it
+		m_tmpCollisionPoint.set( collisionPoint );
+		collider.m_tmpCollisionPoint.set( collisionPoint );
+		
+		if ( m_checkCollisions )
+		{
+			onCollision( collider, m_tmpCollisionPoint );
+		}
+		if ( collider.m_checkCollisions )
+		{
+			collider.onCollision( this, collider.m_tmpCollisionPoint );
+		}
+	}
+	
+	/**
+	 * Informs the body's entity about a collision and lets the body respond to it.
+	 * 
+	 * @param collider
+	 * @param collisionPoint
+	 */
+	private void onCollision( PhysicalBody collider, Vector3 collisionPoint )
+	{
+		try
+		{
+			CollisionEvent event = m_entity.sendEvent( CollisionEvent.class );
+			if ( event != null )
 			{
-				// too many events - don't process
+				event.m_collider = collider.m_entity;
 			}
-			respondToCollision( collider, m_tmpCollisionPoint );
 		}
+		catch ( EntityEventException ex )
+		{
+			// too many events - don't process
+		}
+		respondToCollision( collider, collisionPoint );
 	}
 
 	/**
@@ -135,31 +264,66 @@ public abstract class PhysicalBody implements SpatialGridObject
 	 * Calculates the collision shapes for this simulation frame.
 	 * 
 	 * @param deltaTime
+	 * @return 'true' if the world bounds of the body changed since the previous frame
 	 */
-	final void calculateCollisionShapes( float deltaTime ) 
+	final boolean calculateCollisionShapes( float deltaTime ) 
 	{
 		preCalculateCollisionShapes( deltaTime );
 		
+		boolean boundsChanged = m_shapeChanged;
+		m_shapeChanged = false;
+		
 		if ( m_dynamicObjectAspect != null )
 		{
-			m_tmpVelocity.set( m_dynamicObjectAspect.m_velocity ).scale( deltaTime );
+			m_prevWorldBounds.set( m_runtimeWorldBounds );
+			m_stepOffset.set( m_dynamicObjectAspect.m_velocity ).scale( deltaTime );
 			
-			m_extrudedCollisionShape = m_collisionShape.extrude( m_entity.getPosition(), m_tmpVelocity, m_extrudedCollisionShape );
+			m_extrudedCollisionShape = m_collisionShape.extrude( m_entity.getPosition(), m_stepOffset, m_extrudedCollisionShape );
 			m_extrudedCollisionShape.getBoundingBox( m_runtimeWorldBounds );
+			
+			// memorize where the body starts from, for the time of impact tests
+			m_startShape = m_collisionShape.extrude( m_entity.getPosition(), NO_OFFSET, m_startShape );
+			if ( m_continuousCollisions )
+			{
+				// the body can collide with anything along its path
+				m_startShape.getBoundingBox( m_tmpBounds );
+				m_runtimeWorldBounds.set( Math.min( m_runtimeWorldBounds.m_minX, m_tmpBounds.m_minX ), Math.min( m_runtimeWorldBounds.m_minY, m_tmpBounds.m_minY ), 
+						Math.max( m_runtimeWorldBounds.m_maxX, m_tmpBounds.m_maxX ), Math.max( m_runtimeWorldBounds.m_maxY, m_tmpBounds.m_maxY ) );
+			}
+			
+			boundsChanged |= !m_prevWorldBounds.equals( m_runtimeWorldBounds );
 		}
+		
+		return boundsChanged;
 	}
 
 	/**
 	 * Simulates the forces that apply to this body.
 	 * 
 	 * @param deltaTime
+	 * @param resetForces		should the forces be reset after they've been applied 
 	 */
-	final void simulate( float deltaTime ) 
+	final void simulate( float deltaTime, boolean resetForces ) 
 	{
 		if ( m_dynamicObjectAspect != null )
 		{
 			// only dynamic objects are influenced by the forces
-			m_dynamicObjectAspect.simulate( deltaTime, m_entity );
+			m_dynamicObjectAspect.integrate( deltaTime, m_entity );
+			if ( resetForces )
+			{
+				m_dynamicObjectAspect.resetForces();
+			}
+		}
+	}
+	
+	/**
+	 * Resets the forces that apply to this body.
+	 */
+	final void resetForces()
+	{
+		if ( m_dynamicObjectAspect != null )
+		{
+			m_dynamicObjectAspect.resetForces();
 		}
 	}
 	
@@ -175,6 +339,8 @@ public abstract class PhysicalBody implements SpatialGridObject
 	 * Called before the runtime collision shape is calculated for the simulation purposes.
 	 * 
 	 * This is the place to update your alternative body shape if you're using it. 
+	 * When the view runs the simulation on several threads, this method may be called
+	 * concurrently for different bodies, so it should only touch the body's own data.
 	 * 
 	 * @param deltaTime
 	 */
@@ -8,36 +8,78 @@ import java.util.*;
 import android.util.Log;
 
 import com.hypefoundry.engine.world.Entity;
+import com.hypefoundry.engine.world.EntityPositionInterpolator;
 import com.hypefoundry.engine.game.Updatable;
 import com.hypefoundry.engine.world.World;
 import com.hypefoundry.engine.world.WorldView;
 import com.hypefoundry.engine.math.BoundingBox;
+import com.hypefoundry.engine.math.Vector3;
 import com.hypefoundry.engine.physics.events.OutOfWorldBounds;
+import com.hypefoundry.engine.util.FrameProfiler;
 import com.hypefoundry.engine.util.GenericFactory;
+import com.hypefoundry.engine.util.IdIndexedArray;
 import com.hypefoundry.engine.util.SpatialGrid2D;
+import com.hypefoundry.engine.util.WorkerPool;
 
 
 /**
  * This world view runs the physics simulation.
  * 
+ * By default, the simulation advances by whatever time step it receives. It can also
+ * be switched to run in fixed steps - in which case it accumulates the received time,
+ * runs as many steps as fit in it, and exposes the positions interpolated between
+ * the two most recent steps to the renderer.
+ * 
+ * The collisions of the bodies that use the continuous collisions detection are reported
+ * after all the other ones, in the order of their times of impact.
+ * 
+ * The shape extrusion, the narrow phase collision tests and the forces integration
+ * can be split between several worker threads. The collision events are still sent
+ * from the updating thread, in the same order the single threaded simulation sends them.
+ * 
  * @author Paksas
  *
  */
-public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implements WorldView, Updatable
+public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implements WorldView, Updatable, EntityPositionInterpolator
 {
 	private float								m_cellSize = 2.0f;
-	private final short							MAX_ENTITIES = 512;		// TODO: config
+	private final int							INITIAL_ENTITIES_CAPACITY = 512;		// TODO: config
 	private float								m_worldWidth = 0;
 	private float								m_worldHeight = 0;
 	private SpatialGrid2D						m_bodiesGrid = null;
-	private List< PhysicalBody > 				m_bodies;
-	private List< Entity >		 				m_bodiesToAdd;
-	private List< Entity > 						m_bodiesToRemove;
+	private IdIndexedArray< PhysicalBody > 		m_bodies;					// indexed with the entity ids
+	private IdIndexedArray< Entity >			m_bodiesToAdd;				// indexed with the entity ids
+	private int[]		 						m_bodiesToRemove;			// ids of the removed entities
+	private int									m_bodiesToRemoveCount = 0;
+	
+	// fixed time step simulation
+	private float								m_fixedTimeStep = 0.0f;		// 0 means the variable time step
+	private int									m_maxSubSteps = 1;
+	private float								m_accumulatedTime = 0.0f;
+	private float								m_interpolationFactor = 1.0f;
+	
+	// multithreaded simulation
+	private static final int					MIN_BODIES_PER_THREAD = 32;
+	private static final int					MIN_PAIRS_PER_THREAD = 64;
+	private WorkerPool							m_workers = null;			// null means the simulation runs on the updating thread
+	private float								m_stepDeltaTime = 0.0f;
+	private boolean								m_stepResetForces = false;
+	private boolean[]							m_boundsChanged = new boolean[INITIAL_ENTITIES_CAPACITY];
+	
+	// pairs of bodies that are tested after the broad phase
+	private int[]								m_pairBodies = new int[INITIAL_ENTITIES_CAPACITY];
+	private int[]								m_pairColliders = new int[INITIAL_ENTITIES_CAPACITY];
+	private boolean[]							m_pairContinuous = new boolean[INITIAL_ENTITIES_CAPACITY];
+	private boolean[]							m_pairOverlaps = new boolean[INITIAL_ENTITIES_CAPACITY];
+	private float[]								m_pairTimesOfImpact = new float[INITIAL_ENTITIES_CAPACITY];
+	private Vector3[]							m_pairPoints = new Vector3[INITIAL_ENTITIES_CAPACITY];
+	private int[]								m_contactsOrder = new int[INITIAL_ENTITIES_CAPACITY];
+	private int									m_pairsCount = 0;
 	
 	// ------------------------------------------------------------------------
 	// runtime data
 	// ------------------------------------------------------------------------
-	private PhysicalBody[]						m_queryResults = new PhysicalBody[MAX_ENTITIES];
+	private PhysicalBody[]						m_queryResults = new PhysicalBody[INITIAL_ENTITIES_CAPACITY];
 	
 	
 	/**
@@ -46,9 +88,83 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	public PhysicsView( float cellSize )
 	{
 		m_cellSize = cellSize;
-		m_bodies = new ArrayList< PhysicalBody >( MAX_ENTITIES );
-		m_bodiesToAdd = new ArrayList< Entity >();
-		m_bodiesToRemove = new ArrayList< Entity >();
+		m_bodies = new IdIndexedArray< PhysicalBody >( INITIAL_ENTITIES_CAPACITY );
+		m_bodiesToAdd = new IdIndexedArray< Entity >( INITIAL_ENTITIES_CAPACITY );
+		m_bodiesToRemove = new int[INITIAL_ENTITIES_CAPACITY];
+	}
+	
+	/**
+	 * Switches the simulation to run in fixed time steps.
+	 * 
+	 * If the time passed since the last update doesn't fit in the allowed number of steps,
+	 * the excess time is dropped - the simulation slows down rather than spirals 
+	 * into running more and more steps per frame.
+	 * 
+	 * @param timeStep			duration of a single simulation step, or 0 to go back to the variable time step 
+	 * @param maxSubSteps		max number of steps that can be run during a single update
+	 */
+	public void setFixedTimeStep( float timeStep, int maxSubSteps )
+	{
+		m_fixedTimeStep = timeStep > 0.0f ? timeStep : 0.0f;
+		m_maxSubSteps = maxSubSteps > 1 ? maxSubSteps : 1;
+		m_accumulatedTime = 0.0f;
+		m_interpolationFactor = 1.0f;
+	}
+	
+	/**
+	 * Splits the simulation between the specified number of threads.
+	 * 
+	 * The bodies' preCalculateCollisionShapes and the overlap tests of their shapes
+	 * will then be called concurrently, and the entities will be moved from
+	 * the worker threads.
+	 * 
+	 * @param threadsCount		number of threads, including the updating one. 1 or less runs the simulation on the updating thread only
+	 */
+	public void setThreadsCount( int threadsCount )
+	{
+		if ( m_workers != null )
+		{
+			if ( m_workers.getThreadsCount() == threadsCount )
+			{
+				return;
+			}
+			m_workers.shutdown();
+			m_workers = null;
+		}
+		
+		if ( threadsCount > 1 )
+		{
+			m_workers = new WorkerPool( threadsCount );
+		}
+	}
+	
+	/**
+	 * Returns the position between the two most recent simulation steps where the
+	 * simulation would be right now - 0 being the previous step, and 1 the latest one.
+	 * 
+	 * It's always 1 when the simulation runs with a variable time step.
+	 * 
+	 * @return
+	 */
+	public float getInterpolationFactor()
+	{
+		return m_interpolationFactor;
+	}
+	
+	@Override
+	public void getInterpolatedPosition( Entity entity, Vector3 outPos )
+	{
+		Vector3 pos = entity.getPosition();
+		PhysicalBody body = findBodyFor( entity );
+		if ( body == null || m_interpolationFactor >= 1.0f )
+		{
+			outPos.set( pos );
+			return;
+		}
+		
+		Vector3 prevPos = body.m_prevPosition;
+		float t = m_interpolationFactor;
+		outPos.set( prevPos.m_x + ( pos.m_x - prevPos.m_x ) * t, prevPos.m_y + ( pos.m_y - prevPos.m_y ) * t, prevPos.m_z + ( pos.m_z - prevPos.m_z ) * t );
 	}
 	
 	@Override
@@ -59,8 +175,69 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 			return;
 		}
 		
+		FrameProfiler.begin( FrameProfiler.SECTION_PHYSICS );
+		
 		manageBodies();
 		
+		if ( m_fixedTimeStep <= 0.0f )
+		{
+			simulate( deltaTime, true );
+		}
+		else
+		{
+			simulateFixedSteps( deltaTime );
+		}
+		
+		FrameProfiler.end( FrameProfiler.SECTION_PHYSICS );
+	}
+	
+	/**
+	 * Runs the simulation in fixed time steps.
+	 * 
+	 * @param deltaTime
+	 */
+	private void simulateFixedSteps( float deltaTime )
+	{
+		// run as many fixed steps as fit in the accumulated time. The velocities the controllers 
+		// set apply to all of them, so they're reset only once all steps are done
+		m_accumulatedTime += deltaTime;
+		int stepsCount = 0;
+		while ( m_accumulatedTime >= m_fixedTimeStep && stepsCount < m_maxSubSteps )
+		{
+			storePreviousPositions();
+			simulate( m_fixedTimeStep, false );
+			
+			m_accumulatedTime -= m_fixedTimeStep;
+			++stepsCount;
+		}
+		
+		if ( stepsCount > 0 )
+		{
+			resetForces();
+		}
+		
+		if ( m_accumulatedTime >= m_fixedTimeStep )
+		{
+			// we ran out of steps - drop the time we couldn't simulate
+			m_accumulatedTime = m_accumulatedTime % m_fixedTimeStep;
+		}
+		m_interpolationFactor = m_accumulatedTime / m_fixedTimeStep;
+	}
+	
+	/**
+	 * Runs a single simulation step.
+	 * 
+	 * @param deltaTime
+	 * @param resetForces		should the forces be reset once they're applied
+	 */
+	private void simulate( float deltaTime, boolean resetForces )
+	{
+		if ( m_workers != null )
+		{
+			simulateInParallel( deltaTime, resetForces );
+			return;
+		}
+		
 		// calculate the bounding shapes for the bodies
 		calculateCollisionShapes( deltaTime );
 		
@@ -71,7 +248,7 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 		resolveCollisions();
 		
 		// run physics simulation
-		simulateForces( deltaTime );
+		simulateForces( deltaTime, resetForces );
 	}
 	
 	@Override
@@ -79,7 +256,10 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	{
 		m_worldWidth = world.getWidth();
 		m_worldHeight = world.getHeight();
-		m_bodiesGrid = new SpatialGrid2D( m_worldWidth, m_worldHeight, m_cellSize, MAX_ENTITIES );
+		m_bodiesGrid = new SpatialGrid2D( m_worldWidth, m_worldHeight, m_cellSize, INITIAL_ENTITIES_CAPACITY );
+		
+		// bodies report when their bounds change, so that the stationary ones don't need to be updated
+		m_bodiesGrid.enableMoveNotifications( true );
 	}
 
 	@Override
@@ -93,15 +273,23 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	@Override
 	public void onEntityAdded( Entity entity )
 	{
-		m_bodiesToRemove.remove( entity );
-		m_bodiesToAdd.add( entity );
+		m_bodiesToAdd.put( entity.getWorldId(), entity );
 	}
 
 	@Override
 	public void onEntityRemoved( Entity entity )
 	{
-		m_bodiesToAdd.remove( entity );
-		m_bodiesToRemove.add( entity );
+		m_bodiesToAdd.remove( entity.getWorldId() );
+		
+		// memorize the id - the world will release it as soon as this call returns, so by the time 
+		// we get to remove the body, the entity will no longer have it
+		if ( m_bodiesToRemoveCount >= m_bodiesToRemove.length )
+		{
+			int[] newBodiesToRemove = new int[ m_bodiesToRemove.length * 2 ];
+			System.arraycopy( m_bodiesToRemove, 0, newBodiesToRemove, 0, m_bodiesToRemoveCount );
+			m_bodiesToRemove = newBodiesToRemove;
+		}
+		m_bodiesToRemove[ m_bodiesToRemoveCount++ ] = entity.getWorldId();
 	}
 	
 	/**
@@ -112,17 +300,16 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	 */
 	private void manageBodies()
 	{
-		int count = m_bodiesToRemove.size();
-		for ( int i = 0; i < count; ++i )
+		for ( int i = 0; i < m_bodiesToRemoveCount; ++i )
 		{
-			detachBody( m_bodiesToRemove.get(i) );
+			detachBody( m_bodiesToRemove[i] );
 		}
-		m_bodiesToRemove.clear();
+		m_bodiesToRemoveCount = 0;
 		
-		count = m_bodiesToAdd.size();
+		int count = m_bodiesToAdd.size();
 		for ( int i = 0; i < count; ++i )
 		{
-			attachBody( m_bodiesToAdd.get(i) );
+			attachBody( m_bodiesToAdd.getAt(i) );
 		}
 		m_bodiesToAdd.clear();
 	}
@@ -134,6 +321,12 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	 */
 	private void attachBody( Entity entity )
 	{
+		if ( entity.getWorldId() < 0 )
+		{
+			// the entity's no longer in the world
+			return;
+		}
+		
 		PhysicalBody body = findBodyFor( entity );
 		if ( body != null )
 		{
@@ -154,7 +347,14 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 			{
 				m_bodiesGrid.insertStaticObject( body );
 			}
-			m_bodies.add( body );
+			m_bodies.put( entity.getWorldId(), body );
+			body.m_prevPosition.set( entity.getPosition() );
+			
+			// make sure a grid query can always return all the bodies
+			if ( m_bodies.size() > m_queryResults.length )
+			{
+				m_queryResults = new PhysicalBody[ m_queryResults.length * 2 ];
+			}
 		}
 		catch( IndexOutOfBoundsException e )
 		{
@@ -164,17 +364,16 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	}
 	
 	/**
-	 * Performs the actual removal of an entity and associated body from the view.
+	 * Performs the actual removal of an entity's body from the view.
 	 * 
-	 * @param entity
+	 * @param entityId		id the removed entity had in the world
 	 */
-	private void detachBody( Entity entity )
+	private void detachBody( int entityId )
 	{
-		PhysicalBody body = findBodyFor( entity );
+		PhysicalBody body = m_bodies.remove( entityId );
 		if ( body != null )
 		{
 			m_bodiesGrid.removeObject( body );
-			m_bodies.remove( body );
 		}
 	}
 	
@@ -186,14 +385,10 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	 */
 	private PhysicalBody findBodyFor( Entity entity )
 	{
-		int count = m_bodies.size();
-		for ( int i = 0; i < count; ++i )
+		PhysicalBody body = m_bodies.get( entity.getWorldId() );
+		if ( body != null && body.isBodyOf( entity ) )
 		{
-			PhysicalBody body = m_bodies.get(i);
-			if ( body.isBodyOf( entity ) )
-			{
-				return body;
-			}
+			return body;
 		}
 		
 		return null;
@@ -204,11 +399,13 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	 */
 	private void resolveCollisions() 
 	{
+		m_pairsCount = 0;
+		
 		// go through all the entities
 		int count = m_bodies.size();
 		for( int i = 0; i < count; ++i )
 		{
-			PhysicalBody body = m_bodies.get(i);
+			PhysicalBody body = m_bodies.getAt(i);
 			if ( body.m_checkCollisions )
 			{
 				// test the collisions with other nearby objects
@@ -217,32 +414,101 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 				{
 					PhysicalBody collider = m_queryResults[j];
 					
-					if ( collider != body )
+					// a pair of bodies that both check collisions is tested only once - by the one
+					// that comes first in the bodies array, and the test informs both of them
+					if ( collider != body && ( !collider.m_checkCollisions || collider.m_viewIdx > i ) )
 					{
-						body.checkCollision( collider );
+						if ( body.usesTimeOfImpact( collider ) )
+						{
+							// these need to be ordered before they're reported
+							addCollisionPair( i, collider.m_viewIdx, true );
+						}
+						else
+						{
+							body.checkCollision( collider );
+						}
 					}
 				}
 			}
 			
-			// check if the entity didn't roam outside world's bounds
-			BoundingBox bb = body.getBounds();
-			if ( bb.m_minX <= 0.0f || bb.m_maxX >= m_worldWidth )
+			checkWorldBounds( body );
+		}
+		
+		m_testPairsTask.execute( 0, m_pairsCount );
+		notifyTimeOfImpactCollisions();
+	}
+	
+	/**
+	 * Informs the bodies about the collisions detected using the time of impact tests,
+	 * starting with the ones that happened the earliest.
+	 */
+	private void notifyTimeOfImpactCollisions()
+	{
+		int contactsCount = 0;
+		for ( int i = 0; i < m_pairsCount; ++i )
+		{
+			if ( !m_pairContinuous[i] || !m_pairOverlaps[i] )
 			{
-				OutOfWorldBounds event = body.m_entity.sendEvent( OutOfWorldBounds.class );
-				if ( event != null )
-				{
-					event.m_side = OutOfWorldBounds.ExitSide.ES_X;
-				}
+				continue;
 			}
-			if ( bb.m_minY <= 0.0f || bb.m_maxY >= m_worldHeight )
+			
+			// insertion sort - there are usually just a few contacts, and it keeps 
+			// the pairs that collide at the same time in the order they were found
+			float timeOfImpact = m_pairTimesOfImpact[i];
+			int j = contactsCount;
+			while ( j > 0 && m_pairTimesOfImpact[ m_contactsOrder[j - 1] ] > timeOfImpact )
 			{
-				OutOfWorldBounds event = body.m_entity.sendEvent( OutOfWorldBounds.class );
-				if ( event != null )
-				{
-					event.m_side = OutOfWorldBounds.ExitSide.ES_Y;
-				}
+				m_contactsOrder[j] = m_contactsOrder[j - 1];
+				--j;
 			}
-
+			m_contactsOrder[j] = i;
+			++contactsCount;
+		}
+		
+		for ( int i = 0; i < contactsCount; ++i )
+		{
+			int pairIdx = m_contactsOrder[i];
+			PhysicalBody body = m_bodies.getAt( m_pairBodies[pairIdx] );
+			body.notifyCollision( m_bodies.getAt( m_pairColliders[pairIdx] ), m_pairPoints[pairIdx] );
+		}
+	}
+	
+	/**
+	 * Checks if the body's entity didn't roam outside world's bounds.
+	 * 
+	 * @param body
+	 */
+	private void checkWorldBounds( PhysicalBody body )
+	{
+		BoundingBox bb = body.getBounds();
+		if ( bb.m_minX <= 0.0f || bb.m_maxX >= m_worldWidth )
+		{
+			OutOfWorldBounds event = body.m_entity.sendEvent( OutOfWorldBounds.class );
+			if ( event != null )
+			{
+				event.m_side = OutOfWorldBounds.ExitSide.ES_X;
+			}
+		}
+		if ( bb.m_minY <= 0.0f || bb.m_maxY >= m_worldHeight )
+		{
+			OutOfWorldBounds event = body.m_entity.sendEvent( OutOfWorldBounds.class );
+			if ( event != null )
+			{
+				event.m_side = OutOfWorldBounds.ExitSide.ES_Y;
+			}
+		}
+	}
+	
+	/**
+	 * Memorizes the positions of the entities before they're changed by a simulation step.
+	 */
+	private void storePreviousPositions()
+	{
+		int count = m_bodies.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			PhysicalBody body = m_bodies.getAt(i);
+			body.m_prevPosition.set( body.m_entity.getPosition() );
 		}
 	}
 	
@@ -256,8 +522,12 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 		int count = m_bodies.size();
 		for ( int i = 0; i < count; ++i )
 		{
-			PhysicalBody body = m_bodies.get(i); 
-			body.calculateCollisionShapes( deltaTime );
+			PhysicalBody body = m_bodies.getAt(i); 
+			body.m_viewIdx = i;
+			if ( body.calculateCollisionShapes( deltaTime ) )
+			{
+				m_bodiesGrid.notifyObjectMoved( body );
+			}
 		}
 	}
 	
@@ -265,15 +535,220 @@ public class PhysicsView extends GenericFactory< Entity, PhysicalBody > implemen
 	 * Simulates the forces that apply to particular physical bodies.
 	 * 
 	 * @param deltaTime
+	 * @param resetForces		should the forces be reset once they're applied
 	 */
-	private void simulateForces( float deltaTime )
+	private void simulateForces( float deltaTime, boolean resetForces )
 	{
 		int count = m_bodies.size();
 		for ( int i = 0; i < count; ++i )
 		{
-			PhysicalBody body = m_bodies.get(i); 
-			body.simulate( deltaTime );
+			PhysicalBody body = m_bodies.getAt(i); 
+			body.simulate( deltaTime, resetForces );
 		}
 	}
-
+	
+	/**
+	 * Resets the forces that apply to particular physical bodies.
+	 */
+	private void resetForces()
+	{
+		int count = m_bodies.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			m_bodies.getAt(i).resetForces();
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	// Multithreaded simulation
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Runs a single simulation step, splitting the work between the worker threads.
+	 * 
+	 * Only the work that doesn't touch shared data runs on the workers - the grid updates,
+	 * the broad phase queries and sending the events to the entities happen 
+	 * on the updating thread, in the order of the bodies array.
+	 * 
+	 * @param deltaTime
+	 * @param resetForces		should the forces be reset once they're applied
+	 */
+	private void simulateInParallel( float deltaTime, boolean resetForces )
+	{
+		int count = m_bodies.size();
+		if ( m_boundsChanged.length < count )
+		{
+			m_boundsChanged = new boolean[ m_queryResults.length ];
+		}
+		m_stepDeltaTime = deltaTime;
+		m_stepResetForces = resetForces;
+		
+		// calculate the bounding shapes, and then update the grid with the bodies that moved
+		m_workers.execute( m_calculateShapesTask, count, MIN_BODIES_PER_THREAD );
+		for ( int i = 0; i < count; ++i )
+		{
+			if ( m_boundsChanged[i] )
+			{
+				m_bodiesGrid.notifyObjectMoved( m_bodies.getAt(i) );
+			}
+		}
+		m_bodiesGrid.update();
+		
+		// find the potentially colliding pairs and test them
+		gatherCollisionPairs();
+		m_workers.execute( m_testPairsTask, m_pairsCount, MIN_PAIRS_PER_THREAD );
+		
+		// inform the bodies about the collisions - the pairs are ordered by the bodies, so each body
+		// is informed about its collisions and then checked against the world bounds, just like
+		// the single threaded simulation does it
+		int pairIdx = 0;
+		for ( int i = 0; i < count; ++i )
+		{
+			PhysicalBody body = m_bodies.getAt(i);
+			for ( ; pairIdx < m_pairsCount && m_pairBodies[pairIdx] == i; ++pairIdx )
+			{
+				if ( m_pairOverlaps[pairIdx] && !m_pairContinuous[pairIdx] )
+				{
+					body.notifyCollision( m_bodies.getAt( m_pairColliders[pairIdx] ), m_pairPoints[pairIdx] );
+				}
+			}
+			
+			checkWorldBounds( body );
+		}
+		notifyTimeOfImpactCollisions();
+		
+		// run physics simulation
+		m_workers.execute( m_simulateForcesTask, count, MIN_BODIES_PER_THREAD );
+	}
+	
+	/**
+	 * Runs the broad phase of the collision detection, memorizing the pairs of bodies
+	 * that should be tested - in the same order the single threaded simulation tests them.
+	 */
+	private void gatherCollisionPairs()
+	{
+		m_pairsCount = 0;
+		
+		int count = m_bodies.size();
+		for( int i = 0; i < count; ++i )
+		{
+			PhysicalBody body = m_bodies.getAt(i);
+			if ( !body.m_checkCollisions )
+			{
+				continue;
+			}
+			
+			int collidersCount = m_bodiesGrid.getPotentialColliders( body, m_queryResults );
+			for ( int j = 0; j < collidersCount; ++j )
+			{
+				PhysicalBody collider = m_queryResults[j];
+				if ( collider != body && ( !collider.m_checkCollisions || collider.m_viewIdx > i ) )
+				{
+					addCollisionPair( i, collider.m_viewIdx, body.usesTimeOfImpact( collider ) );
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a pair of bodies to test.
+	 * 
+	 * @param bodyIdx
+	 * @param colliderIdx
+	 * @param continuous		should the pair be tested using the time of impact test
+	 */
+	private void addCollisionPair( int bodyIdx, int colliderIdx, boolean continuous )
+	{
+		if ( m_pairsCount >= m_pairBodies.length )
+		{
+			int newLength = m_pairBodies.length * 2;
+			
+			int[] newPairBodies = new int[newLength];
+			System.arraycopy( m_pairBodies, 0, newPairBodies, 0, m_pairsCount );
+			m_pairBodies = newPairBodies;
+			
+			int[] newPairColliders = new int[newLength];
+			System.arraycopy( m_pairColliders, 0, newPairColliders, 0, m_pairsCount );
+			m_pairColliders = newPairColliders;
+			
+			boolean[] newPairContinuous = new boolean[newLength];
+			System.arraycopy( m_pairContinuous, 0, newPairContinuous, 0, m_pairsCount );
+			m_pairContinuous = newPairContinuous;
+			
+			m_pairOverlaps = new boolean[newLength];
+			m_pairTimesOfImpact = new float[newLength];
+			m_contactsOrder = new int[newLength];
+			
+			Vector3[] newPairPoints = new Vector3[newLength];
+			System.arraycopy( m_pairPoints, 0, newPairPoints, 0, m_pairPoints.length );
+			m_pairPoints = newPairPoints;
+		}
+		
+		if ( m_pairPoints[m_pairsCount] == null )
+		{
+			m_pairPoints[m_pairsCount] = new Vector3();
+		}
+		
+		m_pairBodies[m_pairsCount] = bodyIdx;
+		m_pairColliders[m_pairsCount] = colliderIdx;
+		m_pairContinuous[m_pairsCount] = continuous;
+		++m_pairsCount;
+	}
+	
+	/**
+	 * Calculates the collision shapes of a range of bodies.
+	 */
+	private final WorkerPool.Task m_calculateShapesTask = new WorkerPool.Task()
+	{
+		@Override
+		public void execute( int startIdx, int endIdx )
+		{
+			for ( int i = startIdx; i < endIdx; ++i )
+			{
+				PhysicalBody body = m_bodies.getAt(i); 
+				body.m_viewIdx = i;
+				m_boundsChanged[i] = body.calculateCollisionShapes( m_stepDeltaTime );
+			}
+		}
+	};
+	
+	/**
+	 * Runs the narrow phase collision tests on a range of pairs.
+	 */
+	private final WorkerPool.Task m_testPairsTask = new WorkerPool.Task()
+	{
+		@Override
+		public void execute( int startIdx, int endIdx )
+		{
+			for ( int i = startIdx; i < endIdx; ++i )
+			{
+				PhysicalBody body = m_bodies.getAt( m_pairBodies[i] );
+				PhysicalBody collider = m_bodies.getAt( m_pairColliders[i] );
+				if ( m_pairContinuous[i] )
+				{
+					m_pairTimesOfImpact[i] = body.testTimeOfImpact( collider, m_pairPoints[i] );
+					m_pairOverlaps[i] = m_pairTimesOfImpact[i] >= 0.0f;
+				}
+				else
+				{
+					m_pairOverlaps[i] = body.testCollision( collider, m_pairPoints[i] );
+				}
+			}
+		}
+	};
+	
+	/**
+	 * Simulates the forces that apply to a range of bodies.
+	 */
+	private final WorkerPool.Task m_simulateForcesTask = new WorkerPool.Task()
+	{
+		@Override
+		public void execute( int startIdx, int endIdx )
+		{
+			for ( int i = startIdx; i < endIdx; ++i )
+			{
+				m_bodies.getAt(i).simulate( m_stepDeltaTime, m_stepResetForces );
+			}
+		}
+	};
 }
@@ -0,0 +1,364 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.renderer2D;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into as few pages of a texture atlas as possible.
+ * 
+ * The rectangles are packed from the tallest to the shortest one. Each is placed
+ * where its bottom edge ends up the lowest ( a 'skyline' packing ). Once a page is full,
+ * a new one is started, and finally each page is shrunk to the smallest power of two
+ * dimensions its contents fit in.
+ * 
+ * The packer only calculates the layout, so it doesn't care what the rectangles contain.
+ * 
+ * @author Paksas
+ *
+ */
+public final class AtlasPacker
+{
+	private final int		m_maxPageSize;
+	private final int		m_padding;
+
+	// rectangles
+	private int[]			m_widths = new int[16];
+	private int[]			m_heights = new int[16];
+	private int[]			m_pages = new int[16];
+	private int[]			m_xs = new int[16];
+	private int[]			m_ys = new int[16];
+	private int				m_rectsCount = 0;
+
+	// pages
+	private int[]			m_pageWidths = new int[4];
+	private int[]			m_pageHeights = new int[4];
+	private int				m_pagesCount = 0;
+
+	// skyline of the page that's being filled - segments sorted by their X coordinates
+	private int[]			m_skylineXs = new int[16];
+	private int[]			m_skylineYs = new int[16];
+	private int[]			m_skylineWidths = new int[16];
+	private int				m_skylineCount = 0;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxPageSize		maximum width and height of a page
+	 * @param padding			number of pixels that should separate a packed rectangle from its neighbours and the page edges
+	 */
+	public AtlasPacker( int maxPageSize, int padding )
+	{
+		m_maxPageSize = maxPageSize;
+		m_padding = padding;
+	}
+
+	/**
+	 * Adds a rectangle that should be packed.
+	 * 
+	 * @param width
+	 * @param height
+	 * @return				index of the rectangle
+	 */
+	public int add( int width, int height )
+	{
+		if ( width + m_padding * 2 > m_maxPageSize || height + m_padding * 2 > m_maxPageSize )
+		{
+			throw new IllegalArgumentException( "A " + width + "x" + height + " rectangle won't fit a " + m_maxPageSize + "x" + m_maxPageSize + " page" );
+		}
+
+		if ( m_rectsCount >= m_widths.length )
+		{
+			int newLength = m_widths.length * 2;
+			m_widths = grow( m_widths, newLength );
+			m_heights = grow( m_heights, newLength );
+			m_pages = grow( m_pages, newLength );
+			m_xs = grow( m_xs, newLength );
+			m_ys = grow( m_ys, newLength );
+		}
+
+		m_widths[m_rectsCount] = width;
+		m_heights[m_rectsCount] = height;
+		return m_rectsCount++;
+	}
+
+	/**
+	 * Packs the added rectangles.
+	 */
+	public void pack()
+	{
+		// pack the tallest rectangles first
+		Integer[] order = new Integer[m_rectsCount];
+		for ( int i = 0; i < m_rectsCount; ++i )
+		{
+			order[i] = i;
+		}
+		Arrays.sort( order, new Comparator< Integer >()
+		{
+			@Override
+			public int compare( Integer lhs, Integer rhs )
+			{
+				int diff = m_heights[rhs] - m_heights[lhs];
+				return diff != 0 ? diff : m_widths[rhs] - m_widths[lhs];
+			}
+		} );
+
+		m_pagesCount = 0;
+		int packedCount = 0;
+		boolean[] packed = new boolean[m_rectsCount];
+		while ( packedCount < m_rectsCount )
+		{
+			startPage();
+
+			// the rectangles that don't fit this page will be packed into the next one
+			for ( int i = 0; i < m_rectsCount; ++i )
+			{
+				int rectIdx = order[i];
+				if ( !packed[rectIdx] && place( rectIdx ) )
+				{
+					packed[rectIdx] = true;
+					++packedCount;
+				}
+			}
+		}
+
+		// shrink the pages
+		for ( int i = 0; i < m_rectsCount; ++i )
+		{
+			int page = m_pages[i];
+			m_pageWidths[page] = Math.max( m_pageWidths[page], m_xs[i] + m_widths[i] + m_padding );
+			m_pageHeights[page] = Math.max( m_pageHeights[page], m_ys[i] + m_heights[i] + m_padding );
+		}
+		for ( int i = 0; i < m_pagesCount; ++i )
+		{
+			m_pageWidths[i] = nextPowerOfTwo( m_pageWidths[i] );
+			m_pageHeights[i] = nextPowerOfTwo( m_pageHeights[i] );
+		}
+	}
+
+	/**
+	 * Returns the number of the added rectangles.
+	 * 
+	 * @return
+	 */
+	public int getRectsCount()
+	{
+		return m_rectsCount;
+	}
+
+	/**
+	 * Returns the index of the page the rectangle was packed into.
+	 * 
+	 * @param rectIdx
+	 * @return
+	 */
+	public int getPage( int rectIdx )
+	{
+		return m_pages[rectIdx];
+	}
+
+	/**
+	 * Returns the X coordinate of the top left corner of the packed rectangle.
+	 * 
+	 * @param rectIdx
+	 * @return
+	 */
+	public int getX( int rectIdx )
+	{
+		return m_xs[rectIdx];
+	}
+
+	/**
+	 * Returns the Y coordinate of the top left corner of the packed rectangle.
+	 * 
+	 * @param rectIdx
+	 * @return
+	 */
+	public int getY( int rectIdx )
+	{
+		return m_ys[rectIdx];
+	}
+
+	/**
+	 * Returns the number of pages the rectangles were packed into.
+	 * 
+	 * @return
+	 */
+	public int getPagesCount()
+	{
+		return m_pagesCount;
+	}
+
+	/**
+	 * Returns the width of the specified page.
+	 * 
+	 * @param pageIdx
+	 * @return
+	 */
+	public int getPageWidth( int pageIdx )
+	{
+		return m_pageWidths[pageIdx];
+	}
+
+	/**
+	 * Returns the height of the specified page.
+	 * 
+	 * @param pageIdx
+	 * @return
+	 */
+	public int getPageHeight( int pageIdx )
+	{
+		return m_pageHeights[pageIdx];
+	}
+
+	/**
+	 * Starts filling a new page.
+	 */
+	private void startPage()
+	{
+		if ( m_pagesCount >= m_pageWidths.length )
+		{
+			m_pageWidths = grow( m_pageWidths, m_pageWidths.length * 2 );
+			m_pageHeights = grow( m_pageHeights, m_pageHeights.length * 2 );
+		}
+		m_pageWidths[m_pagesCount] = 0;
+		m_pageHeights[m_pagesCount] = 0;
+		++m_pagesCount;
+
+		m_skylineXs[0] = 0;
+		m_skylineYs[0] = 0;
+		m_skylineWidths[0] = m_maxPageSize;
+		m_skylineCount = 1;
+	}
+
+	/**
+	 * Places a rectangle on the current page.
+	 * 
+	 * @param rectIdx
+	 * @return			'false' if there's no room for it left
+	 */
+	private boolean place( int rectIdx )
+	{
+		int width = m_widths[rectIdx] + m_padding * 2;
+		int height = m_heights[rectIdx] + m_padding * 2;
+
+		// find the segment the rectangle's bottom edge ends up the lowest at
+		int bestSegment = -1;
+		int bestY = Integer.MAX_VALUE;
+		for ( int i = 0; i < m_skylineCount; ++i )
+		{
+			int x = m_skylineXs[i];
+			if ( x + width > m_maxPageSize )
+			{
+				break;
+			}
+
+			// the rectangle rests on the highest of the segments it spans
+			int y = 0;
+			int spannedWidth = 0;
+			for ( int j = i; spannedWidth < width; ++j )
+			{
+				y = Math.max( y, m_skylineYs[j] );
+				spannedWidth += m_skylineWidths[j];
+			}
+
+			if ( y + height <= m_maxPageSize && y < bestY )
+			{
+				bestY = y;
+				bestSegment = i;
+			}
+		}
+
+		if ( bestSegment < 0 )
+		{
+			return false;
+		}
+
+		int x = m_skylineXs[bestSegment];
+		m_pages[rectIdx] = m_pagesCount - 1;
+		m_xs[rectIdx] = x + m_padding;
+		m_ys[rectIdx] = bestY + m_padding;
+
+		raiseSkyline( bestSegment, x, bestY + height, width );
+		return true;
+	}
+
+	/**
+	 * Raises the skyline under a placed rectangle.
+	 * 
+	 * @param segmentIdx		the segment the rectangle starts at
+	 * @param x
+	 * @param y					new height of the skyline
+	 * @param width
+	 */
+	private void raiseSkyline( int segmentIdx, int x, int y, int width )
+	{
+		// find the segments the rectangle covers completely
+		int end = x + width;
+		int lastIdx = segmentIdx;
+		while ( lastIdx < m_skylineCount && m_skylineXs[lastIdx] + m_skylineWidths[lastIdx] <= end )
+		{
+			++lastIdx;
+		}
+
+		// trim the segment the rectangle covers partially
+		if ( lastIdx < m_skylineCount && m_skylineXs[lastIdx] < end )
+		{
+			m_skylineWidths[lastIdx] -= end - m_skylineXs[lastIdx];
+			m_skylineXs[lastIdx] = end;
+		}
+
+		// replace the covered segments with a new one
+		int removedCount = lastIdx - segmentIdx;
+		int shift = 1 - removedCount;
+		if ( m_skylineCount + shift > m_skylineXs.length )
+		{
+			int newLength = m_skylineXs.length * 2;
+			m_skylineXs = grow( m_skylineXs, newLength );
+			m_skylineYs = grow( m_skylineYs, newLength );
+			m_skylineWidths = grow( m_skylineWidths, newLength );
+		}
+		int tailCount = m_skylineCount - lastIdx;
+		System.arraycopy( m_skylineXs, lastIdx, m_skylineXs, lastIdx + shift, tailCount );
+		System.arraycopy( m_skylineYs, lastIdx, m_skylineYs, lastIdx + shift, tailCount );
+		System.arraycopy( m_skylineWidths, lastIdx, m_skylineWidths, lastIdx + shift, tailCount );
+		m_skylineCount += shift;
+
+		m_skylineXs[segmentIdx] = x;
+		m_skylineYs[segmentIdx] = y;
+		m_skylineWidths[segmentIdx] = width;
+
+		// merge the neighbouring segments of the same height
+		for ( int i = m_skylineCount - 1; i > 0; --i )
+		{
+			if ( m_skylineYs[i - 1] == m_skylineYs[i] )
+			{
+				m_skylineWidths[i - 1] += m_skylineWidths[i];
+				int count = m_skylineCount - i - 1;
+				System.arraycopy( m_skylineXs, i + 1, m_skylineXs, i, count );
+				System.arraycopy( m_skylineYs, i + 1, m_skylineYs, i, count );
+				System.arraycopy( m_skylineWidths, i + 1, m_skylineWidths, i, count );
+				--m_skylineCount;
+			}
+		}
+	}
+
+	private static int[] grow( int[] array, int newLength )
+	{
+		int[] newArray = new int[newLength];
+		System.arraycopy( array, 0, newArray, 0, array.length );
+		return newArray;
+	}
+
+	private static int nextPowerOfTwo( int value )
+	{
+		int result = 1;
+		while ( result < value )
+		{
+			result <<= 1;
+		}
+		return result;
+	}
+}
@@ -70,20 +70,36 @@ public class Camera2D
 	 */
 	public void setViewportAndMatrices() 
 	{
-		// update the view frustum
+		updateFrustum();
+		setViewportAndMatrices( m_frustum );
+	}
+	
+	/**
+	 * Updates the view frustum, so that it matches the camera position and zoom.
+	 */
+	public void updateFrustum()
+	{
 		float halfZoom = m_zoom / 2;
 		m_frustum.m_minX = m_position.m_x - m_frustumWidth * halfZoom;
 		m_frustum.m_maxX = m_position.m_x + m_frustumWidth * halfZoom;
 		m_frustum.m_minY = m_position.m_y - m_frustumHeight * halfZoom;
 		m_frustum.m_maxY = m_position.m_y + m_frustumHeight * halfZoom;
-				
+	}
+	
+	/**
+	 * Sets up the viewport and the matrices for rendering the specified frustum.
+	 * 
+	 * @param frustum
+	 */
+	void setViewportAndMatrices( BoundingBox frustum )
+	{
 		// set the viewport
 		GL10 gl = m_graphics.getGL();
 		
 		gl.glViewport( m_viewportPosX, m_viewportPosY, m_viewportWidth, m_viewportHeight );
 		gl.glMatrixMode( GL10.GL_PROJECTION );
 		gl.glLoadIdentity();
-		gl.glOrthof( m_frustum.m_minX, m_frustum.m_maxX, m_frustum.m_minY, m_frustum.m_maxY, 1, -1 );
+		gl.glOrthof( frustum.m_minX, frustum.m_maxX, frustum.m_minY, frustum.m_maxY, 1, -1 );
 		
 		gl.glMatrixMode( GL10.GL_MODELVIEW );
 		gl.glLoadIdentity();
@@ -3,6 +3,8 @@
  */
 package com.hypefoundry.engine.renderer2D;
 
+import java.nio.ByteOrder;
+
 import com.hypefoundry.engine.util.serialization.DataLoader;
 
 /**
@@ -26,6 +28,8 @@ public final class Color
 	
 	public float m_vals[] = { 0, 0, 0, 1 };
 	
+	private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	
 	/**
 	 * Default constructor.
 	 */
@@ -75,6 +79,38 @@ public final class Color
 		m_vals[Alpha] = rhs.m_vals[Alpha];
 	}
 	
+	/**
+	 * Packs the color into a float that holds its RGBA8 components, laid out in the memory
+	 * the way a GL_UNSIGNED_BYTE color pointer expects them to be.
+	 * 
+	 * CAUTION: the lowest bit of the component stored in the highest byte is dropped - otherwise
+	 * the bits could form a NaN, which isn't guaranteed to keep its bits when it's copied around.
+	 * 
+	 * @return
+	 */
+	public float toPackedFloat()
+	{
+		int r = toByte( m_vals[Red] );
+		int g = toByte( m_vals[Green] );
+		int b = toByte( m_vals[Blue] );
+		int a = toByte( m_vals[Alpha] );
+		
+		int packed = LITTLE_ENDIAN ? ( a << 24 ) | ( b << 16 ) | ( g << 8 ) | r : ( r << 24 ) | ( g << 16 ) | ( b << 8 ) | a;
+		return Float.intBitsToFloat( packed & 0xFEFFFFFF );
+	}
+	
+	/**
+	 * Converts a color component to a byte value.
+	 * 
+	 * @param val		value from the range <0, 1>
+	 * @return			value from the range <0, 255>
+	 */
+	private static int toByte( float val )
+	{
+		int byteVal = (int)( val * 255.0f + 0.5f );
+		return byteVal < 0 ? 0 : ( byteVal > 255 ? 255 : byteVal );
+	}
+	
 	/**
 	 * Brightens up the color by the specified factor.
 	 * 
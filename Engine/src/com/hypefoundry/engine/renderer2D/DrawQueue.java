@@ -0,0 +1,506 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.renderer2D;
+
+import java.nio.FloatBuffer;
+
+import com.hypefoundry.engine.util.RadixSort;
+
+
+/**
+ * A queue of sprite drawing commands, which are sorted before they're drawn.
+ * 
+ * Each command is tagged with a sort key made of the layer it's drawn on, its depth,
+ * and the id of its render state. The commands are drawn layer by layer, starting
+ * from the farthest depth - and the ones that share both the layer and the depth
+ * are grouped by their render states, so that the batcher needs to switch
+ * between them as rarely as possible.
+ * 
+ * Setting the depth starts a new group of commands - i.e. the sprites of a single visual. The commands
+ * of a group are never reordered: each time the render state changes within a group, the commands
+ * that follow get a greater sub-depth. So only the commands of the different groups are regrouped.
+ * 
+ * The sort is stable, so the commands with identical keys are drawn in the order
+ * they were queued in.
+ * 
+ * The commands can also be given the screen bounds they cover. Once sorted, a command is moved
+ * up to the previous one with the same render state, across the different depths, as long as it doesn't
+ * overlap any of the commands it jumps over - the picture stays the same, but the batcher
+ * switches the states less often. The commands without the bounds are never moved, and nothing jumps over them.
+ * The commands never leave their layer, and only a few of the following commands are looked at.
+ * 
+ * The queue stores copies of the render states, so the states can be safely changed
+ * once the commands that use them are queued.
+ * 
+ * @author Paksas
+ *
+ */
+public final class DrawQueue
+{
+	public static final int			MAX_LAYER = 255;
+
+	// layout of the sort key
+	private static final int		STATE_BITS = 12;
+	private static final int		SUB_DEPTH_BITS = 11;
+	private static final int		DEPTH_SHIFT = STATE_BITS + SUB_DEPTH_BITS;
+	private static final int		LAYER_SHIFT = DEPTH_SHIFT + 32;
+	private static final int		MAX_STATE_KEY = ( 1 << STATE_BITS ) - 1;
+	private static final int		MAX_SUB_DEPTH = ( 1 << SUB_DEPTH_BITS ) - 1;
+
+	// how many of the following commands are checked when looking for the ones to move up
+	private static final int		REGROUP_WINDOW = 32;
+
+	private float[]					m_vertices;
+	private FloatBuffer				m_verticesView;
+	private int						m_verticesCount = 0;
+
+	private int[]					m_tags;
+	private int[]					m_vertexOffsets;
+	private int[]					m_stateIds;
+	private long[]					m_keys;
+	private int[]					m_order;
+	private float[]					m_bounds;					// minX, minY, maxX, maxY of each command
+	private int						m_count = 0;
+	private final RadixSort			m_sorter;
+
+	// regrouping
+	private long[]					m_regroupedKeys;
+	private int[]					m_regroupedOrder;
+	private boolean[]				m_regrouped;
+	private final int[]				m_skipped = new int[REGROUP_WINDOW];
+
+	// the key the queued commands are tagged with
+	private int						m_layer = 0;
+	private long					m_depthKey = RadixSort.toSortableKey( 0.0f );
+	private int						m_subDepth = 0;
+	private int						m_groupStateId = -1;		// state of the last command of the current group
+
+	// copies of the distinct render states queued since the queue was last cleared - the index is the state's id.
+	// The copies are kept after the queue is cleared, and reused
+	private RenderState[]			m_knownStates = new RenderState[16];
+	private int						m_knownStatesCount = 0;
+	private RenderState				m_lastState = null;
+	private int						m_lastStateId = 0;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity		number of commands the queue can store before it needs to grow its storage
+	 * @param verticesPerCommand	expected number of floats a single command stores
+	 */
+	public DrawQueue( int initialCapacity, int verticesPerCommand )
+	{
+		if ( initialCapacity < 1 )
+		{
+			initialCapacity = 1;
+		}
+
+		m_vertices = new float[ initialCapacity * verticesPerCommand ];
+		m_verticesView = FloatBuffer.wrap( m_vertices );
+		m_tags = new int[initialCapacity];
+		m_vertexOffsets = new int[initialCapacity];
+		m_stateIds = new int[initialCapacity];
+		m_keys = new long[initialCapacity];
+		m_order = new int[initialCapacity];
+		m_bounds = new float[ initialCapacity * 4 ];
+		m_regroupedKeys = new long[initialCapacity];
+		m_regroupedOrder = new int[initialCapacity];
+		m_regrouped = new boolean[initialCapacity];
+		m_sorter = new RadixSort( initialCapacity );
+	}
+
+	/**
+	 * Sets the layer the subsequently queued commands will be drawn on. The lower
+	 * layers are drawn first.
+	 * 
+	 * @param layer			value from the range <0, MAX_LAYER>
+	 */
+	public void setLayer( int layer )
+	{
+		m_layer = layer < 0 ? 0 : ( layer > MAX_LAYER ? MAX_LAYER : layer );
+	}
+
+	/**
+	 * Sets the depth the subsequently queued commands will be drawn at.
+	 * 
+	 * The commands farther from the screen ( with the greater depth values ) are drawn first.
+	 * 
+	 * @param z
+	 */
+	public void setDepth( float z )
+	{
+		// negate the depth so that the farthest commands end up at the front
+		m_depthKey = RadixSort.toSortableKey( -z );
+
+		// start a new group
+		m_subDepth = 0;
+		m_groupStateId = -1;
+	}
+
+	/**
+	 * Queues a command.
+	 * 
+	 * @param tag				command type, as defined by the queue's user
+	 * @param rs				render state the command should be drawn with
+	 * @param verticesCount		number of floats the command needs to store
+	 * @return					offset in the vertices array where the command's data should be stored
+	 */
+	public int add( int tag, RenderState rs, int verticesCount )
+	{
+		if ( m_count >= m_tags.length )
+		{
+			growCommands();
+		}
+		if ( m_verticesCount + verticesCount > m_vertices.length )
+		{
+			int newLength = m_vertices.length * 2;
+			if ( newLength < m_verticesCount + verticesCount )
+			{
+				newLength = m_verticesCount + verticesCount;
+			}
+			float[] newVertices = new float[newLength];
+			System.arraycopy( m_vertices, 0, newVertices, 0, m_verticesCount );
+			m_vertices = newVertices;
+			m_verticesView = FloatBuffer.wrap( m_vertices );
+		}
+
+		int offset = m_verticesCount;
+		m_verticesCount += verticesCount;
+
+		// the commands of the group that follow a state change are drawn after the ones that precede it
+		int stateId = getStateId( rs );
+		if ( m_groupStateId >= 0 && m_groupStateId != stateId && m_subDepth < MAX_SUB_DEPTH )
+		{
+			++m_subDepth;
+		}
+		m_groupStateId = stateId;
+
+		// there's room only for 12 bits of the state id in the key - if there are more states,
+		// some of them will just be drawn interleaved. And once a group runs out of the sub-depths,
+		// its remaining commands are all given the same key, so that they keep their order
+		int stateKey = m_subDepth < MAX_SUB_DEPTH ? ( stateId & MAX_STATE_KEY ) : MAX_STATE_KEY;
+		m_tags[m_count] = tag;
+		m_vertexOffsets[m_count] = offset;
+		m_stateIds[m_count] = stateId;
+		m_keys[m_count] = ( (long)m_layer << LAYER_SHIFT ) | ( m_depthKey << DEPTH_SHIFT ) | ( (long)m_subDepth << STATE_BITS ) | stateKey;
+		m_order[m_count] = m_count;
+
+		// until told otherwise, the command covers the whole screen
+		int boundsIdx = m_count * 4;
+		m_bounds[boundsIdx] = Float.NEGATIVE_INFINITY;
+		m_bounds[boundsIdx + 1] = Float.NEGATIVE_INFINITY;
+		m_bounds[boundsIdx + 2] = Float.POSITIVE_INFINITY;
+		m_bounds[boundsIdx + 3] = Float.POSITIVE_INFINITY;
+		++m_count;
+
+		return offset;
+	}
+
+	/**
+	 * Sets the screen bounds the last queued command covers, allowing it to be regrouped
+	 * with the commands at the other depths it doesn't overlap.
+	 * 
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 */
+	public void setBounds( float minX, float minY, float maxX, float maxY )
+	{
+		int boundsIdx = ( m_count - 1 ) * 4;
+		m_bounds[boundsIdx] = minX;
+		m_bounds[boundsIdx + 1] = minY;
+		m_bounds[boundsIdx + 2] = maxX;
+		m_bounds[boundsIdx + 3] = maxY;
+	}
+
+	/**
+	 * Returns the buffer the commands store their data in. The buffer wraps an array,
+	 * which can be accessed directly.
+	 * 
+	 * CAUTION: the buffer may be reallocated when a new command is queued.
+	 * 
+	 * @return
+	 */
+	public FloatBuffer getVertices()
+	{
+		return m_verticesView;
+	}
+
+	/**
+	 * Returns the number of queued commands.
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Sorts the queued commands.
+	 */
+	public void sort()
+	{
+		m_sorter.sort( m_keys, m_order, m_count );
+		regroup();
+	}
+
+	/**
+	 * Returns the index of a command that takes the specified place in the drawing order.
+	 * 
+	 * @param idx			place in the drawing order
+	 * @return				command index
+	 */
+	public int getCommandAt( int idx )
+	{
+		return m_order[idx];
+	}
+
+	/**
+	 * Returns the type of the specified command.
+	 * 
+	 * @param commandIdx
+	 * @return
+	 */
+	public int getTag( int commandIdx )
+	{
+		return m_tags[commandIdx];
+	}
+
+	/**
+	 * Returns the layer of a command that takes the specified place in the drawing order.
+	 * 
+	 * @param idx			place in the drawing order
+	 * @return
+	 */
+	public int getLayerAt( int idx )
+	{
+		// the keys are sorted along with the commands
+		return (int)( m_keys[idx] >>> LAYER_SHIFT );
+	}
+
+	/**
+	 * Returns the depth of a command that takes the specified place in the drawing order.
+	 * 
+	 * @param idx			place in the drawing order
+	 * @return
+	 */
+	public float getDepthAt( int idx )
+	{
+		return -RadixSort.fromSortableKey( ( m_keys[idx] >>> DEPTH_SHIFT ) & 0xFFFFFFFFL );
+	}
+
+	/**
+	 * Returns the render state of the specified command.
+	 * 
+	 * @param commandIdx
+	 * @return
+	 */
+	public RenderState getRenderState( int commandIdx )
+	{
+		return m_knownStates[ m_stateIds[commandIdx] ];
+	}
+
+	/**
+	 * Returns the offset at which the data of the specified command start.
+	 * 
+	 * @param commandIdx
+	 * @return
+	 */
+	public int getVertexOffset( int commandIdx )
+	{
+		return m_vertexOffsets[commandIdx];
+	}
+
+	/**
+	 * Removes all queued commands.
+	 */
+	public void clear()
+	{
+		m_count = 0;
+		m_verticesCount = 0;
+		m_knownStatesCount = 0;
+		m_lastState = null;
+		m_subDepth = 0;
+		m_groupStateId = -1;
+	}
+
+	/**
+	 * Returns an id of the render state - render states that are equal share the same id.
+	 * 
+	 * @param rs
+	 * @return
+	 */
+	private int getStateId( RenderState rs )
+	{
+		// consecutive commands usually share the render state
+		if ( rs == m_lastState && m_knownStates[m_lastStateId].equals( rs ) )
+		{
+			return m_lastStateId;
+		}
+
+		int id = -1;
+		for ( int i = 0; i < m_knownStatesCount; ++i )
+		{
+			if ( m_knownStates[i].equals( rs ) )
+			{
+				id = i;
+				break;
+			}
+		}
+
+		if ( id < 0 )
+		{
+			if ( m_knownStatesCount >= m_knownStates.length )
+			{
+				RenderState[] newKnownStates = new RenderState[ m_knownStates.length * 2 ];
+				System.arraycopy( m_knownStates, 0, newKnownStates, 0, m_knownStates.length );
+				m_knownStates = newKnownStates;
+			}
+			if ( m_knownStates[m_knownStatesCount] == null )
+			{
+				m_knownStates[m_knownStatesCount] = new RenderState();
+			}
+
+			id = m_knownStatesCount++;
+			m_knownStates[id].set( rs );
+		}
+
+		m_lastState = rs;
+		m_lastStateId = id;
+		return id;
+	}
+
+	/**
+	 * Moves the sorted commands up to the previous ones with the same render state,
+	 * if they don't overlap any of the commands they'd jump over.
+	 */
+	private void regroup()
+	{
+		for ( int i = 0; i < m_count; ++i )
+		{
+			m_regrouped[i] = false;
+		}
+
+		int regroupedCount = 0;
+		for ( int i = 0; i < m_count; ++i )
+		{
+			if ( m_regrouped[i] )
+			{
+				continue;
+			}
+			regroupedCount = appendRegrouped( i, regroupedCount );
+
+			int stateId = m_stateIds[ m_order[i] ];
+			int layer = (int)( m_keys[i] >>> LAYER_SHIFT );
+			int skippedCount = 0;
+			for ( int j = i + 1; j < m_count && skippedCount < REGROUP_WINDOW; ++j )
+			{
+				if ( m_regrouped[j] )
+				{
+					continue;
+				}
+				if ( (int)( m_keys[j] >>> LAYER_SHIFT ) != layer )
+				{
+					break;
+				}
+
+				if ( m_stateIds[ m_order[j] ] == stateId && !overlapsSkipped( m_order[j], skippedCount ) )
+				{
+					regroupedCount = appendRegrouped( j, regroupedCount );
+				}
+				else
+				{
+					m_skipped[skippedCount++] = m_order[j];
+				}
+			}
+		}
+
+		long[] keys = m_keys;
+		m_keys = m_regroupedKeys;
+		m_regroupedKeys = keys;
+
+		int[] order = m_order;
+		m_order = m_regroupedOrder;
+		m_regroupedOrder = order;
+	}
+
+	/**
+	 * Appends a sorted command to the regrouped ones.
+	 * 
+	 * @param idx				place of the command in the sorted order
+	 * @param regroupedCount	number of the commands regrouped so far
+	 * @return					new number of the regrouped commands
+	 */
+	private int appendRegrouped( int idx, int regroupedCount )
+	{
+		m_regroupedKeys[regroupedCount] = m_keys[idx];
+		m_regroupedOrder[regroupedCount] = m_order[idx];
+		m_regrouped[idx] = true;
+		return regroupedCount + 1;
+	}
+
+	/**
+	 * Checks if a command overlaps any of the skipped ones.
+	 * 
+	 * @param commandIdx
+	 * @param skippedCount
+	 * @return
+	 */
+	private boolean overlapsSkipped( int commandIdx, int skippedCount )
+	{
+		int boundsIdx = commandIdx * 4;
+		float minX = m_bounds[boundsIdx];
+		float minY = m_bounds[boundsIdx + 1];
+		float maxX = m_bounds[boundsIdx + 2];
+		float maxY = m_bounds[boundsIdx + 3];
+
+		for ( int i = 0; i < skippedCount; ++i )
+		{
+			int skippedBoundsIdx = m_skipped[i] * 4;
+			if ( minX < m_bounds[skippedBoundsIdx + 2] && maxX > m_bounds[skippedBoundsIdx] && minY < m_bounds[skippedBoundsIdx + 3] && maxY > m_bounds[skippedBoundsIdx + 1] )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Increases the number of commands the queue can store.
+	 */
+	private void growCommands()
+	{
+		int newLength = m_tags.length * 2;
+
+		int[] newTags = new int[newLength];
+		System.arraycopy( m_tags, 0, newTags, 0, m_count );
+		m_tags = newTags;
+
+		int[] newVertexOffsets = new int[newLength];
+		System.arraycopy( m_vertexOffsets, 0, newVertexOffsets, 0, m_count );
+		m_vertexOffsets = newVertexOffsets;
+
+		int[] newStateIds = new int[newLength];
+		System.arraycopy( m_stateIds, 0, newStateIds, 0, m_count );
+		m_stateIds = newStateIds;
+
+		long[] newKeys = new long[newLength];
+		System.arraycopy( m_keys, 0, newKeys, 0, m_count );
+		m_keys = newKeys;
+
+		int[] newOrder = new int[newLength];
+		System.arraycopy( m_order, 0, newOrder, 0, m_count );
+		m_order = newOrder;
+
+		float[] newBounds = new float[ newLength * 4 ];
+		System.arraycopy( m_bounds, 0, newBounds, 0, m_count * 4 );
+		m_bounds = newBounds;
+
+		m_regroupedKeys = new long[newLength];
+		m_regroupedOrder = new int[newLength];
+		m_regrouped = new boolean[newLength];
+	}
+}
@@ -1,7 +1,9 @@
 package com.hypefoundry.engine.renderer2D;
 
 import com.hypefoundry.engine.world.Entity;
+import com.hypefoundry.engine.world.EntityPositionInterpolator;
 import com.hypefoundry.engine.math.BoundingBox;
+import com.hypefoundry.engine.math.Vector3;
 import com.hypefoundry.engine.util.SpatialGridObject;
 
 
@@ -13,6 +15,8 @@ import com.hypefoundry.engine.util.SpatialGridObject;
 public abstract class EntityVisual implements SpatialGridObject
 {
 	protected Entity			m_entity = null;
+	private final Vector3		m_drawPosition = new Vector3();
+	StaticBatch					m_staticBatch = null;		// batch the visual is baked into
 	
 	/**
 	 * Constructor.
@@ -43,7 +47,62 @@ public abstract class EntityVisual implements SpatialGridObject
 	 * @param deltaTime
 	 */
 	public abstract void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime );
+	
+	/**
+	 * Tells if the visual always draws the same sprites. If it does, and its entity
+	 * isn't a DynamicObject, the renderer bakes the sprites into a static batch instead of 
+	 * drawing the visual every frame.
+	 * 
+	 * A static visual that changes its looks should call 'invalidateStaticBatch'.
+	 * 
+	 * @return
+	 */
+	public boolean isStatic()
+	{
+		return false;
+	}
+	
+	/**
+	 * Makes the renderer bake the static batch the visual belongs to again.
+	 */
+	protected final void invalidateStaticBatch()
+	{
+		if ( m_staticBatch != null )
+		{
+			m_staticBatch.invalidate();
+		}
+	}
 
+	/**
+	 * Returns the position at which the entity should be drawn in the current frame.
+	 * 
+	 * It's the entity's position, unless the renderer uses an interpolator - in which case 
+	 * it's the position interpolated between the two most recent simulation steps.
+	 * 
+	 * @return
+	 */
+	protected final Vector3 getDrawPosition()
+	{
+		return m_drawPosition;
+	}
+	
+	/**
+	 * Calculates the position the entity should be drawn at in the current frame.
+	 * 
+	 * @param interpolator		position interpolator, or null if the entity's position should be used
+	 */
+	final void updateDrawPosition( EntityPositionInterpolator interpolator )
+	{
+		if ( interpolator != null )
+		{
+			interpolator.getInterpolatedPosition( m_entity, m_drawPosition );
+		}
+		else
+		{
+			m_drawPosition.set( m_entity.getPosition() );
+		}
+	}
+	
 	/**
 	 * Returns the position in the Z buffer. 
 	 * 
@@ -57,6 +116,12 @@ public abstract class EntityVisual implements SpatialGridObject
 		return m_entity.getPosition().m_z;
 	}
 	
+	/**
+	 * Returns the bounds the renderer culls the visual with. By default, these are the bounds
+	 * of the entity - a visual that draws outside of them should override the method.
+	 * 
+	 * @return
+	 */
 	@Override
 	public BoundingBox getBounds()
 	{
@@ -5,10 +5,11 @@ package com.hypefoundry.engine.renderer2D;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.IntBuffer;
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
 
 import com.hypefoundry.engine.core.GLGraphics;
 
@@ -23,12 +24,17 @@ public class Geometry
 	public int						m_maxIndices;
 	private final GLGraphics 		m_graphics;
 	private final boolean 			m_hasColor;
+	private final boolean			m_packedColor;				// is the color stored as 4 bytes packed into a single float
 	private final boolean 			m_hasTexCoords;
 	private final int 				m_vertexSize;
-	private int[]					m_tmpBuffer;
-	private final IntBuffer 		m_vertices;
+	private final FloatBuffer 		m_vertices;
+	private int						m_verticesCount = 0;		// number of floats that make up the drawn vertices
 	private final ShortBuffer 		m_indices;
 	
+	// vertex buffer objects the geometry was uploaded to, if the device supports them
+	private final int[]				m_bufferIds = new int[2];
+	private GL11					m_bufferObjectsGL = null;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -40,24 +46,67 @@ public class Geometry
 	 */
 	public Geometry( GLGraphics graphics, int maxVertices, int maxIndices, boolean hasColor, boolean hasTexCoords ) 
 	{
-		m_maxVertices = maxVertices;
-		m_maxIndices = maxIndices;
-				
+		this( graphics, maxVertices, maxIndices, hasColor, hasTexCoords, false );
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param graphics
+	 * @param maxVertices
+	 * @param maxIndices
+	 * @param hasColor
+	 * @param hasTexCoords
+	 * @param packedColor		should the color be stored as RGBA8 bytes packed into a single float ( see Color.toPackedFloat )
+	 */
+	public Geometry( GLGraphics graphics, int maxVertices, int maxIndices, boolean hasColor, boolean hasTexCoords, boolean packedColor ) 
+	{
+		this( graphics, allocateVertices( maxVertices * getVertexSize( hasColor, hasTexCoords, packedColor ) / 4 ), maxIndices, hasColor, hasTexCoords, packedColor );
+	}
+	
+	/**
+	 * Constructor of a geometry that draws the vertices straight from an external buffer, 
+	 * without copying them. The buffer can be shared by several geometries.
+	 * 
+	 * Fill the buffer using the absolute 'put' methods and call 'setVerticesCount' before drawing.
+	 * 
+	 * @param graphics
+	 * @param vertices			a direct buffer in the native byte order - see 'allocateVertices'
+	 * @param maxIndices
+	 * @param hasColor
+	 * @param hasTexCoords
+	 */
+	public Geometry( GLGraphics graphics, FloatBuffer vertices, int maxIndices, boolean hasColor, boolean hasTexCoords ) 
+	{
+		this( graphics, vertices, maxIndices, hasColor, hasTexCoords, false );
+	}
+	
+	/**
+	 * Constructor of a geometry that draws the vertices straight from an external buffer.
+	 * 
+	 * @param graphics
+	 * @param vertices			a direct buffer in the native byte order - see 'allocateVertices'
+	 * @param maxIndices
+	 * @param hasColor
+	 * @param hasTexCoords
+	 * @param packedColor		should the color be stored as RGBA8 bytes packed into a single float ( see Color.toPackedFloat )
+	 */
+	public Geometry( GLGraphics graphics, FloatBuffer vertices, int maxIndices, boolean hasColor, boolean hasTexCoords, boolean packedColor ) 
+	{
 		m_graphics = graphics;
 		m_hasColor = hasColor;
+		m_packedColor = hasColor && packedColor;
 		m_hasTexCoords = hasTexCoords;
-		m_vertexSize = ( 2 + ( hasColor ? 4 : 0 ) + ( hasTexCoords ? 2 : 0 ) ) * 4;
+		m_vertexSize = getVertexSize( hasColor, hasTexCoords, m_packedColor );
 		
-		// allocate the vertex buffer
-		ByteBuffer buffer = ByteBuffer.allocateDirect( maxVertices * m_vertexSize );
-		buffer.order( ByteOrder.nativeOrder() );
-		m_vertices = buffer.asIntBuffer();
-		m_tmpBuffer = new int[ maxVertices * m_vertexSize / 4 ];
+		m_vertices = vertices;
+		m_maxVertices = vertices.capacity() * 4 / m_vertexSize;
+		m_maxIndices = maxIndices;
 		
 		// allocate the index buffer, if needed
 		if( maxIndices > 0 ) 
 		{
-			buffer = ByteBuffer.allocateDirect( maxIndices * Short.SIZE / 8 );
+			ByteBuffer buffer = ByteBuffer.allocateDirect( maxIndices * Short.SIZE / 8 );
 			buffer.order( ByteOrder.nativeOrder() );
 			m_indices = buffer.asShortBuffer();
 		} 
@@ -67,6 +116,48 @@ public class Geometry
 		}
 	}
 	
+	/**
+	 * Allocates a buffer the vertices can be drawn from.
+	 * 
+	 * @param floatsCount
+	 * @return
+	 */
+	public static FloatBuffer allocateVertices( int floatsCount )
+	{
+		ByteBuffer buffer = ByteBuffer.allocateDirect( floatsCount * 4 );
+		buffer.order( ByteOrder.nativeOrder() );
+		return buffer.asFloatBuffer();
+	}
+	
+	/**
+	 * Returns the size of a single vertex in bytes.
+	 * 
+	 * @param hasColor
+	 * @param hasTexCoords
+	 * @param packedColor
+	 * @return
+	 */
+	private static int getVertexSize( boolean hasColor, boolean hasTexCoords, boolean packedColor )
+	{
+		return ( 2 + getColorSize( hasColor, packedColor ) + ( hasTexCoords ? 2 : 0 ) ) * 4;
+	}
+	
+	/**
+	 * Returns the number of floats the color of a single vertex takes.
+	 * 
+	 * @param hasColor
+	 * @param packedColor
+	 * @return
+	 */
+	private static int getColorSize( boolean hasColor, boolean packedColor )
+	{
+		if ( !hasColor )
+		{
+			return 0;
+		}
+		return packedColor ? 1 : 4;
+	}
+	
 	/**
 	 * Set the geometry vertices
 	 * 
@@ -77,15 +168,19 @@ public class Geometry
 	public void setVertices( float[] vertices, int offset, int length )
 	{
 		m_vertices.clear();
-		
-		int len = offset + length;
-		for( int i = offset, j = 0; i < len; i++, j++ )
-		{
-			m_tmpBuffer[j] = Float.floatToRawIntBits( vertices[i] );
-		}
-		
-		m_vertices.put( m_tmpBuffer, 0, length );
-		m_vertices.flip();
+		m_vertices.put( vertices, offset, length );
+		m_verticesCount = length;
+	}
+	
+	/**
+	 * Sets the number of floats in the vertex buffer that should be drawn. Use it 
+	 * when the vertices were written into the buffer the geometry was created with.
+	 * 
+	 * @param length
+	 */
+	public void setVerticesCount( int length )
+	{
+		m_verticesCount = length;
 	}
 	
 	/**
@@ -102,19 +197,80 @@ public class Geometry
 		m_indices.flip();
 	}
 	
+	/**
+	 * Uploads the vertices and the indices to vertex buffer objects in the GPU memory,
+	 * if the device supports them ( GL11 ). Use it for the geometry that doesn't change -
+	 * the geometry will be drawn from the uploaded buffers until it's released.
+	 * 
+	 * @return		true if the geometry was uploaded, false if it's going to be drawn from the system memory
+	 */
+	public boolean upload()
+	{
+		release();
+		
+		GL10 gl = m_graphics.getGL();
+		if ( !( gl instanceof GL11 ) || m_verticesCount <= 0 )
+		{
+			return false;
+		}
+		
+		GL11 gl11 = (GL11)gl;
+		gl11.glGenBuffers( 2, m_bufferIds, 0 );
+		
+		m_vertices.position( 0 );
+		gl11.glBindBuffer( GL11.GL_ARRAY_BUFFER, m_bufferIds[0] );
+		gl11.glBufferData( GL11.GL_ARRAY_BUFFER, m_verticesCount * 4, m_vertices, GL11.GL_STATIC_DRAW );
+		gl11.glBindBuffer( GL11.GL_ARRAY_BUFFER, 0 );
+		
+		if ( m_indices != null )
+		{
+			m_indices.position( 0 );
+			gl11.glBindBuffer( GL11.GL_ELEMENT_ARRAY_BUFFER, m_bufferIds[1] );
+			gl11.glBufferData( GL11.GL_ELEMENT_ARRAY_BUFFER, m_indices.limit() * 2, m_indices, GL11.GL_STATIC_DRAW );
+			gl11.glBindBuffer( GL11.GL_ELEMENT_ARRAY_BUFFER, 0 );
+		}
+		
+		m_bufferObjectsGL = gl11;
+		return true;
+	}
+	
+	/**
+	 * Releases the vertex buffer objects the geometry was uploaded to.
+	 * 
+	 * If the GL context they were created in is gone, so are they - and they're simply forgotten.
+	 */
+	public void release()
+	{
+		if ( m_bufferObjectsGL == null )
+		{
+			return;
+		}
+		
+		if ( m_bufferObjectsGL == m_graphics.getGL() )
+		{
+			m_bufferObjectsGL.glDeleteBuffers( 2, m_bufferIds, 0 );
+		}
+		m_bufferObjectsGL = null;
+	}
+	
 	/**
 	 * Binds the geometry to the current device context before drawing.
 	 */
 	public void bind()
 	{
-		int verticesCount = m_vertices.limit();
-		if ( verticesCount <= 0 )
+		if ( m_verticesCount <= 0 )
 		{
 			return;
 		}
 		
 		GL10 gl = m_graphics.getGL();
 		
+		if ( m_bufferObjectsGL != null )
+		{
+			bindBufferObjects();
+			return;
+		}
+		
 		gl.glEnableClientState( GL10.GL_VERTEX_ARRAY );
 		m_vertices.position(0);
 		gl.glVertexPointer(2, GL10.GL_FLOAT, m_vertexSize, m_vertices);
@@ -123,13 +279,13 @@ public class Geometry
 		{
 			gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
 			m_vertices.position( 2 );
-			gl.glColorPointer( 4, GL10.GL_FLOAT, m_vertexSize, m_vertices );
+			gl.glColorPointer( 4, m_packedColor ? GL10.GL_UNSIGNED_BYTE : GL10.GL_FLOAT, m_vertexSize, m_vertices );
 		}
 		
 		if( m_hasTexCoords ) 
 		{
 			gl.glEnableClientState( GL10.GL_TEXTURE_COORD_ARRAY );
-			m_vertices.position( m_hasColor ? 6 : 2 );
+			m_vertices.position( 2 + getColorSize( m_hasColor, m_packedColor ) );
 			gl.glTexCoordPointer( 2, GL10.GL_FLOAT, m_vertexSize, m_vertices );
 		}
 	}
@@ -144,14 +300,20 @@ public class Geometry
 	 */
 	public void draw( int primitiveType, int offset, int numElements ) 
 	{
-		int verticesCount = m_vertices.limit();
-		if ( verticesCount <= 0 )
+		if ( m_verticesCount <= 0 )
 		{
 			return;
 		}
 		
 		GL10 gl = m_graphics.getGL();			
-		if( m_indices != null ) 
+		if( m_bufferObjectsGL != null && m_indices != null ) 
+		{
+			// the offset is specified in bytes
+			m_bufferObjectsGL.glBindBuffer( GL11.GL_ELEMENT_ARRAY_BUFFER, m_bufferIds[1] );
+			m_bufferObjectsGL.glDrawElements( primitiveType, numElements, GL10.GL_UNSIGNED_SHORT, offset * 2 );
+			m_bufferObjectsGL.glBindBuffer( GL11.GL_ELEMENT_ARRAY_BUFFER, 0 );
+		}
+		else if( m_indices != null ) 
 		{
 			m_indices.position( offset );
 			gl.glDrawElements( primitiveType, numElements, GL10.GL_UNSIGNED_SHORT, m_indices );
@@ -167,8 +329,7 @@ public class Geometry
 	 */
 	public void unbind()
 	{
-		int verticesCount = m_vertices.limit();
-		if ( verticesCount <= 0 )
+		if ( m_verticesCount <= 0 )
 		{
 			return;
 		}
@@ -184,5 +345,33 @@ public class Geometry
 			gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
 		}
 	}
+	
+	/**
+	 * Binds the vertex buffer objects the geometry was uploaded to.
+	 */
+	private void bindBufferObjects()
+	{
+		GL11 gl = m_bufferObjectsGL;
+		gl.glBindBuffer( GL11.GL_ARRAY_BUFFER, m_bufferIds[0] );
+		
+		// the offsets are specified in bytes
+		gl.glEnableClientState( GL10.GL_VERTEX_ARRAY );
+		gl.glVertexPointer( 2, GL10.GL_FLOAT, m_vertexSize, 0 );
+		
+		if( m_hasColor ) 
+		{
+			gl.glEnableClientState( GL10.GL_COLOR_ARRAY );
+			gl.glColorPointer( 4, m_packedColor ? GL10.GL_UNSIGNED_BYTE : GL10.GL_FLOAT, m_vertexSize, 2 * 4 );
+		}
+		
+		if( m_hasTexCoords ) 
+		{
+			gl.glEnableClientState( GL10.GL_TEXTURE_COORD_ARRAY );
+			gl.glTexCoordPointer( 2, GL10.GL_FLOAT, m_vertexSize, ( 2 + getColorSize( m_hasColor, m_packedColor ) ) * 4 );
+		}
+		
+		// the pointers remember the buffer they were set with
+		gl.glBindBuffer( GL11.GL_ARRAY_BUFFER, 0 );
+	}
 }
 
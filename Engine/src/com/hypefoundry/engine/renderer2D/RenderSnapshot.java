@@ -0,0 +1,34 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.renderer2D;
+
+import com.hypefoundry.engine.math.BoundingBox;
+
+
+/**
+ * Everything that's needed to draw a frame of the world, recorded by the simulation.
+ * 
+ * The sprites are stored with their transformed vertices, texture coordinates and colors, sorted
+ * in the order they should be drawn in. Once the snapshot is recorded, it doesn't reference the entities
+ * or the visuals in any way, so it can be drawn on the GL thread while the simulation thread
+ * works on the next frame.
+ * 
+ * @author Paksas
+ *
+ */
+final class RenderSnapshot
+{
+	final DrawQueue				m_queue;
+	final BoundingBox			m_frustum = new BoundingBox();		// camera frustum the snapshot was recorded with
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity		number of sprites the snapshot can store before it needs to grow its storage
+	 */
+	RenderSnapshot( int initialCapacity )
+	{
+		m_queue = new DrawQueue( initialCapacity, SpriteBatcher.COLORED_SPRITE_FLOATS );
+	}
+}
@@ -68,6 +68,16 @@ public class RenderState
 		return true;
 	}
 	
+	/**
+	 * Checks if the render state uses the stencil buffer.
+	 * 
+	 * @return
+	 */
+	boolean usesStencil()
+	{
+		return m_stencilOp != null && m_stencilOp != StencilOp.SO_None;
+	}
+	
 	/**
 	 * Clears the render state.
 	 */
@@ -7,14 +7,20 @@ import javax.microedition.khronos.opengles.GL10;
 import android.util.Log;
 
 import com.hypefoundry.engine.core.GLGraphics;
+import com.hypefoundry.engine.game.Updatable;
 import com.hypefoundry.engine.world.Entity;
+import com.hypefoundry.engine.world.EntityPositionInterpolator;
 import com.hypefoundry.engine.game.Game;
+import com.hypefoundry.engine.math.BoundingBox;
 import com.hypefoundry.engine.world.World;
 import com.hypefoundry.engine.world.WorldView;
 import com.hypefoundry.engine.physics.DynamicObject;
+import com.hypefoundry.engine.util.DoubleBuffer;
+import com.hypefoundry.engine.util.FrameProfiler;
 import com.hypefoundry.engine.util.GenericFactory;
+import com.hypefoundry.engine.util.IdIndexedArray;
 import com.hypefoundry.engine.util.SpatialGrid2D;
-import com.hypefoundry.engine.util.Arrays;
+import com.hypefoundry.engine.util.DepthSort;
 
 // TODO sorting by distance from the screen
 
@@ -23,37 +29,55 @@ import com.hypefoundry.engine.util.Arrays;
 /**
  * An operation that renders the world contents.
  * 
+ * By default, the visuals are drawn straight from the entities when the renderer draws. The renderer 
+ * can also be switched to draw the render snapshots - the renderer is then registered as an updatable, 
+ * records a snapshot of what the visuals draw every time it's updated, and draws the most 
+ * recent snapshot. It allows the simulation to run on a different thread than the rendering.
+ * 
  * @author paksas
  *
  */
-public class Renderer2D extends GenericFactory< Entity, EntityVisual > implements WorldView
+public class Renderer2D extends GenericFactory< Entity, EntityVisual > implements WorldView, Updatable
 {
-	private final int							MAX_SPRITES = 512;			// TODO: config
-	private final short							MAX_ENTITIES = 512;			// TODO: config
+	public static final int						DEFAULT_MAX_SPRITES = 512;
+	public static final int						DEFAULT_CULLING_LEVELS = 4;
+	private final int							INITIAL_ENTITIES_CAPACITY = 512;	// TODO: config
 	private final float							PIXELS_TO_METERS = 0.01f;	// TODO: config								
 	private float 								VIEWPORT_WIDTH;
 	private float 								VIEWPORT_HEIGHT;
 	
 	private GLGraphics 							m_graphics;
-	private List< Entity >						m_entitiesToAdd;
-	private List< Entity >						m_entitiesToRemove;
+	private IdIndexedArray< Entity >			m_entitiesToAdd;			// indexed with the entity ids
+	private int[]								m_entitiesToRemove;			// ids of the removed entities
+	private int									m_entitiesToRemoveCount = 0;
 	private SpatialGrid2D						m_visualsGrid;
-	private List< EntityVisual >				m_visuals;
+	private int									m_cullingLevelsCount = DEFAULT_CULLING_LEVELS;
+	private IdIndexedArray< EntityVisual >		m_visuals;					// indexed with the entity ids
 	private SpriteBatcher						m_batcher = null;
 	private boolean								m_additiveMode = false;
+	private EntityPositionInterpolator			m_interpolator = null;
+	private boolean								m_drawQueueEnabled = true;
+	private StaticBatch							m_staticBatch = null;
+	private IdIndexedArray< EntityVisual >		m_staticVisuals;			// visuals baked into the static batch, indexed with the entity ids
+	private boolean								m_staticBatchingEnabled = true;
+	
+	// render snapshots - recorded by the simulation thread, drawn by the GL thread
+	private DoubleBuffer< RenderSnapshot >		m_snapshots = null;
+	private SpriteBatcher						m_recorder = null;
 	
-	private EntityVisual[]						m_queryResult = new EntityVisual[MAX_ENTITIES];
+	// statistics of the last frame
+	private int									m_drawCallsCount = 0;
+	private int									m_flushesCount = 0;
+	private int									m_overflowFlushesCount = 0;
+	private int									m_peakBatchSize = 0;
+	private int									m_drawnVisualsCount = 0;
+	private int									m_culledVisualsCount = 0;
+	
+	private EntityVisual[]						m_queryResult = new EntityVisual[INITIAL_ENTITIES_CAPACITY];
+	private float[]								m_queryDepths = new float[INITIAL_ENTITIES_CAPACITY];
+	private DepthSort							m_depthSort = new DepthSort( INITIAL_ENTITIES_CAPACITY );
 	
 	private Camera2D							m_camera = null;
-	private Comparator< EntityVisual >			m_comparator = new Comparator< EntityVisual >()
-			{
-				@Override
-				public int compare( EntityVisual arg0, EntityVisual arg1 ) 
-				{
-					return (int) (arg1.getZ() - arg0.getZ());
-				}
-		
-			};
 	
 	/**
 	 * Constructor.
@@ -63,24 +87,40 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 	 * @param desiredViewportHeight
 	 */
 	public Renderer2D( Game game, int desiredViewportWidth, int desiredViewportHeight )
+	{
+		this( game, desiredViewportWidth, desiredViewportHeight, DEFAULT_MAX_SPRITES );
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param game
+	 * @param desiredViewportWidth
+	 * @param desiredViewportHeight
+	 * @param maxSprites				number of sprites the renderer can draw in a single batch
+	 */
+	public Renderer2D( Game game, int desiredViewportWidth, int desiredViewportHeight, int maxSprites )
 	{
 		VIEWPORT_WIDTH = (float)desiredViewportWidth * PIXELS_TO_METERS;
 		VIEWPORT_HEIGHT = (float)desiredViewportHeight * PIXELS_TO_METERS;
 		m_graphics = game.getGraphics();
 		
-		m_entitiesToAdd = new ArrayList< Entity >();
-		m_entitiesToRemove = new ArrayList< Entity >();
+		m_entitiesToAdd = new IdIndexedArray< Entity >( INITIAL_ENTITIES_CAPACITY );
+		m_entitiesToRemove = new int[INITIAL_ENTITIES_CAPACITY];
 		
-		m_batcher = new SpriteBatcher( m_graphics, MAX_SPRITES );
+		m_batcher = new SpriteBatcher( m_graphics, maxSprites );
 		m_camera = new Camera2D( m_graphics, desiredViewportWidth, desiredViewportHeight, PIXELS_TO_METERS );
-		m_visuals = new ArrayList< EntityVisual >( MAX_ENTITIES );
+		m_visuals = new IdIndexedArray< EntityVisual >( INITIAL_ENTITIES_CAPACITY );
+		m_staticVisuals = new IdIndexedArray< EntityVisual >( INITIAL_ENTITIES_CAPACITY );
+		m_staticBatch = new StaticBatch( m_graphics );
 	}
 	
 	@Override
 	public void onAttached( World world )
 	{
+		// the largest cells match the viewport, the smaller ones let us find the small visuals more precisely
 		float cellSize = ( VIEWPORT_HEIGHT < VIEWPORT_WIDTH ) ? VIEWPORT_HEIGHT : VIEWPORT_WIDTH; 
-		m_visualsGrid = new SpatialGrid2D( world.getWidth(), world.getHeight(), cellSize, MAX_ENTITIES );
+		m_visualsGrid = new SpatialGrid2D( world.getWidth(), world.getHeight(), cellSize, m_cullingLevelsCount, INITIAL_ENTITIES_CAPACITY );
 	}
 	
 	@Override
@@ -112,12 +152,94 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 			return;
 		}
 		
+		FrameProfiler.begin( FrameProfiler.SECTION_RENDERER );
+		
+		if ( m_snapshots != null )
+		{
+			drawSnapshot();
+			FrameProfiler.end( FrameProfiler.SECTION_RENDERER );
+			return;
+		}
+		
 		// manage the incoming and outgoing entities
 		manageEntities();
 		
 		// update the grid
 		m_visualsGrid.update();
 		
+		// set the render state
+		beginFrame();
+		m_camera.setViewportAndMatrices();
+		
+		// draw the visuals, sorting them first in their Z order		
+		int count = m_visualsGrid.getPotentialColliders( m_camera.getFrustum(), m_queryResult );
+		count = cullVisuals( count );
+		updateCullingStatistics( count, m_visualsGrid.getObjectsCount() );
+		for ( int i = 0; i < count; ++i )
+		{
+			m_queryDepths[i] = m_queryResult[i].getZ();
+		}
+		m_depthSort.sort( m_queryResult, m_queryDepths, count );
+		
+		// the previous frame might've shown that the batch is too small
+		m_batcher.updateCapacity();
+		m_batcher.resetStatistics();
+		if ( !m_staticBatch.isValid() )
+		{
+			bakeStaticVisuals();
+		}
+		
+		if ( m_drawQueueEnabled )
+		{
+			// the sprites of the visuals that share the same depth will be grouped by their render states
+			m_batcher.beginQueue();
+		}
+		
+		int staticRunsCount = m_staticBatch.getRunsCount();
+		int staticRunIdx = 0;
+		for ( int i = 0; i < count; ++i )
+		{
+			EntityVisual visual = m_queryResult[i];
+			visual.updateDrawPosition( m_interpolator );
+			
+			// draw the static sprites that lie behind the visual
+			float z = visual.getZ();
+			for ( ; staticRunIdx < staticRunsCount && m_staticBatch.getRunDepth( staticRunIdx ) >= z; ++staticRunIdx )
+			{
+				m_batcher.drawStaticBatch( m_staticBatch, staticRunIdx );
+			}
+			
+			m_batcher.setLayer( 0 );
+			m_batcher.setDepth( visual.getZ() );
+			visual.draw( m_batcher, m_camera, deltaTime );
+		}
+		
+		for ( ; staticRunIdx < staticRunsCount; ++staticRunIdx )
+		{
+			m_batcher.drawStaticBatch( m_staticBatch, staticRunIdx );
+		}
+		
+		if ( m_drawQueueEnabled )
+		{
+			m_batcher.endQueue();
+		}
+		
+		// flush the batcher
+		m_batcher.flush();
+		
+		m_drawCallsCount = m_batcher.getDrawCallsCount();
+		m_flushesCount = m_batcher.getFlushesCount();
+		m_overflowFlushesCount = m_batcher.getOverflowFlushesCount();
+		m_peakBatchSize = m_batcher.getPeakBatchSize();
+		
+		FrameProfiler.end( FrameProfiler.SECTION_RENDERER );
+	}
+	
+	/**
+	 * Clears the buffers and sets the render state every frame starts with.
+	 */
+	private void beginFrame()
+	{
 		GL10 gl = m_graphics.getGL();
 		
 		// clear the buffers
@@ -133,22 +255,316 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 		// reset the texture matrix
 		gl.glMatrixMode( GL10.GL_TEXTURE );
 		gl.glLoadIdentity();
-
-		// set the render state
-		m_camera.setViewportAndMatrices();
+		
 		gl.glDisable( GL10.GL_DEPTH_TEST );
+	}
+	
+	// ------------------------------------------------------------------------
+	// Render snapshots
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Enables/disables drawing the render snapshots. 
+	 * 
+	 * When it's enabled, the renderer needs to be registered as an updatable that runs after everything
+	 * the visuals depend on. The snapshots contain only the sprites - the meshes and the splines
+	 * aren't drawn, and the static visuals are drawn as regular ones.
+	 * 
+	 * @param enable
+	 */
+	public void setSnapshotsEnabled( boolean enable )
+	{
+		if ( enable && m_snapshots == null )
+		{
+			m_snapshots = new DoubleBuffer< RenderSnapshot >( new RenderSnapshot( INITIAL_ENTITIES_CAPACITY ), new RenderSnapshot( INITIAL_ENTITIES_CAPACITY ) );
+			m_recorder = new SpriteBatcher( m_graphics, 1 );
+		}
+		else if ( !enable )
+		{
+			m_snapshots = null;
+			m_recorder = null;
+		}
+	}
+	
+	/**
+	 * Records a render snapshot, if the snapshots are enabled.
+	 * 
+	 * Doesn't make any GL calls, so it can be called on a different thread than the one that draws. 
+	 * 
+	 * @param deltaTime
+	 */
+	@Override
+	public void update( float deltaTime )
+	{
+		if ( m_snapshots == null || m_visualsGrid == null )
+		{
+			return;
+		}
 		
-		// draw the visuals, sorting them first in their Z order		
-		int count = m_visualsGrid.getPotentialColliders( m_camera.getFrustum(), m_queryResult );
-		Arrays.quickSort( m_queryResult, count, m_comparator );
+		// manage the incoming and outgoing entities
+		manageEntities();
+		
+		// update the grid
+		m_visualsGrid.update();
+		
+		// waits if the GL thread still draws the snapshot that's about to be overwritten
+		RenderSnapshot snapshot = m_snapshots.beginWrite();
+		
+		m_camera.updateFrustum();
+		snapshot.m_frustum.set( m_camera.getFrustum() );
 		
+		// record the visuals - the snapshot will sort them by their depths
+		m_recorder.beginSnapshot( snapshot );
+		int count = m_visualsGrid.getPotentialColliders( m_camera.getFrustum(), m_queryResult );
+		count = cullVisuals( count );
 		for ( int i = 0; i < count; ++i )
 		{
-			m_queryResult[i].draw( m_batcher, m_camera, deltaTime );
+			recordVisual( m_queryResult[i], deltaTime );
 		}
 		
-		// flush the batcher
+		// the static visuals aren't stored in the grid
+		BoundingBox frustum = m_camera.getFrustum();
+		int drawnCount = count;
+		int staticVisualsCount = m_staticVisuals.size();
+		for ( int i = 0; i < staticVisualsCount; ++i )
+		{
+			EntityVisual visual = m_staticVisuals.getAt( i );
+			if ( frustum.doesOverlap( visual.getBounds(), null ) )
+			{
+				recordVisual( visual, deltaTime );
+				++drawnCount;
+			}
+		}
+		m_recorder.endSnapshot();
+		updateCullingStatistics( drawnCount, m_visualsGrid.getObjectsCount() + staticVisualsCount );
+		
+		m_snapshots.endWrite();
+	}
+	
+	/**
+	 * Records the sprites of a visual.
+	 * 
+	 * @param visual
+	 * @param deltaTime
+	 */
+	private void recordVisual( EntityVisual visual, float deltaTime )
+	{
+		visual.updateDrawPosition( m_interpolator );
+		
+		m_recorder.setLayer( 0 );
+		m_recorder.setDepth( visual.getZ() );
+		visual.draw( m_recorder, m_camera, deltaTime );
+	}
+	
+	/**
+	 * Draws the most recently recorded render snapshot.
+	 */
+	private void drawSnapshot()
+	{
+		RenderSnapshot snapshot = m_snapshots.acquire();
+		if ( snapshot == null )
+		{
+			// nothing's been recorded yet
+			return;
+		}
+		
+		beginFrame();
+		m_camera.setViewportAndMatrices( snapshot.m_frustum );
+		
+		m_batcher.updateCapacity();
+		m_batcher.resetStatistics();
+		m_batcher.drawSnapshot( snapshot );
 		m_batcher.flush();
+		
+		m_snapshots.release();
+		
+		m_drawCallsCount = m_batcher.getDrawCallsCount();
+		m_flushesCount = m_batcher.getFlushesCount();
+		m_overflowFlushesCount = m_batcher.getOverflowFlushesCount();
+		m_peakBatchSize = m_batcher.getPeakBatchSize();
+	}
+	
+	// ------------------------------------------------------------------------
+	// Culling
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Sets the number of levels of the grid the visuals are culled with. Each level has cells
+	 * half the size of the previous one, and the largest cells match the viewport size.
+	 * 
+	 * Affects only the worlds the view is attached to afterwards.
+	 * 
+	 * @param levelsCount
+	 */
+	public void setCullingLevelsCount( int levelsCount )
+	{
+		m_cullingLevelsCount = levelsCount;
+	}
+	
+	/**
+	 * Removes the visuals the bounds of which lie outside the camera frustum from the grid query results.
+	 * 
+	 * @param count		number of the visuals the query found
+	 * @return			number of the visible visuals
+	 */
+	private int cullVisuals( int count )
+	{
+		BoundingBox frustum = m_camera.getFrustum();
+		
+		int visibleCount = 0;
+		for ( int i = 0; i < count; ++i )
+		{
+			EntityVisual visual = m_queryResult[i];
+			if ( frustum.doesOverlap( visual.getBounds(), null ) )
+			{
+				m_queryResult[visibleCount++] = visual;
+			}
+		}
+		
+		return visibleCount;
+	}
+	
+	/**
+	 * Memorizes how many visuals were drawn and how many were culled.
+	 * 
+	 * @param drawnCount
+	 * @param visualsCount			number of the visuals that could've been drawn
+	 */
+	private void updateCullingStatistics( int drawnCount, int visualsCount )
+	{
+		m_drawnVisualsCount = drawnCount;
+		m_culledVisualsCount = visualsCount - drawnCount;
+		
+		FrameProfiler.count( FrameProfiler.COUNTER_VISUALS_DRAWN, m_drawnVisualsCount );
+		FrameProfiler.count( FrameProfiler.COUNTER_VISUALS_CULLED, m_culledVisualsCount );
+	}
+	
+	/**
+	 * Returns the number of visuals drawn during the last frame. The visuals baked into
+	 * the static batch aren't culled, and so they aren't counted.
+	 * 
+	 * @return
+	 */
+	public int getDrawnVisualsCount()
+	{
+		return m_drawnVisualsCount;
+	}
+	
+	/**
+	 * Returns the number of visuals that weren't drawn during the last frame, because they lay outside
+	 * the camera frustum.
+	 * 
+	 * @return
+	 */
+	public int getCulledVisualsCount()
+	{
+		return m_culledVisualsCount;
+	}
+	
+	/**
+	 * Enables/disables baking the static visuals into a static batch. 
+	 * 
+	 * Affects only the visuals added to the view afterwards.
+	 * 
+	 * @param enable
+	 */
+	public void setStaticBatchingEnabled( boolean enable )
+	{
+		m_staticBatchingEnabled = enable;
+	}
+	
+	/**
+	 * Bakes the sprites of the static visuals.
+	 */
+	private void bakeStaticVisuals()
+	{
+		m_batcher.beginStaticBatch( m_staticBatch );
+		
+		int count = m_staticVisuals.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			EntityVisual visual = m_staticVisuals.getAt( i );
+			visual.updateDrawPosition( null );
+			
+			m_batcher.setLayer( 0 );
+			m_batcher.setDepth( visual.getZ() );
+			visual.draw( m_batcher, m_camera, 0 );
+		}
+		
+		m_batcher.endStaticBatch();
+	}
+	
+	/**
+	 * Enables/disables growing the sprites batch between the frames, when it turns out to be too small.
+	 * 
+	 * @param enable
+	 */
+	public void setBatchGrowthEnabled( boolean enable )
+	{
+		m_batcher.setGrowthEnabled( enable );
+	}
+	
+	/**
+	 * Enables/disables sorting the drawn sprites by their render states.
+	 * 
+	 * @param enable
+	 */
+	public void setDrawQueueEnabled( boolean enable )
+	{
+		m_drawQueueEnabled = enable;
+	}
+	
+	/**
+	 * Returns the number of draw calls issued during the last frame.
+	 * 
+	 * @return
+	 */
+	public int getDrawCallsCount()
+	{
+		return m_drawCallsCount;
+	}
+	
+	/**
+	 * Returns the number of times the sprites batch was flushed during the last frame.
+	 * 
+	 * @return
+	 */
+	public int getFlushesCount()
+	{
+		return m_flushesCount;
+	}
+	
+	/**
+	 * Returns the number of times the sprites batch was flushed during the last frame because it was full.
+	 * 
+	 * @return
+	 */
+	public int getOverflowFlushesCount()
+	{
+		return m_overflowFlushesCount;
+	}
+	
+	/**
+	 * Returns the size of the largest sprites batch drawn during the last frame.
+	 * 
+	 * @return
+	 */
+	public int getPeakBatchSize()
+	{
+		return m_peakBatchSize;
+	}
+	
+	/**
+	 * Sets the source of the interpolated entity positions the visuals 
+	 * can access with 'EntityVisual.getDrawPosition'.
+	 * 
+	 * Use it with a physics simulation that runs in fixed time steps.
+	 * 
+	 * @param interpolator		interpolator, or null to draw the entities at their actual positions
+	 */
+	public void setPositionInterpolator( EntityPositionInterpolator interpolator )
+	{
+		m_interpolator = interpolator;
 	}
 	
 	/**
@@ -171,15 +587,23 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 	@Override
 	public void onEntityAdded( Entity entity )
 	{
-		m_entitiesToRemove.remove( entity );
-		m_entitiesToAdd.add( entity );
+		m_entitiesToAdd.put( entity.getWorldId(), entity );
 	}
 
 	@Override
 	public void onEntityRemoved( Entity entity ) 
 	{
-		m_entitiesToAdd.remove( entity );
-		m_entitiesToRemove.add( entity );
+		m_entitiesToAdd.remove( entity.getWorldId() );
+		
+		// memorize the id - the world will release it as soon as this call returns, so by the time 
+		// we get to remove the visual, the entity will no longer have it
+		if ( m_entitiesToRemoveCount >= m_entitiesToRemove.length )
+		{
+			int[] newEntitiesToRemove = new int[ m_entitiesToRemove.length * 2 ];
+			System.arraycopy( m_entitiesToRemove, 0, newEntitiesToRemove, 0, m_entitiesToRemoveCount );
+			m_entitiesToRemove = newEntitiesToRemove;
+		}
+		m_entitiesToRemove[ m_entitiesToRemoveCount++ ] = entity.getWorldId();
 	}
 	
 	/**
@@ -187,17 +611,16 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 	 */
 	private void manageEntities()
 	{
-		int count = m_entitiesToRemove.size();
-		for ( int i = 0; i < count; ++i )
+		for ( int i = 0; i < m_entitiesToRemoveCount; ++i )
 		{
-			detachEntity( m_entitiesToRemove.get(i) );
+			detachEntity( m_entitiesToRemove[i] );
 		}
-		m_entitiesToRemove.clear();
+		m_entitiesToRemoveCount = 0;
 		
-		count = m_entitiesToAdd.size();
+		int count = m_entitiesToAdd.size();
 		for ( int i = 0; i < count; ++i )
 		{
-			attachEntity( m_entitiesToAdd.get(i) );
+			attachEntity( m_entitiesToAdd.getAt(i) );
 		}
 		m_entitiesToAdd.clear();
 	}
@@ -209,6 +632,12 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 	 */
 	private void attachEntity( Entity entity )
 	{
+		if ( entity.getWorldId() < 0 )
+		{
+			// the entity's no longer in the world
+			return;
+		}
+		
 		EntityVisual visual = findVisualFor( entity );
 		if ( visual != null )
 		{
@@ -225,11 +654,25 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 			{
 				m_visualsGrid.insertDynamicObject( visual );
 			}
+			else if ( m_staticBatchingEnabled && visual.isStatic() )
+			{
+				// the visual will be baked together with the other static visuals
+				m_staticVisuals.put( entity.getWorldId(), visual );
+				visual.m_staticBatch = m_staticBatch;
+				m_staticBatch.invalidate();
+			}
 			else
 			{
 				m_visualsGrid.insertStaticObject( visual );
 			}
-			m_visuals.add( visual );
+			m_visuals.put( entity.getWorldId(), visual );
+			
+			// make sure a grid query can always return all the visuals
+			if ( m_visuals.size() > m_queryResult.length )
+			{
+				m_queryResult = new EntityVisual[ m_queryResult.length * 2 ];
+				m_queryDepths = new float[ m_queryResult.length ];
+			}
 		}
 		catch( IndexOutOfBoundsException e )
 		{
@@ -239,19 +682,26 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 	}
 	
 	/**
-	 * Actual removal of the entity and its representation from the view.
+	 * Actual removal of the entity's representation from the view.
 	 * 
-	 * @param entity
+	 * @param entityId		id the removed entity had in the world
 	 */
-	private void detachEntity( Entity entity )
+	private void detachEntity( int entityId )
 	{
-		EntityVisual visual = findVisualFor( entity );
+		EntityVisual visual = m_visuals.remove( entityId );
 		if ( visual != null )
 		{
 			visual.onRemoved();
 			
-			m_visualsGrid.removeObject( visual );
-			m_visuals.remove( visual );
+			if ( m_staticVisuals.remove( entityId ) != null )
+			{
+				visual.m_staticBatch = null;
+				m_staticBatch.invalidate();
+			}
+			else
+			{
+				m_visualsGrid.removeObject( visual );
+			}
 		}
 	}
 	
@@ -263,14 +713,10 @@ public class Renderer2D extends GenericFactory< Entity, EntityVisual > implement
 	 */
 	private EntityVisual findVisualFor( Entity entity )
 	{
-		int count = m_visuals.size();
-		for ( int i = 0; i < count; ++i )
+		EntityVisual visual = m_visuals.get( entity.getWorldId() );
+		if ( visual != null && visual.isVisualOf( entity ) )
 		{
-			EntityVisual visual = m_visuals.get(i);
-			if ( visual.isVisualOf( entity ) )
-			{
-				return visual;
-			}
+			return visual;
 		}
 		
 		return null;
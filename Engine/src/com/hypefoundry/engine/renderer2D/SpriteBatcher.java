@@ -3,13 +3,17 @@
  */
 package com.hypefoundry.engine.renderer2D;
 
+import java.nio.FloatBuffer;
+
 import javax.microedition.khronos.opengles.GL10;
 
 import android.util.FloatMath;
+import android.util.Log;
 
 import com.hypefoundry.engine.core.GLGraphics;
 import com.hypefoundry.engine.math.BoundingBox;
 import com.hypefoundry.engine.math.Vector3;
+import com.hypefoundry.engine.util.FrameProfiler;
 
 
 /**
@@ -27,15 +31,29 @@ public class SpriteBatcher
 		ColoredSprites,
 		External
 	};
+	
+	private static final DrawItem[]	DRAW_ITEMS = DrawItem.values();
+	
+	// number of floats a single sprite occupies in the vertex buffer - the colored sprites
+	// store their colors packed into a single float per vertex
+	static final int				SPRITE_FLOATS = 4 * 4;
+	static final int				COLORED_SPRITE_FLOATS = 4 * 5;
+	private static final int		LINE_FLOATS = 2 * 6;
+	
+	// sprite vertices are indexed with shorts
+	public static final int			MAX_CAPACITY = 65536 / 4;
 			
 	public GLGraphics			m_graphics;
 	private GL10				m_gl;
-	private final float[] 		m_verticesBuffer;
+	private FloatBuffer 		m_verticesBuffer;
 	private int 				m_bufferIndex;
+	private FloatBuffer			m_batchVertices;			// shared by all geometries, which draw straight from it
+	private int					m_maxSprites;
+	private boolean				m_growthEnabled = false;
 	
-	private final Geometry		m_coloredGeometry;
-	private final Geometry 		m_geometry;
-	private final Geometry 		m_lines;
+	private Geometry			m_coloredGeometry;
+	private Geometry 			m_geometry;
+	private Geometry 			m_lines;
 	
 	private int 				m_numColoredSprites;
 	private int 				m_numSprites;
@@ -44,6 +62,27 @@ public class SpriteBatcher
 	private DrawItem			m_currentDrawItem = DrawItem.Lines;
 	private RenderState			m_currRenderState = new RenderState();
 	
+	// sprites queue - while it's active, the sprites are written to the queue instead of the batch
+	private final DrawQueue		m_queue;
+	private boolean				m_queueActive = false;
+	
+	// static batch the sprites are being recorded for
+	private StaticBatch			m_recordedBatch = null;
+	private DrawQueue			m_recordingQueue = null;
+	private DrawQueue			m_spriteQueue = null;		// queue the sprite that's being drawn goes to
+	private int					m_spriteOffset;
+	private boolean				m_queuingSprite = false;
+	private int					m_batchBufferIndex;
+	
+	// statistics
+	private int					m_drawCallsCount = 0;
+	private int					m_flushesCount = 0;
+	private int					m_overflowFlushesCount = 0;
+	private int					m_peakBatchSize = 0;
+	private int					m_peakDemand = 0;			// the largest batch that would've been drawn if the buffer was big enough
+	private int					m_overflowedSize = 0;		// size of the batches flushed because the buffer was full, since the last regular flush
+	private boolean				m_overflowing = false;
+	
 	
 	/**
 	 * Constructor.
@@ -53,24 +92,44 @@ public class SpriteBatcher
 	 * if we need to differentiate the maximum number of sprites and lines. Right
 	 * now we're using the same value for both.
 	 * 
+	 * Once the batch is full, it's flushed - so the capacity affects the number of draw calls
+	 * rather than what can be drawn.
+	 * 
 	 * @param graphics
-	 * @param maxSprites
+	 * @param maxSprites		number of sprites a single batch can hold, up to MAX_CAPACITY
 	 */
 	public SpriteBatcher( GLGraphics graphics, int maxSprites ) 
 	{	
 		m_graphics = graphics;
 		m_gl = graphics.getGL();
 		
-		m_verticesBuffer = new float[ maxSprites * 4 * 4 ];
-		m_coloredGeometry = new Geometry( graphics, maxSprites * 4, maxSprites*6, true, true );
-		m_geometry = new Geometry( graphics, maxSprites * 4, maxSprites*6, false, true );
-		m_lines = new Geometry( graphics, maxSprites * 2, 0, true, false );
-		
 		m_bufferIndex = 0;
 		m_numColoredSprites = 0;
 		m_numSprites = 0;
 		m_numLines = 0;
 		
+		allocateBatch( maxSprites );
+		
+		m_queue = new DrawQueue( m_maxSprites, 4 * 4 );
+	}
+	
+	/**
+	 * Allocates the buffers the batch is drawn from.
+	 * 
+	 * @param maxSprites
+	 */
+	private void allocateBatch( int maxSprites )
+	{
+		m_maxSprites = maxSprites < 1 ? 1 : ( maxSprites > MAX_CAPACITY ? MAX_CAPACITY : maxSprites );
+		maxSprites = m_maxSprites;
+		
+		// the colored sprites take the most room
+		m_batchVertices = Geometry.allocateVertices( maxSprites * COLORED_SPRITE_FLOATS );
+		m_verticesBuffer = m_batchVertices;
+		m_coloredGeometry = new Geometry( m_graphics, m_batchVertices, maxSprites*6, true, true, true );
+		m_geometry = new Geometry( m_graphics, m_batchVertices, maxSprites*6, false, true );
+		m_lines = new Geometry( m_graphics, m_batchVertices, 0, true, false );
+		
 		// allocate the index buffer
 		short[] indices = new short[ maxSprites * 6 ];
 		int len = indices.length;
@@ -88,21 +147,273 @@ public class SpriteBatcher
 		m_geometry.setIndices( indices, 0, indices.length );
 	}
 	
+	/**
+	 * Returns the number of sprites a single batch can hold.
+	 * 
+	 * @return
+	 */
+	public int getCapacity()
+	{
+		return m_maxSprites;
+	}
+	
+	/**
+	 * Enables/disables growing the batch. When it's enabled, 'updateCapacity' reallocates
+	 * the batch, so that it can hold the largest batch drawn since the statistics were last reset.
+	 * 
+	 * @param enable
+	 */
+	public void setGrowthEnabled( boolean enable )
+	{
+		m_growthEnabled = enable;
+	}
+	
+	/**
+	 * Grows the batch if it turned out to be too small since the statistics were last reset
+	 * and the growth is enabled.
+	 * 
+	 * The batch is reallocated, so call it between the frames.
+	 */
+	public void updateCapacity()
+	{
+		if ( !m_growthEnabled || m_peakDemand <= m_maxSprites || m_maxSprites >= MAX_CAPACITY )
+		{
+			return;
+		}
+		
+		// draw whatever's left in the old batch
+		drawQueue();
+		flush();
+		
+		int newCapacity = m_maxSprites;
+		while ( newCapacity < m_peakDemand )
+		{
+			newCapacity *= 2;
+		}
+		Log.d( "SpriteBatcher", "Growing the batch from " + m_maxSprites + " to " + Math.min( newCapacity, MAX_CAPACITY ) + " sprites" );
+		allocateBatch( newCapacity );
+	}
+	
+	/**
+	 * Starts queuing the sprites. The queued sprites are drawn sorted by the layer, 
+	 * the depth and the render state once the queue is ended.
+	 * 
+	 * Anything that isn't a sprite ( meshes, splines ) and the sprites that use the stencil buffer
+	 * can't be reordered - they're drawn right away, after everything that's been queued before them.
+	 */
+	public void beginQueue()
+	{
+		m_queueActive = true;
+	}
+	
+	/**
+	 * Draws all queued sprites and stops queuing.
+	 */
+	public void endQueue()
+	{
+		drawQueue();
+		m_queueActive = false;
+	}
+	
+	/**
+	 * Sets the layer the subsequently queued sprites will be drawn on.
+	 * 
+	 * @param layer			value from the range <0, DrawQueue.MAX_LAYER>
+	 */
+	public void setLayer( int layer )
+	{
+		( m_recordingQueue != null ? m_recordingQueue : m_queue ).setLayer( layer );
+	}
+	
+	/**
+	 * Sets the depth the subsequently queued sprites will be drawn at.
+	 * 
+	 * @param z
+	 */
+	public void setDepth( float z )
+	{
+		( m_recordingQueue != null ? m_recordingQueue : m_queue ).setDepth( z );
+	}
+	
+	/**
+	 * Starts recording the sprites that should be baked into a static batch. Until the recording 
+	 * ends, nothing is drawn.
+	 * 
+	 * Only the sprites can be baked - the meshes and the splines drawn during the recording are ignored.
+	 * 
+	 * @param batch
+	 */
+	public void beginStaticBatch( StaticBatch batch )
+	{
+		m_recordedBatch = batch;
+		m_recordingQueue = batch.beginRecording();
+	}
+	
+	/**
+	 * Bakes the recorded sprites into the static batch.
+	 */
+	public void endStaticBatch()
+	{
+		m_recordedBatch.bake( DrawItem.ColoredSprites.ordinal() );
+		m_recordedBatch = null;
+		m_recordingQueue = null;
+	}
+	
+	/**
+	 * Starts recording the sprites into a render snapshot, which can be drawn later on - possibly 
+	 * by a different batcher, on a different thread. Until the recording ends, nothing is drawn
+	 * and no GL calls are made.
+	 * 
+	 * Only the sprites can be recorded - the meshes, the splines and the static batches drawn during 
+	 * the recording are ignored.
+	 * 
+	 * @param snapshot
+	 */
+	void beginSnapshot( RenderSnapshot snapshot )
+	{
+		m_recordingQueue = snapshot.m_queue;
+		m_recordingQueue.clear();
+	}
+	
+	/**
+	 * Finishes recording the render snapshot.
+	 */
+	void endSnapshot()
+	{
+		// sort the sprites right away, so that the thread that draws them doesn't have to
+		m_recordingQueue.sort();
+		m_recordingQueue = null;
+	}
+	
+	/**
+	 * Draws the sprites recorded in a render snapshot, after everything that's been drawn before it.
+	 * 
+	 * The snapshot isn't modified, so it can be drawn again.
+	 * 
+	 * @param snapshot
+	 */
+	void drawSnapshot( RenderSnapshot snapshot )
+	{
+		drawQueue();
+		drawSortedQueue( snapshot.m_queue );
+	}
+	
+	/**
+	 * Draws a run of sprites baked into a static batch, after everything that's been drawn before it.
+	 * 
+	 * @param batch
+	 * @param runIdx
+	 */
+	public void drawStaticBatch( StaticBatch batch, int runIdx )
+	{
+		if ( m_recordingQueue != null )
+		{
+			Log.d( "SpriteBatcher", "Static batches can't be recorded" );
+			return;
+		}
+		
+		// the run can't be reordered - draw everything that's been queued before
+		drawQueue();
+		
+		// we'll be drawing external geometry now, so flush the buffer if something else was drawn before
+		switchTo( DrawItem.External );
+		
+		// set the render state
+		setRenderState( batch.getRunState( runIdx ) );
+		
+		batch.drawRun( runIdx );
+		onDrawCall();
+	}
+	
+	/**
+	 * Returns the number of draw calls issued since the statistics were last reset.
+	 * 
+	 * @return
+	 */
+	public int getDrawCallsCount()
+	{
+		return m_drawCallsCount;
+	}
+	
+	/**
+	 * Returns the number of times the batch was flushed since the statistics were last reset.
+	 * 
+	 * @return
+	 */
+	public int getFlushesCount()
+	{
+		return m_flushesCount;
+	}
+	
+	/**
+	 * Returns the number of times the batch was flushed because it was full, since the statistics were last reset.
+	 * 
+	 * @return
+	 */
+	public int getOverflowFlushesCount()
+	{
+		return m_overflowFlushesCount;
+	}
+	
+	/**
+	 * Returns the size of the largest batch drawn since the statistics were last reset.
+	 * 
+	 * @return			number of sprites ( or lines )
+	 */
+	public int getPeakBatchSize()
+	{
+		return m_peakBatchSize;
+	}
+	
+	/**
+	 * Resets the statistics.
+	 */
+	public void resetStatistics()
+	{
+		m_drawCallsCount = 0;
+		m_flushesCount = 0;
+		m_overflowFlushesCount = 0;
+		m_peakBatchSize = 0;
+		m_peakDemand = 0;
+	}
+	
 	/**
 	 * Flushes the batch.
 	 */
 	public void flush()
 	{	
+		FrameProfiler.begin( FrameProfiler.SECTION_FLUSH );
+		FrameProfiler.count( FrameProfiler.COUNTER_FLUSHES, 1 );
+		FrameProfiler.count( FrameProfiler.COUNTER_SPRITES, m_numSprites + m_numColoredSprites );
+		++m_flushesCount;
+		
+		// those are mutually exclusive, so only one of them is set
+		int batchSize = m_numColoredSprites + m_numSprites + m_numLines;
+		if ( batchSize > m_peakBatchSize )
+		{
+			m_peakBatchSize = batchSize;
+		}
+		m_overflowedSize += batchSize;
+		if ( !m_overflowing && batchSize > 0 )
+		{
+			if ( m_overflowedSize > m_peakDemand )
+			{
+				m_peakDemand = m_overflowedSize;
+			}
+			m_overflowedSize = 0;
+		}
+		
 		// draw what's in the sprites buffer
 		if ( m_numColoredSprites > 0 )
 		{
 			assert( m_numSprites == 0 ); // those are mutually exclusive
 			assert( m_numLines == 0 ); // those are mutually exclusive
 			
-			m_coloredGeometry.setVertices( m_verticesBuffer, 0, m_bufferIndex );
+			m_coloredGeometry.setVerticesCount( m_bufferIndex );
 			m_coloredGeometry.bind();
 			m_coloredGeometry.draw( GL10.GL_TRIANGLES, 0, m_numColoredSprites * 6 );
 			m_coloredGeometry.unbind();
+			onDrawCall();
 			
 			m_numColoredSprites = 0;
 		}
@@ -113,10 +424,11 @@ public class SpriteBatcher
 			assert( m_numLines == 0 ); // those are mutually exclusive
 			assert( m_numColoredSprites == 0 ); // those are mutually exclusive
 			
-			m_geometry.setVertices( m_verticesBuffer, 0, m_bufferIndex );
+			m_geometry.setVerticesCount( m_bufferIndex );
 			m_geometry.bind();
 			m_geometry.draw( GL10.GL_TRIANGLES, 0, m_numSprites * 6 );
 			m_geometry.unbind();
+			onDrawCall();
 			
 			m_numSprites = 0;
 		}
@@ -127,10 +439,11 @@ public class SpriteBatcher
 			assert( m_numSprites == 0 ); // those are mutually exclusive
 			assert( m_numColoredSprites == 0 ); // those are mutually exclusive
 			
-			m_lines.setVertices( m_verticesBuffer, 0, m_bufferIndex );
+			m_lines.setVerticesCount( m_bufferIndex );
 			m_lines.bind();
 			m_lines.draw( GL10.GL_LINES, 0, m_numLines * 2 );
 			m_lines.unbind();
+			onDrawCall();
 			
 			m_numLines = 0;
 		}
@@ -139,6 +452,29 @@ public class SpriteBatcher
 		
 		// clear the render state
 		m_currRenderState.clear();
+		
+		FrameProfiler.end( FrameProfiler.SECTION_FLUSH );
+	}
+	
+	/**
+	 * Counts an issued draw call.
+	 */
+	private void onDrawCall()
+	{
+		++m_drawCallsCount;
+		FrameProfiler.count( FrameProfiler.COUNTER_DRAW_CALLS, 1 );
+	}
+	
+	/**
+	 * Flushes the batch because it's full.
+	 */
+	private void flushOverflow()
+	{
+		++m_overflowFlushesCount;
+		
+		m_overflowing = true;
+		flush();
+		m_overflowing = false;
 	}
 	
 	/**
@@ -149,13 +485,23 @@ public class SpriteBatcher
 	 */
 	public void drawMesh( Mesh mesh, RenderState rs )
 	{		
-		// we'll be drawing lines now, so flush the buffer if something else was drawn before
+		if ( m_recordingQueue != null )
+		{
+			Log.d( "SpriteBatcher", "Meshes can't be recorded" );
+			return;
+		}
+		
+		// meshes can't be reordered - draw everything that's been queued before
+		drawQueue();
+		
+		// we'll be drawing a mesh now, so flush the buffer if something else was drawn before
 		switchTo( DrawItem.External );
 		
 		// set the render state
 		setRenderState( rs );
 		
 		mesh.draw();
+		onDrawCall();
 	}
 	
 	/**
@@ -175,6 +521,15 @@ public class SpriteBatcher
 			return;
 		}
 		
+		if ( m_recordingQueue != null )
+		{
+			Log.d( "SpriteBatcher", "Splines can't be recorded" );
+			return;
+		}
+		
+		// lines can't be reordered - draw everything that's been queued before
+		drawQueue();
+		
 		// we'll be drawing lines now, so flush the buffer if something else was drawn before
 		switchTo( DrawItem.Lines );
 		
@@ -184,25 +539,32 @@ public class SpriteBatcher
 		// draw the spline
 		for ( int i = 0; i < count; ++i )
 		{
+			if ( m_bufferIndex + LINE_FLOATS > m_verticesBuffer.capacity() )
+			{
+				// the batch is full - flushing it clears the render state
+				flushOverflow();
+				setRenderState( rs );
+			}
+			
 			// line start point
 			Vector3 pt = spline.m_points[i];
 			Color color = spline.m_colors[i];
-			m_verticesBuffer[ m_bufferIndex++ ] = pt.m_x + x;
-			m_verticesBuffer[ m_bufferIndex++ ] = pt.m_y + y;
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Red ];
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Green ];
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Blue ];
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Alpha ];
+			m_verticesBuffer.put( m_bufferIndex++, pt.m_x + x );
+			m_verticesBuffer.put( m_bufferIndex++, pt.m_y + y );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Red ] );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Green ] );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Blue ] );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Alpha ] );
 			
 			// line end point
 			pt = spline.m_points[i + 1];
 			color = spline.m_colors[i + 1];
-			m_verticesBuffer[ m_bufferIndex++ ] = pt.m_x + x;
-			m_verticesBuffer[ m_bufferIndex++ ] = pt.m_y + y;
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Red ];
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Green ];
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Blue ];
-			m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Alpha ];
+			m_verticesBuffer.put( m_bufferIndex++, pt.m_x + x );
+			m_verticesBuffer.put( m_bufferIndex++, pt.m_y + y );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Red ] );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Green ] );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Blue ] );
+			m_verticesBuffer.put( m_bufferIndex++, color.m_vals[ Color.Alpha ] );
 			
 			++m_numLines;
 		}
@@ -217,34 +579,31 @@ public class SpriteBatcher
 	 */
 	public void drawSprite( Vector3 pos, BoundingBox bb, TextureRegion region ) 
 	{
-		// we'll be drawing sprites now, so flush the buffer if something else was drawn before
-		switchTo( DrawItem.Sprites );
-		
-		// set the render state
-		setRenderState( region.m_renderState );
+		// we'll be drawing sprites now - the sprite's either queued, or goes straight to the batch
+		beginSprite( DrawItem.Sprites, region.m_renderState );
 		
 		float x1 = pos.m_x + bb.m_minX;
 		float y1 = pos.m_y + bb.m_minY;
 		float x2 = pos.m_x + bb.m_maxX;
 		float y2 = pos.m_y + bb.m_maxY;
 		
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_numSprites++;
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		endSprite();
 	}
 	
 	/**
@@ -257,11 +616,8 @@ public class SpriteBatcher
 	 */
 	public void drawSprite( Vector3 pos, BoundingBox bb, float angle, TextureRegion region ) 
 	{
-		// we'll be drawing sprites now, so flush the buffer if something else was drawn before
-		switchTo( DrawItem.Sprites );
-		
-		// set the render state
-		setRenderState( region.m_renderState );
+		// we'll be drawing sprites now - the sprite's either queued, or goes straight to the batch
+		beginSprite( DrawItem.Sprites, region.m_renderState );
 		
 		// add the new sprite to the batcher
 		double rad = angle * Vector3.TO_RADIANS;
@@ -294,24 +650,24 @@ public class SpriteBatcher
 		x4 += pos.m_x;
 		y4 += pos.m_y;
 		
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)x3;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)y3;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)x4;
-		m_verticesBuffer[ m_bufferIndex++ ] = (float)y4;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
+		m_verticesBuffer.put( m_bufferIndex++, (float)x1 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)x2 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)x3 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)y3 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)x4 );
+		m_verticesBuffer.put( m_bufferIndex++, (float)y4 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
 		
-		m_numSprites++;
+		endSprite();
 	}
 	
 	/**
@@ -325,11 +681,8 @@ public class SpriteBatcher
 	 */
 	public void drawSprite( float x, float y, float width, float height, TextureRegion region ) 
 	{
-		// we'll be drawing sprites now, so flush the buffer if something else was drawn before
-		switchTo( DrawItem.Sprites );
-		
-		// set the render state
-		setRenderState( region.m_renderState );
+		// we'll be drawing sprites now - the sprite's either queued, or goes straight to the batch
+		beginSprite( DrawItem.Sprites, region.m_renderState );
 						
 		// add the new sprite to the batcher
 		float halfWidth = width / 2;
@@ -340,23 +693,23 @@ public class SpriteBatcher
 		float x2 = x + halfWidth;
 		float y2 = y + halfHeight;
 		
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_numSprites++;
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		endSprite();
 	}
 	
 	/**
@@ -371,11 +724,8 @@ public class SpriteBatcher
 	 */
 	public void drawSprite( float x, float y, float width, float height, float angle, TextureRegion region ) 
 	{
-		// we'll be drawing sprites now, so flush the buffer if something else was drawn before
-		switchTo( DrawItem.Sprites );
-		
-		// set the render state
-		setRenderState( region.m_renderState );
+		// we'll be drawing sprites now - the sprite's either queued, or goes straight to the batch
+		beginSprite( DrawItem.Sprites, region.m_renderState );
 		
 		// add the new sprite to the batcher
 		float halfWidth = width / 2;
@@ -401,24 +751,24 @@ public class SpriteBatcher
 		x4 += x;
 		y4 += y;
 		
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x3;
-		m_verticesBuffer[ m_bufferIndex++ ] = y3;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_verticesBuffer[ m_bufferIndex++ ] = x4;
-		m_verticesBuffer[ m_bufferIndex++ ] = y4;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x3 );
+		m_verticesBuffer.put( m_bufferIndex++, y3 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		m_verticesBuffer.put( m_bufferIndex++, x4 );
+		m_verticesBuffer.put( m_bufferIndex++, y4 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
 		
-		m_numSprites++;
+		endSprite();
 	}
 	
 	/**
@@ -434,11 +784,8 @@ public class SpriteBatcher
 	 */
 	public void drawSprite( float x, float y, float width, float height, float angle, TextureRegion region, Color color ) 
 	{
-		// we'll be drawing sprites now, so flush the buffer if something else was drawn before
-		switchTo( DrawItem.ColoredSprites );
-		
-		// set the render state
-		setRenderState( region.m_renderState );
+		// we'll be drawing sprites now - the sprite's either queued, or goes straight to the batch
+		beginSprite( DrawItem.ColoredSprites, region.m_renderState );
 		
 		// add the new sprite to the batcher
 		float halfWidth = width / 2;
@@ -464,43 +811,33 @@ public class SpriteBatcher
 		x4 += x;
 		y4 += y;
 		
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Red ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Green ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Blue ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Alpha ];
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Red ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Green ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Blue ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Alpha ];
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		
-		m_verticesBuffer[ m_bufferIndex++ ] = x3;
-		m_verticesBuffer[ m_bufferIndex++ ] = y3;
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Red ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Green ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Blue ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Alpha ];
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		
-		m_verticesBuffer[ m_bufferIndex++ ] = x4;
-		m_verticesBuffer[ m_bufferIndex++ ] = y4;
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Red ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Green ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Blue ];
-		m_verticesBuffer[ m_bufferIndex++ ] = color.m_vals[ Color.Alpha ];
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		
-		m_numColoredSprites++;
+		float packedColor = color.toPackedFloat();
+		
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, packedColor );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, packedColor );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		
+		m_verticesBuffer.put( m_bufferIndex++, x3 );
+		m_verticesBuffer.put( m_bufferIndex++, y3 );
+		m_verticesBuffer.put( m_bufferIndex++, packedColor );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		
+		m_verticesBuffer.put( m_bufferIndex++, x4 );
+		m_verticesBuffer.put( m_bufferIndex++, y4 );
+		m_verticesBuffer.put( m_bufferIndex++, packedColor );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		
+		endSprite();
 	}
 	
 	/**
@@ -517,11 +854,8 @@ public class SpriteBatcher
 	 */
 	public void drawUnalignedSprite( float x, float y, float width, float height, TextureRegion region ) 
 	{
-		// we'll be drawing sprites now, so flush the buffer if something else was drawn before
-		switchTo( DrawItem.Sprites );
-		
-		// set the render state
-		setRenderState( region.m_renderState );
+		// we'll be drawing sprites now - the sprite's either queued, or goes straight to the batch
+		beginSprite( DrawItem.Sprites, region.m_renderState );
 						
 		// add the new sprite to the batcher	
 		float x1 = x;
@@ -529,23 +863,204 @@ public class SpriteBatcher
 		float x2 = x + width;
 		float y2 = y + height;
 		
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v2;
-		m_verticesBuffer[ m_bufferIndex++ ] = x2;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u2;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_verticesBuffer[ m_bufferIndex++ ] = x1;
-		m_verticesBuffer[ m_bufferIndex++ ] = y1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_u1;
-		m_verticesBuffer[ m_bufferIndex++ ] = region.m_v1;
-		m_numSprites++;
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v2 );
+		m_verticesBuffer.put( m_bufferIndex++, x2 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u2 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		m_verticesBuffer.put( m_bufferIndex++, x1 );
+		m_verticesBuffer.put( m_bufferIndex++, y1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_u1 );
+		m_verticesBuffer.put( m_bufferIndex++, region.m_v1 );
+		endSprite();
+	}
+	
+	/**
+	 * Prepares for drawing a sprite.
+	 * 
+	 * If the queue is active, the sprite's vertices are redirected to the queue, otherwise
+	 * they go straight to the batch.
+	 * 
+	 * @param item
+	 * @param rs
+	 */
+	private void beginSprite( DrawItem item, RenderState rs )
+	{
+		if ( m_recordingQueue != null )
+		{
+			queueSprite( m_recordingQueue, item, rs );
+			return;
+		}
+		
+		if ( m_queueActive )
+		{
+			if ( !rs.usesStencil() )
+			{
+				queueSprite( m_queue, item, rs );
+				return;
+			}
+			
+			// stencil operations depend on the drawing order - draw everything that's been queued before
+			drawQueue();
+		}
+		
+		switchTo( item );
+		if ( isBatchFull() )
+		{
+			flushOverflow();
+		}
+		setRenderState( rs );
+	}
+	
+	/**
+	 * Checks if there's no room left for another sprite in the batch.
+	 * 
+	 * @return
+	 */
+	private boolean isBatchFull()
+	{
+		return m_numSprites + m_numColoredSprites >= m_maxSprites;
+	}
+	
+	/**
+	 * Redirects the vertices of the sprite that's being drawn to a queue.
+	 * 
+	 * @param queue
+	 * @param item
+	 * @param rs
+	 */
+	private void queueSprite( DrawQueue queue, DrawItem item, RenderState rs )
+	{
+		int offset = queue.add( item.ordinal(), rs, getFloatsCount( item ) );
+		
+		m_batchBufferIndex = m_bufferIndex;
+		m_verticesBuffer = queue.getVertices();
+		m_bufferIndex = offset;
+		m_spriteQueue = queue;
+		m_spriteOffset = offset;
+		m_queuingSprite = true;
+	}
+	
+	/**
+	 * Finishes drawing a sprite.
+	 */
+	private void endSprite()
+	{
+		if ( m_queuingSprite )
+		{
+			// let the queue know which part of the screen the sprite covers, so that it can
+			// regroup it with the sprites at the other depths. The runs of a static batch are drawn in between
+			// the visuals by their depths though, so its sprites need to stay sorted by the depth
+			if ( m_recordedBatch == null )
+			{
+				setQueuedSpriteBounds();
+			}
+			m_spriteQueue = null;
+			
+			// restore the batch
+			m_verticesBuffer = m_batchVertices;
+			m_bufferIndex = m_batchBufferIndex;
+			m_queuingSprite = false;
+		}
+		else if ( m_currentDrawItem == DrawItem.ColoredSprites )
+		{
+			++m_numColoredSprites;
+		}
+		else
+		{
+			++m_numSprites;
+		}
+	}
+	
+	/**
+	 * Passes the screen bounds of the queued sprite that's just been drawn to its queue.
+	 */
+	private void setQueuedSpriteBounds()
+	{
+		// sprites are quads, and each vertex starts with its position
+		float[] vertices = m_verticesBuffer.array();
+		int stride = ( m_bufferIndex - m_spriteOffset ) / 4;
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for ( int i = m_spriteOffset; i < m_bufferIndex; i += stride )
+		{
+			minX = Math.min( minX, vertices[i] );
+			minY = Math.min( minY, vertices[i + 1] );
+			maxX = Math.max( maxX, vertices[i] );
+			maxY = Math.max( maxY, vertices[i + 1] );
+		}
+		m_spriteQueue.setBounds( minX, minY, maxX, maxY );
+	}
+	
+	/**
+	 * Draws the queued sprites in the order the queue sorts them in, and clears the queue.
+	 */
+	private void drawQueue()
+	{
+		if ( m_queue.size() == 0 )
+		{
+			return;
+		}
+		
+		m_queue.sort();
+		drawSortedQueue( m_queue );
+		m_queue.clear();
+	}
+	
+	/**
+	 * Draws the sprites stored in a sorted queue.
+	 * 
+	 * @param queue
+	 */
+	private void drawSortedQueue( DrawQueue queue )
+	{
+		int count = queue.size();
+		float[] vertices = queue.getVertices().array();
+		for ( int i = 0; i < count; ++i )
+		{
+			int cmdIdx = queue.getCommandAt( i );
+			DrawItem item = DRAW_ITEMS[ queue.getTag( cmdIdx ) ];
+			int floatsCount = getFloatsCount( item );
+			
+			switchTo( item );
+			if ( isBatchFull() )
+			{
+				flushOverflow();
+			}
+			setRenderState( queue.getRenderState( cmdIdx ) );
+			
+			m_verticesBuffer.position( m_bufferIndex );
+			m_verticesBuffer.put( vertices, queue.getVertexOffset( cmdIdx ), floatsCount );
+			m_bufferIndex += floatsCount;
+			if ( item == DrawItem.ColoredSprites )
+			{
+				++m_numColoredSprites;
+			}
+			else
+			{
+				++m_numSprites;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of floats a single sprite of the specified type occupies in the vertex buffer.
+	 * 
+	 * @param item
+	 * @return
+	 */
+	private static int getFloatsCount( DrawItem item )
+	{
+		return item == DrawItem.ColoredSprites ? COLORED_SPRITE_FLOATS : SPRITE_FLOATS;
 	}
 	
 	/**
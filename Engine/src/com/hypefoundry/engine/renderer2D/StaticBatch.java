@@ -0,0 +1,346 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.renderer2D;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.util.Log;
+
+import com.hypefoundry.engine.core.GLGraphics;
+
+
+/**
+ * Sprites of the visuals that don't change, baked into geometry that's
+ * kept between the frames.
+ * 
+ * The sprites are sorted the same way the DrawQueue sorts them, and the ones that share
+ * the layer, the depth and the render state are merged into runs - each run is drawn
+ * with a single draw call. The geometry is uploaded to the vertex buffer objects
+ * if the device supports them, otherwise it's drawn from a buffer in the system memory.
+ * 
+ * The batch needs to be baked again once it's invalidated, or once the GL context
+ * it was baked in is gone.
+ * 
+ * @author Paksas
+ *
+ */
+public final class StaticBatch
+{
+	// sprite vertices are indexed with shorts
+	private static final int		MAX_SPRITES = 65536 / 4;
+
+	private final GLGraphics		m_graphics;
+	private final DrawQueue			m_queue;
+	private boolean					m_valid = false;
+	private GL10					m_bakedGL = null;
+
+	private Geometry				m_geometry = null;
+	private Geometry				m_coloredGeometry = null;
+
+	// runs of sprites that are drawn together
+	private Geometry[]				m_runGeometries;
+	private RenderState[]			m_runStates;
+	private float[]					m_runDepths;
+	private int[]					m_runFirstSprites;
+	private int[]					m_runSpritesCounts;
+	private int						m_runsCount = 0;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param graphics
+	 */
+	public StaticBatch( GLGraphics graphics )
+	{
+		m_graphics = graphics;
+		m_queue = new DrawQueue( 64, 4 * 4 );
+
+		final int initialRunsCount = 8;
+		m_runGeometries = new Geometry[initialRunsCount];
+		m_runStates = new RenderState[initialRunsCount];
+		m_runDepths = new float[initialRunsCount];
+		m_runFirstSprites = new int[initialRunsCount];
+		m_runSpritesCounts = new int[initialRunsCount];
+	}
+
+	/**
+	 * Marks the batch as one that needs to be baked again.
+	 */
+	public void invalidate()
+	{
+		m_valid = false;
+	}
+
+	/**
+	 * Checks if the baked geometry can be drawn.
+	 * 
+	 * @return
+	 */
+	public boolean isValid()
+	{
+		return m_valid && m_bakedGL == m_graphics.getGL();
+	}
+
+	/**
+	 * Returns the number of runs the sprites were merged into.
+	 * 
+	 * @return
+	 */
+	public int getRunsCount()
+	{
+		return m_runsCount;
+	}
+
+	/**
+	 * Returns the depth the sprites of the specified run are drawn at. The runs
+	 * are ordered from the farthest to the nearest one.
+	 * 
+	 * @param runIdx
+	 * @return
+	 */
+	public float getRunDepth( int runIdx )
+	{
+		return m_runDepths[runIdx];
+	}
+
+	/**
+	 * Returns the number of sprites in the specified run.
+	 * 
+	 * @param runIdx
+	 * @return
+	 */
+	public int getRunSpritesCount( int runIdx )
+	{
+		return m_runSpritesCounts[runIdx];
+	}
+
+	/**
+	 * Releases the baked geometry.
+	 */
+	public void release()
+	{
+		if ( m_geometry != null )
+		{
+			m_geometry.release();
+			m_geometry = null;
+		}
+		if ( m_coloredGeometry != null )
+		{
+			m_coloredGeometry.release();
+			m_coloredGeometry = null;
+		}
+
+		for ( int i = 0; i < m_runsCount; ++i )
+		{
+			m_runGeometries[i] = null;
+			m_runStates[i] = null;
+		}
+		m_runsCount = 0;
+		m_valid = false;
+	}
+
+	/**
+	 * Prepares the queue the baked sprites should be recorded in.
+	 * 
+	 * @return
+	 */
+	DrawQueue beginRecording()
+	{
+		m_queue.clear();
+		return m_queue;
+	}
+
+	/**
+	 * Bakes the recorded sprites.
+	 * 
+	 * @param coloredSpritesTag		tag of the queued commands that contain the colored sprites
+	 */
+	void bake( int coloredSpritesTag )
+	{
+		release();
+
+		m_queue.sort();
+		int count = m_queue.size();
+
+		int spritesCount = 0;
+		int coloredSpritesCount = 0;
+		for ( int i = 0; i < count; ++i )
+		{
+			if ( m_queue.getTag( i ) == coloredSpritesTag )
+			{
+				++coloredSpritesCount;
+			}
+			else
+			{
+				++spritesCount;
+			}
+		}
+		if ( spritesCount > MAX_SPRITES || coloredSpritesCount > MAX_SPRITES )
+		{
+			Log.d( "StaticBatch", "Too many static sprites - only " + MAX_SPRITES + " of each kind will be drawn" );
+			spritesCount = Math.min( spritesCount, MAX_SPRITES );
+			coloredSpritesCount = Math.min( coloredSpritesCount, MAX_SPRITES );
+		}
+
+		float[] vertices = spritesCount > 0 ? new float[ spritesCount * SpriteBatcher.SPRITE_FLOATS ] : null;
+		float[] coloredVertices = coloredSpritesCount > 0 ? new float[ coloredSpritesCount * SpriteBatcher.COLORED_SPRITE_FLOATS ] : null;
+		m_geometry = spritesCount > 0 ? new Geometry( m_graphics, spritesCount * 4, spritesCount * 6, false, true ) : null;
+		m_coloredGeometry = coloredSpritesCount > 0 ? new Geometry( m_graphics, coloredSpritesCount * 4, coloredSpritesCount * 6, true, true, true ) : null;
+
+		// copy the vertices in the drawing order, merging the sprites into runs
+		float[] queuedVertices = m_queue.getVertices().array();
+		int spriteIdx = 0;
+		int coloredSpriteIdx = 0;
+		int runLayer = -1;
+		for ( int i = 0; i < count; ++i )
+		{
+			int cmdIdx = m_queue.getCommandAt( i );
+			boolean colored = m_queue.getTag( cmdIdx ) == coloredSpritesTag;
+			Geometry geometry = colored ? m_coloredGeometry : m_geometry;
+			int firstSprite = colored ? coloredSpriteIdx : spriteIdx;
+			if ( firstSprite >= MAX_SPRITES )
+			{
+				continue;
+			}
+
+			if ( colored )
+			{
+				System.arraycopy( queuedVertices, m_queue.getVertexOffset( cmdIdx ), coloredVertices, coloredSpriteIdx * SpriteBatcher.COLORED_SPRITE_FLOATS, SpriteBatcher.COLORED_SPRITE_FLOATS );
+				++coloredSpriteIdx;
+			}
+			else
+			{
+				System.arraycopy( queuedVertices, m_queue.getVertexOffset( cmdIdx ), vertices, spriteIdx * SpriteBatcher.SPRITE_FLOATS, SpriteBatcher.SPRITE_FLOATS );
+				++spriteIdx;
+			}
+
+			int layer = m_queue.getLayerAt( i );
+			float depth = m_queue.getDepthAt( i );
+			RenderState rs = m_queue.getRenderState( cmdIdx );
+			int lastRun = m_runsCount - 1;
+			if ( lastRun >= 0 && runLayer == layer && m_runDepths[lastRun] == depth && m_runGeometries[lastRun] == geometry && m_runStates[lastRun].equals( rs ) )
+			{
+				++m_runSpritesCounts[lastRun];
+			}
+			else
+			{
+				addRun( geometry, rs, depth, firstSprite );
+				runLayer = layer;
+			}
+		}
+
+		if ( m_geometry != null )
+		{
+			m_geometry.setVertices( vertices, 0, vertices.length );
+			m_geometry.setIndices( createIndices( spritesCount ), 0, spritesCount * 6 );
+			m_geometry.upload();
+		}
+		if ( m_coloredGeometry != null )
+		{
+			m_coloredGeometry.setVertices( coloredVertices, 0, coloredVertices.length );
+			m_coloredGeometry.setIndices( createIndices( coloredSpritesCount ), 0, coloredSpritesCount * 6 );
+			m_coloredGeometry.upload();
+		}
+
+		// the recorded sprites are no longer needed
+		m_queue.clear();
+
+		m_bakedGL = m_graphics.getGL();
+		m_valid = true;
+	}
+
+	/**
+	 * Returns the render state the specified run is drawn with.
+	 * 
+	 * @param runIdx
+	 * @return
+	 */
+	RenderState getRunState( int runIdx )
+	{
+		return m_runStates[runIdx];
+	}
+
+	/**
+	 * Draws the specified run. The render state needs to be set beforehand.
+	 * 
+	 * @param runIdx
+	 */
+	void drawRun( int runIdx )
+	{
+		Geometry geometry = m_runGeometries[runIdx];
+		geometry.bind();
+		geometry.draw( GL10.GL_TRIANGLES, m_runFirstSprites[runIdx] * 6, m_runSpritesCounts[runIdx] * 6 );
+		geometry.unbind();
+	}
+
+	/**
+	 * Starts a new run of sprites.
+	 * 
+	 * @param geometry
+	 * @param rs
+	 * @param depth
+	 * @param firstSprite
+	 */
+	private void addRun( Geometry geometry, RenderState rs, float depth, int firstSprite )
+	{
+		if ( m_runsCount >= m_runGeometries.length )
+		{
+			int newLength = m_runGeometries.length * 2;
+
+			Geometry[] newRunGeometries = new Geometry[newLength];
+			System.arraycopy( m_runGeometries, 0, newRunGeometries, 0, m_runsCount );
+			m_runGeometries = newRunGeometries;
+
+			RenderState[] newRunStates = new RenderState[newLength];
+			System.arraycopy( m_runStates, 0, newRunStates, 0, m_runsCount );
+			m_runStates = newRunStates;
+
+			float[] newRunDepths = new float[newLength];
+			System.arraycopy( m_runDepths, 0, newRunDepths, 0, m_runsCount );
+			m_runDepths = newRunDepths;
+
+			int[] newRunFirstSprites = new int[newLength];
+			System.arraycopy( m_runFirstSprites, 0, newRunFirstSprites, 0, m_runsCount );
+			m_runFirstSprites = newRunFirstSprites;
+
+			int[] newRunSpritesCounts = new int[newLength];
+			System.arraycopy( m_runSpritesCounts, 0, newRunSpritesCounts, 0, m_runsCount );
+			m_runSpritesCounts = newRunSpritesCounts;
+		}
+
+		// the queue reuses its render states, so the run needs its own copy
+		RenderState runState = new RenderState();
+		runState.set( rs );
+
+		m_runGeometries[m_runsCount] = geometry;
+		m_runStates[m_runsCount] = runState;
+		m_runDepths[m_runsCount] = depth;
+		m_runFirstSprites[m_runsCount] = firstSprite;
+		m_runSpritesCounts[m_runsCount] = 1;
+		++m_runsCount;
+	}
+
+	/**
+	 * Creates the indices of the specified number of sprites.
+	 * 
+	 * @param spritesCount
+	 * @return
+	 */
+	private static short[] createIndices( int spritesCount )
+	{
+		short[] indices = new short[ spritesCount * 6 ];
+		int len = indices.length;
+		int j = 0;
+		for ( int i = 0; i < len; i += 6, j += 4 )
+		{
+			indices[i + 0] = (short)(j + 0);
+			indices[i + 1] = (short)(j + 1);
+			indices[i + 2] = (short)(j + 2);
+			indices[i + 3] = (short)(j + 2);
+			indices[i + 4] = (short)(j + 3);
+			indices[i + 5] = (short)(j + 0);
+		}
+		return indices;
+	}
+}
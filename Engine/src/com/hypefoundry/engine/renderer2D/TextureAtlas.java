@@ -0,0 +1,582 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.renderer2D;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import android.util.Log;
+
+import com.hypefoundry.engine.core.Pixmap;
+import com.hypefoundry.engine.core.Resource;
+import com.hypefoundry.engine.core.ResourceManager;
+import com.hypefoundry.engine.core.Texture;
+import com.hypefoundry.engine.renderer2D.animation.Animation;
+import com.hypefoundry.engine.util.serialization.DataLoader;
+import com.hypefoundry.engine.util.serialization.DataSaver;
+import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
+
+
+/**
+ * Textures packed into shared pages.
+ * 
+ * Once the atlas is applied, the texture regions and the animations that used the packed
+ * textures use the pages instead, and their texture coordinates are recalculated. The regions
+ * that end up with equal render states share a single render state instance, so the sprites
+ * drawn with them get batched together.
+ * 
+ * An atlas can be either built offline with the TextureAtlasBuilder tool and loaded as
+ * a resource, or merged at load time from the textures a resource manager holds ( see 'merge' ).
+ * 
+ * The atlas descriptor looks like this:
+ * 
+ * <TextureAtlas>
+ *     <Page path="atlases/world_0.png" width="512" height="256">
+ *         <Texture path="textures/bird.png" x="1" y="1" w="32" h="32"/>
+ *     </Page>
+ * </TextureAtlas>
+ * 
+ * @author Paksas
+ *
+ */
+public class TextureAtlas extends Resource
+{
+	// where the packed textures ended up
+	private String[]			m_sourcePaths = new String[16];
+	private Pixmap[]			m_sourceImages = new Pixmap[16];
+	private int[]				m_sourcePages = new int[16];
+	private int[]				m_sourceXs = new int[16];
+	private int[]				m_sourceYs = new int[16];
+	private int[]				m_sourceWidths = new int[16];
+	private int[]				m_sourceHeights = new int[16];
+	private int					m_sourcesCount = 0;
+
+	// pages
+	private String[]			m_pagePaths = new String[0];
+	private int[]				m_pageWidths = new int[0];
+	private int[]				m_pageHeights = new int[0];
+	private Pixmap[]			m_pageImages = new Pixmap[0];		// available only if the atlas was built
+	private Texture[]			m_pages = new Texture[0];
+	private boolean				m_builtInMemory = false;			// there's no asset to load such an atlas from
+
+
+	/**
+	 * Merges the textures the resource manager holds into an atlas, and applies it
+	 * to the texture regions and the animations the manager holds.
+	 * 
+	 * Call it once the resources are loaded, before they're used for rendering - the pixels of the textures
+	 * that have already been used aren't available any longer, and such textures are left alone. So are the textures
+	 * used by the regions that wrap them around, and the ones that don't fit a page.
+	 * 
+	 * @param resMgr
+	 * @param name				path the atlas and its pages will be registered in the resource manager under
+	 * @param maxPageSize		maximum width and height of a page
+	 * @param padding			number of pixels the textures are separated with
+	 * @return					the atlas
+	 */
+	public static TextureAtlas merge( ResourceManager resMgr, String name, int maxPageSize, int padding )
+	{
+		List< TextureRegion > regions = new ArrayList< TextureRegion >();
+		List< Animation > animations = new ArrayList< Animation >();
+		collectRegions( resMgr, regions, animations );
+
+		// the textures that are wrapped around can't be moved to an atlas
+		List< Texture > wrappedTextures = new ArrayList< Texture >();
+		int regionsCount = regions.size();
+		for ( int i = 0; i < regionsCount; ++i )
+		{
+			TextureRegion region = regions.get( i );
+			if ( region.m_renderState != null && region.m_renderState.m_texture != null && !isWithinTexture( region ) )
+			{
+				wrappedTextures.add( region.m_renderState.m_texture );
+			}
+		}
+
+		// the atlas and its pages are created in the memory - there are no assets the manager could load them from
+		TextureAtlas atlas = new TextureAtlas();
+		List< Texture > textures = new ArrayList< Texture >();
+		resMgr.getResources( Texture.class, textures );
+		int texturesCount = textures.size();
+		for ( int i = 0; i < texturesCount; ++i )
+		{
+			Texture texture = textures.get( i );
+			if ( wrappedTextures.contains( texture ) )
+			{
+				continue;
+			}
+
+			Pixmap image = texture.getPixmap();
+			if ( image == null || image.m_width + padding * 2 > maxPageSize || image.m_height + padding * 2 > maxPageSize )
+			{
+				continue;
+			}
+			atlas.addSource( texture.getAssetPath(), image );
+		}
+
+		if ( atlas.m_sourcesCount == 0 )
+		{
+			atlas.m_builtInMemory = true;
+			return resMgr.addResource( atlas, name );
+		}
+
+		atlas.build( name, maxPageSize, padding );
+		for ( int i = 0; i < atlas.m_pages.length; ++i )
+		{
+			Texture page = new Texture();
+			page.create( atlas.m_pageImages[i] );
+			atlas.m_pages[i] = resMgr.addResource( page, atlas.m_pagePaths[i] );
+		}
+		resMgr.addResource( atlas, name );
+
+		atlas.apply( regions, animations );
+		return atlas;
+	}
+
+	/**
+	 * Returns the path of a page of the specified atlas.
+	 * 
+	 * @param atlasPath
+	 * @param pageIdx
+	 * @return
+	 */
+	public static String getPagePath( String atlasPath, int pageIdx )
+	{
+		String basePath = atlasPath.endsWith( ".xml" ) ? atlasPath.substring( 0, atlasPath.length() - 4 ) : atlasPath;
+		return basePath + "_" + pageIdx + ".png";
+	}
+
+	/**
+	 * Adds a texture that should be packed into the atlas.
+	 * 
+	 * @param path			asset path of the texture
+	 * @param image			texture's pixels
+	 */
+	public void addSource( String path, Pixmap image )
+	{
+		int idx = addEntry( path, image.m_width, image.m_height );
+		m_sourceImages[idx] = image;
+	}
+
+	/**
+	 * Packs the added textures into pages.
+	 * 
+	 * @param atlasPath			path the atlas is stored at - the paths of the pages are derived from it
+	 * @param maxPageSize		maximum width and height of a page
+	 * @param padding			number of pixels the textures are separated with. The edges of the textures are extruded into it
+	 */
+	public void build( String atlasPath, int maxPageSize, int padding )
+	{
+		AtlasPacker packer = new AtlasPacker( maxPageSize, padding );
+		for ( int i = 0; i < m_sourcesCount; ++i )
+		{
+			packer.add( m_sourceWidths[i], m_sourceHeights[i] );
+		}
+		packer.pack();
+		m_builtInMemory = true;
+
+		int pagesCount = packer.getPagesCount();
+		m_pagePaths = new String[pagesCount];
+		m_pageWidths = new int[pagesCount];
+		m_pageHeights = new int[pagesCount];
+		m_pageImages = new Pixmap[pagesCount];
+		m_pages = new Texture[pagesCount];
+		for ( int i = 0; i < pagesCount; ++i )
+		{
+			m_pagePaths[i] = getPagePath( atlasPath, i );
+			m_pageWidths[i] = packer.getPageWidth( i );
+			m_pageHeights[i] = packer.getPageHeight( i );
+			m_pageImages[i] = new Pixmap( m_pageWidths[i], m_pageHeights[i] );
+		}
+
+		for ( int i = 0; i < m_sourcesCount; ++i )
+		{
+			m_sourcePages[i] = packer.getPage( i );
+			m_sourceXs[i] = packer.getX( i );
+			m_sourceYs[i] = packer.getY( i );
+			m_pageImages[ m_sourcePages[i] ].draw( m_sourceImages[i], m_sourceXs[i], m_sourceYs[i], padding );
+
+			// the pixels are no longer needed
+			m_sourceImages[i] = null;
+		}
+	}
+
+	/**
+	 * Returns the number of pages.
+	 * 
+	 * @return
+	 */
+	public int getPagesCount()
+	{
+		return m_pagePaths.length;
+	}
+
+	/**
+	 * Returns the pixels of the specified page of an atlas that was built.
+	 * 
+	 * @param pageIdx
+	 * @return
+	 */
+	public Pixmap getPageImage( int pageIdx )
+	{
+		return m_pageImages[pageIdx];
+	}
+
+	/**
+	 * Returns the texture of the specified page.
+	 * 
+	 * @param pageIdx
+	 * @return
+	 */
+	public Texture getPage( int pageIdx )
+	{
+		return m_pages[pageIdx];
+	}
+
+	/**
+	 * Sets the texture of the specified page.
+	 * 
+	 * @param pageIdx
+	 * @param page
+	 */
+	public void setPage( int pageIdx, Texture page )
+	{
+		m_pages[pageIdx] = page;
+	}
+
+	/**
+	 * Looks for a texture packed into the atlas.
+	 * 
+	 * @param path			asset path of the texture
+	 * @return				index of the texture, or -1 if it wasn't packed into the atlas
+	 */
+	public int findSource( String path )
+	{
+		for ( int i = 0; i < m_sourcesCount; ++i )
+		{
+			if ( m_sourcePaths[i].equals( path ) )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Applies the atlas to the texture regions and the animations the resource manager holds.
+	 * 
+	 * @param resMgr
+	 */
+	public void apply( ResourceManager resMgr )
+	{
+		List< TextureRegion > regions = new ArrayList< TextureRegion >();
+		List< Animation > animations = new ArrayList< Animation >();
+		collectRegions( resMgr, regions, animations );
+		apply( regions, animations );
+	}
+
+	/**
+	 * Makes the texture regions and the animations use the pages of the atlas instead
+	 * of the textures packed into it.
+	 * 
+	 * @param regions
+	 * @param animations
+	 * @return				number of remapped regions
+	 */
+	public int apply( List< TextureRegion > regions, List< Animation > animations )
+	{
+		// the render states may be shared by many regions - so first all regions are remapped,
+		// and only then the render states get the pages assigned
+		Map< RenderState, Integer > remappedStates = new IdentityHashMap< RenderState, Integer >();
+		Map< TextureRegion, Boolean > remappedRegions = new IdentityHashMap< TextureRegion, Boolean >();
+		int regionsCount = regions.size();
+		for ( int i = 0; i < regionsCount; ++i )
+		{
+			TextureRegion region = regions.get( i );
+			RenderState rs = region.m_renderState;
+			if ( rs == null || remappedRegions.containsKey( region ) )
+			{
+				continue;
+			}
+
+			Integer sourceIdx = remappedStates.get( rs );
+			if ( sourceIdx == null )
+			{
+				int idx = rs.m_texture != null ? findSource( rs.m_texture.getAssetPath() ) : -1;
+				if ( idx < 0 )
+				{
+					continue;
+				}
+				sourceIdx = idx;
+				remappedStates.put( rs, sourceIdx );
+			}
+
+			remap( region, sourceIdx );
+			remappedRegions.put( region, Boolean.TRUE );
+		}
+
+		for ( Map.Entry< RenderState, Integer > entry : remappedStates.entrySet() )
+		{
+			entry.getKey().m_texture = m_pages[ m_sourcePages[ entry.getValue() ] ];
+		}
+
+		// share the render states that became equal
+		List< RenderState > sharedStates = new ArrayList< RenderState >();
+		for ( TextureRegion region : remappedRegions.keySet() )
+		{
+			region.m_renderState = share( region.m_renderState, sharedStates );
+			region.addDependency( region.m_renderState.m_texture );
+		}
+		int animationsCount = animations.size();
+		for ( int i = 0; i < animationsCount; ++i )
+		{
+			Animation animation = animations.get( i );
+			if ( animation.m_renderState != null && remappedStates.containsKey( animation.m_renderState ) )
+			{
+				animation.m_renderState = share( animation.m_renderState, sharedStates );
+				animation.addDependency( animation.m_renderState.m_texture );
+			}
+		}
+
+		return remappedRegions.size();
+	}
+
+	/**
+	 * Saves the atlas descriptor.
+	 * 
+	 * @param saver
+	 */
+	public void save( DataSaver saver )
+	{
+		for ( int pageIdx = 0; pageIdx < m_pagePaths.length; ++pageIdx )
+		{
+			DataSaver pageNode = saver.addChild( "Page" );
+			pageNode.setStringValue( "path", m_pagePaths[pageIdx] );
+			pageNode.setIntValue( "width", m_pageWidths[pageIdx] );
+			pageNode.setIntValue( "height", m_pageHeights[pageIdx] );
+
+			for ( int i = 0; i < m_sourcesCount; ++i )
+			{
+				if ( m_sourcePages[i] != pageIdx )
+				{
+					continue;
+				}
+
+				DataSaver textureNode = pageNode.addChild( "Texture" );
+				textureNode.setStringValue( "path", m_sourcePaths[i] );
+				textureNode.setIntValue( "x", m_sourceXs[i] );
+				textureNode.setIntValue( "y", m_sourceYs[i] );
+				textureNode.setIntValue( "w", m_sourceWidths[i] );
+				textureNode.setIntValue( "h", m_sourceHeights[i] );
+			}
+		}
+	}
+
+	/**
+	 * Loads the atlas descriptor.
+	 * 
+	 * @param loader
+	 */
+	public void deserialize( DataLoader loader )
+	{
+		int pagesCount = loader.getChildrenCount( "Page" );
+		m_pagePaths = new String[pagesCount];
+		m_pageWidths = new int[pagesCount];
+		m_pageHeights = new int[pagesCount];
+		m_pageImages = new Pixmap[pagesCount];
+		m_pages = new Texture[pagesCount];
+		m_sourcesCount = 0;
+
+		int pageIdx = 0;
+		for ( DataLoader pageNode = loader.getChild( "Page" ); pageNode != null; pageNode = pageNode.getSibling(), ++pageIdx )
+		{
+			m_pagePaths[pageIdx] = pageNode.getStringValue( "path" );
+			m_pageWidths[pageIdx] = pageNode.getIntValue( "width" );
+			m_pageHeights[pageIdx] = pageNode.getIntValue( "height" );
+			if ( m_resMgr != null )
+			{
+				m_pages[pageIdx] = m_resMgr.getResource( Texture.class, m_pagePaths[pageIdx] );
+			}
+
+			for ( DataLoader textureNode = pageNode.getChild( "Texture" ); textureNode != null; textureNode = textureNode.getSibling() )
+			{
+				int idx = addEntry( textureNode.getStringValue( "path" ), textureNode.getIntValue( "w" ), textureNode.getIntValue( "h" ) );
+				m_sourcePages[idx] = pageIdx;
+				m_sourceXs[idx] = textureNode.getIntValue( "x" );
+				m_sourceYs[idx] = textureNode.getIntValue( "y" );
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Resource implementation
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void load()
+	{
+		if ( m_builtInMemory || m_pagePaths.length > 0 )
+		{
+			// the atlas is already loaded, or it was built in the memory
+			return;
+		}
+
+		InputStream stream = null;
+		try
+		{
+			stream = m_game.getFileIO().readAsset( m_assetPath );
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+
+		DataLoader atlasNode = XMLDataLoader.parse( stream, "TextureAtlas" );
+		if ( atlasNode != null )
+		{
+			deserialize( atlasNode );
+		}
+	}
+
+	@Override
+	public void release()
+	{
+		// nothing to do here - the pages are released by the resource manager
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds an entry that describes where a texture is packed.
+	 * 
+	 * @param path
+	 * @param width
+	 * @param height
+	 * @return				index of the entry
+	 */
+	private int addEntry( String path, int width, int height )
+	{
+		if ( m_sourcesCount >= m_sourcePaths.length )
+		{
+			int newLength = m_sourcePaths.length * 2;
+
+			String[] newSourcePaths = new String[newLength];
+			System.arraycopy( m_sourcePaths, 0, newSourcePaths, 0, m_sourcesCount );
+			m_sourcePaths = newSourcePaths;
+
+			Pixmap[] newSourceImages = new Pixmap[newLength];
+			System.arraycopy( m_sourceImages, 0, newSourceImages, 0, m_sourcesCount );
+			m_sourceImages = newSourceImages;
+
+			m_sourcePages = grow( m_sourcePages, newLength );
+			m_sourceXs = grow( m_sourceXs, newLength );
+			m_sourceYs = grow( m_sourceYs, newLength );
+			m_sourceWidths = grow( m_sourceWidths, newLength );
+			m_sourceHeights = grow( m_sourceHeights, newLength );
+		}
+
+		int idx = m_sourcesCount++;
+		m_sourcePaths[idx] = path;
+		m_sourceImages[idx] = null;
+		m_sourceWidths[idx] = width;
+		m_sourceHeights[idx] = height;
+		return idx;
+	}
+
+	private static int[] grow( int[] array, int newLength )
+	{
+		int[] newArray = new int[newLength];
+		System.arraycopy( array, 0, newArray, 0, array.length );
+		return newArray;
+	}
+
+	/**
+	 * Recalculates the texture coordinates of a region, so that they point to the area
+	 * of the page the texture was packed into.
+	 * 
+	 * @param region
+	 * @param sourceIdx
+	 */
+	private void remap( TextureRegion region, int sourceIdx )
+	{
+		if ( !isWithinTexture( region ) )
+		{
+			Log.d( "TextureAtlas", "A region wraps around the texture '" + m_sourcePaths[sourceIdx] + "', which was packed into an atlas" );
+		}
+
+		int pageIdx = m_sourcePages[sourceIdx];
+		float pageWidth = m_pageWidths[pageIdx];
+		float pageHeight = m_pageHeights[pageIdx];
+		float x = m_sourceXs[sourceIdx];
+		float y = m_sourceYs[sourceIdx];
+		float width = m_sourceWidths[sourceIdx];
+		float height = m_sourceHeights[sourceIdx];
+
+		region.m_u1 = ( x + region.m_u1 * width ) / pageWidth;
+		region.m_v1 = ( y + region.m_v1 * height ) / pageHeight;
+		region.m_u2 = ( x + region.m_u2 * width ) / pageWidth;
+		region.m_v2 = ( y + region.m_v2 * height ) / pageHeight;
+	}
+
+	/**
+	 * Checks if the region lies within its texture.
+	 * 
+	 * @param region
+	 * @return
+	 */
+	private static boolean isWithinTexture( TextureRegion region )
+	{
+		return region.m_u1 >= 0 && region.m_u1 <= 1 && region.m_u2 >= 0 && region.m_u2 <= 1
+				&& region.m_v1 >= 0 && region.m_v1 <= 1 && region.m_v2 >= 0 && region.m_v2 <= 1;
+	}
+
+	/**
+	 * Returns a shared render state equal to the specified one.
+	 * 
+	 * @param rs
+	 * @param sharedStates
+	 * @return
+	 */
+	private static RenderState share( RenderState rs, List< RenderState > sharedStates )
+	{
+		int count = sharedStates.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			RenderState sharedState = sharedStates.get( i );
+			if ( sharedState.equals( rs ) )
+			{
+				return sharedState;
+			}
+		}
+
+		sharedStates.add( rs );
+		return rs;
+	}
+
+	/**
+	 * Collects the texture regions and the animations the resource manager holds.
+	 * 
+	 * @param resMgr
+	 * @param outRegions			the regions, including the frames of the animations
+	 * @param outAnimations
+	 */
+	private static void collectRegions( ResourceManager resMgr, List< TextureRegion > outRegions, List< Animation > outAnimations )
+	{
+		resMgr.getResources( TextureRegion.class, outRegions );
+		resMgr.getResources( Animation.class, outAnimations );
+
+		int animationsCount = outAnimations.size();
+		for ( int i = 0; i < animationsCount; ++i )
+		{
+			Animation animation = outAnimations.get( i );
+			int framesCount = animation.getFramesCount();
+			for ( int frameIdx = 0; frameIdx < framesCount; ++frameIdx )
+			{
+				outRegions.add( animation.getRegion( frameIdx ) );
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.renderer2D;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+import com.hypefoundry.engine.core.Pixmap;
+import com.hypefoundry.engine.util.serialization.DataLoader;
+import com.hypefoundry.engine.util.serialization.DataSaver;
+import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
+import com.hypefoundry.engine.util.serialization.xml.XMLDataSaver;
+
+
+/**
+ * A tool that packs the textures into an atlas offline. It runs on a desktop JVM:
+ * 
+ * java TextureAtlasBuilder <assets dir> <atlas path> <max page size> <padding> <input>...
+ * 
+ * An input is a path of either a PNG texture, or of the XML file of a world, an animation
+ * or a texture region - in which case the textures they reference are packed. All paths
+ * are relative to the assets directory.
+ * 
+ * The pages are saved next to the atlas descriptor, which can be loaded as a TextureAtlas resource.
+ * 
+ * @author Paksas
+ *
+ */
+public final class TextureAtlasBuilder
+{
+	/**
+	 * Entry point of the tool.
+	 * 
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		if ( args.length < 5 )
+		{
+			System.out.println( "Usage: TextureAtlasBuilder <assets dir> <atlas path> <max page size> <padding> <input>..." );
+			System.exit( 1 );
+		}
+
+		File assetsDir = new File( args[0] );
+		String atlasPath = args[1];
+		int maxPageSize = Integer.parseInt( args[2] );
+		int padding = Integer.parseInt( args[3] );
+
+		List< String > texturePaths = new ArrayList< String >();
+		for ( int i = 4; i < args.length; ++i )
+		{
+			collectTextures( assetsDir, args[i], texturePaths );
+		}
+
+		try
+		{
+			TextureAtlas atlas = build( assetsDir, atlasPath, maxPageSize, padding, texturePaths );
+			System.out.println( "Packed " + texturePaths.size() + " textures into " + atlas.getPagesCount() + " pages" );
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "Couldn't build the atlas: " + e.getMessage() );
+			System.exit( 1 );
+		}
+	}
+
+	/**
+	 * Packs the textures into an atlas, and saves its pages and its descriptor.
+	 * 
+	 * @param assetsDir
+	 * @param atlasPath			path of the atlas descriptor, relative to the assets directory
+	 * @param maxPageSize		maximum width and height of a page
+	 * @param padding			number of pixels the textures are separated with
+	 * @param texturePaths		paths of the PNG textures, relative to the assets directory
+	 * @return
+	 * @throws IOException
+	 */
+	public static TextureAtlas build( File assetsDir, String atlasPath, int maxPageSize, int padding, List< String > texturePaths ) throws IOException
+	{
+		TextureAtlas atlas = new TextureAtlas();
+		int count = texturePaths.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			String path = texturePaths.get( i );
+			InputStream in = new FileInputStream( new File( assetsDir, path ) );
+			try
+			{
+				atlas.addSource( path, Pixmap.decodePng( in ) );
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		atlas.build( atlasPath, maxPageSize, padding );
+
+		int pagesCount = atlas.getPagesCount();
+		for ( int i = 0; i < pagesCount; ++i )
+		{
+			OutputStream out = new FileOutputStream( createFile( assetsDir, TextureAtlas.getPagePath( atlasPath, i ) ) );
+			try
+			{
+				atlas.getPageImage( i ).encodePng( out );
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+
+		DataSaver saver = XMLDataSaver.create( "TextureAtlas" );
+		atlas.save( saver );
+		OutputStream out = new FileOutputStream( createFile( assetsDir, atlasPath ) );
+		try
+		{
+			saver.flush( out );
+		}
+		finally
+		{
+			out.close();
+		}
+
+		return atlas;
+	}
+
+	/**
+	 * Collects the paths of the textures the specified asset references.
+	 * 
+	 * @param assetsDir
+	 * @param path				path of a PNG texture, or of a world, an animation or a texture region XML file
+	 * @param outTexturePaths
+	 */
+	public static void collectTextures( File assetsDir, String path, List< String > outTexturePaths )
+	{
+		if ( path.toLowerCase().endsWith( ".png" ) )
+		{
+			addPath( path, outTexturePaths );
+			return;
+		}
+
+		DataLoader world = parse( assetsDir, path, "World" );
+		if ( world != null )
+		{
+			// the textures listed in the world's resources cache
+			DataLoader resourcesCache = world.getChild( "ResourcesCache" );
+			for ( DataLoader child = resourcesCache != null ? resourcesCache.getChild( "Resource" ) : null; child != null; child = child.getSibling() )
+			{
+				if ( child.getStringValue( "type" ).equals( "Texture" ) )
+				{
+					addPath( child.getStringValue( "path" ), outTexturePaths );
+				}
+			}
+			return;
+		}
+
+		DataLoader renderStateOwner = parse( assetsDir, path, "Animation" );
+		if ( renderStateOwner == null )
+		{
+			renderStateOwner = parse( assetsDir, path, "TextureRegion" );
+		}
+		if ( renderStateOwner != null )
+		{
+			String atlasName = renderStateOwner.getStringValue( "atlasName" );
+			if ( atlasName.length() > 0 )
+			{
+				addPath( atlasName, outTexturePaths );
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private static DataLoader parse( File assetsDir, String path, String rootNodeTag )
+	{
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream( new File( assetsDir, path ) );
+			return XMLDataLoader.parse( in, rootNodeTag );
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( "Couldn't read '" + path + "'", e );
+		}
+		finally
+		{
+			if ( in != null )
+			{
+				try
+				{
+					in.close();
+				}
+				catch ( IOException e ) { }
+			}
+		}
+	}
+
+	private static void addPath( String path, List< String > outPaths )
+	{
+		if ( !outPaths.contains( path ) )
+		{
+			outPaths.add( path );
+		}
+	}
+
+	private static File createFile( File assetsDir, String path )
+	{
+		File file = new File( assetsDir, path );
+		File dir = file.getParentFile();
+		if ( dir != null )
+		{
+			dir.mkdirs();
+		}
+		return file;
+	}
+}
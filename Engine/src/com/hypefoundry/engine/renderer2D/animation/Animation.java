@@ -224,6 +224,17 @@ public class Animation extends Resource
 		return m_framesCount;
 	}
 	
+	/**
+	 * Returns the texture region the specified frame is drawn with.
+	 * 
+	 * @param frameIdx
+	 * @return
+	 */
+	public TextureRegion getRegion( int frameIdx )
+	{
+		return m_regions[frameIdx];
+	}
+	
 	/**
 	 * Makes room for additional number of animation frames.
 	 * CAUTION: It doesn't change the defined frames counter ( m_framesCount )
@@ -4,37 +4,73 @@
 package com.hypefoundry.engine.util;
 
 /**
- * A bit field.
+ * A bit field that grows on demand.
+ * 
+ * The bits are stored in 64 bit words. The field keeps track of the number
+ * of words that may contain set bits, so that the bulk operations don't need to
+ * go through the entire allocated storage.
  * 
  * @author Paksas
  *
  */
 public final class BitField 
 {
-	public static final int MAX_ELEMENTS = 512;
-	public static final int CHUNK_CAPACITY = 32;
-	public static final int CHUNKS_COUNT = 16;
-	
-	public int[] 		m_bits = new int[CHUNKS_COUNT];
-	
+	public static final int 	WORD_CAPACITY = 64;
+	private static final int	DEFAULT_WORDS_COUNT = 1;
+
+	public long[] 				m_words;
+	public int					m_wordsCount = 0;		// number of words that may contain set bits
+
+	/**
+	 * Default constructor.
+	 */
+	public BitField()
+	{
+		m_words = new long[DEFAULT_WORDS_COUNT];
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity		number of bits the field should be able to store without reallocating
+	 */
+	public BitField( int initialCapacity )
+	{
+		int wordsCount = ( initialCapacity + WORD_CAPACITY - 1 ) >> 6;
+		m_words = new long[ wordsCount > 0 ? wordsCount : DEFAULT_WORDS_COUNT ];
+	}
+
 	/**
 	 * Sets the specified bit to the specified value
 	 * 
 	 * @param idx			bit index
 	 * @param enable		flag
 	 */
-	public void set( short idx, boolean enable )
+	public void set( int idx, boolean enable )
 	{
-		byte chunkIdx = (byte) ( idx >> 5 );
-		byte fieldIdx = (byte) ( idx - ( chunkIdx << 5 ) );
-		
+		int wordIdx = idx >> 6;
+
 		if ( enable )
 		{
-			m_bits[chunkIdx] |= 1 << fieldIdx;
+			if ( wordIdx >= m_words.length )
+			{
+				ensureWordsCapacity( wordIdx + 1 );
+			}
+			if ( wordIdx >= m_wordsCount )
+			{
+				m_wordsCount = wordIdx + 1;
+			}
+			m_words[wordIdx] |= 1L << idx;
 		}
-		else
+		else if ( wordIdx < m_wordsCount )
 		{
-			m_bits[chunkIdx] &= ~(1 << fieldIdx);
+			m_words[wordIdx] &= ~( 1L << idx );
+			
+			// drop the trailing empty words, so that the bulk operations don't visit them
+			while ( m_wordsCount > 0 && m_words[m_wordsCount - 1] == 0 )
+			{
+				--m_wordsCount;
+			}
 		}
 	}
 	
@@ -44,13 +80,15 @@ public final class BitField
 	 * @param idx			bit index
 	 * @return
 	 */
-	public boolean isSet( short idx )
+	public boolean isSet( int idx )
 	{
-		byte chunkIdx = (byte) ( idx >> 5 );
-		byte fieldIdx = (byte) ( idx - ( chunkIdx << 5 ) );
-		
-		int key = 1 << fieldIdx;
-		return ( m_bits[chunkIdx]& key ) == key;
+		int wordIdx = idx >> 6;
+		if ( wordIdx >= m_wordsCount )
+		{
+			return false;
+		}
+
+		return ( m_words[wordIdx] & ( 1L << idx ) ) != 0;
 	}
 	
 	/**
@@ -60,34 +98,56 @@ public final class BitField
 	 */
 	public void or( BitField rhs )
 	{
-		for ( byte i = 0; i < CHUNKS_COUNT; ++i )
+		int count = rhs.m_wordsCount;
+		if ( count > m_words.length )
+		{
+			ensureWordsCapacity( count );
+		}
+		if ( count > m_wordsCount )
 		{
-			m_bits[i] |= rhs.m_bits[i];
+			m_wordsCount = count;
+		}
+
+		long[] rhsWords = rhs.m_words;
+		for ( int i = 0; i < count; ++i )
+		{
+			m_words[i] |= rhsWords[i];
 		}
 	}
 	
 	/**
-	 * A bitwise ANd operation.
+	 * A bitwise AND operation.
 	 * 
 	 * @param rhs		other bit field
 	 */
 	public void and( BitField rhs )
 	{
-		for ( byte i = 0; i < CHUNKS_COUNT; ++i )
+		int count = rhs.m_wordsCount < m_wordsCount ? rhs.m_wordsCount : m_wordsCount;
+		long[] rhsWords = rhs.m_words;
+		for ( int i = 0; i < count; ++i )
+		{
+			m_words[i] &= rhsWords[i];
+		}
+
+		// whatever lies beyond the other field's range gets cleared
+		for ( int i = count; i < m_wordsCount; ++i )
 		{
-			m_bits[i] &= rhs.m_bits[i];
+			m_words[i] = 0;
 		}
+		m_wordsCount = count;
 	}
 	
 	/**
-	 * Fills the entire bit field with ones.
+	 * Fills the allocated storage with ones.
 	 */
 	public void ones()
 	{
-		for ( byte i = 0; i < CHUNKS_COUNT; ++i )
+		int count = m_words.length;
+		for ( int i = 0; i < count; ++i )
 		{
-			m_bits[i] = 1;
+			m_words[i] = -1L;
 		}
+		m_wordsCount = count;
 	}
 	
 	/**
@@ -95,9 +155,28 @@ public final class BitField
 	 */
 	public void zeroes()
 	{
-		for ( byte i = 0; i < CHUNKS_COUNT; ++i )
+		for ( int i = 0; i < m_wordsCount; ++i )
 		{
-			m_bits[i] = 0;
+			m_words[i] = 0;
 		}
+		m_wordsCount = 0;
+	}
+
+	/**
+	 * Makes sure the field can store the specified number of words.
+	 * 
+	 * @param wordsCount
+	 */
+	private void ensureWordsCapacity( int wordsCount )
+	{
+		int newLength = m_words.length * 2;
+		if ( newLength < wordsCount )
+		{
+			newLength = wordsCount;
+		}
+
+		long[] newWords = new long[newLength];
+		System.arraycopy( m_words, 0, newWords, 0, m_wordsCount );
+		m_words = newWords;
 	}
 }
@@ -0,0 +1,94 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util;
+
+
+/**
+ * Sorts objects by their depth, so that the farthest ones ( the ones with the greatest
+ * depth values ) come first.
+ * 
+ * The depths are turned into integer keys and sorted with a radix sort, so unlike
+ * a comparator based sort, it doesn't call any methods while sorting. The sort is stable -
+ * the objects at exactly the same depth keep their order.
+ * 
+ * Once its buffers grow large enough, the sorter doesn't allocate any memory.
+ * 
+ * @author Paksas
+ *
+ */
+public final class DepthSort
+{
+	private final RadixSort		m_sorter;
+	private long[]				m_keys;
+	private int[]				m_order;
+	private Object[]			m_tmpObjects;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity		number of objects the sorter can sort before it needs to grow its buffers
+	 */
+	public DepthSort( int initialCapacity )
+	{
+		if ( initialCapacity < 1 )
+		{
+			initialCapacity = 1;
+		}
+
+		m_sorter = new RadixSort( initialCapacity );
+		m_keys = new long[initialCapacity];
+		m_order = new int[initialCapacity];
+		m_tmpObjects = new Object[initialCapacity];
+	}
+
+	/**
+	 * Sorts the objects.
+	 * 
+	 * @param objects		objects to sort
+	 * @param depths		depths of the objects - depths[i] is the depth of objects[i]
+	 * @param count			number of objects to sort
+	 */
+	public < T > void sort( T[] objects, float[] depths, int count )
+	{
+		if ( count < 2 )
+		{
+			return;
+		}
+
+		if ( m_keys.length < count )
+		{
+			int newLength = m_keys.length * 2;
+			if ( newLength < count )
+			{
+				newLength = count;
+			}
+			m_keys = new long[newLength];
+			m_order = new int[newLength];
+			m_tmpObjects = new Object[newLength];
+		}
+
+		for ( int i = 0; i < count; ++i )
+		{
+			// negate the depth so that the farthest objects end up at the front
+			m_keys[i] = RadixSort.toSortableKey( -depths[i] );
+			m_order[i] = i;
+		}
+		m_sorter.sort( m_keys, m_order, count );
+
+		// rearrange the objects
+		System.arraycopy( objects, 0, m_tmpObjects, 0, count );
+		for ( int i = 0; i < count; ++i )
+		{
+			@SuppressWarnings("unchecked")
+			T obj = (T)m_tmpObjects[ m_order[i] ];
+			objects[i] = obj;
+		}
+
+		// don't keep the objects alive
+		for ( int i = 0; i < count; ++i )
+		{
+			m_tmpObjects[i] = null;
+		}
+	}
+}
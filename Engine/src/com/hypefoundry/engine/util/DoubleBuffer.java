@@ -0,0 +1,124 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Hands the data over from a producer thread to a consumer thread without locking.
+ * 
+ * The producer fills one buffer while the consumer reads the most recently published one. Once the producer
+ * publishes the buffer it filled, it starts filling the other one - unless the consumer still reads it, in which case
+ * the producer parks itself until the consumer releases it. The consumer never waits - it reads the most recent buffer that was published,
+ * even if it already read it before.
+ * 
+ * There can be only one producer and one consumer, though they can be the same thread.
+ * 
+ * @author Paksas
+ *
+ */
+public final class DoubleBuffer< T >
+{
+	private final Object[]			m_buffers = new Object[2];
+	private final AtomicInteger		m_publishedIdx = new AtomicInteger( -1 );
+	private final AtomicInteger		m_readIdx = new AtomicInteger( -1 );
+	private int						m_writtenIdx = 0;							// accessed by the producer only
+	private volatile Thread			m_waitingProducer = null;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param first
+	 * @param second
+	 */
+	public DoubleBuffer( T first, T second )
+	{
+		m_buffers[0] = first;
+		m_buffers[1] = second;
+	}
+
+	/**
+	 * Returns the buffer the producer should fill. Waits if the consumer still reads it.
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T beginWrite()
+	{
+		if ( m_readIdx.get() == m_writtenIdx )
+		{
+			// announce that we're waiting before checking again, so that the consumer
+			// can't release the buffer without waking us up
+			m_waitingProducer = Thread.currentThread();
+			while ( m_readIdx.get() == m_writtenIdx )
+			{
+				LockSupport.park( this );
+			}
+			m_waitingProducer = null;
+		}
+		return (T)m_buffers[m_writtenIdx];
+	}
+
+	/**
+	 * Publishes the buffer the producer filled.
+	 */
+	public void endWrite()
+	{
+		m_publishedIdx.set( m_writtenIdx );
+		m_writtenIdx = 1 - m_writtenIdx;
+	}
+
+	/**
+	 * Returns the most recently published buffer to the consumer. The buffer is guaranteed not
+	 * to change until it's released.
+	 * 
+	 * @return			the buffer, or null if nothing's been published yet
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T acquire()
+	{
+		while ( true )
+		{
+			int idx = m_publishedIdx.get();
+			if ( idx < 0 )
+			{
+				return null;
+			}
+
+			// mark the buffer as read, and make sure the producer didn't publish another one
+			// and start writing to this one in the meantime
+			m_readIdx.set( idx );
+			if ( m_publishedIdx.get() == idx )
+			{
+				return (T)m_buffers[idx];
+			}
+
+			// the producer may be waiting for the buffer we marked before
+			wakeProducer();
+		}
+	}
+
+	/**
+	 * Releases the acquired buffer.
+	 */
+	public void release()
+	{
+		m_readIdx.set( -1 );
+		wakeProducer();
+	}
+
+	/**
+	 * Wakes the producer up if it's waiting for the buffer the consumer reads.
+	 */
+	private void wakeProducer()
+	{
+		Thread producer = m_waitingProducer;
+		if ( producer != null )
+		{
+			LockSupport.unpark( producer );
+		}
+	}
+}
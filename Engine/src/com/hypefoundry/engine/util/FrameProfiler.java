@@ -0,0 +1,646 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import android.util.Log;
+
+import com.hypefoundry.engine.core.FileIO;
+
+/**
+ * Measures where the time of a frame goes.
+ * 
+ * The game loop is instrumented with named sections - a section is timed between the calls to 'begin' and 'end'
+ * it's given. The sections may nest - the time of a nested section is included in the time of the enclosing one.
+ * It also keeps counters of things like the issued draw calls or the processed events.
+ * 
+ * Once a frame ends, the times and the counters it collected are stored in a ring buffer that keeps
+ * the samples of the last HISTORY_LENGTH frames.
+ * 
+ * The profiler is disabled by default, and then the instrumentation costs a single flag check.
+ * It doesn't allocate any memory while profiling.
+ * 
+ * When the simulation runs on its own thread, that thread collects the samples of the step it runs
+ * separately, and hands them over to the game loop thread once the step's finished ( see 'endStep' ).
+ * They're stored with the frame that's ended after the handover.
+ * 
+ * CAUTION: apart from the instrumentation methods and 'endStep', it's meant to be used from the game loop thread only.
+ * 
+ * @author Paksas
+ *
+ */
+public final class FrameProfiler
+{
+	// built-in sections
+	public static final int					SECTION_FRAME = 0;
+	public static final int					SECTION_INPUT = 1;
+	public static final int					SECTION_UPDATABLES = 2;
+	public static final int					SECTION_WORLD = 3;
+	public static final int					SECTION_PHYSICS = 4;
+	public static final int					SECTION_RENDERER = 5;
+	public static final int					SECTION_HUD = 6;
+	public static final int					SECTION_FLUSH = 7;
+
+	// built-in counters
+	public static final int					COUNTER_DRAW_CALLS = 0;
+	public static final int					COUNTER_FLUSHES = 1;
+	public static final int					COUNTER_SPRITES = 2;
+	public static final int					COUNTER_COLLISIONS = 3;
+	public static final int					COUNTER_EVENTS = 4;
+	public static final int					COUNTER_VISUALS_DRAWN = 5;
+	public static final int					COUNTER_VISUALS_CULLED = 6;
+
+	public static final int					MAX_SECTIONS = 32;
+	public static final int					MAX_COUNTERS = 32;
+	public static final int					HISTORY_LENGTH = 64;
+
+	private static volatile boolean			s_enabled = false;
+
+	// sections
+	private static final String[]			s_sectionNames = new String[MAX_SECTIONS];
+	private static int						s_sectionsCount = 0;
+
+	// counters
+	private static final String[]			s_counterNames = new String[MAX_COUNTERS];
+	private static int						s_countersCount = 0;
+
+	// samples of the current frame, collected by the game loop thread
+	private static final Samples			s_frameSamples = new Samples();
+
+	// samples of the current step, collected by the simulation thread
+	private static volatile Thread			s_simulationThread = null;
+	private static final Samples			s_stepSamples = new Samples();
+	private static volatile int				s_resetsCount = 0;
+	private static int						s_stepResetsCount = 0;
+
+	// samples of the finished steps, waiting for the end of the frame - guarded by the object itself
+	private static final Samples			s_finishedStepsSamples = new Samples();
+
+	// samples of the recent frames
+	private static final long[][]			s_timesHistory = new long[MAX_SECTIONS][HISTORY_LENGTH];
+	private static final int[][]			s_countersHistory = new int[MAX_COUNTERS][HISTORY_LENGTH];
+	private static int						s_lastFrameIdx = HISTORY_LENGTH - 1;
+	private static int						s_sampledFramesCount = 0;
+
+	static
+	{
+		registerSection( "Frame" );
+		registerSection( "Input" );
+		registerSection( "Updatables" );
+		registerSection( "World" );
+		registerSection( "Physics" );
+		registerSection( "Renderer2D" );
+		registerSection( "Hud" );
+		registerSection( "Flush" );
+
+		registerCounter( "Draw calls" );
+		registerCounter( "Flushes" );
+		registerCounter( "Sprites" );
+		registerCounter( "Collisions" );
+		registerCounter( "Events" );
+		registerCounter( "Visuals drawn" );
+		registerCounter( "Visuals culled" );
+	}
+
+	/**
+	 * Samples collected by a single thread.
+	 */
+	private static final class Samples
+	{
+		final long[]						m_sectionStarts = new long[MAX_SECTIONS];
+		final int[]							m_sectionDepths = new int[MAX_SECTIONS];
+		final long[]						m_sectionTimes = new long[MAX_SECTIONS];
+		final int[]							m_counters = new int[MAX_COUNTERS];
+
+		/**
+		 * Adds the times and the counters to the specified samples, and drops them.
+		 * 
+		 * @param samples
+		 */
+		void moveTo( Samples samples )
+		{
+			for ( int i = 0; i < MAX_SECTIONS; ++i )
+			{
+				samples.m_sectionTimes[i] += m_sectionTimes[i];
+			}
+			for ( int i = 0; i < MAX_COUNTERS; ++i )
+			{
+				samples.m_counters[i] += m_counters[i];
+			}
+			clear();
+		}
+
+		/**
+		 * Drops the times and the counters. The sections that are being timed keep on being timed.
+		 */
+		void clear()
+		{
+			for ( int i = 0; i < MAX_SECTIONS; ++i )
+			{
+				m_sectionTimes[i] = 0;
+			}
+			for ( int i = 0; i < MAX_COUNTERS; ++i )
+			{
+				m_counters[i] = 0;
+			}
+		}
+
+		/**
+		 * Drops all samples, including the sections that are being timed.
+		 */
+		void reset()
+		{
+			for ( int i = 0; i < MAX_SECTIONS; ++i )
+			{
+				m_sectionDepths[i] = 0;
+			}
+			clear();
+		}
+	}
+
+	private FrameProfiler()
+	{
+	}
+
+	/**
+	 * Enables/disables the profiler.
+	 * 
+	 * @param enable
+	 */
+	public static void setEnabled( boolean enable )
+	{
+		if ( s_enabled != enable )
+		{
+			s_enabled = enable;
+			resetFrame();
+		}
+	}
+
+	/**
+	 * Checks if the profiler is enabled.
+	 * 
+	 * @return
+	 */
+	public static boolean isEnabled()
+	{
+		return s_enabled;
+	}
+
+	/**
+	 * Tells which thread runs the simulation steps - the samples it collects are kept apart
+	 * from the ones the game loop thread collects, until it ends a step.
+	 * 
+	 * Called by the simulation thread itself, before it runs the first step.
+	 * 
+	 * @param thread		simulation thread, or null if the game loop thread runs the simulation
+	 */
+	public static void setSimulationThread( Thread thread )
+	{
+		s_stepResetsCount = s_resetsCount;
+		s_stepSamples.reset();
+		s_simulationThread = thread;
+	}
+
+	/**
+	 * Registers a custom section.
+	 * 
+	 * @param name
+	 * @return			index of the section, used to begin and end it. Registering the same name twice returns the same index.
+	 */
+	public static int registerSection( String name )
+	{
+		for ( int i = 0; i < s_sectionsCount; ++i )
+		{
+			if ( s_sectionNames[i].equals( name ) )
+			{
+				return i;
+			}
+		}
+
+		if ( s_sectionsCount >= MAX_SECTIONS )
+		{
+			throw new IllegalStateException( "Can't register more than " + MAX_SECTIONS + " sections" );
+		}
+		s_sectionNames[s_sectionsCount] = name;
+		return s_sectionsCount++;
+	}
+
+	/**
+	 * Registers a custom counter.
+	 * 
+	 * @param name
+	 * @return			index of the counter. Registering the same name twice returns the same index.
+	 */
+	public static int registerCounter( String name )
+	{
+		for ( int i = 0; i < s_countersCount; ++i )
+		{
+			if ( s_counterNames[i].equals( name ) )
+			{
+				return i;
+			}
+		}
+
+		if ( s_countersCount >= MAX_COUNTERS )
+		{
+			throw new IllegalStateException( "Can't register more than " + MAX_COUNTERS + " counters" );
+		}
+		s_counterNames[s_countersCount] = name;
+		return s_countersCount++;
+	}
+
+	// ------------------------------------------------------------------------
+	// Instrumentation
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Starts timing a section.
+	 * 
+	 * @param section
+	 */
+	public static void begin( int section )
+	{
+		if ( !s_enabled )
+		{
+			return;
+		}
+
+		// only the outermost pair of calls is timed when a section is reentered
+		Samples samples = getSamples();
+		if ( samples.m_sectionDepths[section]++ == 0 )
+		{
+			samples.m_sectionStarts[section] = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Stops timing a section.
+	 * 
+	 * @param section
+	 */
+	public static void end( int section )
+	{
+		if ( !s_enabled )
+		{
+			return;
+		}
+
+		Samples samples = getSamples();
+		if ( samples.m_sectionDepths[section] <= 0 )
+		{
+			// the profiler might've been enabled after the section began
+			return;
+		}
+
+		if ( --samples.m_sectionDepths[section] == 0 )
+		{
+			samples.m_sectionTimes[section] += System.nanoTime() - samples.m_sectionStarts[section];
+		}
+	}
+
+	/**
+	 * Increases a counter.
+	 * 
+	 * @param counter
+	 * @param amount
+	 */
+	public static void count( int counter, int amount )
+	{
+		if ( s_enabled )
+		{
+			getSamples().m_counters[counter] += amount;
+		}
+	}
+
+	/**
+	 * Hands the samples the simulation thread collected during a step over to the game loop thread.
+	 * Called by the simulation thread once it finishes a step.
+	 */
+	public static void endStep()
+	{
+		if ( !s_enabled )
+		{
+			return;
+		}
+
+		int resetsCount = s_resetsCount;
+		if ( resetsCount != s_stepResetsCount )
+		{
+			// the profiler was reset while the step was running, so what it collected is stale
+			s_stepResetsCount = resetsCount;
+			s_stepSamples.reset();
+			return;
+		}
+
+		synchronized( s_finishedStepsSamples )
+		{
+			s_stepSamples.moveTo( s_finishedStepsSamples );
+		}
+	}
+
+	/**
+	 * Stores the samples collected during the frame and starts a new one.
+	 */
+	public static void endFrame()
+	{
+		if ( !s_enabled )
+		{
+			return;
+		}
+
+		s_lastFrameIdx = ( s_lastFrameIdx + 1 ) % HISTORY_LENGTH;
+		if ( s_sampledFramesCount < HISTORY_LENGTH )
+		{
+			++s_sampledFramesCount;
+		}
+
+		// the frame gets the samples of the simulation steps that finished in the meantime
+		synchronized( s_finishedStepsSamples )
+		{
+			s_finishedStepsSamples.moveTo( s_frameSamples );
+		}
+
+		for ( int i = 0; i < s_sectionsCount; ++i )
+		{
+			s_timesHistory[i][s_lastFrameIdx] = s_frameSamples.m_sectionTimes[i];
+		}
+		for ( int i = 0; i < s_countersCount; ++i )
+		{
+			s_countersHistory[i][s_lastFrameIdx] = s_frameSamples.m_counters[i];
+		}
+		s_frameSamples.clear();
+	}
+
+	/**
+	 * Drops all collected samples.
+	 */
+	public static void reset()
+	{
+		resetFrame();
+		s_sampledFramesCount = 0;
+		s_lastFrameIdx = HISTORY_LENGTH - 1;
+	}
+
+	/**
+	 * Drops the samples collected during the current frame.
+	 */
+	private static void resetFrame()
+	{
+		s_frameSamples.reset();
+		synchronized( s_finishedStepsSamples )
+		{
+			s_finishedStepsSamples.reset();
+		}
+
+		// the simulation thread drops the samples of the step it's running by itself
+		++s_resetsCount;
+	}
+
+	/**
+	 * Returns the samples the calling thread collects.
+	 * 
+	 * @return
+	 */
+	private static Samples getSamples()
+	{
+		return Thread.currentThread() == s_simulationThread ? s_stepSamples : s_frameSamples;
+	}
+
+	// ------------------------------------------------------------------------
+	// Samples access
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Returns the number of registered sections.
+	 * 
+	 * @return
+	 */
+	public static int getSectionsCount()
+	{
+		return s_sectionsCount;
+	}
+
+	/**
+	 * Returns the name of a section.
+	 * 
+	 * @param section
+	 * @return
+	 */
+	public static String getSectionName( int section )
+	{
+		return s_sectionNames[section];
+	}
+
+	/**
+	 * Returns the number of registered counters.
+	 * 
+	 * @return
+	 */
+	public static int getCountersCount()
+	{
+		return s_countersCount;
+	}
+
+	/**
+	 * Returns the name of a counter.
+	 * 
+	 * @param counter
+	 * @return
+	 */
+	public static String getCounterName( int counter )
+	{
+		return s_counterNames[counter];
+	}
+
+	/**
+	 * Returns the number of frames the samples are available for.
+	 * 
+	 * @return
+	 */
+	public static int getSampledFramesCount()
+	{
+		return s_sampledFramesCount;
+	}
+
+	/**
+	 * Returns the time spent in a section during one of the recent frames.
+	 * 
+	 * @param section
+	 * @param framesAgo			0 for the last finished frame, up to getSampledFramesCount() - 1
+	 * @return					time in milliseconds
+	 */
+	public static float getSectionTime( int section, int framesAgo )
+	{
+		return s_timesHistory[section][getHistoryIdx( framesAgo )] / 1000000.0f;
+	}
+
+	/**
+	 * Returns the average time spent in a section during the recent frames.
+	 * 
+	 * @param section
+	 * @return					time in milliseconds
+	 */
+	public static float getAverageSectionTime( int section )
+	{
+		if ( s_sampledFramesCount == 0 )
+		{
+			return 0;
+		}
+
+		long sum = 0;
+		for ( int i = 0; i < s_sampledFramesCount; ++i )
+		{
+			sum += s_timesHistory[section][getHistoryIdx( i )];
+		}
+		return sum / ( s_sampledFramesCount * 1000000.0f );
+	}
+
+	/**
+	 * Returns the longest time spent in a section during the recent frames.
+	 * 
+	 * @param section
+	 * @return					time in milliseconds
+	 */
+	public static float getMaxSectionTime( int section )
+	{
+		long max = 0;
+		for ( int i = 0; i < s_sampledFramesCount; ++i )
+		{
+			long time = s_timesHistory[section][getHistoryIdx( i )];
+			if ( time > max )
+			{
+				max = time;
+			}
+		}
+		return max / 1000000.0f;
+	}
+
+	/**
+	 * Returns the value a counter reached during one of the recent frames.
+	 * 
+	 * @param counter
+	 * @param framesAgo			0 for the last finished frame, up to getSampledFramesCount() - 1
+	 * @return
+	 */
+	public static int getCounter( int counter, int framesAgo )
+	{
+		return s_countersHistory[counter][getHistoryIdx( framesAgo )];
+	}
+
+	/**
+	 * Returns the average value a counter reached during the recent frames.
+	 * 
+	 * @param counter
+	 * @return
+	 */
+	public static float getAverageCounter( int counter )
+	{
+		if ( s_sampledFramesCount == 0 )
+		{
+			return 0;
+		}
+
+		long sum = 0;
+		for ( int i = 0; i < s_sampledFramesCount; ++i )
+		{
+			sum += s_countersHistory[counter][getHistoryIdx( i )];
+		}
+		return sum / (float)s_sampledFramesCount;
+	}
+
+	private static int getHistoryIdx( int framesAgo )
+	{
+		return ( s_lastFrameIdx - framesAgo + HISTORY_LENGTH ) % HISTORY_LENGTH;
+	}
+
+	// ------------------------------------------------------------------------
+	// Dumps
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Writes the samples of the recent frames to a file, as comma separated values - a row per frame,
+	 * starting with the oldest one. The times are in milliseconds.
+	 * 
+	 * @param fileIO
+	 * @param fileName
+	 * @return				'true' if the samples were written successfully
+	 */
+	public static boolean dump( FileIO fileIO, String fileName )
+	{
+		OutputStream out = null;
+		try
+		{
+			out = fileIO.writeFile( fileName );
+			dump( out );
+			return true;
+		}
+		catch ( IOException e )
+		{
+			Log.d( "FrameProfiler", "Couldn't dump the samples to '" + fileName + "': " + e.getMessage() );
+			return false;
+		}
+		finally
+		{
+			if ( out != null )
+			{
+				try
+				{
+					out.close();
+				}
+				catch ( IOException e ) { }
+			}
+		}
+	}
+
+	/**
+	 * Writes the samples of the recent frames to a stream, as comma separated values - a row per frame,
+	 * starting with the oldest one. The times are in milliseconds.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void dump( OutputStream out ) throws IOException
+	{
+		PrintStream printer = new PrintStream( out );
+
+		printer.print( "frame" );
+		for ( int i = 0; i < s_sectionsCount; ++i )
+		{
+			printer.print( ',' );
+			printer.print( s_sectionNames[i] );
+		}
+		for ( int i = 0; i < s_countersCount; ++i )
+		{
+			printer.print( ',' );
+			printer.print( s_counterNames[i] );
+		}
+		printer.println();
+
+		for ( int frame = 0; frame < s_sampledFramesCount; ++frame )
+		{
+			int framesAgo = s_sampledFramesCount - 1 - frame;
+			printer.print( frame );
+			for ( int i = 0; i < s_sectionsCount; ++i )
+			{
+				printer.print( ',' );
+				printer.print( getSectionTime( i, framesAgo ) );
+			}
+			for ( int i = 0; i < s_countersCount; ++i )
+			{
+				printer.print( ',' );
+				printer.print( getCounter( i, framesAgo ) );
+			}
+			printer.println();
+		}
+
+		printer.flush();
+		if ( printer.checkError() )
+		{
+			throw new IOException( "Couldn't write the samples" );
+		}
+	}
+}
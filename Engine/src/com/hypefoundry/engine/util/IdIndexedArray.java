@@ -0,0 +1,171 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util;
+
+
+/**
+ * A densely packed array of objects that can also be accessed by a small integer id.
+ * 
+ * Both the id lookup and the removal take constant time - the removed object's place
+ * is taken by the last object in the array, so the order of the objects changes
+ * as they are being removed.
+ * 
+ * @author Paksas
+ *
+ */
+public final class IdIndexedArray< T >
+{
+	private Object[]			m_objects;
+	private int[]				m_objectIds;
+	private int					m_count = 0;
+
+	// maps an id to the index of the object in the dense array, offset by one ( 0 means an empty slot )
+	private int[]				m_slots;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity		number of objects the array can store before it needs to grow its storage
+	 */
+	public IdIndexedArray( int initialCapacity )
+	{
+		if ( initialCapacity < 1 )
+		{
+			initialCapacity = 1;
+		}
+
+		m_objects = new Object[initialCapacity];
+		m_objectIds = new int[initialCapacity];
+		m_slots = new int[initialCapacity];
+	}
+
+	/**
+	 * Returns the number of stored objects.
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Returns an object stored at the specified position in the dense array.
+	 * 
+	 * @param idx		index from the range <0, size() )
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public T getAt( int idx )
+	{
+		return (T)m_objects[idx];
+	}
+
+	/**
+	 * Returns an object stored under the specified id.
+	 * 
+	 * @param id
+	 * @return			object, or null if there's nothing stored under that id
+	 */
+	@SuppressWarnings("unchecked")
+	public T get( int id )
+	{
+		if ( id < 0 || id >= m_slots.length )
+		{
+			return null;
+		}
+
+		int slot = m_slots[id];
+		return slot > 0 ? (T)m_objects[slot - 1] : null;
+	}
+
+	/**
+	 * Stores an object under the specified id, replacing the one that may have been stored there.
+	 * 
+	 * @param id		a non-negative id
+	 * @param obj
+	 */
+	public void put( int id, T obj )
+	{
+		if ( id >= m_slots.length )
+		{
+			int newLength = m_slots.length * 2;
+			if ( newLength <= id )
+			{
+				newLength = id + 1;
+			}
+			int[] newSlots = new int[newLength];
+			System.arraycopy( m_slots, 0, newSlots, 0, m_slots.length );
+			m_slots = newSlots;
+		}
+
+		int slot = m_slots[id];
+		if ( slot > 0 )
+		{
+			// the id is already taken - replace the object
+			m_objects[slot - 1] = obj;
+			return;
+		}
+
+		if ( m_count >= m_objects.length )
+		{
+			Object[] newObjects = new Object[ m_objects.length * 2 ];
+			System.arraycopy( m_objects, 0, newObjects, 0, m_count );
+			m_objects = newObjects;
+
+			int[] newObjectIds = new int[ m_objectIds.length * 2 ];
+			System.arraycopy( m_objectIds, 0, newObjectIds, 0, m_count );
+			m_objectIds = newObjectIds;
+		}
+
+		m_objects[m_count] = obj;
+		m_objectIds[m_count] = id;
+		++m_count;
+		m_slots[id] = m_count;
+	}
+
+	/**
+	 * Removes an object stored under the specified id.
+	 * 
+	 * @param id
+	 * @return			removed object, or null if there was nothing stored under that id
+	 */
+	@SuppressWarnings("unchecked")
+	public T remove( int id )
+	{
+		if ( id < 0 || id >= m_slots.length || m_slots[id] == 0 )
+		{
+			return null;
+		}
+
+		int idx = m_slots[id] - 1;
+		T removedObj = (T)m_objects[idx];
+		m_slots[id] = 0;
+
+		// move the last object in the place of the removed one
+		--m_count;
+		if ( idx < m_count )
+		{
+			m_objects[idx] = m_objects[m_count];
+			m_objectIds[idx] = m_objectIds[m_count];
+			m_slots[ m_objectIds[idx] ] = idx + 1;
+		}
+		m_objects[m_count] = null;
+
+		return removedObj;
+	}
+
+	/**
+	 * Removes all objects.
+	 */
+	public void clear()
+	{
+		for ( int i = 0; i < m_count; ++i )
+		{
+			m_slots[ m_objectIds[i] ] = 0;
+			m_objects[i] = null;
+		}
+		m_count = 0;
+	}
+}
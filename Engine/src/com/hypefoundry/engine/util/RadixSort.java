@@ -0,0 +1,209 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util;
+
+
+/**
+ * A stable sort of integer keys, which carry integer values along.
+ * 
+ * The keys are sorted in the ascending order, one byte at a time. The passes over the bytes
+ * all the keys share are skipped, so the narrower the range of the keys, the faster the sort,
+ * and the keys that are already sorted are left alone. A few keys are sorted using
+ * an insertion sort, which is faster than the radix passes for them.
+ * 
+ * The sorter keeps its temporary buffers between the calls, so once they grow
+ * large enough, it doesn't allocate any memory.
+ * 
+ * @author Paksas
+ *
+ */
+public final class RadixSort
+{
+	private static final int	BYTES_COUNT = 8;
+	private static final int	BUCKETS_COUNT = 256;
+	private static final int	INSERTION_SORT_THRESHOLD = 32;
+
+	private long[]				m_tmpKeys;
+	private int[]				m_tmpValues;
+	private final int[]			m_counts = new int[BUCKETS_COUNT];
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity		number of elements the sorter can sort before it needs to grow its buffers
+	 */
+	public RadixSort( int initialCapacity )
+	{
+		if ( initialCapacity < 1 )
+		{
+			initialCapacity = 1;
+		}
+
+		m_tmpKeys = new long[initialCapacity];
+		m_tmpValues = new int[initialCapacity];
+	}
+
+	/**
+	 * Sorts the keys, moving the values along with them.
+	 * 
+	 * @param keys			non-negative keys
+	 * @param values		values associated with the keys
+	 * @param count			number of elements to sort
+	 */
+	public void sort( long[] keys, int[] values, int count )
+	{
+		if ( count < 2 )
+		{
+			return;
+		}
+		
+		// find the bits the keys differ in, and check if they're not sorted already - 
+		// that's usually the case when they don't change much between the calls
+		long firstKey = keys[0];
+		long differingBits = 0;
+		boolean sorted = true;
+		for ( int i = 1; i < count; ++i )
+		{
+			long key = keys[i];
+			differingBits |= key ^ firstKey;
+			sorted &= keys[i - 1] <= key;
+		}
+		if ( sorted )
+		{
+			return;
+		}
+
+		if ( count <= INSERTION_SORT_THRESHOLD )
+		{
+			insertionSort( keys, values, count );
+			return;
+		}
+
+		if ( m_tmpKeys.length < count )
+		{
+			int newLength = m_tmpKeys.length * 2;
+			if ( newLength < count )
+			{
+				newLength = count;
+			}
+			m_tmpKeys = new long[newLength];
+			m_tmpValues = new int[newLength];
+		}
+
+		int[] counts = m_counts;
+		long[] srcKeys = keys;
+		int[] srcValues = values;
+		long[] destKeys = m_tmpKeys;
+		int[] destValues = m_tmpValues;
+		for ( int b = 0; b < BYTES_COUNT; ++b )
+		{
+			int shift = b << 3;
+
+			// if all keys share this byte, the pass wouldn't change anything
+			if ( ( ( differingBits >>> shift ) & 0xFF ) == 0 )
+			{
+				continue;
+			}
+
+			// build the histogram of the byte
+			for ( int i = 0; i < BUCKETS_COUNT; ++i )
+			{
+				counts[i] = 0;
+			}
+			for ( int i = 0; i < count; ++i )
+			{
+				++counts[ (int)( ( srcKeys[i] >>> shift ) & 0xFF ) ];
+			}
+
+			// turn the counts into the positions the buckets start at
+			int pos = 0;
+			for ( int i = 0; i < BUCKETS_COUNT; ++i )
+			{
+				int bucketSize = counts[i];
+				counts[i] = pos;
+				pos += bucketSize;
+			}
+
+			for ( int i = 0; i < count; ++i )
+			{
+				long key = srcKeys[i];
+				int destIdx = counts[ (int)( ( key >>> shift ) & 0xFF ) ]++;
+				destKeys[destIdx] = key;
+				destValues[destIdx] = srcValues[i];
+			}
+
+			long[] tmpKeys = srcKeys;
+			srcKeys = destKeys;
+			destKeys = tmpKeys;
+
+			int[] tmpValues = srcValues;
+			srcValues = destValues;
+			destValues = tmpValues;
+		}
+
+		// make sure the results end up in the arrays we were given
+		if ( srcKeys != keys )
+		{
+			System.arraycopy( srcKeys, 0, keys, 0, count );
+			System.arraycopy( srcValues, 0, values, 0, count );
+		}
+	}
+
+	/**
+	 * Sorts a few keys, moving the values along with them.
+	 * 
+	 * @param keys
+	 * @param values
+	 * @param count
+	 */
+	private static void insertionSort( long[] keys, int[] values, int count )
+	{
+		for ( int i = 1; i < count; ++i )
+		{
+			long key = keys[i];
+			int value = values[i];
+
+			int j = i - 1;
+			while ( j >= 0 && keys[j] > key )
+			{
+				keys[j + 1] = keys[j];
+				values[j + 1] = values[j];
+				--j;
+			}
+			keys[j + 1] = key;
+			values[j + 1] = value;
+		}
+	}
+
+	/**
+	 * Maps a float onto a 32 bit unsigned key that sorts in the same order the floats do.
+	 * 
+	 * @param value
+	 * @return			a key from the range <0, 2^32 )
+	 */
+	public static long toSortableKey( float value )
+	{
+		// get rid of the negative zero, so that it doesn't land before the positive one
+		int bits = Float.floatToIntBits( value + 0.0f );
+
+		// flip all bits of the negative numbers, and just the sign bit of the positive ones
+		bits ^= ( bits >> 31 ) | 0x80000000;
+		return bits & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Maps a key created with 'toSortableKey' back onto the float it was created from.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public static float fromSortableKey( long key )
+	{
+		int bits = (int)key;
+
+		// the positive numbers have the sign bit set now
+		bits ^= bits < 0 ? 0x80000000 : 0xFFFFFFFF;
+		return Float.intBitsToFloat( bits );
+	}
+}
@@ -3,18 +3,32 @@
  */
 package com.hypefoundry.engine.util;
 
+import java.util.IdentityHashMap;
+
 import com.hypefoundry.engine.math.BoundingBox;
 import android.util.FloatMath;
 
 /**
- * A tool for a simple 2D world division
+ * A tool for a simple 2D world division.
+ * 
+ * The grid doesn't impose a limit on the number of objects it can store - both
+ * the objects table and the cells membership grow on demand.
+ * 
+ * The grid can be split into several levels - each level has cells half the size of 
+ * the cells of the previous one. An object is stored in the level with the smallest cells 
+ * it still fits in, so the small objects are found with a precise query, while the large ones 
+ * don't occupy hundreds of tiny cells. The level is chosen when the object is inserted - if it
+ * grows afterwards, it simply occupies more cells of that level.
  * 
  * @author paksas
  */
 public class SpatialGrid2D
-{	
-	private Grid 							m_staticGrid;
-	private Grid 							m_dynamicGrid;
+{
+	private static final int				DEFAULT_INITIAL_CAPACITY = 64;
+
+	private Grid[] 							m_staticGrids;				// a grid per level, starting from the one with the largest cells
+	private Grid[] 							m_dynamicGrids;
+	private float							m_smallestCellSize;
 	
 	// runtime temp data
 	private int[]							m_cellIds = new int[4];
@@ -25,13 +39,61 @@ public class SpatialGrid2D
 	 * @param worldWidth
 	 * @param worldHeight
 	 * @param cellSize
-	 * @param maxObjects		max objects that can be placed in the grid
 	 */
-	public SpatialGrid2D( float worldWidth, float worldHeight, float cellSize, short maxObjects ) 
-	{		
+	public SpatialGrid2D( float worldWidth, float worldHeight, float cellSize )
+	{
+		this( worldWidth, worldHeight, cellSize, DEFAULT_INITIAL_CAPACITY );
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param worldWidth
+	 * @param worldHeight
+	 * @param cellSize
+	 * @param initialCapacity		number of objects the grid can store before it needs to grow its storage
+	 */
+	public SpatialGrid2D( float worldWidth, float worldHeight, float cellSize, int initialCapacity )
+	{
+		this( worldWidth, worldHeight, cellSize, 1, initialCapacity );
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param worldWidth
+	 * @param worldHeight
+	 * @param cellSize				size of the cells of the first level
+	 * @param levelsCount			number of levels, each with cells half the size of the previous one
+	 * @param initialCapacity		number of objects the grid can store before it needs to grow its storage
+	 */
+	public SpatialGrid2D( float worldWidth, float worldHeight, float cellSize, int levelsCount, int initialCapacity )
+	{
+		if ( levelsCount < 1 )
+		{
+			levelsCount = 1;
+		}
+		
 		// create the grids
-		m_staticGrid = new Grid( worldWidth, worldHeight, cellSize, maxObjects );
-		m_dynamicGrid = new Grid( worldWidth, worldHeight, cellSize, maxObjects );
+		m_staticGrids = new Grid[levelsCount];
+		m_dynamicGrids = new Grid[levelsCount];
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			m_staticGrids[i] = new Grid( worldWidth, worldHeight, cellSize, initialCapacity );
+			m_dynamicGrids[i] = new Grid( worldWidth, worldHeight, cellSize, initialCapacity );
+			m_smallestCellSize = cellSize;
+			cellSize *= 0.5f;
+		}
+	}
+	
+	/**
+	 * Returns the number of levels the grid is split into.
+	 * 
+	 * @return
+	 */
+	public int getLevelsCount()
+	{
+		return m_staticGrids.length;
 	}
 	
 	/**
@@ -41,7 +103,7 @@ public class SpatialGrid2D
 	 */
 	public void insertStaticObject( SpatialGridObject obj ) 
 	{
-		m_staticGrid.insert( obj );
+		m_staticGrids[ getLevel( obj.getBounds() ) ].insert( obj );
 	}
 
 	/**
@@ -50,7 +112,7 @@ public class SpatialGrid2D
 	 */
 	public void insertDynamicObject( SpatialGridObject obj ) 
 	{	
-		m_dynamicGrid.insert( obj );
+		m_dynamicGrids[ getLevel( obj.getBounds() ) ].insert( obj );
 	}
 	
 	/**
@@ -60,21 +122,114 @@ public class SpatialGrid2D
 	 */
 	public void removeObject( SpatialGridObject obj ) 
 	{
-		m_staticGrid.removeObject( obj );
-		m_dynamicGrid.removeObject( obj );
+		int levelsCount = m_staticGrids.length;
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			if ( m_staticGrids[i].removeObject( obj ) || m_dynamicGrids[i].removeObject( obj ) )
+			{
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the level with the smallest cells the specified shape fits in.
+	 * 
+	 * @param shape
+	 * @return
+	 */
+	private int getLevel( BoundingBox shape )
+	{
+		float size = shape.getWidth();
+		float height = shape.getHeight();
+		if ( height > size )
+		{
+			size = height;
+		}
+		
+		int level = m_staticGrids.length - 1;
+		for ( float cellSize = m_smallestCellSize; level > 0 && size > cellSize; cellSize *= 2.0f )
+		{
+			--level;
+		}
+		return level;
 	}
 	
 	/**
-	 * Updates the whereabouts of all registered dynamic objects.
+	 * Returns the number of objects registered with the grid.
+	 * 
+	 * Use it to size the arrays you pass to the 'getPotentialColliders' methods -
+	 * a query never returns more objects than that.
+	 * 
+	 * @return
+	 */
+	public int getObjectsCount()
+	{
+		int count = 0;
+		int levelsCount = m_staticGrids.length;
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			count += m_staticGrids[i].getObjectsCount() + m_dynamicGrids[i].getObjectsCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Switches the way the dynamic objects are updated.
+	 * 
+	 * By default, 'update' checks every dynamic object to see if it changed the cells it occupies.
+	 * Once move notifications are enabled, 'update' will only process the objects reported
+	 * with 'notifyObjectMoved', so the stationary objects won't cost anything.
+	 * 
+	 * @param enable
+	 */
+	public void enableMoveNotifications( boolean enable )
+	{
+		int levelsCount = m_dynamicGrids.length;
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			m_dynamicGrids[i].enableMoveNotifications( enable );
+		}
+	}
+
+	/**
+	 * Informs the grid that the bounds of a dynamic object have changed.
+	 * 
+	 * The object's whereabouts will be updated during the next 'update' call. Reports
+	 * about static objects or objects the grid doesn't know about are ignored.
+	 * 
+	 * @param obj
+	 */
+	public void notifyObjectMoved( SpatialGridObject obj )
+	{
+		int levelsCount = m_dynamicGrids.length;
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			if ( m_dynamicGrids[i].notifyObjectMoved( obj ) )
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Updates the whereabouts of the registered dynamic objects.
 	 */
 	public void update()
 	{
-		m_dynamicGrid.update();
+		int levelsCount = m_dynamicGrids.length;
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			m_dynamicGrids[i].update();
+		}
 	}
 	
 	/**
 	 * Returns a list of all objects within the specified area.
-	 *   
+	 * 
+	 * CAUTION: if the 'colliders' array is too small to accommodate all the objects found,
+	 * the results will be truncated.
+	 * 
 	 * @param shape
 	 * @param colliders		an array capable of storing the colliders found in the world
 	 * @return	number of colliders found
@@ -83,17 +238,25 @@ public class SpatialGrid2D
 	{
 		int collidersCount = 0;
 		
-		m_staticGrid.getCellIds( shape, m_cellIds );
-		
-		collidersCount = m_staticGrid.getPotentialColliders( colliders, collidersCount, m_cellIds );
-		collidersCount = m_dynamicGrid.getPotentialColliders( colliders, collidersCount, m_cellIds );
+		// every object is stored in a single level, so the levels won't return duplicates
+		int levelsCount = m_staticGrids.length;
+		for ( int i = 0; i < levelsCount; ++i )
+		{
+			m_staticGrids[i].getCellIds( shape, m_cellIds );
+			
+			collidersCount = m_staticGrids[i].getPotentialColliders( colliders, collidersCount, m_cellIds );
+			collidersCount = m_dynamicGrids[i].getPotentialColliders( colliders, collidersCount, m_cellIds );
+		}
 			
 		return collidersCount;
 	}
 	
 	/**
 	 * Returns a list of all objects the specified object may collide with.
-	 *   
+	 * 
+	 * CAUTION: if the 'colliders' array is too small to accommodate all the objects found,
+	 * the results will be truncated.
+	 * 
 	 * @param obj
 	 * @param colliders		an array capable of storing the colliders found in the world
 	 * @return	number of colliders found
@@ -101,15 +264,7 @@ public class SpatialGrid2D
 	public int getPotentialColliders( SpatialGridObject obj, SpatialGridObject[] colliders ) 
 	{
 		// get the shape from the object the vicinity of which we're querying
-		BoundingBox shape = obj.getBounds();
-		
-		int collidersCount = 0;
-		m_staticGrid.getCellIds( shape, m_cellIds );
-		
-		collidersCount = m_staticGrid.getPotentialColliders( colliders, collidersCount, m_cellIds );
-		collidersCount = m_dynamicGrid.getPotentialColliders( colliders, collidersCount, m_cellIds );
-			
-		return collidersCount;
+		return getPotentialColliders( obj.getBounds(), colliders );
 	}
 		
 }
@@ -119,15 +274,21 @@ public class SpatialGrid2D
 class ObjectData
 {
 	final SpatialGridObject  		m_obj;
-	short							m_idx;
+	final int						m_idx;
 	int[]							m_cellIds = new int[4];
-	
-	ObjectData( SpatialGridObject obj, short idx )
+	boolean							m_moved = false;
+
+	ObjectData( SpatialGridObject obj, int idx )
 	{
 		m_obj = obj;
 		m_idx = idx;
 	}
-	
+
+	boolean hasCells( int[] ids )
+	{
+		return m_cellIds[0] == ids[0] && m_cellIds[1] == ids[1] && m_cellIds[2] == ids[2] && m_cellIds[3] == ids[3];
+	}
+
 	void setCells( int[] ids )
 	{
 		m_cellIds[0] = ids[0];
@@ -144,122 +305,148 @@ class Grid
 	private int 							m_cellsCount;
 	private int 							m_cellsPerRow;
 	private int 							m_cellsPerCol;
-	private short 							m_maxObjects;
 	private float 							m_cellSize;
-	
+
+	// cells are created the first time an object enters them
 	private BitField[] 						m_cells;
+
+	// objects table - slots freed by the removed objects are reused
 	private ObjectData[]					m_objects;
-	
+	private int								m_slotsCount = 0;		// number of slots ever used
+	private int								m_occupiedSlotsEnd = 0;	// index past the highest occupied slot
+	private int[]							m_freeSlots;
+	private int								m_freeSlotsCount = 0;
+	private IdentityHashMap< SpatialGridObject, ObjectData >	m_objectsMap;
+
+	// objects reported as moved since the last update
+	private boolean							m_moveNotificationsEnabled = false;
+	private ObjectData[]					m_movedObjects;
+	private int								m_movedObjectsCount = 0;
+
 	// runtime temp data
 	private BitField 						m_colliders;
-	
+	private int[]							m_tmpCellIds = new int[4];
+
 	/**
 	 * Constructor.
 	 * 
 	 * @param worldWidth
 	 * @param worldHeight
 	 * @param cellSize
-	 * @param maxObjects		max objects that can be placed in the grid
+	 * @param initialCapacity		number of objects the grid can store before it needs to grow its storage
 	 */
-	Grid( float worldWidth, float worldHeight, float cellSize, short maxObjects )
-	{	
+	Grid( float worldWidth, float worldHeight, float cellSize, int initialCapacity )
+	{
+		if ( initialCapacity < 1 )
+		{
+			initialCapacity = 1;
+		}
+
 		// memorize the basic data about the grid size
 		m_cellSize = cellSize;
 		m_cellsPerRow = (int)FloatMath.ceil( worldWidth / cellSize );
 		m_cellsPerCol = (int)FloatMath.ceil( worldHeight / cellSize );
+		if ( m_cellsPerRow < 1 ) { m_cellsPerRow = 1; }
+		if ( m_cellsPerCol < 1 ) { m_cellsPerCol = 1; }
 		m_cellsCount = m_cellsPerRow * m_cellsPerCol;
-		m_maxObjects = maxObjects;
-				
+
 		m_cells = new BitField[m_cellsCount];
-		for ( int i = 0; i < m_cellsCount; ++i )
-		{
-			m_cells[i] = new BitField();
-		}
-		
-		m_objects = new ObjectData[ m_maxObjects ];
-		m_colliders = new BitField();
+
+		m_objects = new ObjectData[ initialCapacity ];
+		m_freeSlots = new int[ initialCapacity ];
+		m_objectsMap = new IdentityHashMap< SpatialGridObject, ObjectData >( initialCapacity );
+		m_movedObjects = new ObjectData[ initialCapacity ];
+		m_colliders = new BitField( initialCapacity );
 	}
 	
 	/**
-	 * Adds a new static object to the grid.
+	 * Returns the number of objects stored in the grid.
+	 * 
+	 * @return
+	 */
+	int getObjectsCount()
+	{
+		return m_slotsCount - m_freeSlotsCount;
+	}
+
+	/**
+	 * Adds a new object to the grid.
 	 * 
 	 * @param obj
-	 * @param cellIds
 	 */
-	public void insert( SpatialGridObject obj ) 
-	{	
-		// create the object
-		ObjectData objData = null;
-		
-		// find the first unoccupied slot in the array and store the object there, initializing
-		// its index
-		for ( short i = 0; i < m_objects.length; ++i )
+	public void insert( SpatialGridObject obj )
+	{
+		if ( m_objectsMap.containsKey( obj ) )
 		{
-			if ( m_objects[i] == null )
-			{
-				objData = new ObjectData( obj, i );
-				m_objects[i] = objData;
-				break;
-			}
+			// the object's already in the grid
+			return;
 		}
-		
-		if ( objData == null )
+
+		// reuse a freed slot, or take a brand new one
+		int idx;
+		if ( m_freeSlotsCount > 0 )
 		{
-			// the storage capacity's been exceeded
-			return;
+			idx = m_freeSlots[ --m_freeSlotsCount ];
 		}
-		
-		// set it in the grid
-		getCellIds( obj.getBounds(), objData.m_cellIds );
-		for ( int y = objData.m_cellIds[2]; y <= objData.m_cellIds[3]; ++y )
+		else
 		{
-			int cellAddr = y * m_cellsPerRow + objData.m_cellIds[0];
-			for ( int x = objData.m_cellIds[0]; x <= objData.m_cellIds[1]; ++x, ++cellAddr )
+			if ( m_slotsCount >= m_objects.length )
 			{
-				assert( cellAddr < m_cellsCount );	// invalid cell address check
-				
-				m_cells[cellAddr].set( objData.m_idx, true );
+				ObjectData[] newObjects = new ObjectData[ m_objects.length * 2 ];
+				System.arraycopy( m_objects, 0, newObjects, 0, m_slotsCount );
+				m_objects = newObjects;
 			}
+			idx = m_slotsCount++;
+		}
+
+		ObjectData objData = new ObjectData( obj, idx );
+		m_objects[idx] = objData;
+		m_objectsMap.put( obj, objData );
+		if ( idx >= m_occupiedSlotsEnd )
+		{
+			m_occupiedSlotsEnd = idx + 1;
 		}
+
+		// set it in the grid
+		getCellIds( obj.getBounds(), objData.m_cellIds );
+		markCells( objData, true );
 	}
 		
 	/**
 	 * Removes an object from the grid
 	 * 
 	 * @param obj
-	 * @param cellIds
+	 * @return 'true' if the object was found and removed, 'false' otherwise
 	 */
-	public void removeObject( SpatialGridObject obj ) 
-	{		
-		ObjectData objData = null;
-		// find the object and remove it
-		for ( short i = 0; i < m_objects.length; ++i )
-		{
-			if ( m_objects[i] != null && m_objects[i].m_obj == obj )
-			{
-				objData = m_objects[ i ];
-				m_objects[ i ] = null;
-				break;
-			}
-		}
-		
+	public boolean removeObject( SpatialGridObject obj )
+	{
+		ObjectData objData = m_objectsMap.remove( obj );
 		if ( objData == null )
 		{
 			// object wasn't found
-			return;
+			return false;
 		}
 		
 		// remove the object from the cells
-		for ( int y = objData.m_cellIds[2]; y <= objData.m_cellIds[3]; ++y )
+		markCells( objData, false );
+
+		// release the slot
+		m_objects[ objData.m_idx ] = null;
+		if ( m_freeSlotsCount >= m_freeSlots.length )
 		{
-			int cellAddr = y * m_cellsPerRow + objData.m_cellIds[0];
-			for ( int x = objData.m_cellIds[0]; x <= objData.m_cellIds[1]; ++x, ++cellAddr )
-			{
-				assert( cellAddr < m_cellsCount );	// invalid cell address check
-				
-				m_cells[cellAddr].set( objData.m_idx, false );		
-			}	
+			int[] newFreeSlots = new int[ m_freeSlots.length * 2 ];
+			System.arraycopy( m_freeSlots, 0, newFreeSlots, 0, m_freeSlotsCount );
+			m_freeSlots = newFreeSlots;
+		}
+		m_freeSlots[ m_freeSlotsCount++ ] = objData.m_idx;
+
+		// if that was the highest occupied slot, find the next one down
+		while ( m_occupiedSlotsEnd > 0 && m_objects[ m_occupiedSlotsEnd - 1 ] == null )
+		{
+			--m_occupiedSlotsEnd;
 		}
+
+		return true;
 	}
 	
 	/**
@@ -267,43 +454,104 @@ class Grid
 	 */
 	public void update()
 	{
-		for ( int i = 0; i < m_maxObjects; ++i )
+		if ( m_moveNotificationsEnabled )
 		{
-			if ( m_objects[i] == null )
-			{
-				continue;
-			}
-			
-			// reset the old cells
-			ObjectData objData = m_objects[i];
-			for ( int y = objData.m_cellIds[2]; y <= objData.m_cellIds[3]; ++y )
+			for ( int i = 0; i < m_movedObjectsCount; ++i )
 			{
-				int cellAddr = y * m_cellsPerRow + objData.m_cellIds[0];
-				for ( int x = objData.m_cellIds[0]; x <= objData.m_cellIds[1]; ++x, ++cellAddr )
+				ObjectData objData = m_movedObjects[i];
+				m_movedObjects[i] = null;
+				objData.m_moved = false;
+
+				// the object might have been removed after it was reported
+				if ( m_objects[ objData.m_idx ] == objData )
 				{
-					m_cells[cellAddr].set( objData.m_idx, false );
+					updateObject( objData );
 				}
 			}
-			
-			// set the new ones
-			getCellIds( objData.m_obj.getBounds(), objData.m_cellIds );
-			for ( int y = objData.m_cellIds[2]; y <= objData.m_cellIds[3]; ++y )
+			m_movedObjectsCount = 0;
+		}
+		else
+		{
+			for ( int i = 0; i < m_occupiedSlotsEnd; ++i )
 			{
-				int cellAddr = y * m_cellsPerRow + objData.m_cellIds[0];
-				for ( int x = objData.m_cellIds[0]; x <= objData.m_cellIds[1]; ++x, ++cellAddr )
+				ObjectData objData = m_objects[i];
+				if ( objData != null )
 				{
-					m_cells[cellAddr].set( objData.m_idx, true );
+					updateObject( objData );
 				}
 			}
 		}
 	}
-	
+
+	/**
+	 * Toggles the mode in which only the objects reported as moved are updated.
+	 * 
+	 * @param enable
+	 */
+	void enableMoveNotifications( boolean enable )
+	{
+		m_moveNotificationsEnabled = enable;
+	}
+
+	/**
+	 * Puts the object on the list of objects that need to be updated.
+	 * 
+	 * @param obj
+	 * @return 'true' if the object is stored in the grid, 'false' otherwise
+	 */
+	boolean notifyObjectMoved( SpatialGridObject obj )
+	{
+		ObjectData objData = m_objectsMap.get( obj );
+		if ( objData == null )
+		{
+			// unknown object
+			return false;
+		}
+		
+		if ( objData.m_moved )
+		{
+			// it's already been reported
+			return true;
+		}
+
+		if ( m_movedObjectsCount >= m_movedObjects.length )
+		{
+			ObjectData[] newMovedObjects = new ObjectData[ m_movedObjects.length * 2 ];
+			System.arraycopy( m_movedObjects, 0, newMovedObjects, 0, m_movedObjectsCount );
+			m_movedObjects = newMovedObjects;
+		}
+		objData.m_moved = true;
+		m_movedObjects[ m_movedObjectsCount++ ] = objData;
+		return true;
+	}
+
+	/**
+	 * Updates the cells the object occupies - but only if it actually moved to different cells.
+	 * 
+	 * @param objData
+	 */
+	private void updateObject( ObjectData objData )
+	{
+		getCellIds( objData.m_obj.getBounds(), m_tmpCellIds );
+		if ( objData.hasCells( m_tmpCellIds ) )
+		{
+			// the object still occupies the same cells
+			return;
+		}
+
+		// reset the old cells
+		markCells( objData, false );
+
+		// set the new ones
+		objData.setCells( m_tmpCellIds );
+		markCells( objData, true );
+	}
+
 	/**
 	 * Returns a list of all objects within the specified area.
-	 *   
-	 * @param box
-	 * @param colliders		a bitfield specifying which objects to take
-	 * @param startIdx		index from which the datqa should be appended to the 'colliders' array
+	 * 
+	 * @param colliders		an array the found objects will be stored in
+	 * @param startIdx		index from which the data should be appended to the 'colliders' array
 	 * @pram cellIds		cell span that should be queried
 	 * @return				end index in the array 
 	 */
@@ -316,28 +564,41 @@ class Grid
 			int cellAddr = y * m_cellsPerRow + cellIds[0];
 			for ( int x = cellIds[0]; x <= cellIds[1]; ++x, ++cellAddr )
 			{
-				m_colliders.or( m_cells[cellAddr] );
+				BitField cell = m_cells[cellAddr];
+				if ( cell != null )
+				{
+					m_colliders.or( cell );
+				}
 			}
 		}
 	
-		// find the objects corresponding to the collider indices
+		// find the objects corresponding to the collider indices - visit only the set bits,
+		// and don't look past the highest occupied slot
 		int collidersCount = startIdx;
-		byte chunkIdx = 0;
-		int key = 1;
-		int k = 0;
-		for ( short i = 0; i < m_maxObjects; ++i, ++k )
+		int maxColliders = colliders.length;
+		long[] words = m_colliders.m_words;
+		int wordsCount = ( m_occupiedSlotsEnd + BitField.WORD_CAPACITY - 1 ) >> 6;
+		if ( wordsCount > m_colliders.m_wordsCount )
 		{
-			if ( k >= BitField.CHUNK_CAPACITY )
-			{
-				++chunkIdx;
-				key = 1;
-				k = 0;
-			}
-			if ( ( m_colliders.m_bits[chunkIdx] & key ) == key )
+			wordsCount = m_colliders.m_wordsCount;
+		}
+		
+		for ( int wordIdx = 0; wordIdx < wordsCount; ++wordIdx )
+		{
+			long word = words[wordIdx];
+			int baseIdx = wordIdx << 6;
+			while ( word != 0 )
 			{
-				colliders[ collidersCount++ ] = m_objects[i].m_obj;
+				if ( collidersCount >= maxColliders )
+				{
+					return collidersCount;
+				}
+				
+				colliders[ collidersCount++ ] = m_objects[ baseIdx + Long.numberOfTrailingZeros( word ) ].m_obj;
+				
+				// clear the lowest set bit
+				word &= word - 1;
 			}
-			key = key << 1;
 		}
 		
 		return collidersCount;
@@ -366,4 +627,36 @@ class Grid
 		cellIds[2] = minY;
 		cellIds[3] = maxY;
 	}
+
+	/**
+	 * Sets or clears the object's bit in all cells its cached cell span covers.
+	 * 
+	 * @param objData
+	 * @param enable
+	 */
+	private void markCells( ObjectData objData, boolean enable )
+	{
+		int[] cellIds = objData.m_cellIds;
+		for ( int y = cellIds[2]; y <= cellIds[3]; ++y )
+		{
+			int cellAddr = y * m_cellsPerRow + cellIds[0];
+			for ( int x = cellIds[0]; x <= cellIds[1]; ++x, ++cellAddr )
+			{
+				assert( cellAddr < m_cellsCount );	// invalid cell address check
+
+				BitField cell = m_cells[cellAddr];
+				if ( cell == null )
+				{
+					if ( !enable )
+					{
+						continue;
+					}
+
+					cell = new BitField();
+					m_cells[cellAddr] = cell;
+				}
+				cell.set( objData.m_idx, enable );
+			}
+		}
+	}
 }
@@ -0,0 +1,242 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * A small pool of worker threads that runs data parallel loops.
+ * 
+ * A loop over a range of indices is split into contiguous chunks, one per thread,
+ * and the calling thread processes one of them itself. The call returns only once
+ * all the chunks are done, so as long as a task writes only to the data
+ * associated with the indices it was given, its results don't depend on
+ * how the work was distributed between the threads.
+ * 
+ * @author Paksas
+ *
+ */
+public final class WorkerPool
+{
+	/**
+	 * A task that processes a range of indices.
+	 * 
+	 * @author Paksas
+	 *
+	 */
+	public interface Task
+	{
+		/**
+		 * Processes the indices from the range <startIdx, endIdx ).
+		 * 
+		 * @param startIdx
+		 * @param endIdx
+		 */
+		void execute( int startIdx, int endIdx );
+	}
+
+	// ------------------------------------------------------------------------
+
+	private final ExecutorService		m_executor;
+	private final Chunk[]				m_chunks;
+	private int							m_pendingChunksCount = 0;
+	private Throwable					m_error = null;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param threadsCount		number of threads the work is split between, including the calling one
+	 */
+	public WorkerPool( int threadsCount )
+	{
+		if ( threadsCount < 2 )
+		{
+			threadsCount = 2;
+		}
+
+		m_chunks = new Chunk[threadsCount];
+		for ( int i = 0; i < threadsCount; ++i )
+		{
+			m_chunks[i] = new Chunk();
+		}
+
+		// the workers shouldn't keep the application alive
+		m_executor = Executors.newFixedThreadPool( threadsCount - 1, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread( Runnable runnable )
+			{
+				Thread thread = new Thread( runnable, "WorkerPool" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+	}
+
+	/**
+	 * Returns the number of threads the work is split between.
+	 * 
+	 * @return
+	 */
+	public int getThreadsCount()
+	{
+		return m_chunks.length;
+	}
+
+	/**
+	 * Runs the task over the range <0, count ), and waits until it's done.
+	 * 
+	 * @param task
+	 * @param count				number of indices to process
+	 * @param minChunkSize		smallest number of indices worth passing to another thread
+	 */
+	public void execute( Task task, int count, int minChunkSize )
+	{
+		if ( minChunkSize < 1 )
+		{
+			minChunkSize = 1;
+		}
+
+		int chunksCount = ( count + minChunkSize - 1 ) / minChunkSize;
+		if ( chunksCount > m_chunks.length )
+		{
+			chunksCount = m_chunks.length;
+		}
+
+		if ( chunksCount <= 1 )
+		{
+			// not worth the synchronization
+			task.execute( 0, count );
+			return;
+		}
+
+		int chunkSize = ( count + chunksCount - 1 ) / chunksCount;
+		synchronized( this )
+		{
+			m_pendingChunksCount = chunksCount - 1;
+			m_error = null;
+		}
+
+		for ( int i = 1; i < chunksCount; ++i )
+		{
+			int startIdx = i * chunkSize;
+			int endIdx = startIdx + chunkSize < count ? startIdx + chunkSize : count;
+
+			m_chunks[i].set( task, startIdx, endIdx );
+			m_executor.execute( m_chunks[i] );
+		}
+
+		// the calling thread takes care of the first chunk
+		Throwable error = null;
+		try
+		{
+			task.execute( 0, chunkSize );
+		}
+		catch( Throwable e )
+		{
+			error = e;
+		}
+
+		// wait for the other chunks
+		boolean interrupted = false;
+		synchronized( this )
+		{
+			while ( m_pendingChunksCount > 0 )
+			{
+				try
+				{
+					wait();
+				}
+				catch( InterruptedException e )
+				{
+					interrupted = true;
+				}
+			}
+
+			if ( error == null )
+			{
+				error = m_error;
+			}
+			m_error = null;
+		}
+
+		if ( interrupted )
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if ( error != null )
+		{
+			throw new RuntimeException( error );
+		}
+	}
+
+	/**
+	 * Stops the worker threads. The pool can't be used afterwards.
+	 */
+	public void shutdown()
+	{
+		m_executor.shutdown();
+	}
+
+	/**
+	 * Called by a worker when it's done with its chunk.
+	 * 
+	 * @param error			an error the task threw, if any
+	 */
+	private synchronized void onChunkFinished( Throwable error )
+	{
+		if ( error != null && m_error == null )
+		{
+			m_error = error;
+		}
+
+		--m_pendingChunksCount;
+		if ( m_pendingChunksCount <= 0 )
+		{
+			notifyAll();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A range of indices handed over to a worker thread.
+	 * 
+	 * @author Paksas
+	 *
+	 */
+	private final class Chunk implements Runnable
+	{
+		private Task		m_task;
+		private int			m_startIdx;
+		private int			m_endIdx;
+
+		void set( Task task, int startIdx, int endIdx )
+		{
+			m_task = task;
+			m_startIdx = startIdx;
+			m_endIdx = endIdx;
+		}
+
+		@Override
+		public void run()
+		{
+			Throwable error = null;
+			try
+			{
+				m_task.execute( m_startIdx, m_endIdx );
+			}
+			catch( Throwable e )
+			{
+				error = e;
+			}
+
+			onChunkFinished( error );
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util.serialization.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+
+/**
+ * A tool that compiles the XML assets into the binary form the BinaryDataLoader reads. It runs on a desktop JVM:
+ * 
+ * java BinaryAssetCompiler <source assets dir> <output assets dir> <input>...
+ * 
+ * An input is a path of an XML asset - a world, an animation, a particle system, a HUD, a font etc. - relative
+ * to the source assets directory. The compiled asset is saved under the same path in the output directory, so
+ * the game loads it instead of the XML one without any changes to the code.
+ * 
+ * The values that can be stored as integers, floats or bools without changing their text are stored with
+ * those types, the rest of them are stored as strings.
+ * 
+ * @author Paksas
+ *
+ */
+public final class BinaryAssetCompiler
+{
+	/**
+	 * Entry point of the tool.
+	 * 
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		if ( args.length < 3 )
+		{
+			System.out.println( "Usage: BinaryAssetCompiler <source assets dir> <output assets dir> <input>..." );
+			System.exit( 1 );
+		}
+		
+		File sourceDir = new File( args[0] );
+		File outputDir = new File( args[1] );
+		for ( int i = 2; i < args.length; ++i )
+		{
+			try
+			{
+				compile( new File( sourceDir, args[i] ), new File( outputDir, args[i] ) );
+			}
+			catch ( IOException e )
+			{
+				System.out.println( "Couldn't compile '" + args[i] + "': " + e.getMessage() );
+				System.exit( 1 );
+			}
+		}
+		System.out.println( "Compiled " + ( args.length - 2 ) + " assets" );
+	}
+	
+	/**
+	 * Compiles an XML asset file.
+	 * 
+	 * @param source
+	 * @param output
+	 * @throws IOException
+	 */
+	public static void compile( File source, File output ) throws IOException
+	{
+		File outputParent = output.getParentFile();
+		if ( outputParent != null && !outputParent.exists() && !outputParent.mkdirs() )
+		{
+			throw new IOException( "Couldn't create '" + outputParent.getPath() + "'" );
+		}
+		
+		InputStream in = new FileInputStream( source );
+		try
+		{
+			OutputStream out = new FileOutputStream( output );
+			try
+			{
+				compile( in, out );
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/**
+	 * Compiles an XML asset.
+	 * 
+	 * @param xmlStream
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void compile( InputStream xmlStream, OutputStream out ) throws IOException
+	{
+		Document doc = null;
+		try
+		{
+			DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			doc = db.parse( xmlStream );
+		}
+		catch ( ParserConfigurationException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( SAXException e )
+		{
+			throw new IOException( e.getMessage() );
+		}
+		doc.getDocumentElement().normalize();
+		
+		BinaryAssetCompiler compiler = new BinaryAssetCompiler();
+		compiler.layout( doc.getDocumentElement() );
+		compiler.write( new DataOutputStream( out ) );
+	}
+	
+	// ------------------------------------------------------------------------
+	
+	private final List< Element >				m_nodes = new ArrayList< Element >();
+	private final Map< Element, Integer >		m_nodeOffsets = new IdentityHashMap< Element, Integer >();
+	private int									m_nodesSize = 0;
+	
+	private final List< String >				m_strings = new ArrayList< String >();
+	private final Map< String, Integer >		m_stringIds = new HashMap< String, Integer >();
+	
+	/**
+	 * Assigns the offsets to the element and its descendants, in the depth-first order.
+	 * 
+	 * @param element
+	 */
+	private void layout( Element element )
+	{
+		NamedNodeMap attributes = element.getAttributes();
+		if ( attributes.getLength() > Short.MAX_VALUE )
+		{
+			throw new RuntimeException( "Element '" + element.getTagName() + "' has too many attributes" );
+		}
+		
+		m_nodes.add( element );
+		m_nodeOffsets.put( element, m_nodesSize );
+		m_nodesSize += BinaryDataLoader.NODE_HEADER_SIZE + attributes.getLength() * BinaryDataLoader.ATTRIBUTE_SIZE;
+		
+		for ( Element child = getNextElement( element.getFirstChild() ); child != null; child = getNextElement( child.getNextSibling() ) )
+		{
+			layout( child );
+		}
+	}
+	
+	/**
+	 * Writes the compiled asset.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void write( DataOutputStream out ) throws IOException
+	{
+		// the nodes are compiled first, so that the strings they use get collected
+		byte[] nodes = compileNodes();
+		
+		out.writeInt( BinaryDataLoader.MAGIC );
+		out.writeShort( BinaryDataLoader.VERSION );
+		
+		int stringsCount = m_strings.size();
+		out.writeInt( stringsCount );
+		for ( int i = 0; i < stringsCount; ++i )
+		{
+			byte[] str = m_strings.get( i ).getBytes( "UTF-8" );
+			out.writeInt( str.length );
+			out.write( str );
+		}
+		
+		out.writeInt( nodes.length );
+		out.write( nodes );
+		out.flush();
+	}
+	
+	/**
+	 * Compiles the nodes section.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private byte[] compileNodes() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( m_nodesSize );
+		DataOutputStream out = new DataOutputStream( bytes );
+		
+		int count = m_nodes.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			Element element = m_nodes.get( i );
+			out.writeInt( getStringIdx( element.getTagName() ) );
+			out.writeInt( getOffset( getNextElement( element.getFirstChild() ) ) );
+			out.writeInt( getOffset( getNextElement( element.getNextSibling() ) ) );
+			
+			NamedNodeMap attributes = element.getAttributes();
+			int attributesCount = attributes.getLength();
+			out.writeShort( attributesCount );
+			for ( int j = 0; j < attributesCount; ++j )
+			{
+				Attr attribute = (Attr)attributes.item( j );
+				out.writeInt( getStringIdx( attribute.getName() ) );
+				writeValue( attribute.getValue(), out );
+			}
+		}
+		
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Writes a value with the most specific type that preserves its text.
+	 * 
+	 * @param value
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeValue( String value, DataOutputStream out ) throws IOException
+	{
+		if ( value.equals( "true" ) || value.equals( "false" ) )
+		{
+			out.writeByte( BinaryDataLoader.TYPE_BOOL );
+			out.writeInt( value.equals( "true" ) ? 1 : 0 );
+			return;
+		}
+		
+		try
+		{
+			int intValue = Integer.parseInt( value );
+			if ( Integer.toString( intValue ).equals( value ) )
+			{
+				out.writeByte( BinaryDataLoader.TYPE_INT );
+				out.writeInt( intValue );
+				return;
+			}
+		}
+		catch ( NumberFormatException e )
+		{
+			// it's not an integer
+		}
+		
+		try
+		{
+			float floatValue = Float.parseFloat( value );
+			if ( Float.toString( floatValue ).equals( value ) )
+			{
+				out.writeByte( BinaryDataLoader.TYPE_FLOAT );
+				out.writeInt( Float.floatToIntBits( floatValue ) );
+				return;
+			}
+		}
+		catch ( NumberFormatException e )
+		{
+			// it's not a float
+		}
+		
+		out.writeByte( BinaryDataLoader.TYPE_STRING );
+		out.writeInt( getStringIdx( value ) );
+	}
+	
+	/**
+	 * Returns the index of the string in the strings table, adding it there if it's not there yet.
+	 * 
+	 * @param str
+	 * @return
+	 */
+	private int getStringIdx( String str )
+	{
+		Integer idx = m_stringIds.get( str );
+		if ( idx == null )
+		{
+			idx = m_strings.size();
+			m_strings.add( str );
+			m_stringIds.put( str, idx );
+		}
+		return idx;
+	}
+	
+	/**
+	 * Returns the offset of the element in the nodes section.
+	 * 
+	 * @param element
+	 * @return			offset, or -1 if there's no element
+	 */
+	private int getOffset( Element element )
+	{
+		return element != null ? m_nodeOffsets.get( element ) : -1;
+	}
+	
+	/**
+	 * Returns the first element among the node and its next siblings.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private static Element getNextElement( Node node )
+	{
+		while ( node != null && node.getNodeType() != Node.ELEMENT_NODE )
+		{
+			node = node.getNextSibling();
+		}
+		return (Element)node;
+	}
+}
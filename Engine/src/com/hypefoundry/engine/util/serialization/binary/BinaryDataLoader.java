@@ -0,0 +1,521 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util.serialization.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hypefoundry.engine.util.serialization.DataLoader;
+
+
+/**
+ * A reader of the assets compiled by the BinaryAssetCompiler.
+ * 
+ * The data is read straight from a buffer - the nodes aren't parsed, and the values are stored
+ * with their types, so reading them doesn't involve parsing the strings either. The buffer
+ * can be memory mapped.
+ * 
+ * The format:
+ * 
+ * int		MAGIC
+ * short	VERSION
+ * int		strings count, followed by the strings - each one is an int length and as many bytes of UTF-8 text
+ * int		nodes section size, followed by the nodes in depth-first order
+ * 
+ * A node is:
+ * 
+ * int		tag string index
+ * int		offset of the first child, or -1 if it has no children
+ * int		offset of the next sibling, or -1 if it's the last one
+ * short	attributes count, followed by the attributes
+ * 
+ * An attribute is an int name string index, a byte type and an int value - a string index,
+ * an integer, the bits of a float or a bool. The offsets are relative to the beginning of the nodes section.
+ * 
+ * @author Paksas
+ *
+ */
+public class BinaryDataLoader implements DataLoader
+{
+	public static final int			MAGIC = 0x48464241;			// "HFBA"
+	public static final short		VERSION = 1;
+	
+	// attribute types
+	static final byte				TYPE_STRING = 0;
+	static final byte				TYPE_INT = 1;
+	static final byte				TYPE_FLOAT = 2;
+	static final byte				TYPE_BOOL = 3;
+	
+	static final int				NODE_HEADER_SIZE = 14;
+	static final int				ATTRIBUTE_SIZE = 9;
+	
+	/**
+	 * Checks if the buffer contains a compiled asset.
+	 * 
+	 * @param header		first bytes of the data
+	 * @return
+	 */
+	public static boolean isBinary( byte[] header )
+	{
+		if ( header.length < 4 )
+		{
+			return false;
+		}
+		
+		int magic = ( ( header[0] & 0xff ) << 24 ) | ( ( header[1] & 0xff ) << 16 ) | ( ( header[2] & 0xff ) << 8 ) | ( header[3] & 0xff );
+		return magic == MAGIC;
+	}
+	
+	/**
+	 * A factory method that reads the compiled asset from a stream.
+	 * 
+	 * @param stream
+	 * @param rootNodeTag		tag of the root node
+	 * @return
+	 */
+	public static DataLoader parse( InputStream stream, String rootNodeTag )
+	{
+		byte[] data;
+		try
+		{
+			data = readFully( stream );
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		return parse( ByteBuffer.wrap( data ), rootNodeTag );
+	}
+	
+	/**
+	 * A factory method that reads the compiled asset from a buffer. The buffer is used
+	 * by the returned loaders, so it mustn't be modified.
+	 * 
+	 * @param buffer
+	 * @param rootNodeTag		tag of the root node
+	 * @return
+	 */
+	public static DataLoader parse( ByteBuffer buffer, String rootNodeTag )
+	{
+		int offset = buffer.position();
+		if ( buffer.getInt( offset ) != MAGIC )
+		{
+			throw new RuntimeException( "Not a compiled asset" );
+		}
+		offset += 4;
+		
+		short version = buffer.getShort( offset );
+		if ( version != VERSION )
+		{
+			throw new RuntimeException( "Unsupported compiled asset version " + version );
+		}
+		offset += 2;
+		
+		// read the strings table
+		int stringsCount = buffer.getInt( offset );
+		offset += 4;
+		Document document = new Document( buffer, stringsCount );
+		byte[] stringBytes = new byte[64];
+		for ( int i = 0; i < stringsCount; ++i )
+		{
+			int length = buffer.getInt( offset );
+			offset += 4;
+			if ( stringBytes.length < length )
+			{
+				stringBytes = new byte[length];
+			}
+			for ( int j = 0; j < length; ++j )
+			{
+				stringBytes[j] = buffer.get( offset + j );
+			}
+			offset += length;
+			
+			try
+			{
+				document.m_strings[i] = new String( stringBytes, 0, length, "UTF-8" );
+			}
+			catch ( UnsupportedEncodingException e )
+			{
+				throw new RuntimeException( e );
+			}
+			document.m_stringIds.put( document.m_strings[i], i );
+		}
+		
+		int nodesSize = buffer.getInt( offset );
+		offset += 4;
+		document.m_nodesOffset = offset;
+		
+		// the nodes are stored in the depth-first order, so the first node with the tag is the one
+		// the XML parser would've found
+		Integer tag = document.m_stringIds.get( rootNodeTag );
+		if ( tag == null )
+		{
+			return null;
+		}
+		int nodesEnd = offset + nodesSize;
+		while ( offset < nodesEnd )
+		{
+			if ( buffer.getInt( offset ) == tag )
+			{
+				return new BinaryDataLoader( document, offset );
+			}
+			offset += NODE_HEADER_SIZE + buffer.getShort( offset + 12 ) * ATTRIBUTE_SIZE;
+		}
+		
+		// no element was found
+		return null;
+	}
+	
+	/**
+	 * Reads the entire contents of the stream.
+	 * 
+	 * @param stream
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] readFully( InputStream stream ) throws IOException
+	{
+		// the assets usually report their entire size
+		byte[] data = new byte[Math.max( stream.available(), 1024 )];
+		int size = 0;
+		while ( true )
+		{
+			if ( size == data.length )
+			{
+				byte[] newData = new byte[data.length * 2];
+				System.arraycopy( data, 0, newData, 0, size );
+				data = newData;
+			}
+			
+			int bytesRead = stream.read( data, size, data.length - size );
+			if ( bytesRead < 0 )
+			{
+				break;
+			}
+			size += bytesRead;
+		}
+		
+		if ( size == data.length )
+		{
+			return data;
+		}
+		byte[] result = new byte[size];
+		System.arraycopy( data, 0, result, 0, size );
+		return result;
+	}
+	
+	// --------------------------------------------------------------------
+	
+	/**
+	 * Data shared by the loaders of the nodes of a single asset.
+	 */
+	private static class Document
+	{
+		final ByteBuffer				m_buffer;
+		final String[]					m_strings;
+		final Map< String, Integer >	m_stringIds;
+		int								m_nodesOffset;
+		
+		Document( ByteBuffer buffer, int stringsCount )
+		{
+			m_buffer = buffer;
+			m_strings = new String[stringsCount];
+			m_stringIds = new HashMap< String, Integer >( stringsCount * 2 );
+		}
+	}
+	
+	// --------------------------------------------------------------------
+	
+	private final Document			m_document;
+	private final ByteBuffer		m_buffer;
+	private final int				m_offset;			// absolute offset of the node in the buffer
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param document
+	 * @param offset
+	 */
+	private BinaryDataLoader( Document document, int offset )
+	{
+		m_document = document;
+		m_buffer = document.m_buffer;
+		m_offset = offset;
+	}
+	
+	@Override
+	public String getStringValue( String id )
+	{
+		int attrOffset = findAttribute( id );
+		if ( attrOffset < 0 )
+		{
+			// that's what the XML parser returns as well
+			return "";
+		}
+		
+		int value = m_buffer.getInt( attrOffset + 5 );
+		switch( m_buffer.get( attrOffset + 4 ) )
+		{
+			case TYPE_INT:
+			{
+				return Integer.toString( value );
+			}
+			
+			case TYPE_FLOAT:
+			{
+				return Float.toString( Float.intBitsToFloat( value ) );
+			}
+			
+			case TYPE_BOOL:
+			{
+				return value != 0 ? "true" : "false";
+			}
+			
+			default:
+			{
+				return m_document.m_strings[value];
+			}
+		}
+	}
+	
+	@Override
+	public boolean getBoolValue( String id )
+	{
+		return getBoolValue( id, false );
+	}
+	
+	@Override
+	public boolean getBoolValue( String id, boolean defaultValue )
+	{
+		int attrOffset = findAttribute( id );
+		if ( attrOffset < 0 )
+		{
+			return defaultValue;
+		}
+		
+		int value = m_buffer.getInt( attrOffset + 5 );
+		switch( m_buffer.get( attrOffset + 4 ) )
+		{
+			case TYPE_BOOL:
+			{
+				return value != 0;
+			}
+			
+			case TYPE_STRING:
+			{
+				return m_document.m_strings[value].equalsIgnoreCase( "true" );
+			}
+			
+			default:
+			{
+				return false;
+			}
+		}
+	}
+	
+	@Override
+	public int getIntValue( String id )
+	{
+		return getIntValue( id, 0 );
+	}
+	
+	@Override
+	public int getIntValue( String id, int defaultValue )
+	{
+		int attrOffset = findAttribute( id );
+		if ( attrOffset < 0 )
+		{
+			return defaultValue;
+		}
+		
+		int value = m_buffer.getInt( attrOffset + 5 );
+		switch( m_buffer.get( attrOffset + 4 ) )
+		{
+			case TYPE_INT:
+			{
+				return value;
+			}
+			
+			case TYPE_STRING:
+			{
+				// the compiler stores the values it can't parse as strings - so we're
+				// not going to parse them either, but let's stay on the safe side
+				try
+				{
+					return Integer.parseInt( m_document.m_strings[value] );
+				}
+				catch( Exception ex )
+				{
+					return 0;
+				}
+			}
+			
+			default:
+			{
+				// the XML parser can't read an integer from those either
+				return 0;
+			}
+		}
+	}
+	
+	@Override
+	public float getFloatValue( String id )
+	{
+		return getFloatValue( id, 0 );
+	}
+	
+	@Override
+	public float getFloatValue( String id, float defaultValue )
+	{
+		int attrOffset = findAttribute( id );
+		if ( attrOffset < 0 )
+		{
+			return defaultValue;
+		}
+		
+		int value = m_buffer.getInt( attrOffset + 5 );
+		switch( m_buffer.get( attrOffset + 4 ) )
+		{
+			case TYPE_FLOAT:
+			{
+				return Float.intBitsToFloat( value );
+			}
+			
+			case TYPE_INT:
+			{
+				return value;
+			}
+			
+			case TYPE_STRING:
+			{
+				try
+				{
+					return Float.parseFloat( m_document.m_strings[value] );
+				}
+				catch( Exception ex )
+				{
+					return 0;
+				}
+			}
+			
+			default:
+			{
+				return 0;
+			}
+		}
+	}
+	
+	@Override
+	public int getChildrenCount( String id )
+	{
+		int tag = getStringIdx( id );
+		if ( tag < 0 )
+		{
+			return 0;
+		}
+		
+		int count = 0;
+		for ( int childOffset = getNodeOffset( m_offset + 4 ); childOffset >= 0; childOffset = getNodeOffset( childOffset + 8 ) )
+		{
+			if ( m_buffer.getInt( childOffset ) == tag )
+			{
+				++count;
+			}
+		}
+		return count;
+	}
+	
+	@Override
+	public DataLoader getChild( String id )
+	{
+		int tag = getStringIdx( id );
+		if ( tag < 0 )
+		{
+			return null;
+		}
+		
+		for ( int childOffset = getNodeOffset( m_offset + 4 ); childOffset >= 0; childOffset = getNodeOffset( childOffset + 8 ) )
+		{
+			if ( m_buffer.getInt( childOffset ) == tag )
+			{
+				return new BinaryDataLoader( m_document, childOffset );
+			}
+		}
+		
+		// no child element with the specified tag was found
+		return null;
+	}
+	
+	@Override
+	public DataLoader getSibling()
+	{
+		int tag = m_buffer.getInt( m_offset );
+		for ( int siblingOffset = getNodeOffset( m_offset + 8 ); siblingOffset >= 0; siblingOffset = getNodeOffset( siblingOffset + 8 ) )
+		{
+			if ( m_buffer.getInt( siblingOffset ) == tag )
+			{
+				return new BinaryDataLoader( m_document, siblingOffset );
+			}
+		}
+		
+		// no sibling element with this tag was found
+		return null;
+	}
+	
+	// --------------------------------------------------------------------
+	
+	/**
+	 * Returns the index of the string in the strings table.
+	 * 
+	 * @param str
+	 * @return		index, or -1 if the asset doesn't contain such a string
+	 */
+	private int getStringIdx( String str )
+	{
+		Integer idx = m_document.m_stringIds.get( str );
+		return idx != null ? idx : -1;
+	}
+	
+	/**
+	 * Reads a node offset stored at the specified location, and converts it to an absolute one.
+	 * 
+	 * @param location
+	 * @return			absolute offset of the node, or -1 if there's no node there
+	 */
+	private int getNodeOffset( int location )
+	{
+		int offset = m_buffer.getInt( location );
+		return offset >= 0 ? m_document.m_nodesOffset + offset : -1;
+	}
+	
+	/**
+	 * Looks for an attribute of the node.
+	 * 
+	 * @param id
+	 * @return		absolute offset of the attribute, or -1 if the node doesn't have it
+	 */
+	private int findAttribute( String id )
+	{
+		int name = getStringIdx( id );
+		if ( name < 0 )
+		{
+			return -1;
+		}
+		
+		int attrOffset = m_offset + NODE_HEADER_SIZE;
+		int count = m_buffer.getShort( m_offset + 12 );
+		for ( int i = 0; i < count; ++i, attrOffset += ATTRIBUTE_SIZE )
+		{
+			if ( m_buffer.getInt( attrOffset ) == name )
+			{
+				return attrOffset;
+			}
+		}
+		return -1;
+	}
+}
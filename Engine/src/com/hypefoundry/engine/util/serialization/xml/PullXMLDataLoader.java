@@ -0,0 +1,299 @@
+/**
+ * 
+ */
+package com.hypefoundry.engine.util.serialization.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+import com.hypefoundry.engine.util.serialization.DataLoader;
+
+
+/**
+ * An XML world file parser that reads the file with a pull parser.
+ * 
+ * Unlike the DOM the XMLDataLoader builds, the nodes it reads hold only what the loaders use - the tag,
+ * the attributes and the links to the first child and the next sibling. The nodes are the loaders themselves,
+ * so traversing them doesn't allocate anything, and 'getChild' and 'getSibling' follow the links instead of
+ * searching the subtree. Just like with the XMLDataLoader, the siblings are the nodes that share the parent - the nested
+ * nodes with the same tag are skipped. The attributes are kept as the text they were read as, and converted only when
+ * they're asked for.
+ * 
+ * @author Paksas
+ *
+ */
+public class PullXMLDataLoader implements DataLoader
+{
+	private static final String[]		NO_ATTRIBUTES = new String[0];
+	
+	/**
+	 * A factory method that reads the node hierarchy from the specified input stream
+	 * that contains an XML file data.
+	 * 
+	 * @param stream
+	 * @param rootNodeTag		tag of the root node
+	 * @return
+	 */
+	public static DataLoader parse( InputStream stream, String rootNodeTag )
+	{
+		PullXMLDataLoader documentNode = new PullXMLDataLoader( null, NO_ATTRIBUTES );
+		try
+		{
+			XmlPullParser parser = Xml.newPullParser();
+			parser.setInput( stream, null );
+			
+			// nodes that are open at the moment, and their most recently read children
+			List< PullXMLDataLoader > openNodes = new ArrayList< PullXMLDataLoader >();
+			List< PullXMLDataLoader > lastChildren = new ArrayList< PullXMLDataLoader >();
+			openNodes.add( documentNode );
+			lastChildren.add( null );
+			
+			for ( int eventType = parser.getEventType(); eventType != XmlPullParser.END_DOCUMENT; eventType = parser.next() )
+			{
+				if ( eventType == XmlPullParser.START_TAG )
+				{
+					PullXMLDataLoader node = new PullXMLDataLoader( parser.getName(), readAttributes( parser ) );
+					
+					int parentIdx = openNodes.size() - 1;
+					PullXMLDataLoader lastChild = lastChildren.get( parentIdx );
+					if ( lastChild == null )
+					{
+						openNodes.get( parentIdx ).m_firstChild = node;
+					}
+					else
+					{
+						lastChild.m_nextSibling = node;
+					}
+					lastChildren.set( parentIdx, node );
+					
+					openNodes.add( node );
+					lastChildren.add( null );
+				}
+				else if ( eventType == XmlPullParser.END_TAG )
+				{
+					int idx = openNodes.size() - 1;
+					openNodes.remove( idx );
+					lastChildren.remove( idx );
+				}
+			}
+		}
+		catch ( XmlPullParserException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		
+		// look for the first node with the tag, in the document order
+		return findNode( documentNode.m_firstChild, rootNodeTag );
+	}
+	
+	/**
+	 * Reads the attributes of the element the parser is at.
+	 * 
+	 * @param parser
+	 * @return			names and values of the attributes, interleaved
+	 */
+	private static String[] readAttributes( XmlPullParser parser )
+	{
+		int count = parser.getAttributeCount();
+		if ( count <= 0 )
+		{
+			return NO_ATTRIBUTES;
+		}
+		
+		String[] attributes = new String[count * 2];
+		for ( int i = 0; i < count; ++i )
+		{
+			attributes[i * 2] = parser.getAttributeName( i );
+			attributes[i * 2 + 1] = parser.getAttributeValue( i );
+		}
+		return attributes;
+	}
+	
+	/**
+	 * Looks for the first node with the specified tag among the node, its siblings
+	 * and their descendants.
+	 * 
+	 * @param node
+	 * @param tag
+	 * @return
+	 */
+	private static PullXMLDataLoader findNode( PullXMLDataLoader node, String tag )
+	{
+		for ( ; node != null; node = node.m_nextSibling )
+		{
+			if ( node.m_tag.equals( tag ) )
+			{
+				return node;
+			}
+			
+			PullXMLDataLoader descendant = findNode( node.m_firstChild, tag );
+			if ( descendant != null )
+			{
+				return descendant;
+			}
+		}
+		return null;
+	}
+	
+	// --------------------------------------------------------------------
+	
+	private final String				m_tag;
+	private final String[]				m_attributes;			// names and values, interleaved
+	private PullXMLDataLoader			m_firstChild = null;
+	private PullXMLDataLoader			m_nextSibling = null;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param tag
+	 * @param attributes
+	 */
+	private PullXMLDataLoader( String tag, String[] attributes )
+	{
+		m_tag = tag;
+		m_attributes = attributes;
+	}
+	
+	/**
+	 * Returns the text of an attribute.
+	 * 
+	 * @param id
+	 * @return		text, or null if the node doesn't have such an attribute
+	 */
+	private String getAttribute( String id )
+	{
+		for ( int i = 0; i < m_attributes.length; i += 2 )
+		{
+			if ( m_attributes[i].equals( id ) )
+			{
+				return m_attributes[i + 1];
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public String getStringValue( String id )
+	{
+		String val = getAttribute( id );
+		return val != null ? val : "";
+	}
+	
+	@Override
+	public boolean getBoolValue( String id )
+	{
+		return getBoolValue( id, false );
+	}
+	
+	@Override
+	public boolean getBoolValue( String id, boolean defaultValue )
+	{
+		String val = getAttribute( id );
+		return val != null ? val.equalsIgnoreCase( "true" ) : defaultValue;
+	}
+	
+	@Override
+	public int getIntValue( String id )
+	{
+		return getIntValue( id, 0 );
+	}
+	
+	@Override
+	public int getIntValue( String id, int defaultValue )
+	{
+		String val = getAttribute( id );
+		if ( val == null )
+		{
+			return defaultValue;
+		}
+		
+		try
+		{
+			return Integer.parseInt( val );
+		}
+		catch( Exception ex )
+		{
+			return 0;
+		}
+	}
+	
+	@Override
+	public float getFloatValue( String id )
+	{
+		return getFloatValue( id, 0 );
+	}
+	
+	@Override
+	public float getFloatValue( String id, float defaultValue )
+	{
+		String val = getAttribute( id );
+		if ( val == null )
+		{
+			return defaultValue;
+		}
+		
+		try
+		{
+			return Float.parseFloat( val );
+		}
+		catch( Exception ex )
+		{
+			return 0;
+		}
+	}
+	
+	@Override
+	public int getChildrenCount( String id )
+	{
+		int count = 0;
+		for ( PullXMLDataLoader child = m_firstChild; child != null; child = child.m_nextSibling )
+		{
+			if ( child.m_tag.equals( id ) )
+			{
+				++count;
+			}
+		}
+		return count;
+	}
+	
+	@Override
+	public DataLoader getChild( String id )
+	{
+		for ( PullXMLDataLoader child = m_firstChild; child != null; child = child.m_nextSibling )
+		{
+			if ( child.m_tag.equals( id ) )
+			{
+				return child;
+			}
+		}
+		
+		// no child element with the specified tag was found
+		return null;
+	}
+	
+	@Override
+	public DataLoader getSibling()
+	{
+		for ( PullXMLDataLoader sibling = m_nextSibling; sibling != null; sibling = sibling.m_nextSibling )
+		{
+			if ( sibling.m_tag.equals( m_tag ) )
+			{
+				return sibling;
+			}
+		}
+		
+		// no sibling element with this tag was found
+		return null;
+	}
+}
@@ -3,6 +3,7 @@
  */
 package com.hypefoundry.engine.util.serialization.xml;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -17,6 +18,7 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import com.hypefoundry.engine.util.serialization.DataLoader;
+import com.hypefoundry.engine.util.serialization.binary.BinaryDataLoader;
 import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
 ;
 
@@ -28,17 +30,68 @@ import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
  */
 public class XMLDataLoader implements DataLoader 
 {
-
+	private static volatile boolean		s_usePullParser = false;
+	
+	/**
+	 * Makes the factory method read the XML files with the PullXMLDataLoader, which allocates far less
+	 * than building a DOM. The code that loads the files doesn't need to change.
+	 * 
+	 * @param enable
+	 */
+	public static void usePullParser( boolean enable )
+	{
+		s_usePullParser = enable;
+	}
+	
 	/**
 	 * A factory method that instantiates the node hierarchy
 	 * based on the specified input stream that contains an XML file data.
 	 * 
+	 * If the stream contains an asset compiled with the BinaryAssetCompiler, it's read
+	 * with the BinaryDataLoader instead. And if the pull parser is enabled ( see 'usePullParser' ),
+	 * it's read with the PullXMLDataLoader.
+	 * 
 	 * @param stream
 	 * @param rootNodeTag		tag of the root node
 	 * @return
 	 */
 	public static DataLoader parse( InputStream stream, String rootNodeTag )
 	{
+		// peek at the header to check if the asset was compiled
+		if ( !stream.markSupported() )
+		{
+			stream = new BufferedInputStream( stream );
+		}
+		byte[] header = new byte[4];
+		try
+		{
+			stream.mark( header.length );
+			int headerSize = 0;
+			while ( headerSize < header.length )
+			{
+				int bytesRead = stream.read( header, headerSize, header.length - headerSize );
+				if ( bytesRead < 0 )
+				{
+					break;
+				}
+				headerSize += bytesRead;
+			}
+			stream.reset();
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		
+		if ( BinaryDataLoader.isBinary( header ) )
+		{
+			return BinaryDataLoader.parse( stream, rootNodeTag );
+		}
+		if ( s_usePullParser )
+		{
+			return PullXMLDataLoader.parse( stream, rootNodeTag );
+		}
+		
 		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 		DocumentBuilder db = null;
 		try 
@@ -231,7 +284,8 @@ public class XMLDataLoader implements DataLoader
 	@Override
 	public DataLoader getSibling() 
 	{
-		// find an index of the first element
+		// the list contains the nested elements with the same tag as well - skip the ones
+		// that have a different parent
 		int count = m_siblings.getLength();
 		for ( int i = m_elemIdx + 1; i < count; ++i )
 		{
@@ -5,7 +5,9 @@ import java.util.*;
 import com.hypefoundry.engine.math.BoundingBox;
 import com.hypefoundry.engine.math.MathLib;
 import com.hypefoundry.engine.math.Vector3;
+import com.hypefoundry.engine.util.FrameProfiler;
 import com.hypefoundry.engine.util.Pool;
+import com.hypefoundry.engine.util.SpatialGridObject;
 import com.hypefoundry.engine.util.serialization.DataLoader;
 import com.hypefoundry.engine.util.serialization.DataSaver;
 
@@ -17,7 +19,7 @@ import com.hypefoundry.engine.util.serialization.DataSaver;
  * @author paksas
  *
  */
-public abstract class Entity
+public abstract class Entity implements SpatialGridObject
 {
 	private final int						MAX_EVENTS_COUNT = 8;
 	
@@ -31,6 +33,11 @@ public abstract class Entity
 	private List< EventsPool > 				m_eventsPool;
 	private List< EntityEventListener > 	m_eventListeners;
 	
+	// world the entity's attached to - it's informed whenever the entity moves
+	World									m_hostWorld = null;
+	int										m_worldId = -1;			// id assigned by the host world
+	int										m_worldIdx = -1;		// position in the host world's entities list
+	
 	
 	// ------------------------------------------------------------------------
 	
@@ -112,6 +119,7 @@ public abstract class Entity
 		 */
 		public void processEvents()
 		{
+			FrameProfiler.count( FrameProfiler.COUNTER_EVENTS, m_sentEventsCount );
 			for ( int i = 0; i < m_sentEventsCount; ++i )
 			{
 				T event = m_eventsToProcess.get( i );
@@ -196,6 +204,11 @@ public abstract class Entity
 		// update the world bounding box
 		m_worldBB.set( m_bb.m_minX + m_pos.m_x, m_bb.m_minY + m_pos.m_y, 
 				m_bb.m_maxX + m_pos.m_x, m_bb.m_maxY + m_pos.m_y );
+		
+		if ( m_hostWorld != null )
+		{
+			m_hostWorld.onEntityMoved( this );
+		}
 	}
 	
 	/**
@@ -207,6 +220,12 @@ public abstract class Entity
 		return m_worldBB;
 	}
 	
+	@Override
+	public final BoundingBox getBounds()
+	{
+		return m_worldBB;
+	}
+	
 	/**
 	 * Returns the position in the Z buffer. 
 	 * 
@@ -311,6 +330,20 @@ public abstract class Entity
 		m_facing = MathLib.normalizeAngle( m_facing );
 	}
 
+	/**
+	 * Returns the id the host world assigned to the entity.
+	 * 
+	 * The ids are small non-negative numbers that the world reuses once the entities
+	 * they were assigned to are removed, so they can be used to index arrays of
+	 * the entities' representations.
+	 * 
+	 * @return			entity id, or -1 if the entity isn't attached to any world
+	 */
+	public final int getWorldId()
+	{
+		return m_worldId;
+	}
+	
 	/**
 	 * Informs the entity that it's been added to the world.
 	 * 
@@ -524,7 +557,7 @@ public abstract class Entity
 	 * 
 	 * @param loader
 	 */
-	public final void load( DataLoader loader )
+	public final void load( DataLoader loader )
 	{
 		if ( loader == null )
 		{
@@ -562,7 +595,7 @@ public abstract class Entity
 	 * 
 	 * @param saver
 	 */
-	public void save( DataSaver saver )
+	public void save( DataSaver saver )
 	{
 		if ( saver == null )
 		{
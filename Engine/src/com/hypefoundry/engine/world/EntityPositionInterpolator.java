@@ -0,0 +1,26 @@
+package com.hypefoundry.engine.world;
+
+import com.hypefoundry.engine.math.Vector3;
+
+
+/**
+ * Provides the positions of the entities that lie between the two most recent
+ * simulation steps.
+ * 
+ * A simulation that runs with a fixed time step rarely finishes exactly 
+ * at the moment a frame is rendered - the renderer can use an interpolator
+ * to draw the entities where they would be at that moment.
+ * 
+ * @author paksas
+ *
+ */
+public interface EntityPositionInterpolator
+{
+	/**
+	 * Calculates the interpolated position of an entity.
+	 * 
+	 * @param entity
+	 * @param outPos			the interpolated position
+	 */
+	void getInterpolatedPosition( Entity entity, Vector3 outPos );
+}
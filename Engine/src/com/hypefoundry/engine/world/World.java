@@ -6,7 +6,11 @@ import com.hypefoundry.engine.core.Resource;
 import com.hypefoundry.engine.core.ResourceManager;
 import com.hypefoundry.engine.core.Texture;
 import com.hypefoundry.engine.game.Updatable;
+import com.hypefoundry.engine.math.BoundingBox;
 import com.hypefoundry.engine.math.Vector3;
+import com.hypefoundry.engine.util.FrameProfiler;
+import com.hypefoundry.engine.util.SpatialGrid2D;
+import com.hypefoundry.engine.util.SpatialGridObject;
 import com.hypefoundry.engine.util.serialization.DataLoader;
 import com.hypefoundry.engine.util.serialization.DataSaver;
 import com.hypefoundry.engine.world.serialization.EntityFactory;
@@ -38,6 +42,87 @@ public class World implements Updatable
 		}
 	}
 	
+	// ------------------------------------------------------------------------
+	//	Per-type entities registry
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * A list of the live entities that are instances of a particular class or interface.
+	 * 
+	 * A detached entity's place on the list is taken by the last entity on it, so the order
+	 * of the entities changes as they are being detached.
+	 */
+	class EntitiesOfType
+	{
+		@SuppressWarnings("rawtypes")
+		final Class						m_type;
+		Entity[]						m_entities;
+		int								m_count;
+		
+		// maps an entity's world id to its position on the list, offset by one ( 0 means the entity isn't on the list )
+		int[]							m_slots;
+		
+		@SuppressWarnings("rawtypes")
+		EntitiesOfType( Class type, List< Entity > entities )
+		{
+			m_type = type;
+			m_entities = new Entity[ INITIAL_ENTITIES_CAPACITY ];
+			m_count = 0;
+			m_slots = new int[ INITIAL_ENTITIES_CAPACITY ];
+			
+			int count = entities.size();
+			for ( int i = 0; i < count; ++i )
+			{
+				onEntityAttached( entities.get(i) );
+			}
+		}
+		
+		void onEntityAttached( Entity entity )
+		{
+			if ( !m_type.isInstance( entity ) )
+			{
+				return;
+			}
+			
+			if ( m_count >= m_entities.length )
+			{
+				Entity[] newEntities = new Entity[ m_entities.length * 2 ];
+				System.arraycopy( m_entities, 0, newEntities, 0, m_count );
+				m_entities = newEntities;
+			}
+			if ( entity.m_worldId >= m_slots.length )
+			{
+				int[] newSlots = new int[ Math.max( m_slots.length * 2, entity.m_worldId + 1 ) ];
+				System.arraycopy( m_slots, 0, newSlots, 0, m_slots.length );
+				m_slots = newSlots;
+			}
+			m_entities[ m_count++ ] = entity;
+			m_slots[ entity.m_worldId ] = m_count;
+		}
+		
+		void onEntityDetached( Entity entity )
+		{
+			int id = entity.m_worldId;
+			if ( id < 0 || id >= m_slots.length || m_slots[id] == 0 )
+			{
+				// it's not an instance of the type
+				return;
+			}
+			
+			// move the last entity in place of the removed one
+			int idx = m_slots[id] - 1;
+			m_slots[id] = 0;
+			--m_count;
+			if ( idx < m_count )
+			{
+				Entity lastEntity = m_entities[m_count];
+				m_entities[idx] = lastEntity;
+				m_slots[ lastEntity.m_worldId ] = idx + 1;
+			}
+			m_entities[m_count] = null;
+		}
+	}
+	
 	// ------------------------------------------------------------------------
 	//	Resource factory definition and data
 	// ------------------------------------------------------------------------
@@ -76,6 +161,25 @@ public class World implements Updatable
 	
 	private Vector3 					m_entityQueryTargetPos		= new Vector3();
 	
+	// spatial index of the entities, used by the range queries
+	private final int					INITIAL_ENTITIES_CAPACITY 	= 64;
+	private final int					MAX_GRID_CELLS_PER_ROW		= 32;
+	private final float					MIN_GRID_CELL_SIZE			= 1.0f;
+	
+	private SpatialGrid2D				m_entitiesGrid;
+	private final Object				m_entitiesGridLock			= new Object();		// guards the index, which the physics may update from several threads at once
+	private SpatialGridObject[]			m_entitiesQueryResult		= new SpatialGridObject[INITIAL_ENTITIES_CAPACITY];
+	private BoundingBox					m_entitiesQueryBounds		= new BoundingBox();
+	
+	// ids of the removed entities, ready to be reused
+	private int[]						m_freeEntityIds				= new int[INITIAL_ENTITIES_CAPACITY];
+	private int							m_freeEntityIdsCount		= 0;
+	
+	// lists of entities of the queried types, created the first time a type is queried
+	@SuppressWarnings("rawtypes")
+	private Map< Class, EntitiesOfType >	m_entitiesByType;
+	private List< EntitiesOfType >		m_entitiesByTypeList;
+	
 	// ------------------------------------------------------------------------
 	// API
 	// ------------------------------------------------------------------------
@@ -83,6 +187,7 @@ public class World implements Updatable
 	/**
 	 * Constructor.
 	 */
+	@SuppressWarnings("rawtypes")
 	public World()
 	{
 		m_width = 0;
@@ -93,6 +198,11 @@ public class World implements Updatable
 		m_entitiesToRemove = new ArrayList< Entity >();
 		m_views = new ArrayList< WorldView >();
 		m_entityFactories = new ArrayList< EntityFactoryData >();
+		
+		m_entitiesByType = new HashMap< Class, EntitiesOfType >();
+		m_entitiesByTypeList = new ArrayList< EntitiesOfType >();
+		
+		createEntitiesGrid();
 	}
 	
 	/**
@@ -108,6 +218,8 @@ public class World implements Updatable
 	{
 		m_width = width;
 		m_height = height;
+		
+		createEntitiesGrid();
 	}
 	
 	/**
@@ -133,6 +245,9 @@ public class World implements Updatable
 	/**
 	 * Adds a new entity to the world.
 	 * 
+	 * An entity can be attached to a single world at a time - it needs to be removed
+	 * from the previous one before it's attached to this one.
+	 * 
 	 * @param entity
 	 */
 	public void addEntity( Entity entity )
@@ -159,10 +274,36 @@ public class World implements Updatable
 	 */
 	private void attachEntity( Entity entity )
 	{
-		if ( m_entities.indexOf( entity ) < 0 )
+		if ( entity.m_hostWorld != null && entity.m_hostWorld != this )
 		{
+			// the entity keeps the id and the position it has in its host world
+			throw new IllegalStateException( "The entity is already attached to another world" );
+		}
+		
+		if ( entity.m_hostWorld != this )
+		{
+			entity.m_worldIdx = m_entities.size();
+			entity.m_worldId = acquireEntityId();
 			m_entities.add( entity );
 			
+			// put it in the spatial index
+			entity.m_hostWorld = this;
+			synchronized( m_entitiesGridLock )
+			{
+				m_entitiesGrid.insertDynamicObject( entity );
+				if ( m_entities.size() > m_entitiesQueryResult.length )
+				{
+					m_entitiesQueryResult = new SpatialGridObject[ m_entitiesQueryResult.length * 2 ];
+				}
+			}
+			
+			// and in the lists of the types it's an instance of
+			int typesCount = m_entitiesByTypeList.size();
+			for ( int i = 0; i < typesCount; ++i )
+			{
+				m_entitiesByTypeList.get(i).onEntityAttached( entity );
+			}
+			
 			// inform the entity itself
 			entity.onAddedToWorld( this );
 		}
@@ -182,8 +323,31 @@ public class World implements Updatable
 	 */
 	public void detachEntity( Entity entity )
 	{		
-		if ( m_entities.remove( entity ) )
+		if ( entity.m_hostWorld == this )
 		{
+			// move the last entity in place of the removed one
+			int lastIdx = m_entities.size() - 1;
+			Entity lastEntity = m_entities.remove( lastIdx );
+			if ( lastEntity != entity )
+			{
+				m_entities.set( entity.m_worldIdx, lastEntity );
+				lastEntity.m_worldIdx = entity.m_worldIdx;
+			}
+			entity.m_worldIdx = -1;
+			
+			// remove it from the spatial index
+			synchronized( m_entitiesGridLock )
+			{
+				m_entitiesGrid.removeObject( entity );
+			}
+			entity.m_hostWorld = null;
+			
+			int typesCount = m_entitiesByTypeList.size();
+			for ( int i = 0; i < typesCount; ++i )
+			{
+				m_entitiesByTypeList.get(i).onEntityDetached( entity );
+			}
+			
 			// inform the entity itself
 			entity.onRemovedFromWorld( this );
 			
@@ -193,9 +357,47 @@ public class World implements Updatable
 			{
 				m_views.get(i).onEntityRemoved( entity );
 			}
+			
+			// the views used the id to find the entity's representations - now it can be released
+			releaseEntityId( entity.m_worldId );
+			entity.m_worldId = -1;
 		}
 	}
 	
+	/**
+	 * Assigns a new entity id, reusing the ids of the removed entities first.
+	 * 
+	 * @return
+	 */
+	private int acquireEntityId()
+	{
+		if ( m_freeEntityIdsCount > 0 )
+		{
+			return m_freeEntityIds[ --m_freeEntityIdsCount ];
+		}
+		else
+		{
+			// all ids in the range <0, entities count) are in use
+			return m_entities.size();
+		}
+	}
+	
+	/**
+	 * Makes the id of a removed entity available for reuse.
+	 * 
+	 * @param id
+	 */
+	private void releaseEntityId( int id )
+	{
+		if ( m_freeEntityIdsCount >= m_freeEntityIds.length )
+		{
+			int[] newFreeEntityIds = new int[ m_freeEntityIds.length * 2 ];
+			System.arraycopy( m_freeEntityIds, 0, newFreeEntityIds, 0, m_freeEntityIdsCount );
+			m_freeEntityIds = newFreeEntityIds;
+		}
+		m_freeEntityIds[ m_freeEntityIdsCount++ ] = id;
+	}
+	
 	/**
 	 * Attaches a new view to the world.
 	 * 
@@ -273,6 +475,8 @@ public class World implements Updatable
 	@Override
 	public void update( float deltaTime )
 	{	
+		FrameProfiler.begin( FrameProfiler.SECTION_WORLD );
+		
 		// execute world attachment & detachment - detach first to save
 		// memory
 		int count = m_entitiesToRemove.size();
@@ -295,6 +499,8 @@ public class World implements Updatable
 		{
 			m_entities.get(i).processEvents();
 		}
+		
+		FrameProfiler.end( FrameProfiler.SECTION_WORLD );
 	}
 	
 	// ------------------------------------------------------------------------
@@ -310,17 +516,8 @@ public class World implements Updatable
 	@SuppressWarnings("rawtypes")
 	public Entity findEntity( Class entityType ) 
 	{
-		int count = m_entities.size();
-		for( int i = 0; i < count; ++i )
-		{
-			Entity entity = m_entities.get(i);
-			if ( entityType.isInstance( entity ) )
-			{
-				return entity;
-			}
-		}
-		
-		return null;
+		EntitiesOfType entities = getEntitiesOfType( entityType );
+		return entities.m_count > 0 ? entities.m_entities[0] : null;
 	}
 	
 	
@@ -335,38 +532,44 @@ public class World implements Updatable
 	@SuppressWarnings("unchecked")
 	public < T > T findNearestEntity( Class< T > entityType, float range, Vector3 sourcePos ) 
 	{
-		int count 			= m_entities.size();
-		if ( count == 0 )
+		EntitiesOfType entities = getEntitiesOfType( entityType );
+		if ( entities.m_count == 0 )
 		{
 			return null;
 		}
 		
 		float closestDistSq 	= range*range;
-		int closestEntIdx 		= -1;
-
-		for( int i = 0; i < count; ++i )
-		{
-			Entity entity = m_entities.get(i);
-			if ( entityType.isInstance( entity ) )
+		Entity closestEntity	= null;
+		
+		// the query results are shared, and the index may be rebuilt by another thread in the meantime
+		synchronized( m_entitiesGridLock )
+		{
+			// go through whichever is smaller - the nearby entities, or all entities of the queried type
+			int count = queryEntitiesGrid( range, sourcePos );
+			boolean checkType = count <= entities.m_count;
+			Object[] candidates = checkType ? m_entitiesQueryResult : entities.m_entities;
+			if ( !checkType )
+			{
+				count = entities.m_count;
+			}
+			
+			for( int i = 0; i < count; ++i )
 			{
-				entity.getWorldBounds().getNearestPoint( sourcePos, m_entityQueryTargetPos );
-				float distanceSq = sourcePos.distSq2D( m_entityQueryTargetPos );
-				if ( distanceSq <= closestDistSq )
+				Entity entity = (Entity)candidates[i];
+				if ( !checkType || entityType.isInstance( entity ) )
 				{
-					closestDistSq = distanceSq;
-					closestEntIdx = i;	
+					entity.getWorldBounds().getNearestPoint( sourcePos, m_entityQueryTargetPos );
+					float distanceSq = sourcePos.distSq2D( m_entityQueryTargetPos );
+					if ( distanceSq <= closestDistSq )
+					{
+						closestDistSq = distanceSq;
+						closestEntity = entity;	
+					}
 				}
 			}
 		}
 		
-		if ( closestEntIdx >= 0 )
-		{
-			return (T)m_entities.get( closestEntIdx );
-		}
-		else
-		{
-			return null;
-		}
+		return (T)closestEntity;
 	}
 	
 	/**
@@ -385,29 +588,125 @@ public class World implements Updatable
 			return;
 		}
 		
-		int count 			= m_entities.size();
-		if ( count == 0 )
+		EntitiesOfType entities = getEntitiesOfType( entityType );
+		if ( entities.m_count == 0 )
 		{
 			return;
 		}
 		
 		float radiusSq 			= range*range;
-
-		for( int i = 0; i < count; ++i )
-		{
-			Entity entity = m_entities.get(i);
-			if ( entityType.isInstance( entity ) )
+		
+		// the query results are shared, and the index may be rebuilt by another thread in the meantime
+		synchronized( m_entitiesGridLock )
+		{
+			// go through whichever is smaller - the nearby entities, or all entities of the queried type
+			int count = queryEntitiesGrid( range, sourcePos );
+			boolean checkType = count <= entities.m_count;
+			Object[] candidates = checkType ? m_entitiesQueryResult : entities.m_entities;
+			if ( !checkType )
 			{
-				entity.getWorldBounds().getNearestPoint( sourcePos, m_entityQueryTargetPos );
-				float distanceSq = sourcePos.distSq2D( m_entityQueryTargetPos );
-				if ( distanceSq <= radiusSq )
+				count = entities.m_count;
+			}
+			
+			for( int i = 0; i < count; ++i )
+			{
+				Entity entity = (Entity)candidates[i];
+				if ( !checkType || entityType.isInstance( entity ) )
 				{
-					outEntities.add( (T)entity );
+					entity.getWorldBounds().getNearestPoint( sourcePos, m_entityQueryTargetPos );
+					float distanceSq = sourcePos.distSq2D( m_entityQueryTargetPos );
+					if ( distanceSq <= radiusSq )
+					{
+						outEntities.add( (T)entity );
+					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Collects the entities from the grid cells the specified query range touches.
+	 * 
+	 * The results are stored in the 'm_entitiesQueryResult' array. Call it with the 'm_entitiesGridLock' held.
+	 * 
+	 * @param range
+	 * @param sourcePos
+	 * @return				number of found entities
+	 */
+	private int queryEntitiesGrid( float range, Vector3 sourcePos )
+	{
+		// bring the index up to date with the entities that moved since the last query
+		m_entitiesGrid.update();
+		
+		if ( range < 0 )
+		{
+			range = -range;
+		}
+		m_entitiesQueryBounds.set( sourcePos.m_x - range, sourcePos.m_y - range, sourcePos.m_x + range, sourcePos.m_y + range );
+		return m_entitiesGrid.getPotentialColliders( m_entitiesQueryBounds, m_entitiesQueryResult );
+	}
+	
+	/**
+	 * Returns the list of the attached entities that are instances of the specified type.
+	 * 
+	 * The list is created the first time the type is queried, and from then on it's kept
+	 * up to date as the entities are attached to and detached from the world.
+	 * 
+	 * @param entityType
+	 * @return
+	 */
+	@SuppressWarnings("rawtypes")
+	private EntitiesOfType getEntitiesOfType( Class entityType )
+	{
+		EntitiesOfType entities = m_entitiesByType.get( entityType );
+		if ( entities == null )
+		{
+			entities = new EntitiesOfType( entityType, m_entities );
+			m_entitiesByType.put( entityType, entities );
+			m_entitiesByTypeList.add( entities );
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Called by an attached entity when its world bounds change.
+	 * 
+	 * @param entity
+	 */
+	void onEntityMoved( Entity entity )
+	{
+		// the physics may move the entities from several threads at once
+		synchronized( m_entitiesGridLock )
+		{
+			m_entitiesGrid.notifyObjectMoved( entity );
+		}
+	}
+	
+	/**
+	 * (Re)creates the spatial index of the entities so that it matches the world's size.
+	 */
+	private void createEntitiesGrid()
+	{
+		float cellSize = Math.max( m_width, m_height ) / MAX_GRID_CELLS_PER_ROW;
+		if ( cellSize < MIN_GRID_CELL_SIZE )
+		{
+			cellSize = MIN_GRID_CELL_SIZE;
+		}
+		
+		synchronized( m_entitiesGridLock )
+		{
+			m_entitiesGrid = new SpatialGrid2D( m_width, m_height, cellSize, m_entitiesQueryResult.length );
+			m_entitiesGrid.enableMoveNotifications( true );
+			
+			int count = m_entities.size();
+			for ( int i = 0; i < count; ++i )
+			{
+				m_entitiesGrid.insertDynamicObject( m_entities.get(i) );
+			}
+		}
+	}
+	
 	// ------------------------------------------------------------------------
 	// Serialization
 	// ------------------------------------------------------------------------
@@ -419,7 +718,7 @@ public class World implements Updatable
 	 * @param loader		loader that persists the world
 	 * @param resMgr		resource manager to which all precached resources will be loaded
 	 */
-	public void load( DataLoader loader, ResourceManager resMgr )
+	public void load( DataLoader loader, ResourceManager resMgr )
 	{
 		if ( loader == null )
 		{
@@ -430,6 +729,7 @@ public class World implements Updatable
 		{
 			m_width = loader.getFloatValue( "width" );
 			m_height = loader.getFloatValue( "height" );
+			createEntitiesGrid();
 			
 			// precache large assets - such as atlases or sounds, so that they
 			// don't need to be loaded at runtime and stall the application
@@ -473,7 +773,7 @@ public class World implements Updatable
 	 * 
 	 * @param saver		saver that persists the world
 	 */
-	public void save( DataSaver saver )
+	public void save( DataSaver saver )
 	{
 		if ( saver == null )
 		{
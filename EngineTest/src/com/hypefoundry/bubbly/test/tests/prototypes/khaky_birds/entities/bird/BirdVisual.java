@@ -58,7 +58,7 @@ public class BirdVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_bird.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_bird.getBoundingShape();
 		
 		if( m_bird.m_state == Bird.State.Shitting )
@@ -60,7 +60,7 @@ public class CrapVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_crap.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_crap.getBoundingShape();
 		
 		if( m_crap.m_state == Crap.State.Falling || m_crap.m_state == Crap.State.Hitting )
@@ -59,7 +59,7 @@ public class GranadeCrapVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_crap.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_crap.getBoundingShape();
 		
 		if( m_crap.m_state == GranadeCrap.State.Falling || m_crap.m_state == GranadeCrap.State.Hitting )
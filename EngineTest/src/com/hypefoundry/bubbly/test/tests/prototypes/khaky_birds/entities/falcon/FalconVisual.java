@@ -47,7 +47,7 @@ public class FalconVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_falcon.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_falcon.getBoundingShape();
 		
 		m_animationPlayer.select(ANIM_FLY);
@@ -39,9 +39,16 @@ public class GroundVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_entity.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_entity.getBoundingShape();
 		
 		batcher.drawSprite( pos.m_x, pos.m_y, bs.getWidth(), bs.getHeight(), m_pixmap );
 	}
+	
+	@Override
+	public boolean isStatic()
+	{
+		// the ground never changes
+		return true;
+	}
 }
@@ -40,7 +40,7 @@ private Hideout				m_hideout;
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_entity.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_entity.getBoundingShape();
 		
 		if(m_hideout.m_isDemolished == false)
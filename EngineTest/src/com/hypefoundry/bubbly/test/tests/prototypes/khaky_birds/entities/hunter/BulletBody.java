@@ -23,6 +23,9 @@ public class BulletBody extends PhysicalBody
 	public BulletBody( Entity entity ) 
 	{
 		super( entity, new Ray(), true );
+		
+		// the bullets fly fast enough to pass through the birds in a single frame
+		enableContinuousCollisions( true );
 	}
 
 	@Override
@@ -44,7 +44,7 @@ public class BulletVisual  extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_entity.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_entity.getBoundingShape();
 		
 		batcher.drawSprite( pos.m_x, pos.m_y, bs.getWidth(), bs.getHeight(), m_pixmap );
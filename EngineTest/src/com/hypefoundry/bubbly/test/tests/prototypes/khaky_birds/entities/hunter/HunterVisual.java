@@ -54,7 +54,7 @@ public class HunterVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_hunter.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_hunter.getBoundingShape();
 	
 		// select an animation appropriate to the state the pedestrian's in
@@ -56,7 +56,7 @@ public class PedestrianVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_pedestrian.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_pedestrian.getBoundingShape();
 	
 		// select an animation appropriate to the state the pedestrian's in
@@ -60,7 +60,7 @@ public class PerkPedestrianVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_perkPedestrian.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_perkPedestrian.getBoundingShape();
 	
 		// select an animation appropriate to the state the pedestrian's in
@@ -55,7 +55,7 @@ public class ZombieVisual extends EntityVisual
 	@Override
 	public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime ) 
 	{
-		Vector3 pos = m_zombie.getPosition();
+		Vector3 pos = getDrawPosition();
 		BoundingBox bs = m_zombie.getBoundingShape();
 		
 		if ( m_zombie.m_state == Zombie.State.Wander || m_zombie.m_state == Zombie.State.TurnAround ||m_zombie.m_state == Zombie.State.Chasing )
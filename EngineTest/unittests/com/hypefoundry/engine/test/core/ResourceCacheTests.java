@@ -0,0 +1,120 @@
+package com.hypefoundry.engine.test.core;
+
+import com.hypefoundry.engine.core.ResourceCache;
+import com.hypefoundry.engine.core.ResourceManager;
+import com.hypefoundry.engine.test.core.ResourceManagerTests.DependentResourceMock;
+import com.hypefoundry.engine.test.core.ResourceManagerTests.ResourceMock;
+
+import android.test.AndroidTestCase;
+
+
+public class ResourceCacheTests extends AndroidTestCase
+{
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		ResourceCache.releaseResources();
+		ResourceCache.resetStatistics();
+		ResourceCache.setMemoryBudget( ResourceCache.DEFAULT_MEMORY_BUDGET );
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		ResourceCache.releaseResources();
+		ResourceCache.setMemoryBudget( ResourceCache.DEFAULT_MEMORY_BUDGET );
+
+		super.tearDown();
+	}
+
+	public void testSharing()
+	{
+		ResourceManager firstMgr = new ResourceManager( null );
+		ResourceManager secondMgr = new ResourceManager( null );
+
+		ResourceMock res = firstMgr.getResource( ResourceMock.class, "a.xml" );
+		firstMgr.loadResources();
+		assertEquals( 0, ResourceCache.getHitsCount() );
+		assertEquals( 1, ResourceCache.getMissesCount() );
+
+		// the other manager gets the same, already loaded resource
+		assertSame( res, secondMgr.getResource( ResourceMock.class, "a.xml" ) );
+		secondMgr.loadResources();
+		assertEquals( 1, res.m_loadsCount );
+		assertEquals( 1, ResourceCache.getHitsCount() );
+		assertEquals( 0.5f, secondMgr.getLoadingProgress() );
+
+		// the resource is still referenced by the second manager
+		firstMgr.clearResources();
+		assertEquals( 0, ResourceCache.getUnreferencedResourcesCount() );
+
+		// and once it isn't, it stays loaded
+		secondMgr.clearResources();
+		assertEquals( 1, ResourceCache.getUnreferencedResourcesCount() );
+		assertEquals( 0, res.m_releasesCount );
+
+		// until it's referenced again
+		assertSame( res, firstMgr.getResource( ResourceMock.class, "a.xml" ) );
+		assertEquals( 0, ResourceCache.getUnreferencedResourcesCount() );
+		assertEquals( 1, res.m_loadsCount );
+		assertEquals( 0, ResourceCache.getEvictionsCount() );
+	}
+
+	public void testDependencies()
+	{
+		ResourceManager firstMgr = new ResourceManager( null );
+		ResourceManager secondMgr = new ResourceManager( null );
+
+		firstMgr.loadResources();
+		DependentResourceMock res = firstMgr.getResource( DependentResourceMock.class, "a.xml" );
+		firstMgr.clearResources();
+		assertEquals( 2, ResourceCache.getUnreferencedResourcesCount() );
+
+		// the manager that finds a cached resource takes the resources it depends on as well
+		assertSame( res, secondMgr.getResource( DependentResourceMock.class, "a.xml" ) );
+		secondMgr.loadResources();
+		assertEquals( 0, ResourceCache.getUnreferencedResourcesCount() );
+		assertSame( res.m_dependency, secondMgr.getResource( ResourceMock.class, "a.xml.dependency" ) );
+		assertEquals( 1, res.m_dependency.m_loadsCount );
+	}
+
+	public void testEviction()
+	{
+		ResourceCache.setMemoryBudget( 200 );
+		ResourceManager resMgr = new ResourceManager( null );
+		resMgr.loadResources();
+
+		ResourceMock[] resources = new ResourceMock[3];
+		for ( int i = 0; i < resources.length; ++i )
+		{
+			resources[i] = resMgr.getResource( ResourceMock.class, "res" + i );
+			resources[i].m_memorySize = 100;
+		}
+
+		// the resources that don't fit in the budget are released, the least recently used ones first
+		resMgr.clearResources();
+		assertEquals( 2, ResourceCache.getUnreferencedResourcesCount() );
+		assertEquals( 200, ResourceCache.getUnreferencedMemory() );
+		assertEquals( 1, ResourceCache.getEvictionsCount() );
+		assertEquals( 1, resources[0].m_releasesCount );
+		assertEquals( 0, resources[1].m_releasesCount );
+		assertEquals( 0, resources[2].m_releasesCount );
+
+		// the evicted resource has to be loaded anew
+		ResourceCache.resetStatistics();
+		ResourceMock newRes = resMgr.getResource( ResourceMock.class, "res0" );
+		assertTrue( newRes != resources[0] );
+		assertEquals( 1, ResourceCache.getMissesCount() );
+		assertSame( resources[1], resMgr.getResource( ResourceMock.class, "res1" ) );
+		assertEquals( 1, ResourceCache.getHitsCount() );
+		assertEquals( 1, resources[1].m_loadsCount );
+
+		// shrinking the budget evicts the resources that don't fit any more
+		ResourceCache.setMemoryBudget( 0 );
+		assertEquals( 0, ResourceCache.getUnreferencedResourcesCount() );
+		assertEquals( 1, resources[2].m_releasesCount );
+		assertEquals( 0, resources[1].m_releasesCount );
+	}
+}
@@ -0,0 +1,100 @@
+package com.hypefoundry.engine.test.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hypefoundry.engine.core.Resource;
+import com.hypefoundry.engine.core.ResourceCache;
+import com.hypefoundry.engine.core.ResourceManager;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+
+public class ResourceManagerPerformanceTests extends AndroidTestCase
+{
+	public static class ResourceMock extends Resource
+	{
+		@Override
+		public void load()
+		{
+		}
+
+		@Override
+		public void release()
+		{
+		}
+	}
+
+	private final int		RESOURCES_COUNT = 1000;
+	private final int		REFERENCES_PER_RESOURCE = 4;	// number of times a level references each resource
+	private final int		RUNS_COUNT = 5;
+
+	/**
+	 * Compares the indexed lookup with a linear search through the resources, which is
+	 * the way the manager used to find them.
+	 */
+	public void testLookup()
+	{
+		String[] paths = new String[RESOURCES_COUNT];
+		for ( int i = 0; i < RESOURCES_COUNT; ++i )
+		{
+			paths[i] = "level/textures/texture" + i + ".xml";
+		}
+
+		long indexedDuration = Long.MAX_VALUE;
+		long linearDuration = Long.MAX_VALUE;
+		List< ResourceMock > createdResources = new ArrayList< ResourceMock >();
+		for ( int run = 0; run < RUNS_COUNT; ++run )
+		{
+			// the manager registers the resources as they're referenced by the level - none of them are cached yet
+			ResourceCache.releaseResources();
+			ResourceManager resMgr = new ResourceManager( null );
+			long startTime = System.nanoTime();
+			for ( int ref = 0; ref < REFERENCES_PER_RESOURCE; ++ref )
+			{
+				for ( int i = 0; i < RESOURCES_COUNT; ++i )
+				{
+					resMgr.getResource( ResourceMock.class, paths[i] );
+				}
+			}
+			indexedDuration = Math.min( indexedDuration, System.nanoTime() - startTime );
+
+			// the same references resolved with a linear search - reusing the resources the manager created
+			createdResources.clear();
+			resMgr.getResources( ResourceMock.class, createdResources );
+			assertEquals( RESOURCES_COUNT, createdResources.size() );
+			List< Resource > resources = new ArrayList< Resource >();
+			startTime = System.nanoTime();
+			for ( int ref = 0; ref < REFERENCES_PER_RESOURCE; ++ref )
+			{
+				for ( int i = 0; i < RESOURCES_COUNT; ++i )
+				{
+					if ( findLinearly( resources, ResourceMock.class, paths[i] ) == null )
+					{
+						resources.add( createdResources.get( i ) );
+					}
+				}
+			}
+			linearDuration = Math.min( linearDuration, System.nanoTime() - startTime );
+		}
+
+		String msg = new StringBuilder().append( "Indexed lookup: " ).append( indexedDuration / 1000 ).append( "[us], linear search: " ).append( linearDuration / 1000 ).append( "[us]" ).toString();
+		Log.d( "ResourceManagerPerformanceTests", msg );
+		assertTrue( msg, indexedDuration < linearDuration );
+	}
+
+	private Resource findLinearly( List< Resource > resources, Class< ? extends Resource > type, String assetPath )
+	{
+		int count = resources.size();
+		for ( int i = 0; i < count; ++i )
+		{
+			Resource res = resources.get( i );
+			if ( type.isInstance( res ) && res.getAssetPath().equals( assetPath ) )
+			{
+				return res;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,235 @@
+package com.hypefoundry.engine.test.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hypefoundry.engine.core.Resource;
+import com.hypefoundry.engine.core.ResourceCache;
+import com.hypefoundry.engine.core.ResourceManager;
+
+import android.test.AndroidTestCase;
+
+
+public class ResourceManagerTests extends AndroidTestCase
+{
+	public static class ResourceMock extends Resource
+	{
+		int		m_loadsCount = 0;
+		int		m_releasesCount = 0;
+		int		m_finalizationsCount = 0;
+		int		m_memorySize = 0;
+
+		@Override
+		public void load()
+		{
+			++m_loadsCount;
+		}
+
+		@Override
+		public void release()
+		{
+			++m_releasesCount;
+		}
+
+		@Override
+		public int getMemorySize()
+		{
+			return m_memorySize;
+		}
+
+		@Override
+		protected void finalizeLoading()
+		{
+			++m_finalizationsCount;
+		}
+	}
+
+	public static class DependentResourceMock extends ResourceMock
+	{
+		ResourceMock	m_dependency = null;
+		int				m_dependencyLoadsCount = 0;
+
+		@Override
+		public void load()
+		{
+			super.load();
+
+			// the dependency should be fully loaded by the time it's returned
+			m_dependency = m_resMgr.getResource( ResourceMock.class, m_assetPath + ".dependency" );
+			m_dependencyLoadsCount = m_dependency.m_loadsCount;
+		}
+	}
+
+	public static class DerivedResourceMock extends ResourceMock
+	{
+	}
+
+	public static class OtherResourceMock extends Resource
+	{
+		@Override
+		public void load()
+		{
+		}
+
+		@Override
+		public void release()
+		{
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		// the managers share their resources through the cache
+		ResourceCache.releaseResources();
+		ResourceCache.resetStatistics();
+	}
+
+	public void testLookup()
+	{
+		ResourceManager resMgr = new ResourceManager( null );
+
+		ResourceMock resA = resMgr.getResource( ResourceMock.class, "a.xml" );
+		assertNotNull( resA );
+		assertEquals( "a.xml", resA.getAssetPath() );
+		assertSame( resA, resMgr.getResource( ResourceMock.class, "a.xml" ) );
+		assertTrue( resA != resMgr.getResource( ResourceMock.class, "b.xml" ) );
+
+		// resources of different types can share a path
+		OtherResourceMock otherA = resMgr.getResource( OtherResourceMock.class, "a.xml" );
+		assertNotNull( otherA );
+		assertSame( resA, resMgr.getResource( ResourceMock.class, "a.xml" ) );
+		assertSame( otherA, resMgr.getResource( OtherResourceMock.class, "a.xml" ) );
+
+		// a resource of a derived class is returned when the base class is requested...
+		DerivedResourceMock derivedC = resMgr.getResource( DerivedResourceMock.class, "c.xml" );
+		assertSame( derivedC, resMgr.getResource( ResourceMock.class, "c.xml" ) );
+
+		// ...but not the other way round
+		DerivedResourceMock derivedA = resMgr.getResource( DerivedResourceMock.class, "a.xml" );
+		assertNotNull( derivedA );
+		assertTrue( derivedA != resA );
+		assertSame( resA, resMgr.getResource( ResourceMock.class, "a.xml" ) );
+
+		// the instantiated resources are found as well
+		assertSame( resA, resMgr.instantiateResource( ResourceMock.class, "a.xml" ) );
+
+		List< ResourceMock > resources = new ArrayList< ResourceMock >();
+		resMgr.getResources( ResourceMock.class, resources );
+		assertEquals( 4, resources.size() );
+	}
+
+	public void testLoading()
+	{
+		ResourceManager resMgr = new ResourceManager( null );
+
+		// an inactive manager doesn't load the resources until it's activated
+		ResourceMock resA = resMgr.getResource( ResourceMock.class, "a.xml" );
+		assertEquals( 0, resA.m_loadsCount );
+		resMgr.loadResources();
+		assertEquals( 1, resA.m_loadsCount );
+
+		ResourceMock resB = resMgr.getResource( ResourceMock.class, "b.xml" );
+		assertEquals( 1, resB.m_loadsCount );
+
+		// the cleared resources are kept in the cache, and don't need to be reloaded
+		resMgr.clearResources();
+		assertEquals( 0, resA.m_releasesCount );
+		assertSame( resA, resMgr.getResource( ResourceMock.class, "a.xml" ) );
+		assertEquals( 1, resA.m_loadsCount );
+
+		// unless the cache released them
+		resMgr.clearResources();
+		ResourceCache.releaseResources();
+		assertEquals( 1, resA.m_releasesCount );
+		ResourceMock newResA = resMgr.getResource( ResourceMock.class, "a.xml" );
+		assertTrue( newResA != resA );
+		assertEquals( 1, newResA.m_loadsCount );
+	}
+
+	public void testAddingResources()
+	{
+		ResourceManager resMgr = new ResourceManager( null );
+		resMgr.loadResources();
+
+		// a resource created in the memory is loaded just like the requested ones are
+		ResourceMock resA = new ResourceMock();
+		assertSame( resA, resMgr.addResource( resA, "a.xml" ) );
+		assertEquals( "a.xml", resA.getAssetPath() );
+		assertEquals( 1, resA.m_loadsCount );
+
+		// it's the resource the manager holds under the path from now on...
+		assertSame( resA, resMgr.getResource( ResourceMock.class, "a.xml" ) );
+		assertSame( resA, resMgr.addResource( new ResourceMock(), "a.xml" ) );
+		assertEquals( 1, resA.m_loadsCount );
+
+		// ... and it's shared with the other managers
+		ResourceManager otherResMgr = new ResourceManager( null );
+		assertSame( resA, otherResMgr.getResource( ResourceMock.class, "a.xml" ) );
+
+		// an inactive manager loads it once it's activated
+		ResourceManager inactiveResMgr = new ResourceManager( null );
+		ResourceMock resB = inactiveResMgr.addResource( new ResourceMock(), "b.xml" );
+		assertEquals( 0, resB.m_loadsCount );
+		inactiveResMgr.loadResources();
+		assertEquals( 1, resB.m_loadsCount );
+	}
+
+	public void testConcurrentLoading()
+	{
+		final int RESOURCES_COUNT = 100;
+
+		ResourceManager.setLoadingThreadsCount( 4 );
+		try
+		{
+			ResourceManager resMgr = new ResourceManager( null );
+
+			// half of the dependencies are registered up front, so the loading threads will compete for them
+			List< DependentResourceMock > resources = new ArrayList< DependentResourceMock >();
+			for ( int i = 0; i < RESOURCES_COUNT; ++i )
+			{
+				resources.add( resMgr.getResource( DependentResourceMock.class, "res" + i ) );
+				if ( i % 2 == 0 )
+				{
+					resMgr.getResource( ResourceMock.class, "res" + i + ".dependency" );
+				}
+			}
+			assertEquals( 0.0f, resMgr.getLoadingProgress() );
+
+			resMgr.loadResources();
+
+			// every resource was loaded once, and the dependencies were loaded before they were used
+			List< ResourceMock > allResources = new ArrayList< ResourceMock >();
+			resMgr.getResources( ResourceMock.class, allResources );
+			assertEquals( RESOURCES_COUNT * 2, allResources.size() );
+			for ( int i = 0; i < allResources.size(); ++i )
+			{
+				assertEquals( 1, allResources.get( i ).m_loadsCount );
+			}
+			for ( int i = 0; i < RESOURCES_COUNT; ++i )
+			{
+				assertEquals( 1, resources.get( i ).m_dependencyLoadsCount );
+			}
+			assertEquals( 0.5f, resMgr.getLoadingProgress() );
+
+			// the resources are finalized a bit at a time
+			int callsCount = 0;
+			while ( !resMgr.finalizeResources( 0 ) )
+			{
+				++callsCount;
+			}
+			assertEquals( RESOURCES_COUNT * 2, callsCount );
+			for ( int i = 0; i < allResources.size(); ++i )
+			{
+				assertEquals( 1, allResources.get( i ).m_finalizationsCount );
+			}
+			assertEquals( 1.0f, resMgr.getLoadingProgress() );
+		}
+		finally
+		{
+			ResourceManager.setLoadingThreadsCount( Runtime.getRuntime().availableProcessors() );
+		}
+	}
+}
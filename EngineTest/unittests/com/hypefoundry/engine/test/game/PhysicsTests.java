@@ -1,9 +1,13 @@
 package com.hypefoundry.engine.test.game;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.hypefoundry.engine.world.Entity;
 import com.hypefoundry.engine.world.EntityEvent;
 import com.hypefoundry.engine.world.EntityEventListener;
 import com.hypefoundry.engine.world.EntityOperation;
+import com.hypefoundry.engine.world.EventFactory;
 import com.hypefoundry.engine.world.World;
 import com.hypefoundry.engine.math.BoundingBox;
 import com.hypefoundry.engine.math.Vector3;
@@ -12,6 +16,7 @@ import com.hypefoundry.engine.physics.PhysicalBody;
 import com.hypefoundry.engine.physics.PhysicalBodyFactory;
 import com.hypefoundry.engine.physics.PhysicsView;
 import com.hypefoundry.engine.physics.events.CollisionEvent;
+import com.hypefoundry.engine.physics.events.OutOfWorldBounds;
 
 
 import android.test.AndroidTestCase;
@@ -25,6 +30,7 @@ public class PhysicsTests extends AndroidTestCase
 	private class EntityMock extends Entity implements EntityEventListener
 	{
 		int				m_collisions;
+		Entity			m_firstCollider;
 			
 		EntityMock()
 		{
@@ -40,6 +46,10 @@ public class PhysicsTests extends AndroidTestCase
 		{
 			if ( event instanceof CollisionEvent )
 			{
+				if ( m_collisions == 0 )
+				{
+					m_firstCollider = ( (CollisionEvent)event ).m_collider;
+				}
 				m_collisions++;
 			}
 		}
@@ -51,7 +61,12 @@ public class PhysicsTests extends AndroidTestCase
 	{		
 		public PhysicalBodyMock( Entity entity ) 
 		{
-			super( entity, true );
+			this( entity, true );
+		}
+		
+		public PhysicalBodyMock( Entity entity, boolean checkCollisions ) 
+		{
+			super( entity, checkCollisions );
 			EntityMock mock = (EntityMock)entity;
 			
 			mock.attachEventListener( mock );
@@ -66,6 +81,17 @@ public class PhysicsTests extends AndroidTestCase
 	
 	// ------------------------------------------------------------------------
 	
+	private class ContinuousPhysicalBodyMock extends PhysicalBodyMock
+	{
+		public ContinuousPhysicalBodyMock( Entity entity ) 
+		{
+			super( entity );
+			enableContinuousCollisions( true );
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	
 	private class BouncyPhysicalBodyMock extends PhysicalBody
 	{
 		private Vector3		m_alteredVelocity = new Vector3();
@@ -210,4 +236,300 @@ public class PhysicsTests extends AndroidTestCase
 		assertTrue( e2.getPosition().dist( 3, 3, 0 ) < 1e-3 );
 		assertTrue( e1.getPosition().dist( 1.707f, 1.707f, 0 ) < 1e-3 ); // not too acurate, but it's ok for now
 	}
+	
+	private class PassiveEntityMock extends EntityMock {}
+	
+	public void testCollisionPairs()
+	{
+		World world = new World();
+		world.setSize( 4, 4 );
+		EntityMock e1 = new EntityMock();
+		EntityMock e2 = new EntityMock();
+		EntityMock e3 = new EntityMock();
+		EntityMock passive = new PassiveEntityMock();
+			
+		world.addEntity( e1 );
+		world.addEntity( e2 );
+		world.addEntity( e3 );
+		world.addEntity( passive );
+		world.update( 1 );
+		
+		PhysicsView physics = new PhysicsView( 2 );
+		physics.register( EntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new PhysicalBodyMock( parentEntity ); } } );
+		physics.register( PassiveEntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new PhysicalBodyMock( parentEntity, false ); } } );
+		world.attachView( physics );
+		
+		// all bodies overlap one another
+		e1.setPosition( 2.0f, 2.0f, 0 );
+		e2.setPosition( 2.1f, 2.0f, 0 );
+		e3.setPosition( 2.0f, 2.1f, 0 );
+		passive.setPosition( 2.1f, 2.1f, 0 );
+		physics.update( 0 );
+		world.update( 0 );
+		
+		// every active body collides with the three others exactly once, 
+		// and the passive body is never informed about the collisions
+		assertEquals( 3, e1.m_collisions );
+		assertEquals( 3, e2.m_collisions );
+		assertEquals( 3, e3.m_collisions );
+		assertEquals( 0, passive.m_collisions );
+	}
+	
+	public void testFixedTimeStep()
+	{
+		World world = new World();
+		world.setSize( 20, 20 );
+		EntityMock e1 = new EntityMock();
+		world.addEntity( e1 );
+		world.update( 1 );
+		
+		PhysicsView physics = new PhysicsView( 2 );
+		physics.register( EntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new PhysicalBodyMock( parentEntity ); } } );
+		physics.setFixedTimeStep( 0.1f, 3 );
+		world.attachView( physics );
+		e1.setPosition( 5, 5, 0 );
+		
+		// two steps fit in the frame - and the velocity applies to both of them
+		Vector3 interpolatedPos = new Vector3();
+		e1.query( DynamicObject.class ).m_velocity.set( 1, 0, 0 );
+		physics.update( 0.25f );
+		assertTrue( e1.getPosition().dist( 5.2f, 5, 0 ) < 1e-3 );
+		assertEquals( 0.5f, physics.getInterpolationFactor(), 1e-3 );
+		physics.getInterpolatedPosition( e1, interpolatedPos );
+		assertTrue( interpolatedPos.dist( 5.15f, 5, 0 ) < 1e-3 );
+		
+		// a long frame is capped at the max number of steps
+		e1.query( DynamicObject.class ).m_velocity.set( 1, 0, 0 );
+		physics.update( 1.0f );
+		assertTrue( e1.getPosition().dist( 5.5f, 5, 0 ) < 1e-3 );
+		assertTrue( physics.getInterpolationFactor() < 1.0f );
+		
+		// a short frame doesn't run a step at all
+		e1.query( DynamicObject.class ).m_velocity.set( 1, 0, 0 );
+		physics.update( 0.01f );
+		assertTrue( e1.getPosition().dist( 5.5f, 5, 0 ) < 1e-3 );
+		
+		// the variable time step doesn't interpolate
+		physics.setFixedTimeStep( 0, 0 );
+		physics.update( 0.5f );
+		assertTrue( e1.getPosition().dist( 6.0f, 5, 0 ) < 1e-3 );
+		physics.getInterpolatedPosition( e1, interpolatedPos );
+		assertTrue( interpolatedPos.dist( e1.getPosition() ) < 1e-6 );
+	}
+	
+	public void testMultithreadedSimulation()
+	{
+		final int ENTITIES_COUNT = 300;
+		
+		World[] worlds = new World[2];
+		PhysicsView[] views = new PhysicsView[2];
+		EntityMock[][] entities = new EntityMock[2][ENTITIES_COUNT];
+		for ( int w = 0; w < 2; ++w )
+		{
+			worlds[w] = new World();
+			worlds[w].setSize( 20, 20 );
+			for ( int i = 0; i < ENTITIES_COUNT; ++i )
+			{
+				entities[w][i] = new EntityMock();
+				worlds[w].addEntity( entities[w][i] );
+			}
+			worlds[w].update( 1 );
+			
+			views[w] = new PhysicsView( 2 );
+			views[w].register( EntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new PhysicalBodyMock( parentEntity ); } } );
+			worlds[w].attachView( views[w] );
+			
+			// the entities are densely packed, so that plenty of them collide
+			for ( int i = 0; i < ENTITIES_COUNT; ++i )
+			{
+				entities[w][i].setPosition( 2 + ( i % 20 ) * 0.35f, 2 + ( i / 20 ) * 0.35f, 0 );
+			}
+		}
+		views[1].setThreadsCount( 4 );
+		
+		for ( int frame = 0; frame < 10; ++frame )
+		{
+			for ( int w = 0; w < 2; ++w )
+			{
+				for ( int i = 0; i < ENTITIES_COUNT; ++i )
+				{
+					entities[w][i].query( DynamicObject.class ).m_velocity.set( ( i % 3 ) - 1, ( i % 5 ) - 2, 0 );
+				}
+				views[w].update( 0.1f );
+				worlds[w].update( 0.1f );
+			}
+			
+			// both simulations give exactly the same results
+			for ( int i = 0; i < ENTITIES_COUNT; ++i )
+			{
+				assertEquals( 0.0f, entities[0][i].getPosition().distSq( entities[1][i].getPosition() ), 0.0f );
+				assertEquals( entities[0][i].m_collisions, entities[1][i].m_collisions );
+			}
+		}
+		
+		int collisionsCount = 0;
+		for ( int i = 0; i < ENTITIES_COUNT; ++i )
+		{
+			collisionsCount += entities[1][i].m_collisions;
+		}
+		assertTrue( collisionsCount > 0 );
+		
+		views[1].setThreadsCount( 1 );
+	}
+	
+	private class BulletMock extends EntityMock {}
+	
+	public void testContinuousCollisions()
+	{
+		for ( int threadsCount = 1; threadsCount <= 2; ++threadsCount )
+		{
+			World world = new World();
+			world.setSize( 40, 10 );
+			EntityMock bullet = new BulletMock();
+			EntityMock farTarget = new EntityMock();
+			EntityMock nearTarget = new EntityMock();
+			world.addEntity( bullet );
+			world.addEntity( farTarget );
+			world.addEntity( nearTarget );
+			world.update( 1 );
+			
+			PhysicsView physics = new PhysicsView( 2 );
+			physics.register( EntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new PhysicalBodyMock( parentEntity ); } } );
+			physics.register( BulletMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new ContinuousPhysicalBodyMock( parentEntity ); } } );
+			physics.setThreadsCount( threadsCount );
+			world.attachView( physics );
+			
+			// the bullet flies through both targets during a single step
+			bullet.setPosition( 2, 5, 0 );
+			farTarget.setPosition( 8, 5, 0 );
+			nearTarget.setPosition( 5, 5, 0 );
+			bullet.query( DynamicObject.class ).m_velocity.set( 1, 0, 0 );
+			physics.update( 20 );
+			world.update( 0 );
+			
+			// ... and it's informed about hitting the nearer one first
+			assertEquals( 2, bullet.m_collisions );
+			assertSame( nearTarget, bullet.m_firstCollider );
+			assertEquals( 1, nearTarget.m_collisions );
+			assertEquals( 1, farTarget.m_collisions );
+			assertTrue( bullet.getPosition().dist( 22, 5, 0 ) < 1e-3 );
+			
+			physics.setThreadsCount( 1 );
+		}
+		
+		// a regular body simply jumps over the targets
+		World world = new World();
+		world.setSize( 40, 10 );
+		EntityMock body = new EntityMock();
+		EntityMock target = new EntityMock();
+		world.addEntity( body );
+		world.addEntity( target );
+		world.update( 1 );
+		
+		PhysicsView physics = new PhysicsView( 2 );
+		physics.register( EntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate(Entity parentEntity) { return new PhysicalBodyMock( parentEntity ); } } );
+		world.attachView( physics );
+		
+		body.setPosition( 2, 5, 0 );
+		target.setPosition( 5, 5, 0 );
+		body.query( DynamicObject.class ).m_velocity.set( 1, 0, 0 );
+		physics.update( 20 );
+		world.update( 0 );
+		assertEquals( 0, body.m_collisions );
+	}
+	// ------------------------------------------------------------------------
+	
+	private class RecordingEntityMock extends EntityMock
+	{
+		final String			m_name;
+		final boolean			m_continuous;
+		final List< String >	m_log;
+		
+		RecordingEntityMock( String name, boolean continuous, List< String > log )
+		{
+			super();
+			m_name = name;
+			m_continuous = continuous;
+			m_log = log;
+			
+			// the event is recorded the moment it's sent - events sent during a single step are never recycled
+			registerEvent( OutOfWorldBounds.class, new EventFactory< OutOfWorldBounds >() { @Override public OutOfWorldBounds createObject() { m_log.add( "bounds " + m_name ); return new OutOfWorldBounds(); } } );
+		}
+	}
+	
+	private class RecordingPhysicalBodyMock extends PhysicalBodyMock
+	{
+		public RecordingPhysicalBodyMock( Entity entity, boolean continuous ) 
+		{
+			super( entity );
+			enableContinuousCollisions( continuous );
+		}
+		
+		@Override
+		public void respondToCollision( PhysicalBody collider, Vector3 collisionPoint )
+		{
+			RecordingEntityMock entity = (RecordingEntityMock)m_entity;
+			RecordingEntityMock colliderEntity = (RecordingEntityMock)( (RecordingPhysicalBodyMock)collider ).m_entity;
+			entity.m_log.add( "collision " + entity.m_name + " " + colliderEntity.m_name );
+		}
+	}
+	
+	/**
+	 * Runs a single simulation step of a world where the bodies collide both discretely and continuously,
+	 * and leave the world's bounds, and records the events they receive.
+	 * 
+	 * @param threadsCount
+	 * @return
+	 */
+	private List< String > recordSimulationEvents( int threadsCount )
+	{
+		List< String > log = new ArrayList< String >();
+		
+		World world = new World();
+		world.setSize( 40, 10 );
+		RecordingEntityMock bullet = new RecordingEntityMock( "bullet", true, log );
+		RecordingEntityMock target = new RecordingEntityMock( "target", false, log );
+		RecordingEntityMock leftBody = new RecordingEntityMock( "left", false, log );
+		RecordingEntityMock rightBody = new RecordingEntityMock( "right", false, log );
+		RecordingEntityMock bottomBody = new RecordingEntityMock( "bottom", false, log );
+		world.addEntity( bullet );
+		world.addEntity( target );
+		world.addEntity( leftBody );
+		world.addEntity( rightBody );
+		world.addEntity( bottomBody );
+		world.update( 1 );
+		
+		PhysicsView physics = new PhysicsView( 2 );
+		physics.register( RecordingEntityMock.class, new PhysicalBodyFactory() { @Override public PhysicalBody instantiate( Entity parentEntity ) { return new RecordingPhysicalBodyMock( parentEntity, ( (RecordingEntityMock)parentEntity ).m_continuous ); } } );
+		physics.setThreadsCount( threadsCount );
+		
+		// the bullet flies through the target, the left body sticks out of the world and overlaps the right one,
+		// and the bottom body sticks out of the world on its own
+		bullet.setPosition( 2, 5, 0 );
+		target.setPosition( 5, 5, 0 );
+		leftBody.setPosition( 10, 0.1f, 0 );
+		rightBody.setPosition( 10.3f, 0.3f, 0 );
+		bottomBody.setPosition( 20, 0.1f, 0 );
+		world.attachView( physics );
+		
+		bullet.query( DynamicObject.class ).m_velocity.set( 1, 0, 0 );
+		physics.update( 20 );
+		physics.setThreadsCount( 1 );
+		
+		return log;
+	}
+	
+	public void testEventsOrderInParallelSimulation()
+	{
+		List< String > expectedLog = recordSimulationEvents( 1 );
+		assertTrue( expectedLog.contains( "collision bullet target" ) );
+		assertTrue( expectedLog.contains( "collision left right" ) );
+		assertTrue( expectedLog.contains( "bounds bottom" ) );
+		
+		// the bodies receive the same events in the same order, no matter how many threads run the simulation
+		for ( int threadsCount = 2; threadsCount <= 4; ++threadsCount )
+		{
+			assertEquals( expectedLog, recordSimulationEvents( threadsCount ) );
+		}
+	}
 }
@@ -7,6 +7,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.*;
 
 import com.hypefoundry.engine.core.ResourceManager;
+import com.hypefoundry.engine.math.Vector3;
 import com.hypefoundry.engine.util.serialization.DataLoader;
 import com.hypefoundry.engine.util.serialization.DataSaver;
 import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
@@ -74,6 +75,12 @@ public class WorldTest extends AndroidTestCase
 	
 	// ------------------------------------------------------------------------
 	
+	interface Juicy {}
+	
+	class Lemon extends Entity implements Juicy {}
+	
+	// ------------------------------------------------------------------------
+	
 	class WorldViewMock implements WorldView
 	{
 		List< Entity >		m_entities;
@@ -181,5 +188,242 @@ public class WorldTest extends AndroidTestCase
 			assertEquals( 3, view.m_entities.size() );
 		}
 	}
+	
+	public void testRangeQueries()
+	{
+		World world = new World();
+		world.setSize( 100, 100 );
+		
+		Apple nearApple = new Apple( 1 );
+		nearApple.setPosition( 10, 10, 0 );
+		Apple farApple = new Apple( 2 );
+		farApple.setPosition( 80, 80, 0 );
+		Orange orange = new Orange();
+		orange.setPosition( 11, 10, 0 );
+		world.addEntity( nearApple );
+		world.addEntity( farApple );
+		world.addEntity( orange );
+		world.update(0);
+		
+		Vector3 queryPos = new Vector3( 12, 10, 0 );
+		assertEquals( orange, world.findNearestEntity( Orange.class, 5, queryPos ) );
+		assertEquals( nearApple, world.findNearestEntity( Apple.class, 5, queryPos ) );
+		
+		ArrayList< Apple > apples = new ArrayList< Apple >();
+		world.findEntitiesInRange( Apple.class, 5, queryPos, apples );
+		assertEquals( 1, apples.size() );
+		
+		// move the far apple over - the index should follow it
+		farApple.translate( -67, -70, 0 );
+		assertEquals( farApple, world.findNearestEntity( Apple.class, 5, queryPos ) );
+		
+		apples.clear();
+		world.findEntitiesInRange( Apple.class, 5, queryPos, apples );
+		assertEquals( 2, apples.size() );
+		
+		// a removed entity is no longer found
+		world.removeEntity( farApple );
+		world.update(0);
+		assertEquals( nearApple, world.findNearestEntity( Apple.class, 5, queryPos ) );
+		
+		// and a resized world still knows where its entities are
+		world.setSize( 200, 200 );
+		assertEquals( orange, world.findNearestEntity( Orange.class, 5, queryPos ) );
+		assertNull( world.findNearestEntity( Orange.class, 5, new Vector3( 150, 150, 0 ) ) );
+	}
+	
+	public void testTypedQueries()
+	{
+		World world = new World();
+		world.setSize( 100, 100 );
+		world.addEntity( new Apple( 1 ) );
+		world.update(0);
+		
+		// the type is queried before any of its instances shows up
+		assertNull( world.findEntity( Juicy.class ) );
+		
+		Lemon lemon = new Lemon();
+		lemon.setPosition( 50, 50, 0 );
+		world.addEntity( lemon );
+		world.update(0);
+		assertEquals( lemon, world.findEntity( Juicy.class ) );
+		assertEquals( lemon, world.findNearestEntity( Juicy.class, 200, new Vector3( 0, 0, 0 ) ) );
+		
+		ArrayList< Juicy > juicyFruits = new ArrayList< Juicy >();
+		world.findEntitiesInRange( Juicy.class, 1, new Vector3( 50, 50, 0 ), juicyFruits );
+		assertEquals( 1, juicyFruits.size() );
+		
+		world.removeEntity( lemon );
+		world.update(0);
+		assertNull( world.findEntity( Juicy.class ) );
+		assertNotNull( world.findEntity( Apple.class ) );
+	}
+	
+	public void testEntityIds()
+	{
+		World world = new World();
+		WorldViewMock view = new WorldViewMock();
+		world.attachView( view );
+		
+		Apple apple1 = new Apple( 1 );
+		Apple apple2 = new Apple( 2 );
+		Apple apple3 = new Apple( 3 );
+		assertEquals( -1, apple1.getWorldId() );
+		
+		world.addEntity( apple1 );
+		world.addEntity( apple2 );
+		world.addEntity( apple3 );
+		world.update(0);
+		assertEquals( 0, apple1.getWorldId() );
+		assertEquals( 1, apple2.getWorldId() );
+		assertEquals( 2, apple3.getWorldId() );
+		
+		// adding an entity twice doesn't change anything
+		world.addEntity( apple1 );
+		world.update(0);
+		assertEquals( 0, apple1.getWorldId() );
+		
+		// the id of a removed entity gets reused
+		world.removeEntity( apple2 );
+		world.update(0);
+		assertEquals( -1, apple2.getWorldId() );
+		assertFalse( view.m_entities.contains( apple2 ) );
+		
+		Orange orange = new Orange();
+		world.addEntity( orange );
+		world.update(0);
+		assertEquals( 1, orange.getWorldId() );
+		assertTrue( view.m_entities.contains( orange ) );
+		
+		// the remaining entities are still there
+		world.detachEntity( apple1 );
+		assertEquals( apple3, world.findEntity( Apple.class ) );
+		assertEquals( orange, world.findEntity( Orange.class ) );
+	}
+	
+	public void testTypedQueriesAfterRemovals()
+	{
+		World world = new World();
+		world.setSize( 100, 100 );
+		
+		List< Apple > apples = new ArrayList< Apple >();
+		for ( int i = 0; i < 100; ++i )
+		{
+			Apple apple = new Apple( i );
+			apple.setPosition( i % 10 * 10 + 5, i / 10 * 10 + 5, 0 );
+			apples.add( apple );
+			world.addEntity( apple );
+			world.addEntity( new Lemon() );
+		}
+		world.update(0);
+		assertNotNull( world.findEntity( Apple.class ) );
+		
+		// the removed entities' places on the per type lists are taken by the other ones
+		Set< Apple > remainingApples = new HashSet< Apple >();
+		for ( int i = 0; i < apples.size(); ++i )
+		{
+			if ( i % 3 == 0 )
+			{
+				world.removeEntity( apples.get( i ) );
+			}
+			else
+			{
+				remainingApples.add( apples.get( i ) );
+			}
+		}
+		world.update(0);
+		
+		ArrayList< Apple > foundApples = new ArrayList< Apple >();
+		world.findEntitiesInRange( Apple.class, 200, new Vector3( 50, 50, 0 ), foundApples );
+		assertEquals( remainingApples.size(), foundApples.size() );
+		assertEquals( remainingApples, new HashSet< Apple >( foundApples ) );
+		assertTrue( remainingApples.contains( world.findEntity( Apple.class ) ) );
+	}
+	
+	public void testEntityInTwoWorlds()
+	{
+		World world = new World();
+		World otherWorld = new World();
+		Apple apple1 = new Apple( 1 );
+		Apple apple2 = new Apple( 2 );
+		world.addEntity( apple1 );
+		world.addEntity( apple2 );
+		world.update(0);
+		
+		// an entity can't be attached to two worlds at once...
+		otherWorld.addEntity( apple1 );
+		try
+		{
+			otherWorld.update(0);
+			fail( "An entity was attached to two worlds" );
+		}
+		catch( IllegalStateException ex )
+		{
+			// that's expected
+		}
+		assertEquals( 0, apple1.getWorldId() );
+		ArrayList< Apple > apples = new ArrayList< Apple >();
+		world.findEntitiesInRange( Apple.class, 1, new Vector3( 0, 0, 0 ), apples );
+		assertTrue( apples.contains( apple1 ) );
+		
+		// ... but it can move to another one once it's removed from the first one
+		world.removeEntity( apple1 );
+		world.update(0);
+		otherWorld = new World();
+		otherWorld.addEntity( apple1 );
+		otherWorld.update(0);
+		assertEquals( 0, apple1.getWorldId() );
+		assertEquals( 1, apple2.getWorldId() );
+		assertEquals( apple2, world.findEntity( Apple.class ) );
+	}
+	
+	public void testConcurrentMovesAndResizing() throws InterruptedException
+	{
+		final World world = new World();
+		world.setSize( 100, 100 );
+		final Apple[] apples = new Apple[100];
+		for ( int i = 0; i < apples.length; ++i )
+		{
+			apples[i] = new Apple( i );
+			world.addEntity( apples[i] );
+		}
+		world.update(0);
+		
+		// the entities are moved from several threads, while the world rebuilds its index
+		Thread[] threads = new Thread[4];
+		for ( int t = 0; t < threads.length; ++t )
+		{
+			final int firstIdx = t * apples.length / threads.length;
+			final int lastIdx = ( t + 1 ) * apples.length / threads.length;
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for ( int step = 0; step < 200; ++step )
+					{
+						for ( int i = firstIdx; i < lastIdx; ++i )
+						{
+							apples[i].setPosition( ( i + step ) % 100, i, 0 );
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for ( int i = 0; i < 50; ++i )
+		{
+			world.setSize( 100 + i % 2, 100 );
+		}
+		for ( int t = 0; t < threads.length; ++t )
+		{
+			threads[t].join();
+		}
+		
+		// the index knows where each entity ended up
+		for ( int i = 0; i < apples.length; ++i )
+		{
+			assertEquals( apples[i], world.findNearestEntity( Apple.class, 0.1f, new Vector3( ( i + 199 ) % 100, i, 0 ) ) );
+		}
+	}
 }
-
@@ -1,8 +1,12 @@
 package com.hypefoundry.engine.test.math;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import android.test.AndroidTestCase;
 
 import com.hypefoundry.engine.math.BoundingBox;
+import com.hypefoundry.engine.math.BoundingShape;
 import com.hypefoundry.engine.math.BoundingSphere;
 import com.hypefoundry.engine.math.Ray;
 import com.hypefoundry.engine.math.Vector3;
@@ -188,5 +192,64 @@ public class BoundingBoxTest extends AndroidTestCase
 	    assertTrue( nearestPoint.m_x == 1.0f );
 	    assertTrue( nearestPoint.m_y == 10.0f );
 	}
+	
+	public void testTimeOfImpact()
+	{
+		BoundingBox wall = new BoundingBox( 10, 0, 11, 10 );
+		Vector3 contactPos = new Vector3();
+		
+		// a box that would jump over the wall in a single step
+		BoundingBox box = new BoundingBox( 0, 4, 2, 6 );
+		assertFalse( wall.doesOverlap( new BoundingBox( 20, 4, 22, 6 ), null ) );
+		assertEquals( 0.4f, box.getTimeOfImpact( 20, 0, wall, contactPos ), 1e-4 );
+		assertTrue( contactPos.dist( 10, 5, 0 ) < 1e-4 );
+		assertEquals( -1.0f, box.getTimeOfImpact( -20, 0, wall, null ), 1e-4 );
+		assertEquals( -1.0f, box.getTimeOfImpact( 5, 0, wall, null ), 1e-4 );
+		assertEquals( -1.0f, box.getTimeOfImpact( 20, 20, wall, null ), 1e-4 );
+		
+		// shapes that already overlap touch right away
+		assertEquals( 0.0f, box.getTimeOfImpact( 1, 0, new BoundingBox( 1, 3, 3, 5 ), null ), 1e-4 );
+		
+		// spheres
+		BoundingSphere sphere = new BoundingSphere( 0, 5, 1 );
+		assertEquals( 0.45f, sphere.getTimeOfImpact( 20, 0, wall, contactPos ), 1e-4 );
+		assertTrue( contactPos.dist( 10, 5, 0 ) < 1e-4 );
+		assertEquals( 0.3f, sphere.getTimeOfImpact( 20, 0, new BoundingSphere( 10, 5, 3 ), contactPos ), 1e-4 );
+		assertTrue( contactPos.dist( 7, 5, 0 ) < 1e-4 );
+		assertEquals( -1.0f, sphere.getTimeOfImpact( 0, 20, new BoundingSphere( 10, 5, 3 ), null ), 1e-4 );
+		
+		// a ray is swept from its origin
+		Ray ray = new Ray( 0, 5, 1, 0 );
+		assertEquals( 0.5f, ray.getTimeOfImpact( 20, 0, wall, contactPos ), 1e-4 );
+		assertTrue( contactPos.dist( 10, 5, 0 ) < 1e-4 );
+		assertEquals( 0.4f, ray.getTimeOfImpact( 20, 0, new BoundingSphere( 10, 5, 2 ), null ), 1e-4 );
+		
+		// the time is the same when it's the other shape that moves - the contact is then found on the stationary one
+		assertEquals( 0.4f, wall.getTimeOfImpact( -20, 0, box, contactPos ), 1e-4 );
+		assertTrue( contactPos.dist( 2, 5, 0 ) < 1e-4 );
+		assertEquals( 0.45f, wall.getTimeOfImpact( -20, 0, (BoundingShape)sphere, contactPos ), 1e-4 );
+		assertTrue( contactPos.dist( 1, 5, 0 ) < 1e-4 );
+	}
+	
+	public void testEquality()
+	{
+		BoundingBox box = new BoundingBox( 0, 1, 2, 3 );
+		BoundingBox sameBox = new BoundingBox( 0, 1, 2, 3 );
+		
+		assertTrue( box.equals( sameBox ) );
+		assertTrue( box.equals( (Object)sameBox ) );
+		assertEquals( box.hashCode(), sameBox.hashCode() );
+		assertFalse( box.equals( new BoundingBox( 0, 1, 2, 4 ) ) );
+		assertFalse( box.equals( null ) );
+		
+		// -0 and 0 describe the same coordinate
+		BoundingBox zeroBox = new BoundingBox( -0.0f, 1, 2, 3 );
+		assertTrue( box.equals( zeroBox ) );
+		assertEquals( box.hashCode(), zeroBox.hashCode() );
+		
+		// hashed collections find an equal box
+		Set< BoundingBox > boxes = new HashSet< BoundingBox >();
+		boxes.add( box );
+		assertTrue( boxes.contains( sameBox ) );
+	}
 }
-
@@ -0,0 +1,44 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.hypefoundry.engine.renderer2D.Color;
+
+import android.test.AndroidTestCase;
+
+
+public class ColorTests extends AndroidTestCase
+{
+	public void testPacking()
+	{
+		// the components should land in the memory in the RGBA order, the way GL reads them
+		byte[] bytes = unpack( new Color( 1.0f, 0.5f, 0.0f, 0.25f ).toPackedFloat() );
+		assertEquals( 255, bytes[0] & 0xFF );
+		assertEquals( 128, bytes[1] & 0xFF );
+		assertEquals( 0, bytes[2] & 0xFF );
+		assertEquals( 64, bytes[3] & 0xFF );
+
+		// components out of range are clamped
+		bytes = unpack( new Color( 2.0f, -1.0f, 0.0f, 0.0f ).toPackedFloat() );
+		assertEquals( 255, bytes[0] & 0xFF );
+		assertEquals( 0, bytes[1] & 0xFF );
+
+		// an opaque white can't form a NaN
+		float packedWhite = Color.WHITE.toPackedFloat();
+		assertFalse( Float.isNaN( packedWhite ) );
+		bytes = unpack( packedWhite );
+		assertEquals( 255, bytes[0] & 0xFF );
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private byte[] unpack( float packedColor )
+	{
+		ByteBuffer buffer = ByteBuffer.allocate( 4 ).order( ByteOrder.nativeOrder() );
+		buffer.putFloat( 0, packedColor );
+		return buffer.array();
+	}
+}
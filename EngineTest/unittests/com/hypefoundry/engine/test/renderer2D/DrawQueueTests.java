@@ -0,0 +1,191 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import com.hypefoundry.engine.renderer2D.DrawQueue;
+import com.hypefoundry.engine.renderer2D.RenderState;
+
+import android.test.AndroidTestCase;
+
+
+public class DrawQueueTests extends AndroidTestCase
+{
+	public void testDrawingOrder()
+	{
+		RenderState rsA = new RenderState().setLineWidth( 1 );
+		RenderState rsB = new RenderState().setLineWidth( 2 );
+
+		DrawQueue queue = new DrawQueue( 2, 1 );
+
+		// the layer takes precedence over the depth
+		queue.setLayer( 1 );
+		queue.setDepth( 10 );
+		queue.add( 0, rsA, 1 );
+
+		// farther commands are drawn first, even if the depths differ by a fraction
+		queue.setLayer( 0 );
+		queue.setDepth( 0.5f );
+		queue.add( 1, rsA, 1 );
+		queue.setDepth( 0.75f );
+		queue.add( 2, rsA, 1 );
+
+		// the commands of the different groups at the same depth are grouped by their render states, keeping their order
+		queue.setDepth( 0.0f );
+		queue.add( 3, rsA, 1 );
+		queue.add( 4, rsB, 1 );
+		queue.setDepth( 0.0f );
+		queue.add( 5, rsA, 1 );
+		queue.add( 6, rsB, 1 );
+
+		queue.sort();
+
+		int[] expectedTags = { 2, 1, 3, 5, 4, 6, 0 };
+		assertEquals( expectedTags.length, queue.size() );
+		for ( int i = 0; i < expectedTags.length; ++i )
+		{
+			assertEquals( expectedTags[i], queue.getTag( queue.getCommandAt( i ) ) );
+		}
+	}
+
+	public void testGroupOrderIsPreserved()
+	{
+		RenderState rsA = new RenderState().setLineWidth( 1 );
+		RenderState rsB = new RenderState().setLineWidth( 2 );
+
+		DrawQueue queue = new DrawQueue( 8, 1 );
+
+		// a visual draws a shadow, a body with a different texture and a highlight with the shadow's one
+		queue.setDepth( 5.0f );
+		queue.add( 0, rsA, 1 );
+		queue.add( 1, rsB, 1 );
+		queue.add( 2, rsA, 1 );
+
+		// and another one at the same depth draws its sprites the other way round
+		queue.setDepth( 5.0f );
+		queue.add( 3, rsB, 1 );
+		queue.add( 4, rsA, 1 );
+
+		queue.sort();
+
+		// each visual's sprites keep their order, only the sprites of the different visuals are regrouped
+		int[] expectedTags = { 0, 3, 4, 1, 2 };
+		assertEquals( expectedTags.length, queue.size() );
+		for ( int i = 0; i < expectedTags.length; ++i )
+		{
+			assertEquals( expectedTags[i], queue.getTag( queue.getCommandAt( i ) ) );
+		}
+		for ( int i = 0; i < expectedTags.length; ++i )
+		{
+			assertEquals( 5.0f, queue.getDepthAt( i ) );
+			assertEquals( 0, queue.getLayerAt( i ) );
+		}
+	}
+
+	public void testRegroupingAcrossDepths()
+	{
+		RenderState rsA = new RenderState().setLineWidth( 1 );
+		RenderState rsB = new RenderState().setLineWidth( 2 );
+
+		// sprites that don't overlap are grouped by their render states, even though their depths differ
+		DrawQueue queue = new DrawQueue( 4, 1 );
+		queue.setDepth( 3.0f );
+		queue.add( 0, rsA, 1 );
+		queue.setBounds( 0, 0, 1, 1 );
+		queue.setDepth( 2.0f );
+		queue.add( 1, rsB, 1 );
+		queue.setBounds( 2, 0, 3, 1 );
+		queue.setDepth( 1.0f );
+		queue.add( 2, rsA, 1 );
+		queue.setBounds( 4, 0, 5, 1 );
+		queue.sort();
+		assertTags( queue, new int[] { 0, 2, 1 } );
+
+		// the keys move along with the commands
+		assertEquals( 3.0f, queue.getDepthAt( 0 ) );
+		assertEquals( 1.0f, queue.getDepthAt( 1 ) );
+		assertEquals( 2.0f, queue.getDepthAt( 2 ) );
+
+		// a sprite can't jump over the one it overlaps
+		queue.clear();
+		queue.setDepth( 3.0f );
+		queue.add( 0, rsA, 1 );
+		queue.setBounds( 0, 0, 1, 1 );
+		queue.setDepth( 2.0f );
+		queue.add( 1, rsB, 1 );
+		queue.setBounds( 2, 0, 3, 1 );
+		queue.setDepth( 1.0f );
+		queue.add( 2, rsA, 1 );
+		queue.setBounds( 2.5f, 0.5f, 3.5f, 1.5f );
+		queue.sort();
+		assertTags( queue, new int[] { 0, 1, 2 } );
+
+		// and nothing jumps over the sprites without the bounds
+		queue.clear();
+		queue.setDepth( 3.0f );
+		queue.add( 0, rsA, 1 );
+		queue.setBounds( 0, 0, 1, 1 );
+		queue.setDepth( 2.0f );
+		queue.add( 1, rsB, 1 );
+		queue.setDepth( 1.0f );
+		queue.add( 2, rsA, 1 );
+		queue.setBounds( 4, 0, 5, 1 );
+		queue.sort();
+		assertTags( queue, new int[] { 0, 1, 2 } );
+
+		// the sprites never leave their layer
+		queue.clear();
+		queue.setLayer( 0 );
+		queue.setDepth( 3.0f );
+		queue.add( 0, rsA, 1 );
+		queue.setBounds( 0, 0, 1, 1 );
+		queue.setDepth( 2.0f );
+		queue.add( 1, rsB, 1 );
+		queue.setBounds( 2, 0, 3, 1 );
+		queue.setLayer( 1 );
+		queue.setDepth( 1.0f );
+		queue.add( 2, rsA, 1 );
+		queue.setBounds( 4, 0, 5, 1 );
+		queue.sort();
+		assertTags( queue, new int[] { 0, 1, 2 } );
+	}
+
+	public void testRenderStatesAreCopied()
+	{
+		RenderState rs = new RenderState().setLineWidth( 1 );
+
+		DrawQueue queue = new DrawQueue( 4, 1 );
+		queue.add( 0, rs, 1 );
+		rs.setLineWidth( 2 );
+		queue.add( 1, rs, 1 );
+
+		// the state changed in between, so the commands don't share it
+		assertTrue( queue.getRenderState( 0 ).equals( new RenderState().setLineWidth( 1 ) ) );
+		assertTrue( queue.getRenderState( 1 ).equals( new RenderState().setLineWidth( 2 ) ) );
+	}
+
+	public void testVertexOffsets()
+	{
+		RenderState rs = new RenderState();
+
+		DrawQueue queue = new DrawQueue( 1, 16 );
+		assertEquals( 0, queue.add( 0, rs, 16 ) );
+		assertEquals( 16, queue.add( 0, rs, 32 ) );
+		assertEquals( 48, queue.add( 0, rs, 16 ) );
+		assertTrue( queue.getVertices().capacity() >= 64 );
+
+		queue.clear();
+		assertEquals( 0, queue.size() );
+		assertEquals( 0, queue.add( 0, rs, 16 ) );
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private void assertTags( DrawQueue queue, int[] expectedTags )
+	{
+		assertEquals( expectedTags.length, queue.size() );
+		for ( int i = 0; i < expectedTags.length; ++i )
+		{
+			assertEquals( expectedTags[i], queue.getTag( queue.getCommandAt( i ) ) );
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import com.hypefoundry.engine.core.GLGraphics;
+import com.hypefoundry.engine.game.Game;
+import com.hypefoundry.engine.math.BoundingBox;
+import com.hypefoundry.engine.math.Vector3;
+import com.hypefoundry.engine.renderer2D.Camera2D;
+import com.hypefoundry.engine.renderer2D.EntityVisual;
+import com.hypefoundry.engine.renderer2D.EntityVisualFactory;
+import com.hypefoundry.engine.renderer2D.Renderer2D;
+import com.hypefoundry.engine.renderer2D.SpriteBatcher;
+import com.hypefoundry.engine.world.Entity;
+import com.hypefoundry.engine.world.EntityPositionInterpolator;
+import com.hypefoundry.engine.world.World;
+
+import android.test.AndroidTestCase;
+
+
+public class Renderer2DTests extends AndroidTestCase
+{
+	/**
+	 * Graphics that use a GL implementation that doesn't draw anything.
+	 */
+	private class HeadlessGraphics extends GLGraphics
+	{
+		private GL10		m_headlessGL;
+
+		public HeadlessGraphics()
+		{
+			super( null );
+
+			m_headlessGL = (GL10)Proxy.newProxyInstance( GL10.class.getClassLoader(), new Class< ? >[] { GL10.class }, new InvocationHandler()
+			{
+				@Override
+				public Object invoke( Object proxy, Method method, Object[] args )
+				{
+					Class< ? > returnType = method.getReturnType();
+					if ( returnType == int.class )
+					{
+						return 0;
+					}
+					else if ( returnType == boolean.class )
+					{
+						return false;
+					}
+					return null;
+				}
+			} );
+			getViewportDimensions().set( 800, 480, 0 );
+		}
+
+		@Override
+		public GL10 getGL()
+		{
+			return m_headlessGL;
+		}
+
+		@Override
+		public int getWidth()
+		{
+			return 800;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return 480;
+		}
+	}
+
+	/**
+	 * A visual that remembers where it was drawn.
+	 */
+	private class VisualMock extends EntityVisual
+	{
+		final Vector3		m_drawnPosition = new Vector3();
+		int					m_drawsCount = 0;
+
+		VisualMock( Entity entity )
+		{
+			super( entity );
+		}
+
+		@Override
+		public void draw( SpriteBatcher batcher, Camera2D camera, float deltaTime )
+		{
+			m_drawnPosition.set( getDrawPosition() );
+			++m_drawsCount;
+		}
+	}
+
+	private class EntityMock extends Entity
+	{
+		VisualMock			m_visual = null;
+
+		EntityMock()
+		{
+			setBoundingBox( new BoundingBox( -0.5f, -0.5f, 0.5f, 0.5f ) );
+		}
+	}
+
+	public void testDrawingInterpolatedPositions()
+	{
+		final GLGraphics graphics = new HeadlessGraphics();
+		Game game = (Game)Proxy.newProxyInstance( Game.class.getClassLoader(), new Class< ? >[] { Game.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke( Object proxy, Method method, Object[] args )
+			{
+				return method.getName().equals( "getGraphics" ) ? graphics : null;
+			}
+		} );
+
+		World world = new World();
+		world.setSize( 20, 20 );
+		EntityMock entity = new EntityMock();
+		entity.setPosition( 2, 2, 0 );
+		world.addEntity( entity );
+		world.update( 0 );
+
+		Renderer2D renderer = new Renderer2D( game, 800, 480 );
+		renderer.register( EntityMock.class, new EntityVisualFactory() { @Override public EntityVisual instantiate( Entity parentEntity ) { EntityMock mock = (EntityMock)parentEntity; mock.m_visual = new VisualMock( mock ); return mock.m_visual; } } );
+		world.attachView( renderer );
+
+		// without an interpolator, the visual is drawn where its entity is
+		renderer.draw( 0 );
+		assertEquals( 1, entity.m_visual.m_drawsCount );
+		assertTrue( entity.m_visual.m_drawnPosition.dist( 2, 2, 0 ) < 1e-3 );
+
+		// with one, it's drawn where the interpolator puts it
+		renderer.setPositionInterpolator( new EntityPositionInterpolator()
+		{
+			@Override
+			public void getInterpolatedPosition( Entity entity, Vector3 outPos )
+			{
+				outPos.set( entity.getPosition() ).add( 0.25f, -0.5f, 0 );
+			}
+		} );
+		renderer.draw( 0 );
+		assertEquals( 2, entity.m_visual.m_drawsCount );
+		assertTrue( entity.m_visual.m_drawnPosition.dist( 2.25f, 1.5f, 0 ) < 1e-3 );
+		assertTrue( entity.getPosition().dist( 2, 2, 0 ) < 1e-3 );
+	}
+}
@@ -0,0 +1,134 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import com.hypefoundry.engine.core.GLGraphics;
+import com.hypefoundry.engine.renderer2D.SpriteBatcher;
+import com.hypefoundry.engine.renderer2D.TextureRegion;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+
+public class SpriteBatcherPerformanceTests extends AndroidTestCase
+{
+	/**
+	 * Graphics that use a GL implementation that doesn't draw anything, so
+	 * only the CPU side of the rendering gets measured.
+	 */
+	private class HeadlessGraphics extends GLGraphics
+	{
+		private GL10		m_headlessGL;
+
+		public HeadlessGraphics()
+		{
+			super( null );
+
+			m_headlessGL = (GL10)Proxy.newProxyInstance( GL10.class.getClassLoader(), new Class< ? >[] { GL10.class }, new InvocationHandler()
+			{
+				@Override
+				public Object invoke( Object proxy, Method method, Object[] args )
+				{
+					Class< ? > returnType = method.getReturnType();
+					if ( returnType == int.class )
+					{
+						return 0;
+					}
+					else if ( returnType == boolean.class )
+					{
+						return false;
+					}
+					return null;
+				}
+			} );
+		}
+
+		@Override
+		public GL10 getGL()
+		{
+			return m_headlessGL;
+		}
+	}
+
+	private final int MAX_SPRITES = 512;
+	private final int FRAMES_COUNT = 200;
+	private final int ROUNDS_COUNT = 5;
+
+	public void testFlush()
+	{
+		SpriteBatcher batcher = new SpriteBatcher( new HeadlessGraphics(), MAX_SPRITES );
+		TextureRegion region = new TextureRegion();
+
+		// the path the geometry used before - the batcher filled an array, and the floats
+		// were converted to ints one by one before they were copied to a native buffer.
+		// It's measured for the same number of sprites as the frames drawn with the batcher
+		final int floatsCount = MAX_SPRITES * 4 * 4;
+		float[] vertices = new float[floatsCount];
+		ByteBuffer buffer = ByteBuffer.allocateDirect( floatsCount * 4 );
+		buffer.order( ByteOrder.nativeOrder() );
+		IntBuffer intBuffer = buffer.asIntBuffer();
+		int[] tmpBuffer = new int[floatsCount];
+
+		// take the best of a few rounds, so that the warm up doesn't count
+		long copyDuration = Long.MAX_VALUE;
+		long flushDuration = Long.MAX_VALUE;
+		long frameDuration = Long.MAX_VALUE;
+		for ( int round = 0; round < ROUNDS_COUNT; ++round )
+		{
+			long startTime = System.nanoTime();
+			for ( int frame = 0; frame < FRAMES_COUNT; ++frame )
+			{
+				int idx = 0;
+				for ( int i = 0; i < MAX_SPRITES; ++i )
+				{
+					for ( int j = 0; j < 4; ++j )
+					{
+						vertices[idx++] = i;
+						vertices[idx++] = frame;
+						vertices[idx++] = region.m_u1;
+						vertices[idx++] = region.m_v1;
+					}
+				}
+
+				intBuffer.clear();
+				for ( int i = 0; i < floatsCount; ++i )
+				{
+					tmpBuffer[i] = Float.floatToRawIntBits( vertices[i] );
+				}
+				intBuffer.put( tmpBuffer, 0, floatsCount );
+				intBuffer.flip();
+			}
+			copyDuration = Math.min( copyDuration, System.nanoTime() - startTime );
+
+			long duration = 0;
+			long frameStartTime = System.nanoTime();
+			for ( int frame = 0; frame < FRAMES_COUNT; ++frame )
+			{
+				for ( int i = 0; i < MAX_SPRITES; ++i )
+				{
+					batcher.drawSprite( i, frame, 1, 1, region );
+				}
+
+				long flushStartTime = System.nanoTime();
+				batcher.flush();
+				duration += System.nanoTime() - flushStartTime;
+			}
+			frameDuration = Math.min( frameDuration, System.nanoTime() - frameStartTime );
+			flushDuration = Math.min( flushDuration, duration );
+		}
+
+		String msg = new StringBuilder().append( "Per frame: " ).append( frameDuration / FRAMES_COUNT ).append( "[ns], per flush: " ).append( flushDuration / FRAMES_COUNT ).append( "[ns], per frame filled and copied the previous way: " ).append( copyDuration / FRAMES_COUNT ).append( "[ns]" ).toString();
+		Log.d( "SpriteBatcherPerformanceTests", msg );
+
+		// the previous path is simulated without the work drawSprite does on top of writing the vertices,
+		// so the numbers are only logged for reference
+		assertTrue( msg, frameDuration / 1000000 < 200 ); // 200 ms
+	}
+}
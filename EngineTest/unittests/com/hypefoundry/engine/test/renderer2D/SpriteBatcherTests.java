@@ -0,0 +1,170 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import com.hypefoundry.engine.core.GLGraphics;
+import com.hypefoundry.engine.renderer2D.Color;
+import com.hypefoundry.engine.renderer2D.SpriteBatcher;
+import com.hypefoundry.engine.renderer2D.TextureRegion;
+
+import android.test.AndroidTestCase;
+
+
+public class SpriteBatcherTests extends AndroidTestCase
+{
+	/**
+	 * Graphics that use a GL implementation that doesn't draw anything, and counts
+	 * the draw calls.
+	 */
+	private class HeadlessGraphics extends GLGraphics
+	{
+		private GL10		m_headlessGL;
+		int					m_drawCallsCount = 0;
+
+		public HeadlessGraphics()
+		{
+			super( null );
+
+			m_headlessGL = (GL10)Proxy.newProxyInstance( GL10.class.getClassLoader(), new Class< ? >[] { GL10.class }, new InvocationHandler()
+			{
+				@Override
+				public Object invoke( Object proxy, Method method, Object[] args )
+				{
+					if ( method.getName().equals( "glDrawElements" ) )
+					{
+						++m_drawCallsCount;
+					}
+
+					Class< ? > returnType = method.getReturnType();
+					if ( returnType == int.class )
+					{
+						return 0;
+					}
+					else if ( returnType == boolean.class )
+					{
+						return false;
+					}
+					return null;
+				}
+			} );
+		}
+
+		@Override
+		public GL10 getGL()
+		{
+			return m_headlessGL;
+		}
+	}
+
+	public void testOverflowFlushing()
+	{
+		HeadlessGraphics graphics = new HeadlessGraphics();
+		SpriteBatcher batcher = new SpriteBatcher( graphics, 4 );
+		TextureRegion region = new TextureRegion();
+		Color color = new Color( 1, 1, 1, 1 );
+
+		// sprites drawn straight to the batch
+		for ( int i = 0; i < 10; ++i )
+		{
+			batcher.drawSprite( i, 0, 1, 1, region );
+		}
+		batcher.flush();
+		assertEquals( 3, graphics.m_drawCallsCount );
+		assertEquals( 2, batcher.getOverflowFlushesCount() );
+		assertEquals( 4, batcher.getPeakBatchSize() );
+
+		// colored sprites drawn through the queue
+		batcher.resetStatistics();
+		batcher.beginQueue();
+		for ( int i = 0; i < 9; ++i )
+		{
+			batcher.drawSprite( i, 0, 1, 1, 0, region, color );
+		}
+		batcher.endQueue();
+		batcher.flush();
+		assertEquals( 6, graphics.m_drawCallsCount );
+		assertEquals( 2, batcher.getOverflowFlushesCount() );
+		assertEquals( 4, batcher.getPeakBatchSize() );
+	}
+
+	public void testQueuedSpritesRegrouping()
+	{
+		HeadlessGraphics graphics = new HeadlessGraphics();
+		SpriteBatcher batcher = new SpriteBatcher( graphics, 16 );
+		TextureRegion regionA = new TextureRegion();
+		regionA.m_renderState.setLineWidth( 1 );
+		TextureRegion regionB = new TextureRegion();
+		regionB.m_renderState.setLineWidth( 2 );
+
+		// the sprites at the different depths alternate their states, but they don't overlap - so the ones
+		// that share the state are drawn together
+		batcher.beginQueue();
+		for ( int i = 0; i < 6; ++i )
+		{
+			batcher.setDepth( 10 - i );
+			batcher.drawSprite( i * 2, 0, 1, 1, i % 2 == 0 ? regionA : regionB );
+		}
+		batcher.endQueue();
+		batcher.flush();
+		assertEquals( 2, graphics.m_drawCallsCount );
+
+		// once they overlap, they're drawn in the order of their depths
+		graphics.m_drawCallsCount = 0;
+		batcher.beginQueue();
+		for ( int i = 0; i < 6; ++i )
+		{
+			batcher.setDepth( 10 - i );
+			batcher.drawSprite( i * 0.5f, 0, 1, 1, i % 2 == 0 ? regionA : regionB );
+		}
+		batcher.endQueue();
+		batcher.flush();
+		assertEquals( 6, graphics.m_drawCallsCount );
+	}
+
+	public void testGrowth()
+	{
+		HeadlessGraphics graphics = new HeadlessGraphics();
+		SpriteBatcher batcher = new SpriteBatcher( graphics, 4 );
+		TextureRegion region = new TextureRegion();
+
+		// the batch doesn't grow unless it's allowed to
+		drawFrame( batcher, region, 10 );
+		batcher.updateCapacity();
+		assertEquals( 4, batcher.getCapacity() );
+
+		batcher.setGrowthEnabled( true );
+		batcher.updateCapacity();
+		assertEquals( 16, batcher.getCapacity() );
+
+		// the next frame fits in a single batch
+		batcher.resetStatistics();
+		graphics.m_drawCallsCount = 0;
+		drawFrame( batcher, region, 10 );
+		assertEquals( 1, graphics.m_drawCallsCount );
+		assertEquals( 0, batcher.getOverflowFlushesCount() );
+		assertEquals( 10, batcher.getPeakBatchSize() );
+
+		// smaller frames don't shrink it
+		batcher.resetStatistics();
+		drawFrame( batcher, region, 2 );
+		batcher.updateCapacity();
+		assertEquals( 16, batcher.getCapacity() );
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private void drawFrame( SpriteBatcher batcher, TextureRegion region, int spritesCount )
+	{
+		for ( int i = 0; i < spritesCount; ++i )
+		{
+			batcher.drawSprite( i, 0, 1, 1, region );
+		}
+		batcher.flush();
+	}
+}
@@ -0,0 +1,140 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import com.hypefoundry.engine.core.GLGraphics;
+import com.hypefoundry.engine.renderer2D.Color;
+import com.hypefoundry.engine.renderer2D.RenderState;
+import com.hypefoundry.engine.renderer2D.SpriteBatcher;
+import com.hypefoundry.engine.renderer2D.StaticBatch;
+import com.hypefoundry.engine.renderer2D.TextureRegion;
+
+import android.test.AndroidTestCase;
+
+
+public class StaticBatchTests extends AndroidTestCase
+{
+	/**
+	 * Graphics that use a GL implementation that doesn't draw anything, and counts
+	 * the draw calls and the created buffer objects.
+	 */
+	private class HeadlessGraphics extends GLGraphics
+	{
+		private GL10		m_headlessGL;
+		int					m_drawCallsCount = 0;
+		int					m_buffersCount = 0;
+
+		public HeadlessGraphics( Class< ? extends GL10 > glInterface )
+		{
+			super( null );
+
+			m_headlessGL = (GL10)Proxy.newProxyInstance( glInterface.getClassLoader(), new Class< ? >[] { glInterface }, new InvocationHandler()
+			{
+				@Override
+				public Object invoke( Object proxy, Method method, Object[] args )
+				{
+					if ( method.getName().equals( "glDrawElements" ) )
+					{
+						++m_drawCallsCount;
+					}
+					else if ( method.getName().equals( "glGenBuffers" ) )
+					{
+						m_buffersCount += (Integer)args[0];
+					}
+
+					Class< ? > returnType = method.getReturnType();
+					if ( returnType == int.class )
+					{
+						return 0;
+					}
+					else if ( returnType == boolean.class )
+					{
+						return false;
+					}
+					return null;
+				}
+			} );
+		}
+
+		@Override
+		public GL10 getGL()
+		{
+			return m_headlessGL;
+		}
+	}
+
+	public void testRuns()
+	{
+		HeadlessGraphics graphics = new HeadlessGraphics( GL10.class );
+		SpriteBatcher batcher = new SpriteBatcher( graphics, 16 );
+		StaticBatch batch = new StaticBatch( graphics );
+		TextureRegion regionA = new TextureRegion( new RenderState().setLineWidth( 1 ) );
+		TextureRegion regionB = new TextureRegion( new RenderState().setLineWidth( 2 ) );
+
+		batcher.beginStaticBatch( batch );
+		batcher.setDepth( 50 );
+		batcher.drawSprite( 0, 0, 1, 1, regionA );
+		batcher.drawSprite( 0, 0, 1, 1, regionA );
+		batcher.drawSprite( 0, 0, 1, 1, 0, regionA, new Color( 1, 1, 1, 1 ) );
+		batcher.setDepth( 100 );
+		batcher.drawSprite( 0, 0, 1, 1, regionA );
+		batcher.drawSprite( 0, 0, 1, 1, regionB );
+		batcher.setDepth( 100 );
+		batcher.drawSprite( 0, 0, 1, 1, regionA );
+		batcher.endStaticBatch();
+
+		// the farthest sprites come first, and the ones of the different visuals that share the depth
+		// and the render state are merged
+		assertTrue( batch.isValid() );
+		assertEquals( 4, batch.getRunsCount() );
+		assertEquals( 100.0f, batch.getRunDepth( 0 ) );
+		assertEquals( 2, batch.getRunSpritesCount( 0 ) );
+		assertEquals( 100.0f, batch.getRunDepth( 1 ) );
+		assertEquals( 1, batch.getRunSpritesCount( 1 ) );
+		assertEquals( 50.0f, batch.getRunDepth( 2 ) );
+		assertEquals( 2, batch.getRunSpritesCount( 2 ) );
+		assertEquals( 50.0f, batch.getRunDepth( 3 ) );
+		assertEquals( 1, batch.getRunSpritesCount( 3 ) );
+
+		// a draw call per run
+		batcher.resetStatistics();
+		for ( int i = 0; i < batch.getRunsCount(); ++i )
+		{
+			batcher.drawStaticBatch( batch, i );
+		}
+		assertEquals( 4, batcher.getDrawCallsCount() );
+		assertEquals( 4, graphics.m_drawCallsCount );
+
+		// there are no buffer objects in GL10
+		assertEquals( 0, graphics.m_buffersCount );
+
+		batch.invalidate();
+		assertFalse( batch.isValid() );
+	}
+
+	public void testBufferObjects()
+	{
+		HeadlessGraphics graphics = new HeadlessGraphics( GL11.class );
+		SpriteBatcher batcher = new SpriteBatcher( graphics, 16 );
+		StaticBatch batch = new StaticBatch( graphics );
+		TextureRegion region = new TextureRegion( new RenderState() );
+
+		batcher.beginStaticBatch( batch );
+		batcher.drawSprite( 0, 0, 1, 1, region );
+		batcher.drawSprite( 0, 0, 1, 1, 0, region, new Color( 1, 1, 1, 1 ) );
+		batcher.endStaticBatch();
+
+		// the vertices and the indices of both kinds of sprites were uploaded
+		assertEquals( 4, graphics.m_buffersCount );
+		assertEquals( 2, batch.getRunsCount() );
+
+		batch.release();
+		assertFalse( batch.isValid() );
+		assertEquals( 0, batch.getRunsCount() );
+	}
+}
@@ -0,0 +1,198 @@
+package com.hypefoundry.engine.test.renderer2D;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hypefoundry.engine.core.Pixmap;
+import com.hypefoundry.engine.core.ResourceManager;
+import com.hypefoundry.engine.core.Texture;
+import com.hypefoundry.engine.renderer2D.AtlasPacker;
+import com.hypefoundry.engine.renderer2D.RenderState;
+import com.hypefoundry.engine.renderer2D.TextureAtlas;
+import com.hypefoundry.engine.renderer2D.TextureRegion;
+import com.hypefoundry.engine.renderer2D.animation.Animation;
+
+import android.test.AndroidTestCase;
+
+
+public class TextureAtlasTests extends AndroidTestCase
+{
+	public void testPacking()
+	{
+		AtlasPacker packer = new AtlasPacker( 64, 1 );
+		int[][] sizes = { { 30, 20 }, { 10, 40 }, { 62, 10 }, { 5, 5 }, { 20, 20 }, { 40, 30 }, { 33, 33 } };
+		for ( int i = 0; i < sizes.length; ++i )
+		{
+			packer.add( sizes[i][0], sizes[i][1] );
+		}
+		packer.pack();
+
+		// the rectangles don't fit a single page
+		assertTrue( packer.getPagesCount() > 1 );
+		for ( int i = 0; i < sizes.length; ++i )
+		{
+			int page = packer.getPage( i );
+			int x = packer.getX( i );
+			int y = packer.getY( i );
+
+			// the rectangles lie within their pages, keeping a distance from the edges
+			assertTrue( x >= 1 && y >= 1 );
+			assertTrue( x + sizes[i][0] + 1 <= packer.getPageWidth( page ) );
+			assertTrue( y + sizes[i][1] + 1 <= packer.getPageHeight( page ) );
+			assertEquals( 0, packer.getPageWidth( page ) & ( packer.getPageWidth( page ) - 1 ) );
+			assertEquals( 0, packer.getPageHeight( page ) & ( packer.getPageHeight( page ) - 1 ) );
+
+			// and they don't overlap, including the padding
+			for ( int j = 0; j < i; ++j )
+			{
+				if ( packer.getPage( j ) != page )
+				{
+					continue;
+				}
+				boolean separated = x >= packer.getX( j ) + sizes[j][0] + 2 || packer.getX( j ) >= x + sizes[i][0] + 2
+						|| y >= packer.getY( j ) + sizes[j][1] + 2 || packer.getY( j ) >= y + sizes[i][1] + 2;
+				assertTrue( separated );
+			}
+		}
+	}
+
+	public void testPngEncoding() throws IOException
+	{
+		Pixmap image = new Pixmap( 3, 2, new int[] { 0xFFFF0000, 0x8000FF00, 0x000000FF, 0xFFFFFFFF, 0x12345678, 0xFF000000 } );
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		image.encodePng( out );
+		Pixmap decodedImage = Pixmap.decodePng( new ByteArrayInputStream( out.toByteArray() ) );
+
+		assertEquals( 3, decodedImage.m_width );
+		assertEquals( 2, decodedImage.m_height );
+		for ( int i = 0; i < 6; ++i )
+		{
+			assertEquals( image.m_pixels[i], decodedImage.m_pixels[i] );
+		}
+	}
+
+	public void testMerging()
+	{
+		ResourceManager resMgr = new ResourceManager( null );
+
+		Texture textureA = resMgr.getResource( Texture.class, "a.png" );
+		textureA.create( createImage( 8, 4, 0xFFFF0000 ) );
+		Texture textureB = resMgr.getResource( Texture.class, "b.png" );
+		textureB.create( createImage( 4, 4, 0xFF0000FF ) );
+		Texture wrappedTexture = resMgr.getResource( Texture.class, "c.png" );
+		wrappedTexture.create( createImage( 4, 4, 0xFF00FF00 ) );
+
+		// two regions of the same texture with their own, equal render states
+		TextureRegion regionA1 = createRegion( resMgr, "a1.xml", textureA, 0, 0, 0.5f, 1 );
+		TextureRegion regionA2 = createRegion( resMgr, "a2.xml", textureA, 0.5f, 0, 1, 1 );
+
+		// an animation, whose frames share the render state
+		RenderState animationState = new RenderState();
+		animationState.m_texture = textureB;
+		TextureRegion[] frames = { new TextureRegion( animationState ), new TextureRegion( animationState ) };
+		frames[0].m_u2 = 1; frames[0].m_v2 = 1;
+		frames[1].m_u2 = 1; frames[1].m_v2 = 1;
+		Animation animation = new Animation( 0.1f, true, frames, null );
+		animation.m_renderState = animationState;
+
+		// a region that wraps its texture around
+		TextureRegion wrappedRegion = createRegion( resMgr, "c.xml", wrappedTexture, 0, 0, 2, 2 );
+
+		List< TextureRegion > regions = new ArrayList< TextureRegion >();
+		resMgr.getResources( TextureRegion.class, regions );
+		List< Animation > animations = new ArrayList< Animation >();
+		animations.add( animation );
+
+		TextureAtlas atlas = new TextureAtlas();
+		atlas.addSource( "a.png", textureA.getPixmap() );
+		atlas.addSource( "b.png", textureB.getPixmap() );
+		atlas.build( "atlas.xml", 64, 1 );
+		assertEquals( 1, atlas.getPagesCount() );
+
+		Texture page = new Texture();
+		page.create( atlas.getPageImage( 0 ) );
+		atlas.setPage( 0, page );
+
+		regions.add( frames[0] );
+		regions.add( frames[1] );
+		assertEquals( 4, atlas.apply( regions, animations ) );
+
+		// the regions point to the same pixels they did before
+		Pixmap pageImage = atlas.getPageImage( 0 );
+		assertEquals( 0xFFFF0000, getPixel( pageImage, regionA1.m_u1, regionA1.m_v1 ) );
+		assertEquals( 0xFFFF0000, getPixel( pageImage, regionA2.m_u2 - 0.001f, regionA2.m_v2 - 0.001f ) );
+		assertEquals( 8.0f * 0.5f, regionA1.widthInPixels(), 0.001f );
+		assertEquals( 0xFF0000FF, getPixel( pageImage, frames[0].m_u1, frames[0].m_v1 ) );
+
+		// the regions that use the same page share a render state
+		assertSame( page, regionA1.m_renderState.m_texture );
+		assertSame( regionA1.m_renderState, regionA2.m_renderState );
+		assertSame( page, animation.m_renderState.m_texture );
+		assertSame( page, frames[1].m_renderState.m_texture );
+
+		// the textures that weren't packed are left alone
+		assertSame( wrappedTexture, wrappedRegion.m_renderState.m_texture );
+		assertEquals( 2.0f, wrappedRegion.m_u2 );
+	}
+
+	public void testMergingResources()
+	{
+		ResourceManager resMgr = new ResourceManager( null );
+
+		Texture textureA = resMgr.getResource( Texture.class, "a.png" );
+		textureA.create( createImage( 8, 4, 0xFFFF0000 ) );
+		Texture wrappedTexture = resMgr.getResource( Texture.class, "c.png" );
+		wrappedTexture.create( createImage( 4, 4, 0xFF00FF00 ) );
+
+		TextureRegion region = createRegion( resMgr, "a.xml", textureA, 0, 0, 1, 1 );
+		TextureRegion wrappedRegion = createRegion( resMgr, "c.xml", wrappedTexture, 0, 0, 2, 2 );
+
+		TextureAtlas atlas = TextureAtlas.merge( resMgr, "atlas.xml", 64, 1 );
+		assertEquals( 1, atlas.getPagesCount() );
+		assertEquals( 0, atlas.findSource( "a.png" ) );
+		assertEquals( -1, atlas.findSource( "c.png" ) );
+
+		// the atlas and the page it created are managed by the resource manager
+		assertSame( atlas, resMgr.getResource( TextureAtlas.class, "atlas.xml" ) );
+		Texture page = resMgr.getResource( Texture.class, "atlas_0.png" );
+		assertSame( atlas.getPageImage( 0 ), page.getPixmap() );
+		assertSame( page, region.m_renderState.m_texture );
+		assertSame( wrappedTexture, wrappedRegion.m_renderState.m_texture );
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private Pixmap createImage( int width, int height, int color )
+	{
+		Pixmap image = new Pixmap( width, height );
+		for ( int i = 0; i < image.m_pixels.length; ++i )
+		{
+			image.m_pixels[i] = color;
+		}
+		return image;
+	}
+
+	private TextureRegion createRegion( ResourceManager resMgr, String path, Texture texture, float u1, float v1, float u2, float v2 )
+	{
+		TextureRegion region = resMgr.getResource( TextureRegion.class, path );
+		region.m_renderState.m_texture = texture;
+		region.m_u1 = u1;
+		region.m_v1 = v1;
+		region.m_u2 = u2;
+		region.m_v2 = v2;
+		return region;
+	}
+
+	private int getPixel( Pixmap image, float u, float v )
+	{
+		int x = (int)( u * image.m_width );
+		int y = (int)( v * image.m_height );
+		return image.m_pixels[ y * image.m_width + x ];
+	}
+}
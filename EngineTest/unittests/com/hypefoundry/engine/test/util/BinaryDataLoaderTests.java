@@ -0,0 +1,94 @@
+package com.hypefoundry.engine.test.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.hypefoundry.engine.util.serialization.DataLoader;
+import com.hypefoundry.engine.util.serialization.binary.BinaryAssetCompiler;
+import com.hypefoundry.engine.util.serialization.binary.BinaryDataLoader;
+import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
+
+import android.test.AndroidTestCase;
+
+
+public class BinaryDataLoaderTests extends AndroidTestCase
+{
+	private static final String		ASSET =
+		"<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+		"<Animation name='walk' frameDuration='0.25' framesCount='3' looped='true' mirrored='FALSE' offset='007' scale='1e2'>" +
+			"<Frame idx='0' x='0.0' y='-12' />" +
+			"<Extras>" +
+				"<Frame idx='100' />" +
+			"</Extras>" +
+			"<Frame idx='1' x='32.5' />" +
+			"<Event name='step' />" +
+			"<Frame idx='2' x='65' />" +
+		"</Animation>";
+
+	private byte[] compile( String xml ) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryAssetCompiler.compile( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ), out );
+		return out.toByteArray();
+	}
+
+	public void testValues() throws IOException
+	{
+		DataLoader xmlNode = XMLDataLoader.parse( new ByteArrayInputStream( ASSET.getBytes( "UTF-8" ) ), "Animation" );
+		DataLoader binaryNode = BinaryDataLoader.parse( ByteBuffer.wrap( compile( ASSET ) ), "Animation" );
+		assertNotNull( binaryNode );
+
+		// the values read the same way the XML parser reads them
+		String[] ids = { "name", "frameDuration", "framesCount", "looped", "mirrored", "offset", "scale", "missing" };
+		for ( int i = 0; i < ids.length; ++i )
+		{
+			String id = ids[i];
+			assertEquals( xmlNode.getStringValue( id ), binaryNode.getStringValue( id ) );
+			assertEquals( xmlNode.getIntValue( id ), binaryNode.getIntValue( id ) );
+			assertEquals( xmlNode.getIntValue( id, -1 ), binaryNode.getIntValue( id, -1 ) );
+			assertEquals( xmlNode.getFloatValue( id ), binaryNode.getFloatValue( id ) );
+			assertEquals( xmlNode.getFloatValue( id, -1.0f ), binaryNode.getFloatValue( id, -1.0f ) );
+			assertEquals( xmlNode.getBoolValue( id ), binaryNode.getBoolValue( id ) );
+			assertEquals( xmlNode.getBoolValue( id, true ), binaryNode.getBoolValue( id, true ) );
+		}
+		assertEquals( 0.25f, binaryNode.getFloatValue( "frameDuration" ) );
+		assertEquals( 7, binaryNode.getIntValue( "offset" ) );
+		assertEquals( 100.0f, binaryNode.getFloatValue( "scale" ) );
+	}
+
+	public void testTraversal() throws IOException
+	{
+		DataLoader node = BinaryDataLoader.parse( ByteBuffer.wrap( compile( ASSET ) ), "Animation" );
+
+		// only the direct children are taken into account
+		assertEquals( 3, node.getChildrenCount( "Frame" ) );
+		assertEquals( 1, node.getChildrenCount( "Event" ) );
+		assertEquals( 0, node.getChildrenCount( "Missing" ) );
+		assertNull( node.getChild( "Missing" ) );
+
+		int idx = 0;
+		for ( DataLoader frame = node.getChild( "Frame" ); frame != null; frame = frame.getSibling(), ++idx )
+		{
+			assertEquals( idx, frame.getIntValue( "idx" ) );
+		}
+		assertEquals( 3, idx );
+		assertEquals( -12.0f, node.getChild( "Frame" ).getFloatValue( "y" ) );
+		assertEquals( 100, node.getChild( "Extras" ).getChild( "Frame" ).getIntValue( "idx" ) );
+		assertNull( node.getChild( "Extras" ).getChild( "Frame" ).getSibling() );
+
+		// the root can be looked up among the descendants as well
+		assertEquals( "step", BinaryDataLoader.parse( ByteBuffer.wrap( compile( ASSET ) ), "Event" ).getStringValue( "name" ) );
+		assertNull( BinaryDataLoader.parse( ByteBuffer.wrap( compile( ASSET ) ), "World" ) );
+	}
+
+	public void testTransparentLoading() throws IOException
+	{
+		// the XML parser recognizes the compiled assets, so the code that loads them doesn't need to change
+		DataLoader node = XMLDataLoader.parse( new ByteArrayInputStream( compile( ASSET ) ), "Animation" );
+		assertTrue( node instanceof BinaryDataLoader );
+		assertEquals( "walk", node.getStringValue( "name" ) );
+		assertEquals( 3, node.getIntValue( "framesCount" ) );
+	}
+}
@@ -0,0 +1,123 @@
+package com.hypefoundry.engine.test.util;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import com.hypefoundry.engine.util.Arrays;
+import com.hypefoundry.engine.util.DepthSort;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+
+public class DepthSortPerformanceTests extends AndroidTestCase
+{
+	private class VisualMock
+	{
+		public float		m_z;
+
+		public VisualMock( float z )
+		{
+			m_z = z;
+		}
+	}
+
+	private final int SORTS_COUNT = 200;
+	private final int ROUNDS_COUNT = 10;
+
+	private Comparator< VisualMock > m_comparator = new Comparator< VisualMock >()
+	{
+		@Override
+		public int compare( VisualMock arg0, VisualMock arg1 )
+		{
+			return Float.compare( arg1.m_z, arg0.m_z );
+		}
+	};
+
+	public void testFewVisuals()
+	{
+		compareSorts( 100, 20 );
+	}
+
+	public void testSeveralVisuals()
+	{
+		compareSorts( 500, 50 );
+	}
+
+	public void testManyVisuals()
+	{
+		long[] durations = compareSorts( 5000, 200 );
+
+		// that's where the quick sort really starts to hurt
+		assertTrue( durations[1] < durations[0] );
+	}
+
+	/**
+	 * Sorts the same sets of visuals using both the quick sort and the depth sort.
+	 * 
+	 * @param visualsCount
+	 * @param maxDurationMs		time the depth sort should sort them in SORTS_COUNT times
+	 * @return					durations of the quick sort and the depth sort, in that order
+	 */
+	private long[] compareSorts( int visualsCount, long maxDurationMs )
+	{
+		Random rand = new Random( visualsCount );
+		VisualMock[] visuals = new VisualMock[visualsCount];
+		for ( int i = 0; i < visualsCount; ++i )
+		{
+			// the visuals are layered on a few depths, and some of them are offset by a fraction
+			visuals[i] = new VisualMock( rand.nextInt( 20 ) + ( rand.nextBoolean() ? 0.5f : 0.0f ) );
+		}
+
+		VisualMock[] sorted = new VisualMock[visualsCount];
+		float[] depths = new float[visualsCount];
+		DepthSort depthSort = new DepthSort( visualsCount );
+
+		// take the best of a few rounds, so that the warm up doesn't count
+		long quickSortDuration = Long.MAX_VALUE;
+		long depthSortDuration = Long.MAX_VALUE;
+		for ( int round = 0; round < ROUNDS_COUNT; ++round )
+		{
+			long startTime = System.nanoTime();
+			for ( int i = 0; i < SORTS_COUNT; ++i )
+			{
+				runQuickSort( visuals, sorted );
+			}
+			quickSortDuration = Math.min( quickSortDuration, System.nanoTime() - startTime );
+
+			startTime = System.nanoTime();
+			for ( int i = 0; i < SORTS_COUNT; ++i )
+			{
+				runDepthSort( visuals, sorted, depths, depthSort );
+			}
+			depthSortDuration = Math.min( depthSortDuration, System.nanoTime() - startTime );
+		}
+
+		for ( int i = 1; i < visualsCount; ++i )
+		{
+			assertTrue( sorted[i - 1].m_z >= sorted[i].m_z );
+		}
+
+		String msg = new StringBuilder().append( visualsCount ).append( " visuals - quick sort: " ).append( quickSortDuration / 1000 ).append( "[us], depth sort: " ).append( depthSortDuration / 1000 ).append( "[us]" ).toString();
+		Log.d( "DepthSortPerformanceTests", msg );
+		assertTrue( msg, depthSortDuration / 1000000 < maxDurationMs );
+
+		return new long[] { quickSortDuration, depthSortDuration };
+	}
+
+	private void runQuickSort( VisualMock[] visuals, VisualMock[] sorted )
+	{
+		System.arraycopy( visuals, 0, sorted, 0, visuals.length );
+		Arrays.quickSort( sorted, sorted.length, m_comparator );
+	}
+
+	private void runDepthSort( VisualMock[] visuals, VisualMock[] sorted, float[] depths, DepthSort depthSort )
+	{
+		System.arraycopy( visuals, 0, sorted, 0, visuals.length );
+		for ( int i = 0; i < sorted.length; ++i )
+		{
+			depths[i] = sorted[i].m_z;
+		}
+		depthSort.sort( sorted, depths, sorted.length );
+	}
+}
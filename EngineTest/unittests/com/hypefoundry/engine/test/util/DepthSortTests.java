@@ -0,0 +1,55 @@
+package com.hypefoundry.engine.test.util;
+
+import com.hypefoundry.engine.util.DepthSort;
+import android.test.AndroidTestCase;
+
+
+public class DepthSortTests extends AndroidTestCase
+{
+	public void testFractionalDepths()
+	{
+		String[] objects = { "a", "b", "c", "d", "e" };
+		float[] depths = { 0.25f, 0.5f, -0.1f, 0.75f, 0.3f };
+
+		DepthSort sorter = new DepthSort( 2 );
+		sorter.sort( objects, depths, objects.length );
+
+		// the farthest objects come first
+		String[] expected = { "d", "b", "e", "a", "c" };
+		for ( int i = 0; i < expected.length; ++i )
+		{
+			assertEquals( expected[i], objects[i] );
+		}
+	}
+
+	public void testStability()
+	{
+		String[] objects = { "a", "b", "c", "d", "e", "f" };
+		float[] depths = { 1, 2, 1, 2, 1, 2 };
+
+		DepthSort sorter = new DepthSort( objects.length );
+		sorter.sort( objects, depths, objects.length );
+
+		String[] expected = { "b", "d", "f", "a", "c", "e" };
+		for ( int i = 0; i < expected.length; ++i )
+		{
+			assertEquals( expected[i], objects[i] );
+		}
+	}
+
+	public void testPartialRange()
+	{
+		String[] objects = { "a", "b", "c", "d" };
+		float[] depths = { 1, 2, 3, 4 };
+
+		// only the first three objects are sorted
+		DepthSort sorter = new DepthSort( 1 );
+		sorter.sort( objects, depths, 3 );
+
+		String[] expected = { "c", "b", "a", "d" };
+		for ( int i = 0; i < expected.length; ++i )
+		{
+			assertEquals( expected[i], objects[i] );
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.hypefoundry.engine.test.util;
+
+import com.hypefoundry.engine.util.DoubleBuffer;
+import android.test.AndroidTestCase;
+
+
+public class DoubleBufferTests extends AndroidTestCase
+{
+	private static final int		FRAMES_COUNT = 10000;
+	private static final int		BUFFER_SIZE = 64;
+
+	public void testSingleThread()
+	{
+		DoubleBuffer< int[] > buffer = new DoubleBuffer< int[] >( new int[1], new int[1] );
+		assertNull( buffer.acquire() );
+
+		buffer.beginWrite()[0] = 1;
+		buffer.endWrite();
+
+		// the consumer keeps on reading the last published buffer until a new one's published
+		int[] read = buffer.acquire();
+		assertEquals( 1, read[0] );
+		buffer.release();
+		assertSame( read, buffer.acquire() );
+		buffer.release();
+
+		// the next buffer is written while the previous one can be read
+		int[] written = buffer.beginWrite();
+		assertTrue( read != written );
+		written[0] = 2;
+		assertEquals( 1, buffer.acquire()[0] );
+		buffer.release();
+		buffer.endWrite();
+		assertEquals( 2, buffer.acquire()[0] );
+		buffer.release();
+	}
+
+	public void testHandover() throws InterruptedException
+	{
+		final DoubleBuffer< int[] > buffer = new DoubleBuffer< int[] >( new int[BUFFER_SIZE], new int[BUFFER_SIZE] );
+
+		Thread producer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				for ( int frame = 1; frame <= FRAMES_COUNT; ++frame )
+				{
+					int[] data = buffer.beginWrite();
+					for ( int i = 0; i < BUFFER_SIZE; ++i )
+					{
+						data[i] = frame;
+					}
+					buffer.endWrite();
+				}
+			}
+		};
+		producer.start();
+
+		// the consumer should never see a buffer that's being written, or an older frame than the one it's already seen
+		int lastFrame = 0;
+		while ( lastFrame < FRAMES_COUNT )
+		{
+			int[] data = buffer.acquire();
+			if ( data == null )
+			{
+				continue;
+			}
+
+			int frame = data[0];
+			for ( int i = 1; i < BUFFER_SIZE; ++i )
+			{
+				assertEquals( frame, data[i] );
+			}
+			buffer.release();
+
+			assertTrue( frame >= lastFrame );
+			lastFrame = frame;
+		}
+
+		producer.join();
+	}
+
+	public void testProducerWaitsForRelease() throws InterruptedException
+	{
+		final DoubleBuffer< int[] > buffer = new DoubleBuffer< int[] >( new int[1], new int[1] );
+		buffer.beginWrite()[0] = 1;
+		buffer.endWrite();
+
+		// the consumer holds the buffer the producer wants to write after the next one
+		assertEquals( 1, buffer.acquire()[0] );
+		buffer.beginWrite()[0] = 2;
+		buffer.endWrite();
+
+		Thread producer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				buffer.beginWrite()[0] = 3;
+				buffer.endWrite();
+			}
+		};
+		producer.start();
+
+		// the producer waits parked rather than spinning
+		long timeout = System.currentTimeMillis() + 5000;
+		while ( producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < timeout )
+		{
+			Thread.sleep( 1 );
+		}
+		assertEquals( Thread.State.WAITING, producer.getState() );
+
+		// and it's woken up once the buffer's released
+		buffer.release();
+		producer.join( 5000 );
+		assertFalse( producer.isAlive() );
+		assertEquals( 3, buffer.acquire()[0] );
+		buffer.release();
+	}
+}
@@ -0,0 +1,177 @@
+package com.hypefoundry.engine.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+import com.hypefoundry.engine.util.FrameProfiler;
+import android.test.AndroidTestCase;
+
+
+public class FrameProfilerTests extends AndroidTestCase
+{
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		FrameProfiler.reset();
+		FrameProfiler.setEnabled( true );
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		FrameProfiler.setEnabled( false );
+		FrameProfiler.reset();
+		super.tearDown();
+	}
+
+	public void testSections() throws InterruptedException
+	{
+		int section = FrameProfiler.registerSection( "Test" );
+		assertEquals( section, FrameProfiler.registerSection( "Test" ) );
+
+		// a reentered section is timed only once
+		FrameProfiler.begin( FrameProfiler.SECTION_FRAME );
+		FrameProfiler.begin( section );
+		FrameProfiler.begin( section );
+		Thread.sleep( 20 );
+		FrameProfiler.end( section );
+		FrameProfiler.end( section );
+		FrameProfiler.end( FrameProfiler.SECTION_FRAME );
+		FrameProfiler.endFrame();
+
+		assertEquals( 1, FrameProfiler.getSampledFramesCount() );
+		float sectionTime = FrameProfiler.getSectionTime( section, 0 );
+		assertTrue( sectionTime >= 20 && sectionTime < 40 );
+		assertTrue( FrameProfiler.getSectionTime( FrameProfiler.SECTION_FRAME, 0 ) >= sectionTime );
+
+		// the next frame starts from scratch
+		FrameProfiler.endFrame();
+		assertEquals( 0.0f, FrameProfiler.getSectionTime( section, 0 ) );
+		assertEquals( sectionTime, FrameProfiler.getSectionTime( section, 1 ) );
+		assertEquals( sectionTime, FrameProfiler.getMaxSectionTime( section ) );
+		assertEquals( sectionTime / 2, FrameProfiler.getAverageSectionTime( section ), 0.0001f );
+	}
+
+	public void testCounters()
+	{
+		// the history keeps only the recent frames
+		for ( int i = 0; i < FrameProfiler.HISTORY_LENGTH + 10; ++i )
+		{
+			FrameProfiler.count( FrameProfiler.COUNTER_SPRITES, i );
+			FrameProfiler.endFrame();
+		}
+
+		assertEquals( FrameProfiler.HISTORY_LENGTH, FrameProfiler.getSampledFramesCount() );
+		assertEquals( FrameProfiler.HISTORY_LENGTH + 9, FrameProfiler.getCounter( FrameProfiler.COUNTER_SPRITES, 0 ) );
+		assertEquals( 10, FrameProfiler.getCounter( FrameProfiler.COUNTER_SPRITES, FrameProfiler.HISTORY_LENGTH - 1 ) );
+		assertEquals( 10 + ( FrameProfiler.HISTORY_LENGTH - 1 ) / 2.0f, FrameProfiler.getAverageCounter( FrameProfiler.COUNTER_SPRITES ) );
+
+		// nothing's collected while the profiler is disabled
+		FrameProfiler.setEnabled( false );
+		FrameProfiler.count( FrameProfiler.COUNTER_SPRITES, 5 );
+		FrameProfiler.endFrame();
+		FrameProfiler.setEnabled( true );
+		FrameProfiler.endFrame();
+		assertEquals( 0, FrameProfiler.getCounter( FrameProfiler.COUNTER_SPRITES, 0 ) );
+		assertEquals( FrameProfiler.HISTORY_LENGTH + 9, FrameProfiler.getCounter( FrameProfiler.COUNTER_SPRITES, 1 ) );
+	}
+
+	public void testDump() throws IOException
+	{
+		FrameProfiler.count( FrameProfiler.COUNTER_DRAW_CALLS, 3 );
+		FrameProfiler.endFrame();
+		FrameProfiler.count( FrameProfiler.COUNTER_DRAW_CALLS, 7 );
+		FrameProfiler.endFrame();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FrameProfiler.dump( out );
+		String[] rows = out.toString().trim().split( "\\s*\n" );
+
+		// a header and a row per frame, starting with the oldest one
+		assertEquals( 3, rows.length );
+		String[] header = rows[0].split( "," );
+		assertEquals( 1 + FrameProfiler.getSectionsCount() + FrameProfiler.getCountersCount(), header.length );
+		int drawCallsColumn = 1 + FrameProfiler.getSectionsCount() + FrameProfiler.COUNTER_DRAW_CALLS;
+		assertEquals( "Draw calls", header[drawCallsColumn] );
+		assertEquals( "3", rows[1].split( "," )[drawCallsColumn] );
+		assertEquals( "7", rows[2].split( "," )[drawCallsColumn] );
+	}
+
+	public void testSimulationThread() throws InterruptedException
+	{
+		final Semaphore stepRun = new Semaphore( 0 );
+		final Semaphore stepEndRequested = new Semaphore( 0 );
+		Thread simulationThread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				FrameProfiler.setSimulationThread( this );
+				FrameProfiler.count( FrameProfiler.COUNTER_COLLISIONS, 5 );
+				stepRun.release();
+				stepEndRequested.acquireUninterruptibly();
+				FrameProfiler.endStep();
+				FrameProfiler.setSimulationThread( null );
+			}
+		};
+		simulationThread.start();
+
+		// the samples of a step that's still running don't end up in the frame
+		stepRun.acquire();
+		FrameProfiler.count( FrameProfiler.COUNTER_DRAW_CALLS, 2 );
+		FrameProfiler.endFrame();
+		assertEquals( 0, FrameProfiler.getCounter( FrameProfiler.COUNTER_COLLISIONS, 0 ) );
+		assertEquals( 2, FrameProfiler.getCounter( FrameProfiler.COUNTER_DRAW_CALLS, 0 ) );
+
+		// ... they're stored with the frame that ends after the step
+		stepEndRequested.release();
+		simulationThread.join();
+		FrameProfiler.endFrame();
+		assertEquals( 5, FrameProfiler.getCounter( FrameProfiler.COUNTER_COLLISIONS, 0 ) );
+		assertEquals( 0, FrameProfiler.getCounter( FrameProfiler.COUNTER_DRAW_CALLS, 0 ) );
+	}
+
+	public void testConcurrentSamples() throws InterruptedException
+	{
+		final int stepsCount = 2000;
+		final int collisionsPerStep = 50;
+		Thread simulationThread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				FrameProfiler.setSimulationThread( this );
+				for ( int step = 0; step < stepsCount; ++step )
+				{
+					for ( int i = 0; i < collisionsPerStep; ++i )
+					{
+						FrameProfiler.count( FrameProfiler.COUNTER_COLLISIONS, 1 );
+					}
+					FrameProfiler.endStep();
+				}
+				FrameProfiler.setSimulationThread( null );
+			}
+		};
+		simulationThread.start();
+
+		// the frames end while the steps are being run, and none of the samples gets lost or mixed up
+		int collisionsCount = 0;
+		int drawCallsCount = 0;
+		while ( simulationThread.isAlive() )
+		{
+			FrameProfiler.count( FrameProfiler.COUNTER_DRAW_CALLS, 1 );
+			FrameProfiler.endFrame();
+			collisionsCount += FrameProfiler.getCounter( FrameProfiler.COUNTER_COLLISIONS, 0 );
+			drawCallsCount += FrameProfiler.getCounter( FrameProfiler.COUNTER_DRAW_CALLS, 0 );
+			assertEquals( 0, FrameProfiler.getCounter( FrameProfiler.COUNTER_COLLISIONS, 0 ) % collisionsPerStep );
+		}
+		simulationThread.join();
+		FrameProfiler.endFrame();
+		collisionsCount += FrameProfiler.getCounter( FrameProfiler.COUNTER_COLLISIONS, 0 );
+
+		assertEquals( stepsCount * collisionsPerStep, collisionsCount );
+		assertTrue( drawCallsCount > 0 );
+	}
+}
@@ -0,0 +1,68 @@
+package com.hypefoundry.engine.test.util;
+
+import com.hypefoundry.engine.util.IdIndexedArray;
+import android.test.AndroidTestCase;
+
+
+public class IdIndexedArrayTests extends AndroidTestCase 
+{
+	public void testAddingAndRemoving()
+	{
+		IdIndexedArray< String > arr = new IdIndexedArray< String >( 2 );
+		arr.put( 0, "a" );
+		arr.put( 5, "b" );
+		arr.put( 2, "c" );
+		assertEquals( 3, arr.size() );
+		assertEquals( "a", arr.get( 0 ) );
+		assertEquals( "b", arr.get( 5 ) );
+		assertEquals( "c", arr.get( 2 ) );
+		assertNull( arr.get( 1 ) );
+		assertNull( arr.get( 100 ) );
+		assertNull( arr.get( -1 ) );
+		
+		// the last object takes the place of the removed one
+		assertEquals( "a", arr.remove( 0 ) );
+		assertNull( arr.remove( 0 ) );
+		assertEquals( 2, arr.size() );
+		assertEquals( "c", arr.getAt( 0 ) );
+		assertEquals( "b", arr.getAt( 1 ) );
+		assertEquals( "c", arr.get( 2 ) );
+		assertEquals( "b", arr.get( 5 ) );
+		
+		// putting an object under a taken id replaces the old one
+		arr.put( 5, "d" );
+		assertEquals( 2, arr.size() );
+		assertEquals( "d", arr.get( 5 ) );
+		
+		arr.clear();
+		assertEquals( 0, arr.size() );
+		assertNull( arr.get( 5 ) );
+	}
+	
+	public void testManyObjects()
+	{
+		final int OBJECTS_COUNT = 1000;
+		IdIndexedArray< Integer > arr = new IdIndexedArray< Integer >( 1 );
+		for ( int i = 0; i < OBJECTS_COUNT; ++i )
+		{
+			arr.put( i, i );
+		}
+		for ( int i = 0; i < OBJECTS_COUNT; i += 2 )
+		{
+			arr.remove( i );
+		}
+		
+		assertEquals( OBJECTS_COUNT / 2, arr.size() );
+		for ( int i = 0; i < OBJECTS_COUNT; ++i )
+		{
+			if ( ( i & 1 ) == 0 )
+			{
+				assertNull( arr.get( i ) );
+			}
+			else
+			{
+				assertEquals( i, arr.get( i ).intValue() );
+			}
+		}
+	}
+}
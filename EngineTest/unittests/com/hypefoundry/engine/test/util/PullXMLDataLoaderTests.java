@@ -0,0 +1,170 @@
+package com.hypefoundry.engine.test.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.hypefoundry.engine.util.serialization.DataLoader;
+import com.hypefoundry.engine.util.serialization.binary.BinaryAssetCompiler;
+import com.hypefoundry.engine.util.serialization.binary.BinaryDataLoader;
+import com.hypefoundry.engine.util.serialization.xml.PullXMLDataLoader;
+import com.hypefoundry.engine.util.serialization.xml.XMLDataLoader;
+
+import android.test.AndroidTestCase;
+
+
+public class PullXMLDataLoaderTests extends AndroidTestCase
+{
+	private static final String		ASSET =
+		"<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+		"<ParticleSystem name='smoke' lifetime='2.5' particlesCount='64' looped='True' blending='additive'>" +
+			"<Emitter rate='0.5' >some text</Emitter>" +
+			"<Affector type='fade' />" +
+			"<Group>" +
+				"<Affector type='nested' />" +
+			"</Group>" +
+			"<Affector type='scale' factor='1.5' />" +
+		"</ParticleSystem>";
+
+	// the same tag nested at the different levels of the hierarchy
+	private static final String		NESTED_ASSET =
+		"<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+		"<Effect>" +
+			"<Group>" +
+				"<Affector type='inGroup1' />" +
+				"<Affector type='inGroup2' />" +
+			"</Group>" +
+			"<Affector type='first'>" +
+				"<Affector type='inFirst' />" +
+			"</Affector>" +
+			"<Group>" +
+				"<Affector type='inGroup3' />" +
+			"</Group>" +
+			"<Affector type='second' />" +
+		"</Effect>";
+
+	private DataLoader parse( String xml, String rootNodeTag ) throws IOException
+	{
+		return PullXMLDataLoader.parse( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ), rootNodeTag );
+	}
+
+	public void testValues() throws IOException
+	{
+		DataLoader domNode = XMLDataLoader.parse( new ByteArrayInputStream( ASSET.getBytes( "UTF-8" ) ), "ParticleSystem" );
+		DataLoader pullNode = parse( ASSET, "ParticleSystem" );
+		assertNotNull( pullNode );
+
+		// the values read the same way the DOM parser reads them
+		String[] ids = { "name", "lifetime", "particlesCount", "looped", "blending", "missing" };
+		for ( int i = 0; i < ids.length; ++i )
+		{
+			String id = ids[i];
+			assertEquals( domNode.getStringValue( id ), pullNode.getStringValue( id ) );
+			assertEquals( domNode.getIntValue( id ), pullNode.getIntValue( id ) );
+			assertEquals( domNode.getIntValue( id, -1 ), pullNode.getIntValue( id, -1 ) );
+			assertEquals( domNode.getFloatValue( id ), pullNode.getFloatValue( id ) );
+			assertEquals( domNode.getFloatValue( id, -1.0f ), pullNode.getFloatValue( id, -1.0f ) );
+			assertEquals( domNode.getBoolValue( id ), pullNode.getBoolValue( id ) );
+			assertEquals( domNode.getBoolValue( id, false ), pullNode.getBoolValue( id, false ) );
+		}
+	}
+
+	public void testTraversal() throws IOException
+	{
+		DataLoader node = parse( ASSET, "ParticleSystem" );
+
+		// only the direct children are taken into account
+		assertEquals( 2, node.getChildrenCount( "Affector" ) );
+		assertEquals( 0, node.getChildrenCount( "Missing" ) );
+		assertNull( node.getChild( "Missing" ) );
+		assertEquals( 0.5f, node.getChild( "Emitter" ).getFloatValue( "rate" ) );
+
+		DataLoader affector = node.getChild( "Affector" );
+		assertEquals( "fade", affector.getStringValue( "type" ) );
+		affector = affector.getSibling();
+		assertEquals( "scale", affector.getStringValue( "type" ) );
+
+		// the DOM parser skips the nested affector as well
+		DataLoader domNode = XMLDataLoader.parse( new ByteArrayInputStream( ASSET.getBytes( "UTF-8" ) ), "ParticleSystem" );
+		assertEquals( "scale", domNode.getChild( "Affector" ).getSibling().getStringValue( "type" ) );
+		assertEquals( 1.5f, affector.getFloatValue( "factor" ) );
+		assertNull( affector.getSibling() );
+
+		// the children can be visited again, and in any order
+		assertSame( node.getChild( "Affector" ), node.getChild( "Affector" ) );
+		assertEquals( "nested", node.getChild( "Group" ).getChild( "Affector" ).getStringValue( "type" ) );
+
+		// the root can be looked up among the descendants as well
+		assertEquals( 0.5f, parse( ASSET, "Emitter" ).getFloatValue( "rate" ) );
+		assertNull( parse( ASSET, "World" ) );
+	}
+
+	public void testParityWithOtherLoaders() throws IOException
+	{
+		DataLoader[] roots = {
+			XMLDataLoader.parse( new ByteArrayInputStream( NESTED_ASSET.getBytes( "UTF-8" ) ), "Effect" ),
+			parse( NESTED_ASSET, "Effect" ),
+			BinaryDataLoader.parse( new ByteArrayInputStream( compile( NESTED_ASSET ) ), "Effect" ) };
+
+		// all loaders visit only the siblings that share the parent, skipping the nested nodes with the same tag
+		for ( int i = 0; i < roots.length; ++i )
+		{
+			DataLoader root = roots[i];
+			assertEquals( 2, root.getChildrenCount( "Affector" ) );
+			assertEquals( "first,second", listSiblings( root.getChild( "Affector" ) ) );
+			assertEquals( "inFirst", listSiblings( root.getChild( "Affector" ).getChild( "Affector" ) ) );
+			assertEquals( "inGroup1,inGroup2", listSiblings( root.getChild( "Group" ).getChild( "Affector" ) ) );
+			assertEquals( "inGroup3", listSiblings( root.getChild( "Group" ).getSibling().getChild( "Affector" ) ) );
+		}
+
+		// a root that's looked up among the descendants has the same siblings as well
+		DataLoader[] nestedRoots = {
+			XMLDataLoader.parse( new ByteArrayInputStream( NESTED_ASSET.getBytes( "UTF-8" ) ), "Affector" ),
+			parse( NESTED_ASSET, "Affector" ),
+			BinaryDataLoader.parse( new ByteArrayInputStream( compile( NESTED_ASSET ) ), "Affector" ) };
+		for ( int i = 0; i < nestedRoots.length; ++i )
+		{
+			assertEquals( "inGroup1,inGroup2", listSiblings( nestedRoots[i] ) );
+		}
+	}
+
+	public void testOptIn() throws IOException
+	{
+		XMLDataLoader.usePullParser( true );
+		try
+		{
+			DataLoader node = XMLDataLoader.parse( new ByteArrayInputStream( ASSET.getBytes( "UTF-8" ) ), "ParticleSystem" );
+			assertTrue( node instanceof PullXMLDataLoader );
+			assertEquals( "smoke", node.getStringValue( "name" ) );
+		}
+		finally
+		{
+			XMLDataLoader.usePullParser( false );
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private byte[] compile( String xml ) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryAssetCompiler.compile( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ), out );
+		return out.toByteArray();
+	}
+
+	private String listSiblings( DataLoader node )
+	{
+		StringBuilder types = new StringBuilder();
+		for ( ; node != null; node = node.getSibling() )
+		{
+			if ( types.length() > 0 )
+			{
+				types.append( ',' );
+			}
+			types.append( node.getStringValue( "type" ) );
+		}
+		return types.toString();
+	}
+}
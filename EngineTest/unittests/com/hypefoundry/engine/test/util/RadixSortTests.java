@@ -0,0 +1,66 @@
+package com.hypefoundry.engine.test.util;
+
+import java.util.Random;
+
+import com.hypefoundry.engine.util.RadixSort;
+import android.test.AndroidTestCase;
+
+
+public class RadixSortTests extends AndroidTestCase
+{
+	public void testSorting()
+	{
+		Random rand = new Random( 0 );
+		long[] keys = new long[1000];
+		int[] values = new int[1000];
+		for ( int i = 0; i < keys.length; ++i )
+		{
+			keys[i] = ( (long)rand.nextInt( 50 ) << 40 ) | rand.nextInt( 20 );
+			values[i] = i;
+		}
+		long[] originalKeys = keys.clone();
+
+		RadixSort sorter = new RadixSort( 16 );
+		sorter.sort( keys, values, keys.length );
+
+		for ( int i = 0; i < keys.length; ++i )
+		{
+			// the values travel along with the keys
+			assertEquals( originalKeys[ values[i] ], keys[i] );
+			if ( i > 0 )
+			{
+				assertTrue( keys[i - 1] <= keys[i] );
+
+				// elements with identical keys keep their original order
+				if ( keys[i - 1] == keys[i] )
+				{
+					assertTrue( values[i - 1] < values[i] );
+				}
+			}
+		}
+	}
+
+	public void testFloatKeys()
+	{
+		float[] floats = { 3.5f, -1.25f, 0.0f, -0.0f, 0.1f, -100.0f, 0.2f, 100.0f };
+		long[] keys = new long[floats.length];
+		int[] values = new int[floats.length];
+		for ( int i = 0; i < floats.length; ++i )
+		{
+			keys[i] = RadixSort.toSortableKey( floats[i] );
+			values[i] = i;
+		}
+
+		RadixSort sorter = new RadixSort( floats.length );
+		sorter.sort( keys, values, floats.length );
+
+		float[] expected = { -100.0f, -1.25f, 0.0f, -0.0f, 0.1f, 0.2f, 3.5f, 100.0f };
+		for ( int i = 0; i < expected.length; ++i )
+		{
+			assertEquals( expected[i], floats[ values[i] ] );
+
+			// the keys can be turned back into the floats
+			assertEquals( Math.abs( expected[i] ), Math.abs( RadixSort.fromSortableKey( keys[i] ) ) );
+		}
+	}
+}
@@ -83,4 +83,72 @@ public class SpatialGrid2DQueryPerformanceTests extends AndroidTestCase
 		long duration = ( endTime - startTime ) / 1000000;
 		assertTrue( new StringBuilder().append( "Actual duration: " ).append( duration ).append( "[ms]" ).toString(), duration < 10 ); // 10 ms
 	}
+	
+	public void testSparseGridLargeCapacity()
+	{
+		final int ENTITIES_COUNT = 4096;
+		final int REMAINING_ENTITIES_COUNT = 3;
+		final int QUERIES_COUNT = 1000;
+		SpatialGrid2D grid = new SpatialGrid2D( 10, 10, 5, ENTITIES_COUNT );
+		
+		// fill the grid up and then remove almost everything - the remaining objects
+		// occupy the lowest slots, so the query shouldn't go through the rest of the capacity
+		GridObjectMock[] objects = new GridObjectMock[ENTITIES_COUNT];
+		for ( int i = 0; i < ENTITIES_COUNT; ++i )
+		{
+			objects[i] = new GridObjectMock( new BoundingSphere( 2, 2, 0.5f ) );
+			grid.insertDynamicObject( objects[i] );
+		}
+		for ( int i = REMAINING_ENTITIES_COUNT; i < ENTITIES_COUNT; ++i )
+		{
+			grid.removeObject( objects[i] );
+		}
+		grid.update();
+		
+		GridObjectMock[] colliders = new GridObjectMock[ENTITIES_COUNT];
+		assertEquals( REMAINING_ENTITIES_COUNT, grid.getPotentialColliders( objects[0], colliders ) );
+		
+		long startTime = System.nanoTime();
+		for ( int i = 0; i < QUERIES_COUNT; ++i )
+		{
+			grid.getPotentialColliders( objects[0], colliders );
+		}
+		long endTime = System.nanoTime();
+		long duration = ( endTime - startTime ) / 1000000;
+		assertTrue( new StringBuilder().append( "Actual duration: " ).append( duration ).append( "[ms]" ).toString(), duration < 10 ); // 10 ms
+	}
+	
+	public void testDenseGridManyResults()
+	{
+		final int ENTITIES_COUNT = 2000;
+		final int QUERIES_COUNT = 100;
+		SpatialGrid2D grid = new SpatialGrid2D( 10, 10, 5, ENTITIES_COUNT );
+		
+		// every object occupies the same cell, so every query returns all of them
+		for ( int i = 0; i < ENTITIES_COUNT; ++i )
+		{
+			if ( ( i & 1 ) == 0 )
+			{
+				grid.insertStaticObject( new GridObjectMock( new BoundingSphere( 2, 2, 0.5f ) ) );
+			}
+			else
+			{
+				grid.insertDynamicObject( new GridObjectMock( new BoundingSphere( 2, 2, 0.5f ) ) );
+			}
+		}
+		grid.update();
+		
+		GridObjectMock queryObj = new GridObjectMock( new BoundingSphere( 2, 2, 0.5f ) );
+		GridObjectMock[] colliders = new GridObjectMock[ENTITIES_COUNT];
+		assertEquals( ENTITIES_COUNT, grid.getPotentialColliders( queryObj, colliders ) );
+		
+		long startTime = System.nanoTime();
+		for ( int i = 0; i < QUERIES_COUNT; ++i )
+		{
+			grid.getPotentialColliders( queryObj, colliders );
+		}
+		long endTime = System.nanoTime();
+		long duration = ( endTime - startTime ) / 1000000;
+		assertTrue( new StringBuilder().append( "Actual duration: " ).append( duration ).append( "[ms]" ).toString(), duration < 50 ); // 50 ms
+	}
 }
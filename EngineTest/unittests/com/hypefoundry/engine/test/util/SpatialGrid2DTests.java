@@ -117,4 +117,127 @@ public class SpatialGrid2DTests extends AndroidTestCase
 		collidersCount = grid.getPotentialColliders( new BoundingBox( -100, -100, 100, 100 ), colliders );
 		assertEquals( 2, collidersCount );
 	}
+	
+	public void testExceedingInitialCapacity()
+	{
+		final short INITIAL_CAPACITY = 5;
+		final int OBJECTS_COUNT = 2000;
+		SpatialGrid2D grid = new SpatialGrid2D( 10, 10, 2, INITIAL_CAPACITY );
+		
+		GridObjectMock[] objects = new GridObjectMock[OBJECTS_COUNT];
+		for ( int i = 0; i < OBJECTS_COUNT; ++i )
+		{
+			objects[i] = new GridObjectMock( new BoundingSphere( ( i % 10 ) + 0.5f, ( ( i / 10 ) % 10 ) + 0.5f, 0.25f ) );
+			if ( ( i & 1 ) == 0 )
+			{
+				grid.insertStaticObject( objects[i] );
+			}
+			else
+			{
+				grid.insertDynamicObject( objects[i] );
+			}
+		}
+		grid.update();
+		assertEquals( OBJECTS_COUNT, grid.getObjectsCount() );
+		
+		GridObjectMock[] colliders = new GridObjectMock[OBJECTS_COUNT];
+		int collidersCount = grid.getPotentialColliders( new BoundingBox( -100, -100, 100, 100 ), colliders );
+		assertEquals( OBJECTS_COUNT, collidersCount );
+		
+		// remove every other object and put back half of them - the freed slots should get reused
+		for ( int i = 0; i < OBJECTS_COUNT; i += 2 )
+		{
+			grid.removeObject( objects[i] );
+		}
+		assertEquals( OBJECTS_COUNT / 2, grid.getObjectsCount() );
+		
+		for ( int i = 0; i < OBJECTS_COUNT / 2; i += 2 )
+		{
+			grid.insertDynamicObject( objects[i] );
+		}
+		grid.update();
+		
+		collidersCount = grid.getPotentialColliders( new BoundingBox( -100, -100, 100, 100 ), colliders );
+		assertEquals( OBJECTS_COUNT / 2 + OBJECTS_COUNT / 4, collidersCount );
+		
+		// a query result gets truncated to the size of the provided array
+		GridObjectMock[] smallColliders = new GridObjectMock[10];
+		collidersCount = grid.getPotentialColliders( new BoundingBox( -100, -100, 100, 100 ), smallColliders );
+		assertEquals( 10, collidersCount );
+	}
+	
+	public void testMoveNotifications()
+	{
+		final short MAX_ENTITIES_COUNT = 5;
+		SpatialGrid2D grid = new SpatialGrid2D( 10, 10, 5, MAX_ENTITIES_COUNT );
+		grid.enableMoveNotifications( true );
+		grid.insertStaticObject( new GridObjectMock( new BoundingSphere( 2, 2, 1 ) ) );
+		
+		GridObjectMock movable = new GridObjectMock( new BoundingSphere( 7, 7, 1 ) );
+		grid.insertDynamicObject( movable );
+		
+		GridObjectMock[] colliders = new GridObjectMock[MAX_ENTITIES_COUNT];
+		int collidersCount = grid.getPotentialColliders( movable, colliders );
+		assertEquals( 1, collidersCount );
+		
+		// the object moved, but the grid wasn't informed about it - so it still sees it in the old cells
+		movable.m_shape.m_center.set( 2, 3, 0 );
+		grid.update();
+		collidersCount = grid.getPotentialColliders( new BoundingBox( 0, 0, 4, 4 ), colliders );
+		assertEquals( 1, collidersCount );
+		
+		grid.notifyObjectMoved( movable );
+		grid.notifyObjectMoved( movable );
+		grid.update();
+		collidersCount = grid.getPotentialColliders( new BoundingBox( 0, 0, 4, 4 ), colliders );
+		assertEquals( 2, collidersCount );
+		
+		// an object removed after being reported is simply skipped
+		movable.m_shape.m_center.set( 7, 7, 0 );
+		grid.notifyObjectMoved( movable );
+		grid.removeObject( movable );
+		grid.update();
+		collidersCount = grid.getPotentialColliders( new BoundingBox( -100, -100, 100, 100 ), colliders );
+		assertEquals( 1, collidersCount );
+	}
+	
+	public void testLevels()
+	{
+		final short MAX_ENTITIES_COUNT = 5;
+		GridObjectMock small = new GridObjectMock( new BoundingSphere( 1, 1, 0.5f ) );
+		GridObjectMock large = new GridObjectMock( new BoundingSphere( 8, 8, 5 ) );
+		GridObjectMock movable = new GridObjectMock( new BoundingSphere( 12, 12, 0.5f ) );
+		BoundingBox query = new BoundingBox( 2.5f, 2.5f, 3.5f, 3.5f );
+		GridObjectMock[] colliders = new GridObjectMock[MAX_ENTITIES_COUNT];
+		
+		// a single level grid finds everything that's in the same large cell as the queried area 
+		SpatialGrid2D grid = new SpatialGrid2D( 16, 16, 8, MAX_ENTITIES_COUNT );
+		assertEquals( 1, grid.getLevelsCount() );
+		grid.insertStaticObject( small );
+		grid.insertStaticObject( large );
+		assertEquals( 2, grid.getPotentialColliders( query, colliders ) );
+		
+		// the small objects are stored in the levels with the smaller cells, so they're found more precisely,
+		// while the objects larger than the largest cells are stored in the first level
+		grid = new SpatialGrid2D( 16, 16, 8, 3, MAX_ENTITIES_COUNT );
+		assertEquals( 3, grid.getLevelsCount() );
+		grid.insertStaticObject( small );
+		grid.insertStaticObject( large );
+		grid.insertDynamicObject( movable );
+		assertEquals( 1, grid.getPotentialColliders( query, colliders ) );
+		assertSame( large, colliders[0] );
+		
+		// every object is found only once
+		assertEquals( 3, grid.getObjectsCount() );
+		assertEquals( 3, grid.getPotentialColliders( new BoundingBox( -100, -100, 100, 100 ), colliders ) );
+		
+		movable.m_shape.m_center.set( 3, 3, 0 );
+		grid.update();
+		assertEquals( 2, grid.getPotentialColliders( query, colliders ) );
+		
+		grid.removeObject( large );
+		grid.removeObject( movable );
+		assertEquals( 1, grid.getObjectsCount() );
+		assertEquals( 0, grid.getPotentialColliders( query, colliders ) );
+	}
 }
@@ -0,0 +1,67 @@
+package com.hypefoundry.engine.test.util;
+
+import com.hypefoundry.engine.util.WorkerPool;
+import android.test.AndroidTestCase;
+
+
+public class WorkerPoolTests extends AndroidTestCase
+{
+	public void testProcessingRange()
+	{
+		final int[] visits = new int[1000];
+		WorkerPool.Task task = new WorkerPool.Task()
+		{
+			@Override
+			public void execute( int startIdx, int endIdx )
+			{
+				for ( int i = startIdx; i < endIdx; ++i )
+				{
+					visits[i]++;
+				}
+			}
+		};
+
+		WorkerPool pool = new WorkerPool( 4 );
+
+		// every index is visited exactly once, no matter how the range is split
+		pool.execute( task, visits.length, 1 );
+		pool.execute( task, 7, 1 );
+		pool.execute( task, 500, 300 );
+		for ( int i = 0; i < visits.length; ++i )
+		{
+			int expected = 1 + ( i < 7 ? 1 : 0 ) + ( i < 500 ? 1 : 0 );
+			assertEquals( expected, visits[i] );
+		}
+
+		pool.shutdown();
+	}
+
+	public void testErrorsPropagation()
+	{
+		WorkerPool pool = new WorkerPool( 4 );
+		WorkerPool.Task task = new WorkerPool.Task()
+		{
+			@Override
+			public void execute( int startIdx, int endIdx )
+			{
+				if ( endIdx == 100 )
+				{
+					throw new IllegalStateException();
+				}
+			}
+		};
+
+		boolean thrown = false;
+		try
+		{
+			pool.execute( task, 100, 1 );
+		}
+		catch( RuntimeException e )
+		{
+			thrown = true;
+		}
+		assertTrue( thrown );
+
+		pool.shutdown();
+	}
+}